@@ -176,6 +176,9 @@ public class IdentityConstants {
         public final static String SSO_ATTRIB_CLAIM_DIALECT = "SSOService.AttributesClaimDialect";
         public static final String SINGLE_LOGOUT_RETRY_COUNT = "SSOService.SingleLogoutRetryCount";
         public static final String SINGLE_LOGOUT_RETRY_INTERVAL = "SSOService.SingleLogoutRetryInterval";
+        public static final String SINGLE_LOGOUT_THREAD_POOL_SIZE = "SSOService.SingleLogoutThreadPoolSize";
+        public static final String SINGLE_LOGOUT_MAX_CONNECTIONS_PER_SP = "SSOService.SingleLogoutMaxConnectionsPerSP";
+        public static final String SINGLE_LOGOUT_TIMEOUT = "SSOService.SingleLogoutTimeout";
         public static final String SSO_TENANT_PARTITIONING_ENABLED = "SSOService.TenantPartitioningEnabled";
         public static final String SSO_SESSION_TIMEOUT = "SSOService.SessionTimeout";
 	    public static final String ACCEPT_OPENID_LOGIN = "SSOService.AcceptOpenIDLogin";
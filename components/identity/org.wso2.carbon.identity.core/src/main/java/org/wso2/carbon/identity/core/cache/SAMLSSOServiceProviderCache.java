@@ -0,0 +1,107 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.core.cache;
+
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.core.model.SAMLSSOServiceProviderDO;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import javax.cache.Cache;
+import javax.cache.Caching;
+
+/**
+ * Cache of the SAML SSO service providers read from the registry, by their tenant and issuer, so
+ * that SAML requests do not read the registry on every login. An entry is removed when the
+ * service provider is added or removed. The cache is shared by the nodes of a cluster, so that an
+ * entry removed in one node is removed in all of them.
+ * <p/>
+ * A local cache hands out the object it holds, so copies of the service providers are kept and
+ * returned, and a caller changing the service provider it got does not change the cached one.
+ */
+public class SAMLSSOServiceProviderCache {
+
+    private static final String CACHE_MANAGER_NAME = "IdentityCoreCacheManager";
+    private static final String CACHE_NAME = "SAMLSSOServiceProviderCache";
+
+    private static SAMLSSOServiceProviderCache instance = new SAMLSSOServiceProviderCache();
+
+    private SAMLSSOServiceProviderCache() {
+    }
+
+    public static SAMLSSOServiceProviderCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param tenantId tenant of the service provider
+     * @param issuer   issuer of the service provider
+     * @return copy of the cached service provider, or <code>null</code> if it is not cached
+     */
+    public SAMLSSOServiceProviderDO getServiceProvider(int tenantId, String issuer) {
+        try {
+            startSuperTenantFlow();
+            SAMLSSOServiceProviderDO serviceProviderDO = getCache().get(getKey(tenantId, issuer));
+            return serviceProviderDO != null ? new SAMLSSOServiceProviderDO(serviceProviderDO) : null;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    /**
+     * @param tenantId          tenant of the service provider
+     * @param serviceProviderDO service provider read from the registry
+     */
+    public void addServiceProvider(int tenantId, SAMLSSOServiceProviderDO serviceProviderDO) {
+        try {
+            startSuperTenantFlow();
+            getCache().put(getKey(tenantId, serviceProviderDO.getIssuer()),
+                    new SAMLSSOServiceProviderDO(serviceProviderDO));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    /**
+     * @param tenantId tenant of the service provider
+     * @param issuer   issuer of the service provider which is added or removed
+     */
+    public void clearServiceProvider(int tenantId, String issuer) {
+        try {
+            startSuperTenantFlow();
+            getCache().remove(getKey(tenantId, issuer));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private Cache<String, SAMLSSOServiceProviderDO> getCache() {
+        return Caching.getCacheManagerFactory().getCacheManager(CACHE_MANAGER_NAME).getCache(CACHE_NAME);
+    }
+
+    private String getKey(int tenantId, String issuer) {
+        return tenantId + ":" + issuer;
+    }
+
+    // the service providers of all the tenants are kept in the cache of the super tenant
+    private void startSuperTenantFlow() {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        carbonContext.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+    }
+}
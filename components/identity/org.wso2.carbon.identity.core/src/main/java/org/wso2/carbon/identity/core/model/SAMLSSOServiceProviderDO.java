@@ -48,6 +48,43 @@ public class SAMLSSOServiceProviderDO implements Serializable {
     private boolean doEnableEncryptedAssertion;
     private boolean doValidateSignatureInRequests;
 
+    public SAMLSSOServiceProviderDO() {
+    }
+
+    /**
+     * Creates a copy of the given service provider, which can be changed without changing the
+     * service provider it is copied from
+     *
+     * @param serviceProviderDO service provider to copy
+     */
+    public SAMLSSOServiceProviderDO(SAMLSSOServiceProviderDO serviceProviderDO) {
+        this.issuer = serviceProviderDO.issuer;
+        this.assertionConsumerUrl = serviceProviderDO.assertionConsumerUrl;
+        this.certAlias = serviceProviderDO.certAlias;
+        this.logoutURL = serviceProviderDO.logoutURL;
+        this.useFullyQualifiedUsername = serviceProviderDO.useFullyQualifiedUsername;
+        this.doSingleLogout = serviceProviderDO.doSingleLogout;
+        this.loginPageURL = serviceProviderDO.loginPageURL;
+        this.doSignResponse = serviceProviderDO.doSignResponse;
+        this.doSignAssertions = serviceProviderDO.doSignAssertions;
+        this.attributeConsumingServiceIndex = serviceProviderDO.attributeConsumingServiceIndex;
+        if (serviceProviderDO.requestedClaims != null) {
+            setRequestedClaims(serviceProviderDO.requestedClaims.clone());
+        }
+        if (serviceProviderDO.requestedAudiences != null) {
+            setRequestedAudiences(serviceProviderDO.requestedAudiences.clone());
+        }
+        if (serviceProviderDO.requestedRecipients != null) {
+            setRequestedRecipients(serviceProviderDO.requestedRecipients.clone());
+        }
+        this.enableAttributesByDefault = serviceProviderDO.enableAttributesByDefault;
+        this.nameIdClaimUri = serviceProviderDO.nameIdClaimUri;
+        this.nameIDFormat = serviceProviderDO.nameIDFormat;
+        this.isIdPInitSSOEnabled = serviceProviderDO.isIdPInitSSOEnabled;
+        this.doEnableEncryptedAssertion = serviceProviderDO.doEnableEncryptedAssertion;
+        this.doValidateSignatureInRequests = serviceProviderDO.doValidateSignatureInRequests;
+    }
+
 	public String getNameIDFormat() {
 		return nameIDFormat;
 	}
@@ -17,7 +17,9 @@
 */
 package org.wso2.carbon.identity.core.persistence;
 
+import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.core.cache.SAMLSSOServiceProviderCache;
 import org.wso2.carbon.identity.core.dao.OpenIDAdminDAO;
 import org.wso2.carbon.identity.core.dao.OpenIDUserDAO;
 import org.wso2.carbon.identity.core.dao.ParameterDAO;
@@ -29,6 +31,7 @@ import org.wso2.carbon.identity.core.model.ParameterDO;
 import org.wso2.carbon.identity.core.model.SAMLSSOServiceProviderDO;
 import org.wso2.carbon.identity.core.model.XMPPSettingsDO;
 import org.wso2.carbon.registry.core.Registry;
+import org.wso2.carbon.registry.core.session.UserRegistry;
 import org.wso2.carbon.user.core.UserRealm;
 
 public class IdentityPersistenceManager {
@@ -243,7 +246,12 @@ public class IdentityPersistenceManager {
     public boolean addServiceProvider(Registry registry, SAMLSSOServiceProviderDO serviceProviderDO)
             throws IdentityException {
         SAMLSSOServiceProviderDAO serviceProviderDAO = new SAMLSSOServiceProviderDAO(registry);
-        return serviceProviderDAO.addServiceProvider(serviceProviderDO);
+        boolean added = serviceProviderDAO.addServiceProvider(serviceProviderDO);
+        if (added) {
+            SAMLSSOServiceProviderCache.getInstance().clearServiceProvider(getTenantId(registry),
+                    serviceProviderDO.getIssuer());
+        }
+        return added;
     }
 
     /**
@@ -260,13 +268,40 @@ public class IdentityPersistenceManager {
 
     public boolean removeServiceProvider(Registry registry, String issuer) throws IdentityException {
         SAMLSSOServiceProviderDAO serviceProviderDAO = new SAMLSSOServiceProviderDAO(registry);
-        return serviceProviderDAO.removeServiceProvider(issuer);
+        boolean removed = serviceProviderDAO.removeServiceProvider(issuer);
+        SAMLSSOServiceProviderCache.getInstance().clearServiceProvider(getTenantId(registry), issuer);
+        return removed;
     }
 
+    /**
+     * Get the relying party service provider for SAML SSO with the given issuer. Service providers
+     * are cached once they are read from the registry, until they are removed.
+     *
+     * @param registry
+     * @param issuer
+     * @return service provider, or null if there is no service provider with the issuer
+     * @throws IdentityException
+     */
     public SAMLSSOServiceProviderDO getServiceProvider(Registry registry, String issuer)
             throws IdentityException {
-        SAMLSSOServiceProviderDAO serviceProviderDAO = new SAMLSSOServiceProviderDAO(registry);
-        return serviceProviderDAO.getServiceProvider(issuer);
+        int tenantId = getTenantId(registry);
+        SAMLSSOServiceProviderCache serviceProviderCache = SAMLSSOServiceProviderCache.getInstance();
+        SAMLSSOServiceProviderDO serviceProviderDO = serviceProviderCache.getServiceProvider(tenantId, issuer);
+        if (serviceProviderDO == null) {
+            SAMLSSOServiceProviderDAO serviceProviderDAO = new SAMLSSOServiceProviderDAO(registry);
+            serviceProviderDO = serviceProviderDAO.getServiceProvider(issuer);
+            if (serviceProviderDO != null) {
+                serviceProviderCache.addServiceProvider(tenantId, serviceProviderDO);
+            }
+        }
+        return serviceProviderDO;
+    }
+
+    private int getTenantId(Registry registry) {
+        if (registry instanceof UserRegistry) {
+            return ((UserRegistry) registry).getTenantId();
+        }
+        return CarbonContext.getThreadLocalCarbonContext().getTenantId();
     }
 
     public void createOrUpdateOpenIDAdmin(Registry registry, OpenIDAdminDO opAdmin)
@@ -66,6 +66,9 @@ CREATE TABLE IF NOT EXISTS IDN_OAUTH2_ACCESS_TOKEN (
 	CONSTRAINT CON_APP_KEY UNIQUE (CONSUMER_KEY, AUTHZ_USER,USER_TYPE,TOKEN_SCOPE,TOKEN_STATE,TOKEN_STATE_ID)
 );
 
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED, ACCESS_TOKEN);
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED, AUTHORIZATION_CODE);
+
 CREATE TABLE IF NOT EXISTS IDN_SCIM_GROUP (
             ID INTEGER GENERATED ALWAYS AS IDENTITY,
             TENANT_ID INTEGER NOT NULL,
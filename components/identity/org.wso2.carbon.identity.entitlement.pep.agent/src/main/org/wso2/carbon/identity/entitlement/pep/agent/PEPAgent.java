@@ -17,7 +17,6 @@ package org.wso2.carbon.identity.entitlement.pep.agent;
 
 import org.wso2.carbon.identity.entitlement.pep.agent.exception.EntitlementAgentException;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -35,7 +34,8 @@ public class PEPAgent {
     public PEPAgent(PEPAgentConfig config) throws EntitlementAgentException {
         defaultAppId = config.getDefaultAppId();
         if(config.getCacheType()!= null && (config.getCacheType().equals("simple") || config.getCacheType().equals("carbon"))){
-            cache = new PEPAgentCache(config.getCacheType(), config.getInvalidationInterval(), config.getMaxCacheEntries());
+            cache = new PEPAgentCache(config.getCacheType(), config.getInvalidationInterval(),
+                    config.getMaxCacheEntries(), config.getStaleInterval());
         }
         appToPDPClientMap = PEPAgentFactory.getAppToPDPClientMap(config.getAppToPDPClientConfigMap());
     }
@@ -58,24 +58,20 @@ public class PEPAgent {
      * @return the Entitlement Decision as a String
      * @throws Exception
      */
-    public String getDecision(Attribute[] attributes, String appId) throws Exception {
-        AbstractEntitlementServiceClient appProxy;
+    public String getDecision(final Attribute[] attributes, final String appId) throws Exception {
+        final AbstractEntitlementServiceClient appProxy;
         if(!appToPDPClientMap.containsKey(appId))   {
             throw new EntitlementAgentException("Invalid App Id");
         } else {
             appProxy = appToPDPClientMap.get(appId);
         }
         if(cache != null){
-            String key = generateKey(attributes);
-            String decision = cache.get(key);
-            if(decision != null) {
-                return decision;
-            }
-            else{
-                decision = appProxy.getDecision(attributes, appId);
-                cache.put(key,decision);
-                return decision;
-            }
+            String key = generateKey(attributes, appId);
+            return cache.get(key, new PEPAgentCache.DecisionLoader() {
+                public String load() throws Exception {
+                    return appProxy.getDecision(attributes, appId);
+                }
+            });
         } else{
             return appProxy.getDecision(attributes, appId);
         }
@@ -212,11 +208,32 @@ public class PEPAgent {
         return appProxy.getActionsForResource(alias, resources, appId);
     }
 
-    private String generateKey(Attribute[] attributes) {
-        int key = 1;
-        key = 11 * key + ((attributes == null) ? 0 : Arrays.hashCode(attributes));
-        key = 31 * key + ((defaultAppId == null) ? 0 : defaultAppId.hashCode());
-        return (new Integer(key)).toString();
+    // the key holds the attributes themselves, as requests with the same hash code must not
+    // share a decision. Values are prefixed with their length, so that they can not run together
+    private String generateKey(Attribute[] attributes, String appId) {
+        StringBuilder key = new StringBuilder();
+        appendToKey(key, appId);
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                if (attribute == null) {
+                    key.append('-');
+                    continue;
+                }
+                appendToKey(key, attribute.getCategory());
+                appendToKey(key, attribute.getId());
+                appendToKey(key, attribute.getType());
+                appendToKey(key, attribute.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    private void appendToKey(StringBuilder key, String value) {
+        if (value == null) {
+            key.append("-;");
+        } else {
+            key.append(value.length()).append(':').append(value).append(';');
+        }
     }
 
     public void clear(){
@@ -225,4 +242,26 @@ public class PEPAgent {
         }
     }
 
+    /**
+     * @return number of decisions which were found valid in the cache
+     */
+    public long getCacheHitCount() {
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    /**
+     * @return number of decisions which were served from the cache after their invalidation
+     *         interval, while they were fetched again
+     */
+    public long getCacheStaleHitCount() {
+        return cache != null ? cache.getStaleHitCount() : 0;
+    }
+
+    /**
+     * @return number of decisions which were fetched from the PDP as they were not in the cache
+     */
+    public long getCacheMissCount() {
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
 }
@@ -15,9 +15,20 @@
  */
 package org.wso2.carbon.identity.entitlement.pep.agent;
 
-import java.util.Calendar;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
@@ -27,69 +38,92 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 
-
+/**
+ * Decision cache of the PEP agent, which is used by all the threads of the application.
+ * <p/>
+ * The simple cache keeps at most the given number of decisions, and drops the oldest ones first.
+ * A decision is valid for the invalidation interval after it was fetched from the PDP. If a stale
+ * interval is given, a decision which is older than that is still served for the stale interval,
+ * while it is fetched again in the background. Concurrent lookups of the same missing decision
+ * fetch it from the PDP only once.
+ */
 class PEPAgentCache {
 
 	private static Log log = LogFactory.getLog(PEPAgentCache.class);
-	
-    private SimpleCache<String, EntitlementDecision> simpleCache;
+
+    // at most this many threads refresh stale decisions, and this many refreshes are queued
+    private static final int REFRESH_THREADS = 2;
+    private static final int MAX_QUEUED_REFRESHES = 1000;
+    private static final int REFRESH_THREAD_KEEP_ALIVE = 60;
+
+    private ConcurrentMap<String, EntitlementDecision> simpleCache;
+    private Queue<String> insertionOrder;
+    private int maxEntries;
     private boolean isCarbonCache = false;
     private int invalidationInterval = 0;
+    private int staleInterval = 0;
+
+    // decisions which are being fetched from the PDP
+    private ConcurrentMap<String, FutureTask<String>> pendingDecisions =
+            new ConcurrentHashMap<String, FutureTask<String>>();
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong staleHitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Fetches a decision from the PDP
+     */
+    interface DecisionLoader {
+
+        String load() throws Exception;
+    }
 
     PEPAgentCache(String enableCaching, int invalidationInterval, int maxEntries){
+        this(enableCaching, invalidationInterval, maxEntries, 0);
+    }
+
+    PEPAgentCache(String enableCaching, int invalidationInterval, int maxEntries, int staleInterval){
         if(enableCaching.equalsIgnoreCase("simple")){
-            simpleCache = new SimpleCache<String, EntitlementDecision>(maxEntries);
+            simpleCache = new ConcurrentHashMap<String, EntitlementDecision>();
+            insertionOrder = new ConcurrentLinkedQueue<String>();
+            this.maxEntries = maxEntries;
             this.invalidationInterval = invalidationInterval;
+            this.staleInterval = staleInterval;
+            if (staleInterval > 0) {
+                refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS,
+                        REFRESH_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(MAX_QUEUED_REFRESHES), new RefreshThreadFactory());
+                refreshExecutor.allowCoreThreadTimeOut(true);
+            }
         }else if(enableCaching.equalsIgnoreCase("carbon")){
         	isCarbonCache = true;
 //            carbonCache = getCommonCache(ProxyConstants.DECISION_CACHE);
         }
     }
 
-    private class SimpleCache<K, V> extends LinkedHashMap<K, V> {
-
-        private static final long serialVersionUID = 1L;
-
-        private int maxEntries;
-
-        public SimpleCache(int maxEntries) {
-            // removeEldestEntry() is called after a put(). To allow maxEntries in
-            // cache, capacity should be maxEntries + 1 (for the entry which will be
-            // removed). Load factor is taken as 1 because size is fixed. This is
-            // less space efficient when very less entries are present, but there
-            // will be no effect on time complexity for get(). The third parameter
-            // in the base class constructor says that this map is
-            // insertion-order oriented.
-            super(maxEntries + 1, 1, false);
-            this.maxEntries = maxEntries;
-        }
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            // After size exceeds max entries, this statement returns true and the
-            // oldest value will be removed. Behaves like a queue, the first
-            // inserted value will go away.
-            return size() > maxEntries;
-        }
-
-
-    }
-
     /**
-         * Encapsulate the XACML Decision with XACML response and time stamp
-         */
+     * Encapsulate the XACML Decision with XACML response and time stamp
+     */
     private class EntitlementDecision {
 
        /**
-             * XACML response
-             */
+        * XACML response
+        */
         private String response;
 
        /**
-             * time stamp
-             */
+        * time stamp
+        */
         private long cachedTime;
 
+       /**
+        * whether the decision is being fetched again
+        */
+        private AtomicBoolean refreshing = new AtomicBoolean();
+
         EntitlementDecision(String response,long cachedTime){
             this.response = response;
             this.cachedTime = cachedTime;
@@ -129,10 +163,111 @@ class PEPAgentCache {
         return cache;
     }
 
+    /**
+     * Gets the decision of the given key from the cache, or from the given loader if it is not
+     * cached. The decision which is loaded is added to the cache.
+     *
+     * @param key cache key of the request
+     * @param loader fetches the decision from the PDP
+     * @return decision
+     * @throws Exception if the decision could not be fetched
+     */
+    String get(final String key, final DecisionLoader loader) throws Exception {
+
+        if(simpleCache != null){
+            EntitlementDecision entitlementDecision = simpleCache.get(key);
+            if(entitlementDecision != null){
+                long age = System.currentTimeMillis() - entitlementDecision.getCachedTime();
+                if(age < invalidationInterval){
+                    hitCount.incrementAndGet();
+                    return entitlementDecision.getResponse();
+                }
+                if(age < (long) invalidationInterval + staleInterval){
+                    staleHitCount.incrementAndGet();
+                    refresh(key, entitlementDecision, loader);
+                    return entitlementDecision.getResponse();
+                }
+            }
+        } else {
+            String decision = get(key);
+            if(decision != null){
+                hitCount.incrementAndGet();
+                return decision;
+            }
+        }
+
+        missCount.incrementAndGet();
+        return load(key, loader);
+    }
+
+    // fetches the decision, only once for concurrent lookups of the same key
+    private String load(final String key, final DecisionLoader loader) throws Exception {
+
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            public String call() throws Exception {
+                String decision = loader.load();
+                put(key, decision);
+                return decision;
+            }
+        });
+        FutureTask<String> pendingTask = pendingDecisions.putIfAbsent(key, task);
+        if (pendingTask == null) {
+            pendingTask = task;
+            try {
+                task.run();
+            } finally {
+                pendingDecisions.remove(key, task);
+            }
+        }
+
+        try {
+            return pendingTask.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void refresh(final String key, final EntitlementDecision entitlementDecision,
+                         final DecisionLoader loader) {
+
+        if (!entitlementDecision.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        load(key, loader);
+                    } catch (Exception e) {
+                        log.error("Error while refreshing the cached decision", e);
+                    } finally {
+                        entitlementDecision.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the stale decision is fetched again by a later lookup
+            entitlementDecision.refreshing.set(false);
+        }
+    }
+
     void put(String key,String entry){
         if(simpleCache != null){
-            EntitlementDecision entitlementDecision = new EntitlementDecision(entry,Calendar.getInstance().getTimeInMillis());
-            simpleCache.put(key,entitlementDecision);
+            EntitlementDecision entitlementDecision = new EntitlementDecision(entry, System.currentTimeMillis());
+            if(simpleCache.put(key, entitlementDecision) == null){
+                insertionOrder.add(key);
+                // the oldest decisions are removed first, as they expire first
+                while(simpleCache.size() > maxEntries){
+                    String eldestKey = insertionOrder.poll();
+                    if(eldestKey == null){
+                        break;
+                    }
+                    simpleCache.remove(eldestKey);
+                }
+            }
         }else if(isCarbonCache){
         	Cache<IdentityCacheKey, IdentityCacheEntry> carbonCache = getCommonCache();
         	if(carbonCache != null){
@@ -146,10 +281,10 @@ class PEPAgentCache {
 
     String get(String key){
         if(simpleCache != null){
-            EntitlementDecision entitlementDecision = (EntitlementDecision)simpleCache.get(key);
+            EntitlementDecision entitlementDecision = simpleCache.get(key);
             if(entitlementDecision != null &&
                (entitlementDecision.getCachedTime() + (long) invalidationInterval >
-                Calendar.getInstance().getTimeInMillis())){
+                System.currentTimeMillis())){
                 return entitlementDecision.getResponse();
             }
         }else if(isCarbonCache){
@@ -168,7 +303,8 @@ class PEPAgentCache {
 
     void clear(){
         if(simpleCache != null){
-            simpleCache =  new SimpleCache<String, EntitlementDecision>(simpleCache.maxEntries);
+            simpleCache.clear();
+            insertionOrder.clear();
         }else if(isCarbonCache){
         	Cache<IdentityCacheKey, IdentityCacheEntry> carbonCache = getCommonCache();
         	if(carbonCache != null){
@@ -177,4 +313,30 @@ class PEPAgentCache {
         }
     }
 
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Creates the daemon threads which refresh stale decisions
+     */
+    private static class RefreshThreadFactory implements ThreadFactory {
+
+        private final AtomicLong threadCount = new AtomicLong();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PEPDecisionCacheRefresher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
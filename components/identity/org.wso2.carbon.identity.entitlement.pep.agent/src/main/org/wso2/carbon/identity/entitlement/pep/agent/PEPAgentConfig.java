@@ -24,9 +24,20 @@ public class PEPAgentConfig {
     private String cacheType;
     private int invalidationInterval;
     private int maxCacheEntries;
+    private int staleInterval;
 
     public PEPAgentConfig(Map<String, Map<String,String>> appToPDPClientConfigMap, String defaultAppId,
                           String cacheType, int invalidationInterval, int maxCacheEntries) {
+        this(appToPDPClientConfigMap, defaultAppId, cacheType, invalidationInterval, maxCacheEntries, 0);
+    }
+
+    /**
+     * @param staleInterval time for which a decision is still served after the invalidation
+     *                      interval, while it is fetched again from the PDP in the background
+     */
+    public PEPAgentConfig(Map<String, Map<String,String>> appToPDPClientConfigMap, String defaultAppId,
+                          String cacheType, int invalidationInterval, int maxCacheEntries,
+                          int staleInterval) {
         this.defaultAppId = defaultAppId;
         this.appToPDPClientConfigMap = appToPDPClientConfigMap;
         this.cacheType = cacheType;
@@ -35,6 +46,7 @@ public class PEPAgentConfig {
         if (this.maxCacheEntries > ProxyConstants.MAX_CACHE_SIZE || this.maxCacheEntries < 0) {
             this.maxCacheEntries = ProxyConstants.MAX_CACHE_SIZE;
         }
+        this.staleInterval = staleInterval > 0 ? staleInterval : 0;
     }
 
     public String getDefaultAppId() {
@@ -56,4 +68,8 @@ public class PEPAgentConfig {
     public int getMaxCacheEntries() {
         return maxCacheEntries;
     }
+
+    public int getStaleInterval() {
+        return staleInterval;
+    }
 }
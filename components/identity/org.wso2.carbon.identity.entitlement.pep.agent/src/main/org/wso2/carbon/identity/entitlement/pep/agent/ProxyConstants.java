@@ -34,7 +34,14 @@ public final class ProxyConstants {
     public final static String TRUST_STORE = "javax.net.ssl.trustStore";
     public final static String TRUST_STORE_PASSWORD = "javax.net.ssl.trustStorePassword";
     public static final int THRIFT_TIME_OUT = 30000;
+    public static final int THRIFT_MAX_IDLE_CONNECTIONS = 16;
+    // idle connections are closed before the PDP closes them on its client timeout
+    public static final int THRIFT_MAX_IDLE_TIME = 10000;
     public static final int DEFAULT_THRIFT_PORT = 10500;
+    // error of the PDP when the session is not authenticated, such as when it has expired
+    public static final String THRIFT_NOT_AUTHENTICATED_ERROR = "User is not authenticated. Please login first.";
+    // error of the PDPs which report an expired session, as any other error, with a generic message
+    public static final String THRIFT_GENERIC_ERROR = "Error occurred when invoking the Thrift based Entitlement Service.";
 
     public static final String DEFAULT_DATA_TYPE = "string";
 
@@ -27,7 +27,7 @@ public class Authenticator {
     private String userName;
     private String password;
     private String serverUrl;
-    private String sessionId;
+    private volatile String sessionId;
 
     public Authenticator(String userName, String password, String serverUrl) throws Exception {
         this.userName = userName;
@@ -39,7 +39,7 @@ public class Authenticator {
         }
     }
 
-    private boolean authenticate() throws Exception {
+    private synchronized boolean authenticate() throws Exception {
         boolean isAuthenticated;
         try {
             THttpClient client = new THttpClient(serverUrl);
@@ -63,4 +63,19 @@ public class Authenticator {
         return sessionId;
     }
 
+    /**
+     * Authenticates again if the given session is still the current one, so that threads which
+     * find the same session expired authenticate only once
+     *
+     * @param expiredSessionId session which has expired
+     * @return current session
+     * @throws Exception if authentication fails
+     */
+    public synchronized String renewSessionId(String expiredSessionId) throws Exception {
+        if (sessionId == null || sessionId.equals(expiredSessionId)) {
+            authenticate();
+        }
+        return sessionId;
+    }
+
 }
\ No newline at end of file
@@ -20,7 +20,6 @@ package org.wso2.carbon.identity.entitlement.proxy;
 
 import org.wso2.carbon.identity.entitlement.proxy.exception.EntitlementProxyException;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -38,7 +37,8 @@ public class PEPProxy {
     public PEPProxy(PEPProxyConfig config) throws EntitlementProxyException{
         defaultAppId = config.getDefaultAppId();
         if(config.getCacheType()!= null && (config.getCacheType().equals("simple") || config.getCacheType().equals("carbon"))){
-            cache = new PEPProxyCache(config.getCacheType(), config.getInvalidationInterval(), config.getMaxCacheEntries());
+            cache = new PEPProxyCache(config.getCacheType(), config.getInvalidationInterval(),
+                    config.getMaxCacheEntries(), config.getStaleInterval());
         }
         appToPDPClientMap = PEPProxyFactory.getAppToPDPClientMap(config.getAppToPDPClientConfigMap());
     }
@@ -61,24 +61,20 @@ public class PEPProxy {
      * @return the Entitlement Decision as a String
      * @throws Exception
      */
-    public String getDecision(Attribute[] attributes, String appId) throws Exception {
-        AbstractEntitlementServiceClient appProxy;
+    public String getDecision(final Attribute[] attributes, final String appId) throws Exception {
+        final AbstractEntitlementServiceClient appProxy;
         if(!appToPDPClientMap.containsKey(appId))   {
             throw new EntitlementProxyException("Invalid App Id");
         } else {
             appProxy = appToPDPClientMap.get(appId);
         }
         if(cache != null){
-            String key = generateKey(attributes);
-            String decision = cache.get(key);
-            if(decision != null) {
-                return decision;
-            }
-            else{
-                decision = appProxy.getDecision(attributes, appId);
-                cache.put(key,decision);
-                return decision;
-            }
+            String key = generateKey(attributes, appId);
+            return cache.get(key, new PEPProxyCache.DecisionLoader() {
+                public String load() throws Exception {
+                    return appProxy.getDecision(attributes, appId);
+                }
+            });
         } else{
             return appProxy.getDecision(attributes, appId);
         }
@@ -215,11 +211,32 @@ public class PEPProxy {
         return appProxy.getActionsForResource(alias, resources, appId);
     }
 
-    private String generateKey(Attribute[] attributes) {
-        int key = 1;
-        key = 11 * key + ((attributes == null) ? 0 : Arrays.hashCode(attributes));
-        key = 31 * key + ((defaultAppId == null) ? 0 : defaultAppId.hashCode());
-        return (new Integer(key)).toString();
+    // the key holds the attributes themselves, as requests with the same hash code must not
+    // share a decision. Values are prefixed with their length, so that they can not run together
+    private String generateKey(Attribute[] attributes, String appId) {
+        StringBuilder key = new StringBuilder();
+        appendToKey(key, appId);
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                if (attribute == null) {
+                    key.append('-');
+                    continue;
+                }
+                appendToKey(key, attribute.getCategory());
+                appendToKey(key, attribute.getId());
+                appendToKey(key, attribute.getType());
+                appendToKey(key, attribute.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    private void appendToKey(StringBuilder key, String value) {
+        if (value == null) {
+            key.append("-;");
+        } else {
+            key.append(value.length()).append(':').append(value).append(';');
+        }
     }
 
     public void clear(){
@@ -228,4 +245,26 @@ public class PEPProxy {
         }
     }
 
+    /**
+     * @return number of decisions which were found valid in the cache
+     */
+    public long getCacheHitCount() {
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    /**
+     * @return number of decisions which were served from the cache after their invalidation
+     *         interval, while they were fetched again
+     */
+    public long getCacheStaleHitCount() {
+        return cache != null ? cache.getStaleHitCount() : 0;
+    }
+
+    /**
+     * @return number of decisions which were fetched from the PDP as they were not in the cache
+     */
+    public long getCacheMissCount() {
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
 }
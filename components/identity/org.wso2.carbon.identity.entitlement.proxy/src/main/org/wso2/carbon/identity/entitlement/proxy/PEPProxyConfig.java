@@ -27,9 +27,20 @@ public class PEPProxyConfig {
     private String cacheType;
     private int invalidationInterval;
     private int maxCacheEntries;
+    private int staleInterval;
 
     public PEPProxyConfig(Map<String, Map<String,String>> appToPDPClientConfigMap, String defaultAppId,
                           String cacheType, int invalidationInterval, int maxCacheEntries) {
+        this(appToPDPClientConfigMap, defaultAppId, cacheType, invalidationInterval, maxCacheEntries, 0);
+    }
+
+    /**
+     * @param staleInterval time for which a decision is still served after the invalidation
+     *                      interval, while it is fetched again from the PDP in the background
+     */
+    public PEPProxyConfig(Map<String, Map<String,String>> appToPDPClientConfigMap, String defaultAppId,
+                          String cacheType, int invalidationInterval, int maxCacheEntries,
+                          int staleInterval) {
         this.defaultAppId = defaultAppId;
         this.appToPDPClientConfigMap = appToPDPClientConfigMap;
         this.cacheType = cacheType;
@@ -38,6 +49,7 @@ public class PEPProxyConfig {
         if (this.maxCacheEntries > ProxyConstants.MAX_CACHE_SIZE || this.maxCacheEntries < 0) {
             this.maxCacheEntries = ProxyConstants.MAX_CACHE_SIZE;
         }
+        this.staleInterval = staleInterval > 0 ? staleInterval : 0;
     }
 
     public String getDefaultAppId() {
@@ -59,4 +71,8 @@ public class PEPProxyConfig {
     public int getMaxCacheEntries() {
         return maxCacheEntries;
     }
+
+    public int getStaleInterval() {
+        return staleInterval;
+    }
 }
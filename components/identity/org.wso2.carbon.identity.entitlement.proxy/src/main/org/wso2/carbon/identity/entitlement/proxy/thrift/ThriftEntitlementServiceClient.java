@@ -23,16 +23,23 @@ import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.transport.TSSLTransportFactory;
 import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.wso2.carbon.identity.entitlement.proxy.*;
 import org.wso2.carbon.identity.entitlement.proxy.exception.EntitlementProxyException;
 import org.wso2.carbon.identity.entitlement.proxy.generatedCode.EntitlementException;
 import org.wso2.carbon.identity.entitlement.proxy.generatedCode.EntitlementThriftClient;
 
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
 
-
+/**
+ * Entitlement service client which calls the PDP over Thrift. Connections to the PDP are kept
+ * open and reused by the calls of all the threads, and the session is shared by them. A call
+ * which finds the session expired authenticates again and is retried once.
+ */
 public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceClient {
 
     private String trustStore = System.getProperty(ProxyConstants.TRUST_STORE);
@@ -44,7 +51,11 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
     private int thriftPort;
     private boolean reuseSession = true;
 
-    private Map<String, Authenticator> authenticators = new ConcurrentHashMap<String, Authenticator>();
+    private ConcurrentMap<String, Authenticator> authenticators = new ConcurrentHashMap<String, Authenticator>();
+
+    // idle connections, the most recently used first
+    private BlockingDeque<PooledClient> idleClients =
+            new LinkedBlockingDeque<PooledClient>(ProxyConstants.THRIFT_MAX_IDLE_CONNECTIONS);
 
     public ThriftEntitlementServiceClient(String serverUrl, String username, String password, String thriftHost, int thriftPort, boolean reuseSession){
         this.serverUrl = serverUrl;
@@ -58,10 +69,9 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
     @Override
     public String getDecision(Attribute[] attributes, String appId) throws Exception {
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(attributes);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
         Authenticator authenticator = getAuthenticator(serverUrl, userName,
                 password);
-        return getDecision(xacmlRequest,client,authenticator.getSessionId(false));
+        return getDecision(xacmlRequest, authenticator);
     }
 
     @Override
@@ -73,9 +83,8 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         Attribute environmentAttribute = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:environment", "urn:oasis:names:tc:xacml:1.0:environment:environment-id", ProxyConstants.DEFAULT_DATA_TYPE, domainId);
         Attribute[] tempArr = {subjectAttribute, actionAttribute, resourceAttribute, environmentAttribute};
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(tempArr);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
         Authenticator authenticator = getAuthenticator(serverUrl, userName, password);
-        return (getDecision(xacmlRequest,client,authenticator.getSessionId(false))).contains("Permit");
+        return (getDecision(xacmlRequest, authenticator)).contains("Permit");
     }
 
     @Override
@@ -91,9 +100,8 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         attrs[attrs.length - 2] = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:resource", "urn:oasis:names:tc:xacml:1.0:resource:resource-id", ProxyConstants.DEFAULT_DATA_TYPE, resourceId);
         attrs[attrs.length - 1] = new Attribute("urn:oasis:names:tc:xacml:3.0:attribute-category:environment", "urn:oasis:names:tc:xacml:1.0:environment:environment-id", ProxyConstants.DEFAULT_DATA_TYPE, domainId);
         String xacmlRequest = XACMLRequetBuilder.buildXACML3Request(attrs);
-        EntitlementThriftClient.Client client = getThriftClient(appId);
         Authenticator authenticator = getAuthenticator(serverUrl,userName,password);
-        return (getDecision(xacmlRequest,client,authenticator.getSessionId(false))).contains("Permit");
+        return (getDecision(xacmlRequest, authenticator)).contains("Permit");
     }
 
     @Override
@@ -121,36 +129,115 @@ public class ThriftEntitlementServiceClient extends AbstractEntitlementServiceCl
         return null;
     }
 
-    private String getDecision(String xacmlRequest, EntitlementThriftClient.Client client, String sessionId) throws EntitlementProxyException{
+    private String getDecision(String xacmlRequest, Authenticator authenticator) throws Exception {
+        String sessionId = authenticator.getSessionId(false);
         try {
-            return client.getDecision(xacmlRequest, sessionId);
-        } catch (TException e) {
-            throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+            return getDecision(xacmlRequest, sessionId);
         } catch (EntitlementException e) {
-            throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+            // only an expired session is renewed, other errors of the PDP are not retried. The
+            // generic error may hide an expired session, so the call is retried once for it too
+            if (!ProxyConstants.THRIFT_NOT_AUTHENTICATED_ERROR.equals(e.getMessage())
+                    && !ProxyConstants.THRIFT_GENERIC_ERROR.equals(e.getMessage())) {
+                throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+            }
+            try {
+                return getDecision(xacmlRequest, authenticator.renewSessionId(sessionId));
+            } catch (EntitlementException e1) {
+                throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e1);
+            }
+        }
+    }
+
+    private String getDecision(String xacmlRequest, String sessionId) throws EntitlementException,
+            EntitlementProxyException {
+        while (true) {
+            PooledClient pooledClient = borrowClient();
+            try {
+                String decision = pooledClient.client.getDecision(xacmlRequest, sessionId);
+                returnClient(pooledClient);
+                return decision;
+            } catch (EntitlementException e) {
+                // the connection can still be used
+                returnClient(pooledClient);
+                throw e;
+            } catch (TException e) {
+                pooledClient.transport.close();
+                // a connection which was idle may have been closed by the PDP, a new one is tried
+                if (!pooledClient.reused) {
+                    throw new EntitlementProxyException("Error while getting decision from PDP using ThriftEntitlementServiceClient", e);
+                }
+            }
         }
     }
 
     private Authenticator getAuthenticator(String serverUrl, String userName, String password)
             throws Exception {
         if(reuseSession){
-            if (authenticators.containsKey(serverUrl)) {
-                return authenticators.get(serverUrl);
+            Authenticator authenticator = authenticators.get(serverUrl);
+            if (authenticator != null) {
+                return authenticator;
             }
         }
         Authenticator authenticator = new Authenticator(userName, password, serverUrl + "thriftAuthenticator");
-        authenticators.put(serverUrl, authenticator);
+        if (reuseSession) {
+            Authenticator existingAuthenticator = authenticators.putIfAbsent(serverUrl, authenticator);
+            if (existingAuthenticator != null) {
+                return existingAuthenticator;
+            }
+        } else {
+            authenticators.put(serverUrl, authenticator);
+        }
         return authenticator;
     }
 
-    private EntitlementThriftClient.Client getThriftClient(String appId) throws Exception {
+    private PooledClient borrowClient() throws EntitlementProxyException {
+        PooledClient pooledClient;
+        while ((pooledClient = idleClients.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooledClient.lastUsed < ProxyConstants.THRIFT_MAX_IDLE_TIME &&
+                    pooledClient.transport.isOpen()) {
+                pooledClient.reused = true;
+                return pooledClient;
+            }
+            pooledClient.transport.close();
+        }
+        return new PooledClient(getThriftTransport());
+    }
+
+    private void returnClient(PooledClient pooledClient) {
+        pooledClient.lastUsed = System.currentTimeMillis();
+        if (!idleClients.offerFirst(pooledClient)) {
+            pooledClient.transport.close();
+        }
+    }
+
+    private TTransport getThriftTransport() throws EntitlementProxyException {
 
         TSSLTransportFactory.TSSLTransportParameters param = new TSSLTransportFactory.TSSLTransportParameters();
         param.setTrustStore(trustStore, trustStorePass);
-        TTransport transport;
-        transport = TSSLTransportFactory.getClientSocket(thriftHost, thriftPort, ProxyConstants.THRIFT_TIME_OUT, param);
-        TProtocol protocol = new TBinaryProtocol(transport);
-        EntitlementThriftClient.Client client = new EntitlementThriftClient.Client(protocol);
-        return client;
+        try {
+            return TSSLTransportFactory.getClientSocket(thriftHost, thriftPort, ProxyConstants.THRIFT_TIME_OUT, param);
+        } catch (TTransportException e) {
+            throw new EntitlementProxyException("Error while connecting to PDP using ThriftEntitlementServiceClient", e);
+        }
+    }
+
+    /**
+     * Open connection to the PDP, with the client which uses it
+     */
+    private static class PooledClient {
+
+        private TTransport transport;
+
+        private EntitlementThriftClient.Client client;
+
+        private long lastUsed;
+
+        private boolean reused;
+
+        private PooledClient(TTransport transport) {
+            this.transport = transport;
+            TProtocol protocol = new TBinaryProtocol(transport);
+            this.client = new EntitlementThriftClient.Client(protocol);
+        }
     }
 }
@@ -0,0 +1,329 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.entitlement;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe map, which is bounded by size. The entries are spread over segments by the hash
+ * of their keys, and each segment is a <code>LinkedHashMap</code> in access order which is locked
+ * on its own, so that lookups of different keys do not contend. The size is bounded for the map
+ * as a whole, not for each segment. When the map is full, the least recently used entry of all the
+ * segments is dropped, which is the eldest entry of one of them.
+ * <p/>
+ * Iterating over the map iterates over a snapshot of it, in the order the keys were first added,
+ * as the order of the entries matters to policy collections. The snapshot is kept until the map
+ * is changed, so that a map which is read far more often than it is changed is not copied on
+ * every read.
+ */
+public class EntitlementBoundedCache<K, V> extends AbstractMap<K, V> {
+
+    private final static int MAX_SEGMENTS = 16;
+
+    // segments are only used once there are this many entries per segment, so that small
+    // caches do not look up the eldest entry of many segments to drop one
+    private final static int MIN_SEGMENT_SIZE = 64;
+
+    private final static int INITIAL_SEGMENT_CAPACITY = 16;
+    private final static float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments;
+
+    private final int cacheSize;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    // orders the entries by the time they were last used
+    private final AtomicLong accessSequence = new AtomicLong();
+
+    // orders the entries by the time their keys were first added
+    private final AtomicLong sequence = new AtomicLong();
+
+    // counts the changes, so that a snapshot taken while the map changed is not kept
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    private volatile Snapshot<K, V> snapshot;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param cacheSize maximum number of entries, or zero or less for an unbounded map
+     */
+    @SuppressWarnings("unchecked")
+    public EntitlementBoundedCache(int cacheSize) {
+        int segmentCount = 1;
+        if (cacheSize <= 0) {
+            segmentCount = MAX_SEGMENTS;
+        } else {
+            while (segmentCount < MAX_SEGMENTS && cacheSize / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+                segmentCount *= 2;
+            }
+        }
+        this.cacheSize = cacheSize;
+        segments = new EntitlementBoundedCache.Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = segmentFor(key).getValue(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        try {
+            V previous = segmentFor(key).putValue(key, value);
+            while (cacheSize > 0 && size.get() > cacheSize && evictEldest()) {
+                evictionCount.incrementAndGet();
+            }
+            return previous;
+        } finally {
+            changed();
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        try {
+            return segmentFor(key).removeValue(key);
+        } finally {
+            changed();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segmentFor(key).getValue(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clearAll();
+        }
+        changed();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Snapshot<K, V> current = snapshot;
+        if (current != null) {
+            return current.entries;
+        }
+
+        long count = modificationCount.get();
+        List<Map.Entry<K, CacheEntry<V>>> entries = new ArrayList<Map.Entry<K, CacheEntry<V>>>();
+        for (Segment segment : segments) {
+            segment.copyTo(entries);
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<K, CacheEntry<V>>>() {
+            public int compare(Map.Entry<K, CacheEntry<V>> e1, Map.Entry<K, CacheEntry<V>> e2) {
+                long s1 = e1.getValue().sequence;
+                long s2 = e2.getValue().sequence;
+                return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+            }
+        });
+        Map<K, V> ordered = new LinkedHashMap<K, V>();
+        for (Map.Entry<K, CacheEntry<V>> entry : entries) {
+            ordered.put(entry.getKey(), entry.getValue().value);
+        }
+
+        current = new Snapshot<K, V>(Collections.unmodifiableMap(ordered).entrySet());
+        synchronized (modificationCount) {
+            if (modificationCount.get() == count) {
+                snapshot = current;
+            }
+        }
+        return current.entries;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void changed() {
+        synchronized (modificationCount) {
+            modificationCount.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Drops the least recently used entry of the map
+     *
+     * @return false if there is no entry to drop
+     */
+    private boolean evictEldest() {
+        Segment eldestSegment = null;
+        long eldestAccess = Long.MAX_VALUE;
+        for (Segment segment : segments) {
+            long lastAccess = segment.getEldestAccess();
+            if (lastAccess < eldestAccess) {
+                eldestAccess = lastAccess;
+                eldestSegment = segment;
+            }
+        }
+        // the eldest entry of the segment may have been used since, in which case the entry
+        // which is the eldest of the segment now is dropped
+        return eldestSegment != null && eldestSegment.removeEldest();
+    }
+
+    private Segment segmentFor(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // spread the higher bits, as the segment is picked by the lower bits
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Value of the map together with the order its key was first added in, and the order it was
+     * last used in
+     */
+    private static class CacheEntry<V> {
+
+        private final V value;
+
+        private final long sequence;
+
+        private long lastAccess;
+
+        private CacheEntry(V value, long sequence, long lastAccess) {
+            this.value = value;
+            this.sequence = sequence;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static class Snapshot<K, V> {
+
+        private final Set<Entry<K, V>> entries;
+
+        private Snapshot(Set<Entry<K, V>> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * A part of the map, which keeps its entries in access order
+     */
+    private class Segment extends LinkedHashMap<K, CacheEntry<V>> {
+
+        private static final long serialVersionUID = 2754911728318543302L;
+
+        private Segment() {
+            super(INITIAL_SEGMENT_CAPACITY, LOAD_FACTOR, true);
+        }
+
+        private synchronized V getValue(Object key) {
+            CacheEntry<V> entry = super.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastAccess = accessSequence.incrementAndGet();
+            return entry.value;
+        }
+
+        private synchronized V putValue(K key, V value) {
+            CacheEntry<V> previous = super.get(key);
+            // a replaced value keeps the place of its key
+            long order = previous != null ? previous.sequence : sequence.incrementAndGet();
+            super.put(key, new CacheEntry<V>(value, order, accessSequence.incrementAndGet()));
+            if (previous == null) {
+                size.incrementAndGet();
+                return null;
+            }
+            return previous.value;
+        }
+
+        private synchronized V removeValue(Object key) {
+            CacheEntry<V> previous = super.remove(key);
+            if (previous == null) {
+                return null;
+            }
+            size.decrementAndGet();
+            return previous.value;
+        }
+
+        /**
+         * @return when the least recently used entry of the segment was last used, or
+         *         <code>Long.MAX_VALUE</code> if the segment is empty
+         */
+        private synchronized long getEldestAccess() {
+            // iterating does not change the access order
+            Iterator<CacheEntry<V>> iterator = super.values().iterator();
+            return iterator.hasNext() ? iterator.next().lastAccess : Long.MAX_VALUE;
+        }
+
+        private synchronized boolean removeEldest() {
+            Iterator<CacheEntry<V>> iterator = super.values().iterator();
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            iterator.next();
+            iterator.remove();
+            size.decrementAndGet();
+            return true;
+        }
+
+        private synchronized void clearAll() {
+            size.addAndGet(-super.size());
+            super.clear();
+        }
+
+        private synchronized void copyTo(List<Map.Entry<K, CacheEntry<V>>> entries) {
+            for (Map.Entry<K, CacheEntry<V>> entry : super.entrySet()) {
+                entries.add(new SimpleImmutableEntry<K, CacheEntry<V>>(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+}
@@ -24,7 +24,10 @@ import java.util.Map;
 /**
  * This is a simple LRU cache, based on <code>LinkedHashMap</code>. If the cache is full and another
  * entry is added, the least recently used entry is dropped.
+ *
+ * @deprecated this cache is not thread safe, use {@link EntitlementBoundedCache} instead
  */
+@Deprecated
 public class EntitlementLRUCache<String, Set> extends LinkedHashMap<String, Set> {
 
 	private static final long serialVersionUID = -1308554805704597171L;
@@ -107,6 +107,61 @@ public class EntitlementService implements XACMLHandler {
 		}
 	}
 
+	/**
+	 * Evaluates the given XACML requests in one call and returns their responses in the same
+	 * order. The EntitlementEngine evaluates the requests in parallel.
+	 * @param requests XACML requests as String Objects
+	 * @return XACML responses as String Objects
+	 * @throws EntitlementException throws
+	 */
+	public String[] getDecisions(String[] requests) throws EntitlementException {
+
+		if (requests == null || requests.length == 0) {
+			return new String[0];
+		}
+		try {
+			EntitlementEngine entitlementEngine = EntitlementEngine.getInstance();
+			return entitlementEngine.evaluate(requests);
+		} catch (Exception e) {
+			log.error("Error occurred while evaluating XACML requests", e);
+			throw new EntitlementException("Error occurred while evaluating XACML requests");
+		}
+	}
+
+	/**
+	 * Evaluates a request for each of the given subject, resource and action values in one call,
+	 * and returns the decisions as boolean values in the same order, true if the result is permit.
+	 * Default attribute ids and data types are used, as by getBooleanDecision.
+	 *
+	 * @param subjects  subjects
+	 * @param resources  resources
+	 * @param actions  actions
+	 * @return  decisions as boolean true or false
+	 * @throws EntitlementException throws
+	 */
+	public boolean[] getBooleanDecisions(String[] subjects, String[] resources, String[] actions)
+			throws EntitlementException {
+
+		if (subjects == null || resources == null || actions == null ||
+				subjects.length != resources.length || subjects.length != actions.length) {
+			throw new EntitlementException(
+					"Invalid input data - same number of subjects, resources and actions should be given");
+		}
+		String[] responses;
+		try {
+			EntitlementEngine entitlementEngine = EntitlementEngine.getInstance();
+			responses = entitlementEngine.evaluate(subjects, resources, actions);
+		} catch (Exception e) {
+			log.error("Error occurred while evaluating XACML requests", e);
+			throw new EntitlementException("Error occurred while evaluating XACML requests");
+		}
+		boolean[] decisions = new boolean[responses.length];
+		for (int i = 0; i < responses.length; i++) {
+			decisions[i] = responses[i].contains("Permit");
+		}
+		return decisions;
+	}
+
     /**
      * Gets entitled resources for given user or role
      * This method can be only used, if all policies in PDP are defined with default categories i.e
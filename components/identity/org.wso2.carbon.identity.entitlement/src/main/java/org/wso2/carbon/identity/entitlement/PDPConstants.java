@@ -115,6 +115,10 @@ public class PDPConstants {
 
 	public static final String CATEGORY = "Category";
 
+	public static final String ATTRIBUTES_ELEMENT = "Attributes";
+
+	public static final String ISSUER = "Issuer";
+
 	public static final String REQUEST_CONTEXT_PATH = "RequestContextPath";
 
 	public static final String SUBJECT_ID_DEFAULT = "urn:oasis:names:tc:xacml:1.0:subject:subject-id";
@@ -255,6 +259,18 @@ public class PDPConstants {
     public static final String BALANA_CONFIG_ENABLE = "PDP.Balana.Config.Enable";
 
     public static final String MULTIPLE_DECISION_PROFILE_ENABLE = "PDP.Multiple.Decision.Profile.Enable";
+
+    public static final String BULK_DECISION_THREAD_POOL_SIZE = "PDP.BulkDecision.ThreadPoolSize";
+
+    public static final String BULK_DECISION_MAX_REQUESTS = "PDP.BulkDecision.MaxRequests";
+
+    public static final int DEFAULT_BULK_DECISION_MAX_REQUESTS = 1000;
+
+    public static final String ATTRIBUTE_FINDER_THREAD_POOL_SIZE = "PDP.AttributeFinder.ThreadPoolSize";
+
+    public static final String ATTRIBUTE_FINDER_TIMEOUT = "PDP.AttributeFinder.Timeout";
+
+    public static final long DEFAULT_ATTRIBUTE_FINDER_TIMEOUT = 10000;
     
     public static final String FILESYSTEM_POLICY_PATH = "PAP.Policy.Add.Start.Policy.File.Path";
 
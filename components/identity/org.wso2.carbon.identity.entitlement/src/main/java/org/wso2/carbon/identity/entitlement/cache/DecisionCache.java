@@ -23,21 +23,73 @@ import org.wso2.carbon.caching.impl.CachingConstants;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 
+import java.io.Serializable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
- * Decision cache
+ * Decision cache. It is keyed by the digest built by {@link DecisionCacheKeyBuilder}, and the
+ * decisions which are equal share a single String, as most requests get one of a few decisions.
+ * <p/>
+ * Cached decisions can be invalidated by the values of the request attributes they were made
+ * for, without removing other decisions. Every invalidation increases the version of the cache,
+ * and records it against the invalidated attribute values. A decision is cached with the version
+ * the cache had before it was evaluated, and is stale once one of its attribute values has been
+ * invalidated at a later version.
  */
-public class DecisionCache extends EntitlementBaseCache<IdentityCacheKey, String>{
+public class DecisionCache extends EntitlementBaseCache<IdentityCacheKey, DecisionCache.CachedDecision>{
+
+    // maximum number of distinct decisions which are shared
+    private static final int MAX_SHARED_DECISIONS = 1000;
+
+    // maximum number of invalidated attribute values which are kept, all the decisions are
+    // invalidated when there are more
+    private static final int MAX_INVALIDATED_ATTRIBUTE_VALUES = 10000;
+
+    private ConcurrentMap<String, String> sharedDecisions = new ConcurrentHashMap<String, String>();
+
+    private AtomicLong hitCount = new AtomicLong();
+
+    private AtomicLong missCount = new AtomicLong();
+
+    private AtomicLong version = new AtomicLong();
+
+    // version of the last invalidation of all the decisions
+    private volatile long fullInvalidationVersion;
+
+    // version of the last invalidation of any decision
+    private volatile long lastInvalidationVersion;
+
+    private ConcurrentMap<String, Long> attributeValueInvalidations = new ConcurrentHashMap<String, Long>();
 
     public DecisionCache(int timeOut) {
     	super(CachingConstants.LOCAL_CACHE_PREFIX + PDPConstants.PDP_DECISION_CACHE, timeOut);
     }
 
     public void addToCache(String key, String decision){
+        addToCache(key, decision, getVersion(), null);
+    }
+
+    /**
+     * Adds a decision to the cache
+     *
+     * @param key cache key of the request
+     * @param decision decision
+     * @param version version of the cache before the decision was evaluated
+     * @param attributeValueKeys keys of the request attribute values, as built by
+     * {@link org.wso2.carbon.identity.entitlement.policy.PolicyTarget#getAttributeValueKey(String, String, String)},
+     * or <code>null</code> if they are not known
+     */
+    public void addToCache(String key, String decision, long version, Set<String> attributeValueKeys){
 
         int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
         IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, key);
-        addToCache(cacheKey, decision);
+        String[] keys = attributeValueKeys != null ?
+                attributeValueKeys.toArray(new String[attributeValueKeys.size()]) : null;
+        addToCache(cacheKey, new CachedDecision(getSharedDecision(decision), version, keys));
     }
 
     public String getFromCache(String key){
@@ -46,16 +98,125 @@ public class DecisionCache extends EntitlementBaseCache<IdentityCacheKey, String
         IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, key);
         
         
-        Object entry = getValueFromCache(cacheKey);
+        CachedDecision entry = getValueFromCache(cacheKey);
         if(entry != null){
-            return (String) entry;
+            if (!isStale(entry)) {
+                hitCount.incrementAndGet();
+                return entry.decision;
+            }
+            clearCacheEntry(cacheKey);
         }
 
+        missCount.incrementAndGet();
         return null;
     }
 
     public void clearCache(){
         clear();
+        sharedDecisions.clear();
+    }
+
+    /**
+     * @return current version of the cache, to be given when a decision evaluated afterwards is
+     * added to the cache
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Invalidates the decisions made for requests with any of the given attribute values
+     *
+     * @param attributeValueKeys keys of the attribute values
+     */
+    public void invalidateAttributeValues(Set<String> attributeValueKeys) {
+        long invalidationVersion = version.incrementAndGet();
+        for (String key : attributeValueKeys) {
+            attributeValueInvalidations.put(key, invalidationVersion);
+        }
+        lastInvalidationVersion = invalidationVersion;
+        if (attributeValueInvalidations.size() > MAX_INVALIDATED_ATTRIBUTE_VALUES) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Invalidates all the decisions
+     */
+    public void invalidateAll() {
+        long invalidationVersion = version.incrementAndGet();
+        fullInvalidationVersion = invalidationVersion;
+        lastInvalidationVersion = invalidationVersion;
+        attributeValueInvalidations.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return ratio of the lookups which found a cached decision, zero if there were no lookups
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private boolean isStale(CachedDecision entry) {
+        if (entry.version < fullInvalidationVersion) {
+            return true;
+        }
+        if (entry.attributeValueKeys == null) {
+            return entry.version < lastInvalidationVersion;
+        }
+        for (String key : entry.attributeValueKeys) {
+            Long invalidationVersion = attributeValueInvalidations.get(key);
+            if (invalidationVersion != null && entry.version < invalidationVersion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getSharedDecision(String decision) {
+        if (decision == null) {
+            return null;
+        }
+        String sharedDecision = sharedDecisions.get(decision);
+        if (sharedDecision != null) {
+            return sharedDecision;
+        }
+        if (sharedDecisions.size() < MAX_SHARED_DECISIONS) {
+            sharedDecision = sharedDecisions.putIfAbsent(decision, decision);
+            return sharedDecision != null ? sharedDecision : decision;
+        }
+        return decision;
+    }
+
+    /**
+     * Cached decision with the version of the cache and the request attribute values it was
+     * evaluated for
+     */
+    public static class CachedDecision implements Serializable {
+
+        private static final long serialVersionUID = -3086493734640226155L;
+
+        private String decision;
+
+        private long version;
+
+        private String[] attributeValueKeys;
+
+        private CachedDecision(String decision, long version, String[] attributeValueKeys) {
+            this.decision = decision;
+            this.version = version;
+            this.attributeValueKeys = attributeValueKeys;
+        }
     }
 
 }
@@ -0,0 +1,273 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.entitlement.cache;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.entitlement.PDPConstants;
+import org.wso2.carbon.identity.entitlement.policy.PolicyTarget;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the decision cache key of a XACML request. The key is a digest of a canonical form of the
+ * request attributes, so that requests which only differ in formatting, namespace prefixes, or
+ * the order of attributes and attribute values share a cached decision.
+ * <p/>
+ * In the canonical form, each attribute is written with its category, id, data type, issuer,
+ * whether it is included in the result, and its sorted values. The attributes of a category
+ * element are sorted, and so are the category elements, which are kept apart since repeated
+ * categories make a multiple decision request. Requests which refer to XML content, such as
+ * <code>Content</code> or <code>MultiRequests</code> elements, are keyed by the digest of the raw
+ * request.
+ * <p/>
+ * The values of the subject, resource and action identifiers of the request are kept as well, so
+ * that the cached decision can be invalidated when a policy which targets them is changed.
+ */
+public class DecisionCacheKeyBuilder {
+
+    private static Log log = LogFactory.getLog(DecisionCacheKeyBuilder.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String ATTRIBUTES_ELEMENT = "Attributes";
+
+    private static final String ISSUER = "Issuer";
+
+    private static final String INCLUDE_IN_RESULT = "IncludeInResult";
+
+    private static final String SUBJECT_CATEGORY = "SubjectCategory";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private String key;
+
+    private Set<String> attributeValueKeys = new HashSet<String>();
+
+    /**
+     * Builds the decision cache key of the given XACML request
+     *
+     * @param xacmlRequest XACML request as String
+     */
+    public DecisionCacheKeyBuilder(String xacmlRequest) {
+        String canonicalRequest = null;
+        try {
+            canonicalRequest = canonicalize(AXIOMUtil.stringToOM(xacmlRequest));
+        } catch (XMLStreamException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("XACML request can not be canonicalized, it is cached as it is", e);
+            }
+        } catch (OMException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("XACML request can not be canonicalized, it is cached as it is", e);
+            }
+        }
+        if (canonicalRequest != null) {
+            key = digest("C" + canonicalRequest);
+        } else {
+            key = digest("R" + xacmlRequest);
+            attributeValueKeys = null;
+        }
+    }
+
+    /**
+     * Builds the decision cache key of the given XACML request
+     *
+     * @param xacmlRequest XACML request as String
+     * @return digest of the canonical form of the request, or of the request itself
+     */
+    public static String buildKey(String xacmlRequest) {
+        return new DecisionCacheKeyBuilder(xacmlRequest).getKey();
+    }
+
+    /**
+     * @return digest of the canonical form of the request, or of the request itself
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the values of the subject, resource and action identifiers of the request, as built by
+     * {@link PolicyTarget#getAttributeValueKey(String, String, String)}
+     *
+     * @return keys of the attribute values, or <code>null</code> if the request could not be read
+     */
+    public Set<String> getAttributeValueKeys() {
+        return attributeValueKeys;
+    }
+
+    /**
+     * @param request request element
+     * @return canonical form of the request or <code>null</code> if it can not be canonicalized
+     */
+    private String canonicalize(OMElement request) {
+
+        if (!PDPConstants.REQUEST_ELEMENT.equals(request.getLocalName())) {
+            return null;
+        }
+
+        StringBuilder canonicalRequest = new StringBuilder();
+        append(canonicalRequest, request.getNamespace() != null ? request.getNamespace().getNamespaceURI() : null);
+        appendAttributes(canonicalRequest, request);
+
+        List<String> categories = new ArrayList<String>();
+        Iterator children = request.getChildElements();
+        while (children.hasNext()) {
+            OMElement categoryElement = (OMElement) children.next();
+            String name = categoryElement.getLocalName();
+            String category;
+            String categoryURI;
+            if (ATTRIBUTES_ELEMENT.equals(name)) {
+                category = categoryElement.getAttributeValue(new QName(PDPConstants.CATEGORY));
+                categoryURI = category;
+            } else if (PDPConstants.SUBJECT_ELEMENT.equals(name)) {
+                String subjectCategory = categoryElement.getAttributeValue(new QName(SUBJECT_CATEGORY));
+                category = name + "|" + subjectCategory;
+                categoryURI = subjectCategory;
+            } else if (PDPConstants.RESOURCE_ELEMENT.equals(name) ||
+                    PDPConstants.ACTION_ELEMENT.equals(name) ||
+                    PDPConstants.ENVIRONMENT_ELEMENT.equals(name)) {
+                category = name;
+                categoryURI = name;
+            } else {
+                return null;
+            }
+            String canonicalCategory = canonicalizeCategory(category, categoryURI, categoryElement);
+            if (canonicalCategory == null) {
+                return null;
+            }
+            categories.add(canonicalCategory);
+        }
+
+        Collections.sort(categories);
+        for (String category : categories) {
+            append(canonicalRequest, category);
+        }
+        return canonicalRequest.toString();
+    }
+
+    private String canonicalizeCategory(String category, String categoryURI, OMElement categoryElement) {
+
+        List<String> attributes = new ArrayList<String>();
+        Iterator children = categoryElement.getChildElements();
+        while (children.hasNext()) {
+            OMElement attributeElement = (OMElement) children.next();
+            if (!PDPConstants.ATTRIBUTE.equals(attributeElement.getLocalName())) {
+                return null;
+            }
+
+            String attributeId = attributeElement.getAttributeValue(new QName(PDPConstants.ATTRIBUTE_ID));
+            boolean indexed = PolicyTarget.DEFAULT_INDEXED_ATTRIBUTE_IDS.contains(attributeId);
+            List<String> values = new ArrayList<String>();
+            Iterator valueElements = attributeElement.getChildElements();
+            while (valueElements.hasNext()) {
+                OMElement valueElement = (OMElement) valueElements.next();
+                if (!PDPConstants.ATTRIBUTE_VALUE.equals(valueElement.getLocalName()) ||
+                        valueElement.getFirstElement() != null) {
+                    return null;
+                }
+                StringBuilder value = new StringBuilder();
+                appendAttributes(value, valueElement);
+                append(value, valueElement.getText());
+                values.add(value.toString());
+                if (indexed) {
+                    attributeValueKeys.add(PolicyTarget.getAttributeValueKey(categoryURI, attributeId,
+                            valueElement.getText()));
+                }
+            }
+            Collections.sort(values);
+
+            StringBuilder attribute = new StringBuilder();
+            append(attribute, attributeId);
+            append(attribute, attributeElement.getAttributeValue(new QName(PDPConstants.DATA_TYPE)));
+            append(attribute, attributeElement.getAttributeValue(new QName(ISSUER)));
+            append(attribute, attributeElement.getAttributeValue(new QName(INCLUDE_IN_RESULT)));
+            for (String value : values) {
+                append(attribute, value);
+            }
+            attributes.add(attribute.toString());
+        }
+        Collections.sort(attributes);
+
+        StringBuilder canonicalCategory = new StringBuilder();
+        append(canonicalCategory, category);
+        appendAttributes(canonicalCategory, categoryElement);
+        for (String attribute : attributes) {
+            append(canonicalCategory, attribute);
+        }
+        return canonicalCategory.toString();
+    }
+
+    // appends the sorted XML attributes of the given element, other than namespace declarations
+    private static void appendAttributes(StringBuilder builder, OMElement element) {
+        List<String> xmlAttributes = new ArrayList<String>();
+        Iterator iterator = element.getAllAttributes();
+        while (iterator.hasNext()) {
+            OMAttribute attribute = (OMAttribute) iterator.next();
+            String namespace = attribute.getNamespace() != null ? attribute.getNamespace().getNamespaceURI() : "";
+            xmlAttributes.add(namespace + "|" + attribute.getLocalName() + "=" + attribute.getAttributeValue());
+        }
+        Collections.sort(xmlAttributes);
+        for (String xmlAttribute : xmlAttributes) {
+            append(builder, xmlAttribute);
+        }
+    }
+
+    // values are prefixed with their length, so that no two different requests have the same form
+    private static void append(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("-;");
+        } else {
+            builder.append(value.length()).append(':').append(value).append(';');
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(value.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256, keep the value itself if it is not found
+            log.error("Error while creating the digest of the decision cache key", e);
+        } catch (UnsupportedEncodingException e) {
+            log.error("Error while creating the digest of the decision cache key", e);
+        }
+        return value;
+    }
+}
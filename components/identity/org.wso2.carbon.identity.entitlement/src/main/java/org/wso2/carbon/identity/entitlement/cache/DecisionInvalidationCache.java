@@ -58,7 +58,8 @@ public class DecisionInvalidationCache extends EntitlementBaseCache<IdentityCach
         int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
 
         IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, "");
-        int valueToCache = myHashCode + 1;
+        // the shared value may be ahead of this node, when it was invalidated by another node
+        int valueToCache = Math.max(myHashCode, getGeneration()) + 1;
         IdentityCacheEntry cacheEntry = new IdentityCacheEntry(valueToCache);
         addToCache(cacheKey, cacheEntry);
         if(log.isDebugEnabled()){
@@ -88,4 +89,19 @@ public class DecisionInvalidationCache extends EntitlementBaseCache<IdentityCach
 
         return false;
     }
+
+    /**
+     * Gets the shared value of the tenant, which is increased by every invalidation. Unlike
+     * {@link #isInvalidate()}, it does not consume the invalidation, so that each user of the
+     * cache can keep the last value it has seen.
+     *
+     * @return shared value, or zero if the tenant has not been invalidated
+     */
+    public int getGeneration(){
+
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, "");
+        IdentityCacheEntry entry = getValueFromCache(cacheKey);
+        return entry != null ? entry.getHashEntry() : 0;
+    }
 }
@@ -23,6 +23,9 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * 
  */
@@ -32,6 +35,11 @@ public class EntitlementPolicyInvalidationCache extends EntitlementBaseCache<Ide
     private static Log log = LogFactory.getLog(EntitlementPolicyInvalidationCache.class);
     private static final Object lock = new Object();
     private int myHashCode;
+    private static final String CHANGED_POLICIES_KEY = "changedPolicies:";
+    /**
+     * beyond this number of invalidations since the last load, all the policies are reloaded
+     */
+    private static final int MAX_TRACKED_INVALIDATIONS = 100;
 
     private EntitlementPolicyInvalidationCache() {
     	super(PDPConstants.ENTITLEMENT_POLICY_INVALIDATION_CACHE);
@@ -54,11 +62,38 @@ public class EntitlementPolicyInvalidationCache extends EntitlementBaseCache<Ide
 	}
 
     public void invalidateCache(){
+        invalidateCache(null);
+    }
+
+    /**
+     * Invalidates the policies of the tenant, recording the policy which has changed, so that
+     * only that policy needs to be reloaded.
+     *
+     * @param policyId identifier of the changed policy, or null if the changed policies are not known
+     */
+    public void invalidateCache(String policyId){
 
         int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
 
         IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, "");
-        int valueToCache = myHashCode + 1;
+        // the shared value may be ahead of this node, when it was invalidated by another node
+        int valueToCache = Math.max(myHashCode, getGeneration()) + 1;
+
+        // recorded before the new value is shared, so that it is there when the value is seen.
+        // another node may have been invalidated with the same value, hence they are merged
+        IdentityCacheKey changeKey = new IdentityCacheKey(tenantId, CHANGED_POLICIES_KEY + valueToCache);
+        IdentityCacheEntry changeEntry = getValueFromCache(changeKey);
+        if(policyId == null){
+            addToCache(changeKey, new IdentityCacheEntry(true));
+        } else if(changeEntry == null || changeEntry.getCacheEntrySet() != null){
+            Set<String> changedPolicyIds = new HashSet<String>();
+            if(changeEntry != null){
+                changedPolicyIds.addAll(changeEntry.getCacheEntrySet());
+            }
+            changedPolicyIds.add(policyId);
+            addToCache(changeKey, new IdentityCacheEntry(changedPolicyIds));
+        }
+
         IdentityCacheEntry cacheEntry = new IdentityCacheEntry(valueToCache);
         addToCache(cacheKey, cacheEntry);
         if(log.isDebugEnabled()){
@@ -91,4 +126,46 @@ public class EntitlementPolicyInvalidationCache extends EntitlementBaseCache<Ide
 
         return false;
     }
+
+    /**
+     * Gets the shared value of the tenant, which is increased by every invalidation. Unlike
+     * {@link #isInvalidate()}, it does not consume the invalidation, so that each user of the
+     * cache can keep the last value it has seen.
+     *
+     * @return shared value, or zero if the tenant has not been invalidated
+     */
+    public int getGeneration(){
+
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        IdentityCacheKey cacheKey = new IdentityCacheKey(tenantId, "");
+        IdentityCacheEntry entry = getValueFromCache(cacheKey);
+        return entry != null ? entry.getHashEntry() : 0;
+    }
+
+    /**
+     * Gets the policies changed by the invalidations of the tenant after the given value, up to
+     * and including the given value
+     *
+     * @param fromGeneration shared value the policies were last loaded at
+     * @param toGeneration current shared value
+     * @return identifiers of the changed policies, or null if they are not known for any of the
+     * invalidations
+     */
+    public Set<String> getChangedPolicyIds(int fromGeneration, int toGeneration){
+
+        if(toGeneration <= fromGeneration || toGeneration - fromGeneration > MAX_TRACKED_INVALIDATIONS){
+            return null;
+        }
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        Set<String> changedPolicyIds = new HashSet<String>();
+        for(int generation = fromGeneration + 1; generation <= toGeneration; generation++){
+            IdentityCacheEntry entry = getValueFromCache(
+                    new IdentityCacheKey(tenantId, CHANGED_POLICIES_KEY + generation));
+            if(entry == null || entry.getCacheEntrySet() == null){
+                return null;
+            }
+            changedPolicyIds.addAll(entry.getCacheEntrySet());
+        }
+        return changedPolicyIds;
+    }
 }
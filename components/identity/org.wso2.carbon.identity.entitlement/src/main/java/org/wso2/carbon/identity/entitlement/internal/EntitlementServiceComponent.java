@@ -38,6 +38,9 @@ import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.EntitlementUtil;
 import org.wso2.carbon.identity.entitlement.dto.PolicyDTO;
 import org.wso2.carbon.identity.entitlement.pap.store.PAPPolicyStore;
+import org.wso2.carbon.identity.entitlement.pdp.EntitlementEngine;
+import org.wso2.carbon.identity.entitlement.pip.CarbonAttributeFinder;
+import org.wso2.carbon.identity.entitlement.policy.finder.CarbonPolicyFinder;
 import org.wso2.carbon.identity.entitlement.thrift.EntitlementService;
 import org.wso2.carbon.identity.entitlement.thrift.ThriftConfigConstants;
 import org.wso2.carbon.identity.entitlement.thrift.ThriftEntitlementServiceImpl;
@@ -169,6 +172,9 @@ public class EntitlementServiceComponent {
      * @param ctxt
      */
     protected void deactivate(ComponentContext ctxt) {
+        EntitlementEngine.shutdownBulkDecisionExecutor();
+        CarbonAttributeFinder.shutdownAttributeFinderExecutor();
+        CarbonPolicyFinder.shutdownReloadExecutor();
         if (log.isDebugEnabled()) {
             log.debug("Identity Entitlement bundle is deactivated");
         }
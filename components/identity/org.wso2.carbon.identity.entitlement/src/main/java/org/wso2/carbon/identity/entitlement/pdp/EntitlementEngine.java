@@ -24,6 +24,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.wso2.balana.Balana;
 import org.wso2.balana.ctx.RequestCtxFactory;
@@ -33,10 +43,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Element;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.entitlement.EntitlementException;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.EntitlementUtil;
 import org.wso2.carbon.identity.entitlement.cache.DecisionCache;
+import org.wso2.carbon.identity.entitlement.cache.DecisionCacheKeyBuilder;
 import org.wso2.carbon.identity.entitlement.cache.DecisionInvalidationCache;
 import org.wso2.carbon.identity.entitlement.cache.EntitlementEngineCache;
 import org.wso2.carbon.identity.entitlement.cache.SimpleDecisionCache;
@@ -65,6 +77,7 @@ public class EntitlementEngine {
 	private CarbonAttributeFinder carbonAttributeFinder;
     private CarbonResourceFinder carbonResourceFinder;
     private PolicyFinder carbonPolicyFinder;
+    private CarbonPolicyFinder carbonPolicyFinderModule;
     private PolicySearch policySearch;
 	private PDP pdp;
     private PDP pdpTest;
@@ -78,8 +91,27 @@ public class EntitlementEngine {
 
     private SimpleDecisionCache simpleDecisionCache = null;
 
+    /**
+     * value of the decision invalidation cache when the decision caches were last cleared
+     */
+    private volatile int decisionGeneration;
+
 	private static Log log = LogFactory.getLog(EntitlementEngine.class);
 
+    /**
+     * evaluates the requests of bulk decision calls, it is shared by the engines of all tenants
+     */
+    private static volatile ThreadPoolExecutor bulkDecisionExecutor = null;
+
+    private static final Object bulkDecisionLock = new Object();
+
+    // idle threads of the bulk decision pool are stopped after this many seconds
+    private static final int BULK_DECISION_THREAD_KEEP_ALIVE = 60;
+
+    // a bulk decision call which finds this many requests per thread queued, evaluates its
+    // requests by itself
+    private static final int BULK_DECISION_QUEUE_FACTOR = 16;
+
 	/**
 	 * Get a EntitlementEngine instance for that tenant. This method will return an
 	 * EntitlementEngine instance if exists, or creates a new one
@@ -148,6 +180,8 @@ public class EntitlementEngine {
         //init caches
         decisionCache = new DecisionCache(pdpDecisionCachingInterval);
         simpleDecisionCache = new SimpleDecisionCache(pdpDecisionCachingInterval);
+        decisionGeneration = DecisionInvalidationCache.getInstance().getGeneration();
+        carbonPolicyFinderModule.setDecisionCaches(decisionCache, simpleDecisionCache);
 
         // policy search
 
@@ -225,33 +259,49 @@ public class EntitlementEngine {
         }
 
         String xacmlResponse;
-
-        if ((xacmlResponse = getFromCache(xacmlRequest, false)) != null) {
-            if(log.isDebugEnabled()){
-                log.debug("XACML Response : " + xacmlResponse);
+        DecisionCacheKeyBuilder cacheKeyBuilder = null;
+        long cacheVersion = 0;
+
+        if (pdpDecisionCacheEnable) {
+            cacheKeyBuilder = new DecisionCacheKeyBuilder(xacmlRequest);
+            if ((xacmlResponse = getFromCache(cacheKeyBuilder.getKey(), false)) != null) {
+                if(log.isDebugEnabled()){
+                    log.debug("XACML Response : " + xacmlResponse);
+                    log.debug("PDP decision cache hit ratio : " + decisionCache.getHitRatio());
+                }
+                return xacmlResponse;
             }
-            return xacmlResponse;
+            // read before the evaluation, so that the decision is stale if policies are changed
+            // while it is evaluated
+            cacheVersion = decisionCache.getVersion();
 		}
 
         Map<PIPExtension, Properties> extensions = EntitlementServiceComponent.getEntitlementConfig()
                 .getExtensions();
 
-        if(extensions != null && !extensions.isEmpty()){
-            PolicyRequestBuilder policyRequestBuilder = new PolicyRequestBuilder();
-            Element xacmlRequestElement = policyRequestBuilder.getXacmlRequest(xacmlRequest);
-            AbstractRequestCtx requestCtx = RequestCtxFactory.getFactory().
-                                                            getRequestCtx(xacmlRequestElement);
-            Set<PIPExtension> pipExtensions = extensions.keySet();
-            for (PIPExtension pipExtension : pipExtensions) {
-                pipExtension.update(requestCtx);
+        try {
+            if(extensions != null && !extensions.isEmpty()){
+                PolicyRequestBuilder policyRequestBuilder = new PolicyRequestBuilder();
+                Element xacmlRequestElement = policyRequestBuilder.getXacmlRequest(xacmlRequest);
+                AbstractRequestCtx requestCtx = RequestCtxFactory.getFactory().
+                                                                getRequestCtx(xacmlRequestElement);
+                Set<PIPExtension> pipExtensions = extensions.keySet();
+                for (PIPExtension pipExtension : pipExtensions) {
+                    pipExtension.update(requestCtx);
+                }
+                ResponseCtx responseCtx = pdp.evaluate(requestCtx);
+                xacmlResponse = responseCtx.encode();
+            } else {
+                xacmlResponse = pdp.evaluate(xacmlRequest);
             }
-            ResponseCtx responseCtx = pdp.evaluate(requestCtx);
-            xacmlResponse = responseCtx.encode();
-        } else {
-            xacmlResponse = pdp.evaluate(xacmlRequest);
+        } finally {
+            CarbonAttributeFinder.clearRequestAttributes();
         }
 
-        addToCache(xacmlRequest, xacmlResponse, false);
+        if (cacheKeyBuilder != null) {
+            addToCache(cacheKeyBuilder.getKey(), xacmlResponse, cacheVersion,
+                    cacheKeyBuilder.getAttributeValueKeys());
+        }
 
         if(log.isDebugEnabled()){
             log.debug("XACML Response : " + xacmlResponse);
@@ -269,7 +319,11 @@ public class EntitlementEngine {
      * @return ResponseCtx  Balana Object model for response
      */
     public ResponseCtx evaluateByContext(AbstractRequestCtx requestCtx){
-        return pdp.evaluate(requestCtx);
+        try {
+            return pdp.evaluate(requestCtx);
+        } finally {
+            CarbonAttributeFinder.clearRequestAttributes();
+        }
     }
 
     /**
@@ -312,7 +366,11 @@ public class EntitlementEngine {
             log.debug("XACML Request : " + requestAsString);
         }
         
-        response = pdp.evaluate(requestAsString);
+        try {
+            response = pdp.evaluate(requestAsString);
+        } finally {
+            CarbonAttributeFinder.clearRequestAttributes();
+        }
         
         addToCache(request, response, true);
 
@@ -324,6 +382,141 @@ public class EntitlementEngine {
     }
 
 
+    /**
+     * Evaluates the given XACML requests and returns their responses in the same order. The
+     * requests are evaluated in parallel, they are looked up in and added to the decision cache
+     * one by one, and attribute values found by the PIP attribute finders are shared by the
+     * requests which carry the same attributes of the category of the found attribute.
+     *
+     * @param xacmlRequests XACML requests as String
+     * @return XACML responses as String
+     * @throws EntitlementException throws, if a request can not be evaluated
+     */
+    public String[] evaluate(String[] xacmlRequests) throws EntitlementException {
+
+        List<DecisionTask> tasks = new ArrayList<DecisionTask>();
+        Map<String, Set<String>> sharedAttributes = new ConcurrentHashMap<String, Set<String>>();
+        for (String xacmlRequest : xacmlRequests) {
+            tasks.add(new DecisionTask(xacmlRequest, null, null, null, sharedAttributes));
+        }
+        return evaluate(tasks);
+    }
+
+    /**
+     * Evaluates a request for each of the given subject, resource and action values, and returns
+     * their responses in the same order. Default attribute ids and data types are used, as by
+     * {@link #evaluate(String, String, String, String[])}, and the requests are evaluated in
+     * parallel, as by {@link #evaluate(String[])}.
+     *
+     * @param subjects subjects
+     * @param resources resources
+     * @param actions actions
+     * @return XACML responses as String
+     * @throws EntitlementException throws, if a request can not be evaluated
+     */
+    public String[] evaluate(String[] subjects, String[] resources, String[] actions)
+            throws EntitlementException {
+
+        if (subjects.length != resources.length || subjects.length != actions.length) {
+            throw new EntitlementException("Same number of subjects, resources and actions must be given");
+        }
+
+        List<DecisionTask> tasks = new ArrayList<DecisionTask>();
+        Map<String, Set<String>> sharedAttributes = new ConcurrentHashMap<String, Set<String>>();
+        for (int i = 0; i < subjects.length; i++) {
+            tasks.add(new DecisionTask(null, subjects[i], resources[i], actions[i], sharedAttributes));
+        }
+        return evaluate(tasks);
+    }
+
+    /**
+     * Shuts down the threads which evaluate bulk decision calls
+     */
+    public static void shutdownBulkDecisionExecutor() {
+        synchronized (bulkDecisionLock) {
+            if (bulkDecisionExecutor != null) {
+                bulkDecisionExecutor.shutdown();
+                bulkDecisionExecutor = null;
+            }
+        }
+    }
+
+    private String[] evaluate(List<DecisionTask> tasks) throws EntitlementException {
+
+        int maxRequests = PDPConstants.DEFAULT_BULK_DECISION_MAX_REQUESTS;
+        String maxRequestsProperty = EntitlementServiceComponent.getEntitlementConfig().getEngineProperties().
+                getProperty(PDPConstants.BULK_DECISION_MAX_REQUESTS);
+        if (maxRequestsProperty != null) {
+            try {
+                maxRequests = Integer.parseInt(maxRequestsProperty.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for " + PDPConstants.BULK_DECISION_MAX_REQUESTS + " : " +
+                        maxRequestsProperty);
+            }
+        }
+        if (tasks.size() > maxRequests) {
+            throw new EntitlementException("Bulk decision call has " + tasks.size() +
+                    " requests, which is more than the maximum of " + maxRequests);
+        }
+
+        String[] responses = new String[tasks.size()];
+        if (tasks.size() == 1) {
+            responses[0] = tasks.get(0).call();
+            return responses;
+        }
+
+        List<Future<String>> futures;
+        try {
+            futures = getBulkDecisionExecutor().invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EntitlementException("Bulk decision call was interrupted", e);
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                responses[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EntitlementException("Bulk decision call was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new EntitlementException("Error while evaluating XACML request " + i +
+                        " of bulk decision call", e.getCause());
+            }
+        }
+        return responses;
+    }
+
+    private static ExecutorService getBulkDecisionExecutor() {
+        if (bulkDecisionExecutor == null) {
+            synchronized (bulkDecisionLock) {
+                if (bulkDecisionExecutor == null) {
+                    int poolSize = Runtime.getRuntime().availableProcessors();
+                    String poolSizeProperty = EntitlementServiceComponent.getEntitlementConfig().
+                            getEngineProperties().getProperty(PDPConstants.BULK_DECISION_THREAD_POOL_SIZE);
+                    if (poolSizeProperty != null) {
+                        try {
+                            poolSize = Integer.parseInt(poolSizeProperty.trim());
+                        } catch (NumberFormatException e) {
+                            log.warn("Invalid value for " + PDPConstants.BULK_DECISION_THREAD_POOL_SIZE +
+                                    " : " + poolSizeProperty);
+                        }
+                    }
+                    poolSize = Math.max(1, poolSize);
+                    // when the pool is busy, the calling thread evaluates the request itself,
+                    // which bounds the number of queued requests
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                            BULK_DECISION_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(poolSize * BULK_DECISION_QUEUE_FACTOR),
+                            new BulkDecisionThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    bulkDecisionExecutor = executor;
+                }
+            }
+        }
+        return bulkDecisionExecutor;
+    }
+
 	/**
 	 * This method is returns the registry based policy finder for current tenant
 	 * 
@@ -361,6 +554,13 @@ public class EntitlementEngine {
         return carbonPolicyFinder;
     }
 
+    /**
+     * @return ids of the attributes which the loaded policies refer to
+     */
+    public Set<String> getReferencedAttributeIds() {
+        return carbonPolicyFinderModule.getReferencedAttributeIds();
+    }
+
     /**
      * get entry from decision caching
      * @param request XACML request as String
@@ -374,7 +574,13 @@ public class EntitlementEngine {
             String tenantRequest = tenantId + "+" + request;
             String decision;
 
-            if (DecisionInvalidationCache.getInstance().isInvalidate()) {
+            // policies changed in any node are reloaded before the lookup, which invalidates
+            // the decisions they can change
+            carbonPolicyFinderModule.reloadIfInvalidated();
+
+            int generation = DecisionInvalidationCache.getInstance().getGeneration();
+            if (generation != decisionGeneration) {
+                decisionGeneration = generation;
                 decisionCache.clearCache();
                 simpleDecisionCache.clearCache();
             }
@@ -414,6 +620,18 @@ public class EntitlementEngine {
 		}
 	}
 
+    /**
+     * put entry in to decision cache, together with the attribute values it can be invalidated by
+     * @param request  XACML request as String
+     * @param response XACML response as String
+     * @param version version of the decision cache before the request was evaluated
+     * @param attributeValueKeys keys of the request attribute values, or <code>null</code>
+     */
+    private void addToCache(String request, String response, long version, Set<String> attributeValueKeys) {
+        String tenantRequest = tenantId + "+" + request;
+        decisionCache.addToCache(tenantRequest, response, version, attributeValueKeys);
+    }
+
     /**
      * Helper method to init engine
      */
@@ -462,11 +680,72 @@ public class EntitlementEngine {
 
         carbonPolicyFinder = new PolicyFinder();
         Set<PolicyFinderModule> policyModules = new HashSet<PolicyFinderModule>();
-        CarbonPolicyFinder tmpCarbonPolicyFinder = new CarbonPolicyFinder();
-        policyModules.add(tmpCarbonPolicyFinder);
+        carbonPolicyFinderModule = new CarbonPolicyFinder();
+        policyModules.add(carbonPolicyFinderModule);
         carbonPolicyFinder.setModules(policyModules);
         carbonPolicyFinder.init();
 
     }
 
+    /**
+     * Evaluates one request of a bulk decision call, in the tenant of the call
+     */
+    private class DecisionTask implements Callable<String> {
+
+        private String xacmlRequest;
+        private String subject;
+        private String resource;
+        private String action;
+        private Map<String, Set<String>> sharedAttributes;
+        private String tenantDomain;
+
+        private DecisionTask(String xacmlRequest, String subject, String resource, String action,
+                             Map<String, Set<String>> sharedAttributes) {
+            this.xacmlRequest = xacmlRequest;
+            this.subject = subject;
+            this.resource = resource;
+            this.action = action;
+            this.sharedAttributes = sharedAttributes;
+            this.tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        }
+
+        @Override
+        public String call() throws EntitlementException {
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                carbonContext.setTenantId(tenantId);
+                carbonContext.setTenantDomain(tenantDomain);
+                CarbonAttributeFinder.setSharedAttributes(sharedAttributes);
+                if (xacmlRequest != null) {
+                    return EntitlementEngine.this.evaluate(xacmlRequest);
+                }
+                return EntitlementEngine.this.evaluate(subject, resource, action, null);
+            } catch (EntitlementException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new EntitlementException("Error while evaluating XACML request", e);
+            } finally {
+                CarbonAttributeFinder.setSharedAttributes(null);
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads which evaluate bulk decision calls
+     */
+    private static class BulkDecisionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "EntitlementBulkDecisionEvaluator-" +
+                    threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
\ No newline at end of file
@@ -196,6 +196,21 @@ public abstract class AbstractPIPAttributeFinder implements PIPAttributeFinder {
         return isAbstractAttributeCachingEnabled;
 	}
 
+	/**
+	 * Tells whether the values which this module finds for an attribute of the given category only
+	 * depend on the attributes of that category which the request carries, such as the roles of a
+	 * subject. If so, the values found for a request of a bulk decision call are used for the other
+	 * requests of the call which carry the same attributes of that category. The values of the
+	 * modules which do not extend this class are never shared.
+	 *
+	 * @param category category of the attribute
+	 * @return True/False
+	 */
+	public boolean isSharedByCategory(URI category) {
+		// the values may depend on the subject, resource, action and environment of the request
+		return false;
+	}
+
 	@Override
 	public void clearCache() {
         if(abstractAttributeFinderCache != null){
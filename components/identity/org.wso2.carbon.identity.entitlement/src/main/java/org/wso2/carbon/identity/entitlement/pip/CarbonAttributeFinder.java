@@ -24,16 +24,32 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.wso2.balana.ctx.AbstractRequestCtx;
+import org.wso2.balana.ctx.Attribute;
 import org.wso2.balana.ctx.Status;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.EntitlementUtil;
 import org.wso2.carbon.identity.entitlement.cache.DecisionInvalidationCache;
@@ -46,6 +62,7 @@ import org.wso2.balana.attr.AttributeValue;
 import org.wso2.balana.attr.BagAttribute;
 import org.wso2.balana.cond.EvaluationResult;
 import org.wso2.balana.finder.AttributeFinderModule;
+import org.wso2.balana.xacml3.Attributes;
 
 import javax.xml.transform.TransformerException;
 
@@ -64,6 +81,34 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 	private PIPAttributeCache attributeFinderCache = null;
 	protected int tenantId;
 
+	/**
+	 * attribute values found for the requests of a bulk decision call, which the requests share
+	 */
+	private static ThreadLocal<Map<String, Set<String>>> sharedAttributes =
+			new ThreadLocal<Map<String, Set<String>>>();
+
+	/**
+	 * attribute values found for the request which the current thread evaluates, so that an
+	 * attribute which the policies refer to more than once is found once for a request. A thread
+	 * evaluates one request at a time, so the values are dropped when it looks up an attribute
+	 * for another request.
+	 */
+	private static ThreadLocal<RequestAttributes> requestAttributes = new ThreadLocal<RequestAttributes>();
+
+	/**
+	 * attribute values found for the request for which the current thread calls a PIP attribute finder
+	 */
+	private static ThreadLocal<Map<String, Set<String>>> currentRequestAttributes =
+			new ThreadLocal<Map<String, Set<String>>>();
+
+	private static volatile ThreadPoolExecutor attributeFinderExecutor = null;
+
+	private static final Object attributeFinderLock = new Object();
+
+	private static final long ATTRIBUTE_FINDER_THREAD_KEEP_ALIVE = 60;
+
+	private static final int ATTRIBUTE_FINDER_QUEUE_FACTOR = 10;
+
 	public CarbonAttributeFinder(int tenantId) {
 		this.tenantId = tenantId;
 	}
@@ -149,40 +194,17 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 
 		try {
 
-			for (Iterator iterator = finders.iterator(); iterator.hasNext();) {
-				PIPAttributeFinder pipAttributeFinder = (PIPAttributeFinder) iterator.next();
-				if (log.isDebugEnabled()) {
-					log.debug(String.format(
-							"Finding attributes with the PIP attribute handler %1$s",
-							pipAttributeFinder.getClass()));
-				}
-
-				Set<String> attrs = null;
-				String key = null;
-
-				if (attributeFinderCache != null && !pipAttributeFinder.overrideDefaultCache()) {
-
-                    key = attributeType.toString() + attributeId.toString() + category.toString() +
-                                 encodeContext(context);
-
-                    if(issuer != null){
-                        key += issuer;
-                    }
-
-					if (key != null) {
-						attrs =  attributeFinderCache.getFromCache(tenantId, key);
-					}
-				}
-
-				if (attrs == null) {
-					attrs = pipAttributeFinder.getAttributeValues(attributeType, attributeId, category,
-                                                                    issuer, context);
-					if (attributeFinderCache != null && key != null
-							                    && !pipAttributeFinder.overrideDefaultCache()) {
-						attributeFinderCache.addToCache(tenantId, key, attrs);
-					}
-				}
+			Map<String, Set<String>> attributes = getAttributesOfRequest(context);
+			List<Set<String>> finderValues;
+			if (finders.size() > 1) {
+				finderValues = findAttributeValuesInParallel(finders, attributeType, attributeId, issuer,
+						category, context, attributes);
+			} else {
+				finderValues = Collections.singletonList(findAttributeValues(finders.get(0), attributeType,
+						attributeId, issuer, category, context, sharedAttributes.get(), attributes));
+			}
 
+			for (Set<String> attrs : finderValues) {
 				if (attrs != null) {
 					for (Iterator iterAttr = attrs.iterator(); iterAttr.hasNext();) {
 						final String attr = (String) iterAttr.next();
@@ -225,6 +247,261 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
 		return new EvaluationResult(new BagAttribute(attributeType, attrBag));
 	}
 
+	/**
+	 * Finds the values of the attribute with the given PIP attribute finder, from the values found
+	 * before for the request or for the bulk decision call, from the attribute cache, or from the
+	 * PIP attribute finder itself
+	 */
+	private Set<String> findAttributeValues(PIPAttributeFinder pipAttributeFinder, URI attributeType,
+			URI attributeId, String issuer, URI category, EvaluationCtx context,
+			Map<String, Set<String>> bulkAttributes, Map<String, Set<String>> attributes) throws Exception {
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format(
+					"Finding attributes with the PIP attribute handler %1$s",
+					pipAttributeFinder.getClass()));
+		}
+
+		String requestKey = getRequestKey(pipAttributeFinder, attributeType, attributeId, category, issuer);
+		Set<String> attrs = attributes.get(requestKey);
+		if (attrs != null) {
+			return attrs;
+		}
+
+		String key = null;
+		String sharedKey = null;
+		if (bulkAttributes != null && pipAttributeFinder instanceof AbstractPIPAttributeFinder
+				&& ((AbstractPIPAttributeFinder) pipAttributeFinder).isSharedByCategory(category)) {
+			sharedKey = getSharedKey(pipAttributeFinder, attributeType, attributeId, category,
+					issuer, context);
+			if (sharedKey != null) {
+				attrs = bulkAttributes.get(sharedKey);
+			}
+		}
+
+		if (attrs == null && attributeFinderCache != null && !pipAttributeFinder.overrideDefaultCache()) {
+
+            key = attributeType.toString() + attributeId.toString() + category.toString() +
+                         encodeContext(context);
+
+            if(issuer != null){
+                key += issuer;
+            }
+
+			if (key != null) {
+				attrs =  attributeFinderCache.getFromCache(tenantId, key);
+			}
+		}
+
+		if (attrs == null) {
+			Map<String, Set<String>> previousAttributes = currentRequestAttributes.get();
+			currentRequestAttributes.set(attributes);
+			try {
+				attrs = pipAttributeFinder.getAttributeValues(attributeType, attributeId, category,
+                                                                issuer, context);
+			} finally {
+				if (previousAttributes != null) {
+					currentRequestAttributes.set(previousAttributes);
+				} else {
+					currentRequestAttributes.remove();
+				}
+			}
+			if (attributeFinderCache != null && key != null
+					                    && !pipAttributeFinder.overrideDefaultCache()) {
+				attributeFinderCache.addToCache(tenantId, key, attrs);
+			}
+			if (sharedKey != null && attrs != null) {
+				bulkAttributes.put(sharedKey, attrs);
+			}
+		}
+
+		if (attrs != null) {
+			attributes.put(requestKey, attrs);
+		}
+		return attrs;
+	}
+
+	/**
+	 * Finds the values of the attribute with each of the given PIP attribute finders in parallel,
+	 * so that the time taken is that of the slowest finder rather than the sum of all of them.
+	 * The values found before for the request are used as they are, and a single finder which is
+	 * left is called by the current thread.
+	 *
+	 * @return values found by each finder, in the order of the finders
+	 * @throws Exception if a finder fails, or does not finish within the attribute finder timeout
+	 */
+	private List<Set<String>> findAttributeValuesInParallel(List<PIPAttributeFinder> finders,
+			final URI attributeType, final URI attributeId, final String issuer, final URI category,
+			final EvaluationCtx context, final Map<String, Set<String>> attributes) throws Exception {
+
+		final Map<String, Set<String>> bulkAttributes = sharedAttributes.get();
+		final int currentTenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+		final String currentTenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+		final Thread callerThread = Thread.currentThread();
+
+		List<Set<String>> finderValues = new ArrayList<Set<String>>();
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int i = 0; i < finders.size(); i++) {
+			Set<String> attrs = attributes.get(getRequestKey(finders.get(i), attributeType, attributeId,
+					category, issuer));
+			finderValues.add(attrs);
+			if (attrs == null) {
+				pending.add(i);
+			}
+		}
+		if (pending.size() < 2) {
+			for (int i : pending) {
+				finderValues.set(i, findAttributeValues(finders.get(i), attributeType, attributeId, issuer,
+						category, context, bulkAttributes, attributes));
+			}
+			return finderValues;
+		}
+
+		List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+		try {
+			for (int i : pending) {
+				final PIPAttributeFinder pipAttributeFinder = finders.get(i);
+				futures.add(getAttributeFinderExecutor().submit(new Callable<Set<String>>() {
+					@Override
+					public Set<String> call() throws Exception {
+						try {
+							PrivilegedCarbonContext.startTenantFlow();
+							PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+							carbonContext.setTenantId(currentTenantId);
+							carbonContext.setTenantDomain(currentTenantDomain);
+							return findAttributeValues(pipAttributeFinder, attributeType, attributeId, issuer,
+									category, context, bulkAttributes, attributes);
+						} finally {
+							// the values a pooled thread keeps for the request it looked up are
+							// dropped. A task run by the caller, when the pool is busy, leaves
+							// the values of the caller's request alone
+							if (Thread.currentThread() != callerThread) {
+								requestAttributes.remove();
+							}
+							PrivilegedCarbonContext.endTenantFlow();
+						}
+					}
+				}));
+			}
+
+			long deadline = System.currentTimeMillis() + getAttributeFinderTimeout();
+			for (int j = 0; j < futures.size(); j++) {
+				int i = pending.get(j);
+				try {
+					finderValues.set(i, futures.get(j).get(Math.max(0, deadline - System.currentTimeMillis()),
+							TimeUnit.MILLISECONDS));
+				} catch (TimeoutException e) {
+					throw new Exception("PIP attribute handler " + finders.get(i).getClass().getName() +
+							" did not find the attribute " + attributeId + " in time");
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+			return finderValues;
+		} finally {
+			for (Future<Set<String>> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static String getRequestKey(PIPAttributeFinder pipAttributeFinder, URI attributeType,
+			URI attributeId, URI category, String issuer) {
+		return System.identityHashCode(pipAttributeFinder) + "|" + attributeType + "|" + attributeId +
+				"|" + category + "|" + issuer;
+	}
+
+	/**
+	 * Gets the map of the attribute values found for the given request by the current thread
+	 */
+	private Map<String, Set<String>> getAttributesOfRequest(EvaluationCtx context) {
+		RequestAttributes attributes = requestAttributes.get();
+		if (attributes == null || attributes.context != context) {
+			attributes = new RequestAttributes(context);
+			requestAttributes.set(attributes);
+		}
+		return attributes.values;
+	}
+
+	/**
+	 * Drops the attribute values which the current thread found for the last request it evaluated
+	 */
+	public static void clearRequestAttributes() {
+		requestAttributes.remove();
+	}
+
+	/**
+	 * Gets the map in which the PIP attribute finders can keep values for the request being
+	 * evaluated, such as attribute values read together with the one looked up, so that they are
+	 * not read again when the policies look them up for the same request. Keys must be prefixed
+	 * by the name of the PIP attribute finder.
+	 *
+	 * @return thread safe map, or <code>null</code> if no PIP attribute finder is being called for
+	 *         a request by the current thread
+	 */
+	public static Map<String, Set<String>> getCurrentRequestAttributes() {
+		return currentRequestAttributes.get();
+	}
+
+	/**
+	 * Shuts down the threads which call the PIP attribute finders in parallel
+	 */
+	public static void shutdownAttributeFinderExecutor() {
+		synchronized (attributeFinderLock) {
+			if (attributeFinderExecutor != null) {
+				attributeFinderExecutor.shutdown();
+				attributeFinderExecutor = null;
+			}
+		}
+	}
+
+	private static long getAttributeFinderTimeout() {
+		long timeout = PDPConstants.DEFAULT_ATTRIBUTE_FINDER_TIMEOUT;
+		String timeoutProperty = EntitlementServiceComponent.getEntitlementConfig().getEngineProperties().
+				getProperty(PDPConstants.ATTRIBUTE_FINDER_TIMEOUT);
+		if (timeoutProperty != null) {
+			try {
+				timeout = Long.parseLong(timeoutProperty.trim());
+			} catch (NumberFormatException e) {
+				log.warn("Invalid value for " + PDPConstants.ATTRIBUTE_FINDER_TIMEOUT + " : " + timeoutProperty);
+			}
+		}
+		return timeout;
+	}
+
+	private static ExecutorService getAttributeFinderExecutor() {
+		if (attributeFinderExecutor == null) {
+			synchronized (attributeFinderLock) {
+				if (attributeFinderExecutor == null) {
+					int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+					String poolSizeProperty = EntitlementServiceComponent.getEntitlementConfig().
+							getEngineProperties().getProperty(PDPConstants.ATTRIBUTE_FINDER_THREAD_POOL_SIZE);
+					if (poolSizeProperty != null) {
+						try {
+							poolSize = Integer.parseInt(poolSizeProperty.trim());
+						} catch (NumberFormatException e) {
+							log.warn("Invalid value for " + PDPConstants.ATTRIBUTE_FINDER_THREAD_POOL_SIZE +
+									" : " + poolSizeProperty);
+						}
+					}
+					poolSize = Math.max(1, poolSize);
+					// when the pool is busy, the evaluating thread calls the PIP attribute finder
+					// itself, which bounds the number of queued calls
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+							ATTRIBUTE_FINDER_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(poolSize * ATTRIBUTE_FINDER_QUEUE_FACTOR),
+							new AttributeFinderThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+					executor.allowCoreThreadTimeOut(true);
+					attributeFinderExecutor = executor;
+				}
+			}
+		}
+		return attributeFinderExecutor;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -287,4 +564,93 @@ public class CarbonAttributeFinder extends AttributeFinderModule {
         evaluationCtx.getRequestCtx().encode(stream);
         return stream.toString();
     }
+
+	/**
+	 * Sets the map in which the attribute values found for the requests of a bulk decision call
+	 * are shared, for the requests evaluated by the current thread. The values which a PIP
+	 * attribute finder finds for an attribute of a category are shared by the requests which carry
+	 * the same attributes of that category, such as the roles of the same subject, if the PIP
+	 * attribute finder tells that they depend on nothing else.
+	 *
+	 * @param attributes thread safe map shared by the requests, or <code>null</code> to stop
+	 *                   sharing attribute values
+	 */
+	public static void setSharedAttributes(Map<String, Set<String>> attributes) {
+		if (attributes != null) {
+			sharedAttributes.set(attributes);
+		} else {
+			sharedAttributes.remove();
+		}
+	}
+
+	/**
+	 * Builds the key of an attribute value shared by the requests of a bulk decision call, from
+	 * the attributes which the request context holds for the category of the attribute
+	 *
+	 * @return key, or <code>null</code> if the request has no attributes of the category
+	 */
+	private String getSharedKey(PIPAttributeFinder pipAttributeFinder, URI attributeType, URI attributeId,
+			URI category, String issuer, EvaluationCtx context) {
+
+		AbstractRequestCtx requestCtx = context.getRequestCtx();
+		if (requestCtx == null || requestCtx.getAttributesSet() == null) {
+			return null;
+		}
+		List<String> attributes = new ArrayList<String>();
+		boolean found = false;
+		for (Attributes categoryAttributes : requestCtx.getAttributesSet()) {
+			if (!category.equals(categoryAttributes.getCategory())) {
+				continue;
+			}
+			found = true;
+			for (Attribute requestAttribute : categoryAttributes.getAttributes()) {
+				StringBuilder attribute = new StringBuilder();
+				attribute.append(requestAttribute.getId()).append('|').append(requestAttribute.getIssuer());
+				List<String> values = new ArrayList<String>();
+				for (AttributeValue value : requestAttribute.getValues()) {
+					values.add(value.getType() + "|" + value.encode());
+				}
+				Collections.sort(values);
+				attribute.append(values);
+				attributes.add(attribute.toString());
+			}
+		}
+		if (!found) {
+			return null;
+		}
+		Collections.sort(attributes);
+
+		return System.identityHashCode(pipAttributeFinder) + "|" + attributeType + "|" + attributeId +
+				"|" + category + "|" + issuer + "|" + attributes;
+	}
+
+	/**
+	 * Attribute values found for a request
+	 */
+	private static class RequestAttributes {
+
+		private final EvaluationCtx context;
+
+		// the PIP attribute finders called in parallel add values as well
+		private final Map<String, Set<String>> values = new ConcurrentHashMap<String, Set<String>>();
+
+		private RequestAttributes(EvaluationCtx context) {
+			this.context = context;
+		}
+	}
+
+	/**
+	 * Creates the daemon threads which call the PIP attribute finders in parallel
+	 */
+	private static class AttributeFinderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "EntitlementAttributeFinder-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
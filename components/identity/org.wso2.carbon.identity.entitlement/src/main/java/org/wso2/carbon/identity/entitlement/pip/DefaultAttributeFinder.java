@@ -18,18 +18,26 @@
 
 package org.wso2.carbon.identity.entitlement.pip;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.balana.XACMLConstants;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.core.util.AdminServicesUtil;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.entitlement.internal.EntitlementServiceComponent;
+import org.wso2.carbon.identity.entitlement.pdp.EntitlementEngine;
 import org.wso2.carbon.user.api.ClaimManager;
 import org.wso2.carbon.user.api.ClaimMapping;
+import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserRealm;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
@@ -88,8 +96,7 @@ public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
                 }
 			}
 		} else {
-			String claimValues = CarbonContext.getThreadLocalCarbonContext().getUserRealm().
-                    getUserStoreManager().getUserClaimValue(subjectId, attributeId, null);
+			String claimValues = getClaimValue(subjectId, attributeId);
 			if (claimValues == null && log.isDebugEnabled()) {
 				log.debug(String.format("Request attribute %1$s not found", attributeId));
 			}
@@ -104,6 +111,69 @@ public class DefaultAttributeFinder extends AbstractPIPAttributeFinder {
 		return values;
 	}
 
+	/**
+	 * Reads the claim value of the subject. While a request is evaluated, the other claims which
+	 * the policies of the tenant refer to are read in the same user store call, and kept for the
+	 * request, as the policies are likely to look them up too.
+	 *
+	 * @param subjectId tenant aware user name
+	 * @param claim claim URI
+	 * @return claim value, or <code>null</code> if the subject has no value for the claim
+	 * @throws Exception if the claim value can not be read
+	 */
+	private String getClaimValue(String subjectId, String claim) throws Exception {
+
+		UserStoreManager userStoreManager = CarbonContext.getThreadLocalCarbonContext().getUserRealm().
+				getUserStoreManager();
+		Map<String, Set<String>> requestAttributes = CarbonAttributeFinder.getCurrentRequestAttributes();
+		if (requestAttributes == null) {
+			return userStoreManager.getUserClaimValue(subjectId, claim, null);
+		}
+
+		String keyPrefix = getModuleName() + "|" + subjectId + "|";
+		Set<String> readValue = requestAttributes.get(keyPrefix + claim);
+		if (readValue != null) {
+			return readValue.isEmpty() ? null : readValue.iterator().next();
+		}
+
+		List<String> claims = new ArrayList<String>();
+		claims.add(claim);
+		for (String referencedClaim : EntitlementEngine.getInstance().getReferencedAttributeIds()) {
+			if (!referencedClaim.equals(claim) && supportedAttrs.contains(referencedClaim) &&
+					!UserCoreConstants.ClaimTypeURIs.ROLE.equals(referencedClaim) &&
+					!requestAttributes.containsKey(keyPrefix + referencedClaim)) {
+				claims.add(referencedClaim);
+			}
+		}
+
+		Map<String, String> claimValues;
+		try {
+			claimValues = userStoreManager.getUserClaimValues(subjectId,
+					claims.toArray(new String[claims.size()]), null);
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) {
+				log.debug("Error while reading the claims " + claims + " of " + subjectId +
+						" together. Hence, only " + claim + " is read", e);
+			}
+			return userStoreManager.getUserClaimValue(subjectId, claim, null);
+		}
+
+		for (String readClaim : claims) {
+			String value = claimValues != null ? claimValues.get(readClaim) : null;
+			requestAttributes.put(keyPrefix + readClaim,
+					value != null ? Collections.singleton(value) : Collections.<String>emptySet());
+		}
+		return claimValues != null ? claimValues.get(claim) : null;
+	}
+
+	/**
+	 * The claims and roles are read for the subject id of the access subject only
+	 */
+	@Override
+	public boolean isSharedByCategory(URI category) {
+		return XACMLConstants.SUBJECT_CATEGORY.equals(category.toString());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
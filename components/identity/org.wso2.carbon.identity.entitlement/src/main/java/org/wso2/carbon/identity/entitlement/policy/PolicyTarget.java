@@ -18,17 +18,53 @@
 
 package org.wso2.carbon.identity.entitlement.policy;
 
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.balana.AbstractTarget;
 import org.wso2.balana.xacml2.Target;
+import org.wso2.carbon.identity.entitlement.PDPConstants;
+import org.wso2.carbon.identity.entitlement.dto.AttributeDTO;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class encapsulates the policy target data with org.wso2.balana.Target and policyId
  */
 public class PolicyTarget {
 
+    /**
+     * attribute ids whose values are used to find the policies which may apply to a request,
+     * these are always sent with the request
+     */
+    public static final Set<String> DEFAULT_INDEXED_ATTRIBUTE_IDS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList(
+                    "urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+                    "urn:oasis:names:tc:xacml:1.0:resource:resource-id",
+                    "urn:oasis:names:tc:xacml:1.0:action:action-id")));
+
+    private static final Set<String> INDEXED_FUNCTIONS = new HashSet<String>(Arrays.asList(
+            "urn:oasis:names:tc:xacml:1.0:function:string-equal",
+            "urn:oasis:names:tc:xacml:1.0:function:anyURI-equal"));
+
+    private static final String MUST_BE_PRESENT = "MustBePresent";
+
+    private static final String MATCH_ID = "MatchId";
+
+    private static final String SUBJECT_CATEGORY = "SubjectCategory";
+
+    private static Log log = LogFactory.getLog(PolicyTarget.class);
+
     private AbstractTarget target;
 
     private String policyId;
@@ -49,6 +85,160 @@ public class PolicyTarget {
         this.policyId = policyId;
     }
 
+    /**
+     * Builds the key of an attribute value, as used by {@link #getAttributeValueKeys(java.util.Set)}
+     *
+     * @param category category of the attribute, either a XACML 3.0 category URI or a XACML 2.0
+     *                 element name, as converted by {@link #getCategoryURI(String)}
+     * @param attributeId attribute id
+     * @param value attribute value
+     * @return key of the attribute value
+     */
+    public static String getAttributeValueKey(String category, String attributeId, String value) {
+        return getCategoryURI(category) + "|" + attributeId + "|" + (value != null ? value.trim() : "");
+    }
+
+    /**
+     * Converts the XACML 2.0 category element names to the XACML 3.0 category URIs, which Balana
+     * uses for the attributes of XACML 2.0 requests as well
+     *
+     * @param category category URI or element name
+     * @return category URI
+     */
+    public static String getCategoryURI(String category) {
+        if (category == null || PDPConstants.SUBJECT_ELEMENT.equals(category)) {
+            return PDPConstants.SUBJECT_CATEGORY_URI;
+        } else if (PDPConstants.RESOURCE_ELEMENT.equals(category)) {
+            return PDPConstants.RESOURCE_CATEGORY_URI;
+        } else if (PDPConstants.ACTION_ELEMENT.equals(category)) {
+            return PDPConstants.ACTION_CATEGORY_URI;
+        } else if (PDPConstants.ENVIRONMENT_ELEMENT.equals(category)) {
+            return PDPConstants.ENVIRONMENT_CATEGORY_URI;
+        }
+        return category;
+    }
+
+    /**
+     * Finds the values of the given attributes one of which a request must carry to match this
+     * target. A section of the target (an <code>AnyOf</code> element of XACML 3.0, or a
+     * <code>Subjects</code>, <code>Resources</code> or <code>Actions</code> element of XACML 2.0)
+     * can be used if each of its groups requires one of the attributes with a string or anyURI
+     * equality function. The usable section with the fewest values is used.
+     *
+     * @param attributeIds attribute ids which may be used
+     * @return keys of the attribute values, or <code>null</code> if the target may match requests
+     *         without any such value
+     */
+    public Set<String> getAttributeValueKeys(Set<String> attributeIds) {
+
+        if (target == null) {
+            return null;
+        }
+
+        OMElement targetElement;
+        try {
+            targetElement = AXIOMUtil.stringToOM(target.encode());
+        } catch (XMLStreamException e) {
+            log.warn("Target of XACML policy " + policyId + " can not be read", e);
+            return null;
+        }
+
+        Set<String> keys = null;
+        Iterator sections = targetElement.getChildElements();
+        while (sections.hasNext()) {
+            Set<String> sectionKeys = getSectionKeys((OMElement) sections.next(), attributeIds);
+            if (sectionKeys != null && (keys == null || sectionKeys.size() < keys.size())) {
+                keys = sectionKeys;
+            }
+        }
+        return keys;
+    }
+
+    // a section matches if any of its groups matches, and a group matches if all of its
+    // matches match, so every group needs a usable match for the section to be used
+    private Set<String> getSectionKeys(OMElement section, Set<String> attributeIds) {
+
+        PolicyAttributeBuilder attributeBuilder = new PolicyAttributeBuilder();
+        Set<String> keys = new HashSet<String>();
+        boolean hasGroups = false;
+
+        Iterator groups = section.getChildElements();
+        while (groups.hasNext()) {
+            OMElement group = (OMElement) groups.next();
+            hasGroups = true;
+            List<AttributeDTO> groupValues = null;
+
+            Iterator matches = group.getChildElements();
+            while (matches.hasNext()) {
+                OMElement match = (OMElement) matches.next();
+                String matchName = match.getLocalName();
+                if (!matchName.endsWith(PDPConstants.MATCH_ELEMENT)) {
+                    continue;
+                }
+                // a missing attribute which must be present makes the policy indeterminate,
+                // so such a target may apply to any request
+                if (isMustBePresent(match)) {
+                    return null;
+                }
+                if (groupValues != null ||
+                        !INDEXED_FUNCTIONS.contains(match.getAttributeValue(new QName(MATCH_ID)))) {
+                    continue;
+                }
+                List<AttributeDTO> values;
+                if (PDPConstants.MATCH_ELEMENT.equals(matchName)) {
+                    values = attributeBuilder.createMetaDataFromXACML3MatchElement(match);
+                } else {
+                    values = attributeBuilder.createMetaDataFromMatchElement(match,
+                            matchName.substring(0, matchName.length() -
+                                    PDPConstants.MATCH_ELEMENT.length()));
+                    String subjectCategory = getSubjectCategory(match);
+                    if (subjectCategory != null) {
+                        for (AttributeDTO value : values) {
+                            value.setCategory(subjectCategory);
+                        }
+                    }
+                }
+                if (!values.isEmpty() && attributeIds.contains(values.get(0).getAttributeId())) {
+                    groupValues = values;
+                }
+            }
+
+            if (groupValues == null) {
+                return null;
+            }
+            for (AttributeDTO value : groupValues) {
+                keys.add(getAttributeValueKey(value.getCategory(), value.getAttributeId(),
+                        value.getAttributeValue()));
+            }
+        }
+
+        return hasGroups ? keys : null;
+    }
+
+    // the subject category of a XACML 2.0 subject attribute designator, if it is not the default
+    private String getSubjectCategory(OMElement match) {
+        Iterator iterator = match.getChildElements();
+        while (iterator.hasNext()) {
+            OMElement child = (OMElement) iterator.next();
+            if (child.getLocalName().endsWith(PDPConstants.ATTRIBUTE_DESIGNATOR)) {
+                return child.getAttributeValue(new QName(SUBJECT_CATEGORY));
+            }
+        }
+        return null;
+    }
+
+    private boolean isMustBePresent(OMElement match) {
+        Iterator iterator = match.getChildElements();
+        while (iterator.hasNext()) {
+            OMElement child = (OMElement) iterator.next();
+            if (child.getLocalName().endsWith(PDPConstants.ATTRIBUTE_DESIGNATOR) ||
+                    PDPConstants.ATTRIBUTE_SELECTOR.equals(child.getLocalName())) {
+                return Boolean.parseBoolean(child.getAttributeValue(new QName(MUST_BE_PRESENT)));
+            }
+        }
+        return false;
+    }
+
     @Override
     public int hashCode() {
         if(this.target != null){
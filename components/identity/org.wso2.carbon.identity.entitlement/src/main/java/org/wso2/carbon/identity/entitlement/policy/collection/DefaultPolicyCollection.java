@@ -34,12 +34,12 @@ import java.util.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.entitlement.EntitlementException;
-import org.wso2.carbon.identity.entitlement.EntitlementLRUCache;
+import org.wso2.carbon.identity.entitlement.EntitlementBoundedCache;
 
 public class DefaultPolicyCollection implements PolicyCollection{
 
     // the actual collection of policies
-    private LinkedHashMap<String, TreeSet<AbstractPolicy>> policies;
+    private Map<String, TreeSet<AbstractPolicy>> policies;
 
     // the single instance of the comparator we'll use for managing versions
     private VersionComparator versionComparator = new VersionComparator();
@@ -76,7 +76,7 @@ public class DefaultPolicyCollection implements PolicyCollection{
      * @param maxInMemoryPolicies  maximum no of policies that keeps in memory
      */
     public DefaultPolicyCollection(PolicyCombiningAlgorithm combiningAlg, int maxInMemoryPolicies) {
-        policies = new EntitlementLRUCache<String, TreeSet<AbstractPolicy>>(maxInMemoryPolicies);
+        policies = new EntitlementBoundedCache<String, TreeSet<AbstractPolicy>>(maxInMemoryPolicies);
         this.maxInMemoryPolicies = maxInMemoryPolicies;
         this.combiningAlg = combiningAlg;
     }
@@ -87,7 +87,7 @@ public class DefaultPolicyCollection implements PolicyCollection{
      * @param combiningAlg Policy combining Algorithm
      */
     public DefaultPolicyCollection(PolicyCombiningAlgorithm combiningAlg) {
-        policies = new LinkedHashMap<String, TreeSet<AbstractPolicy>>();
+        policies = new EntitlementBoundedCache<String, TreeSet<AbstractPolicy>>(0);
         this.combiningAlg = combiningAlg;
     }
     
@@ -101,7 +101,7 @@ public class DefaultPolicyCollection implements PolicyCollection{
      *            the identifier to use for the new PolicySet
      */
     public DefaultPolicyCollection(PolicyCombiningAlgorithm combiningAlg, URI parentPolicyId) {
-        policies = new LinkedHashMap<String, TreeSet<AbstractPolicy>>();
+        policies = new EntitlementBoundedCache<String, TreeSet<AbstractPolicy>>(0);
         this.combiningAlg = combiningAlg;
         this.parentId = parentPolicyId;
     }
@@ -137,12 +137,16 @@ public class DefaultPolicyCollection implements PolicyCollection{
      * @param identifier
      * @return
      */
-    public boolean addPolicy(AbstractPolicy policy, String identifier) {
-        if (policies.containsKey(identifier)) {
+    public synchronized boolean addPolicy(AbstractPolicy policy, String identifier) {
+        TreeSet<AbstractPolicy> current = policies.get(identifier);
+        if (current != null) {
             // this identifier is already is use, so see if this version is
-            // already in the set
-            TreeSet<AbstractPolicy> set = policies.get(identifier);
-            return set.add(policy);
+            // already in the set. the set is copied, as it may be read by
+            // other threads while the policy is added
+            TreeSet<AbstractPolicy> set = new TreeSet<AbstractPolicy>(current);
+            boolean added = set.add(policy);
+            policies.put(identifier, set);
+            return added;
         } else {
             // this identifier isn't already being used, so create a new
             // set in the map for it, and add the policy
@@ -224,10 +228,7 @@ public class DefaultPolicyCollection implements PolicyCollection{
      * @return  AbstractPolicy
      */
     public AbstractPolicy getPolicy(URI policyId) {
-        if(policies.containsKey(policyId.toString())){
-            return policies.get(policyId.toString()).first();
-        }
-        return null;
+        return getPolicy(policyId.toString());
     }
 
     /**
@@ -236,17 +237,18 @@ public class DefaultPolicyCollection implements PolicyCollection{
      * @return  AbstractPolicy
      */
     public AbstractPolicy getPolicy(String policyId){
-        if(policies.containsKey(policyId)){
-            return policies.get(policyId).first();
+        TreeSet<AbstractPolicy> set = policies.get(policyId);
+        if(set != null){
+            return set.first();
         }
         return null;
     }
 
     /**
      * get All policies
-     * @return  LinkedHashMap of policies
+     * @return  Map of policies
      */
-    public LinkedHashMap<String, TreeSet<AbstractPolicy>> getPolicies() {
+    public Map<String, TreeSet<AbstractPolicy>> getPolicies() {
         return policies;
     }
 
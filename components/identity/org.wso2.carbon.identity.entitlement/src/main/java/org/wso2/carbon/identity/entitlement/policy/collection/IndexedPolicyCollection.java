@@ -0,0 +1,333 @@
+/*
+*  Copyright (c)  WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.identity.entitlement.policy.collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.balana.AbstractPolicy;
+import org.wso2.balana.MatchResult;
+import org.wso2.balana.Policy;
+import org.wso2.balana.PolicyReference;
+import org.wso2.balana.PolicySet;
+import org.wso2.balana.VersionConstraints;
+import org.wso2.balana.attr.AttributeValue;
+import org.wso2.balana.combine.PolicyCombiningAlgorithm;
+import org.wso2.balana.ctx.AbstractRequestCtx;
+import org.wso2.balana.ctx.Attribute;
+import org.wso2.balana.ctx.EvaluationCtx;
+import org.wso2.balana.xacml3.Attributes;
+import org.wso2.carbon.identity.entitlement.EntitlementException;
+import org.wso2.carbon.identity.entitlement.policy.PolicyTarget;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Policy collection which indexes policies by the values their targets match, so that only the
+ * policies which can apply to a request are evaluated, instead of every policy of the collection.
+ * <p/>
+ * A policy is indexed when one section of its target (an <code>AnyOf</code> element of XACML 3.0,
+ * or a <code>Subjects</code>, <code>Resources</code> or <code>Actions</code> element of XACML 2.0)
+ * requires one of a set of values for an indexed attribute, using a string or anyURI equality
+ * function, as found by {@link PolicyTarget#getAttributeValueKeys(java.util.Set)}. Such a policy
+ * is evaluated only when the request carries one of those values, in the same category. All the other policies are
+ * evaluated for every request. Policies are evaluated in the order they were added, as with the
+ * {@link SimplePolicyCollection}.
+ * <p/>
+ * The indexed attributes must be sent with the request, not resolved by attribute finders. They
+ * can be configured as the whitespace separated <code>indexedAttributeIds</code> property, and
+ * default to the subject, resource and action identifiers.
+ */
+public class IndexedPolicyCollection implements PolicyCollection {
+
+    private static Log log = LogFactory.getLog(IndexedPolicyCollection.class);
+
+    private static final String INDEXED_ATTRIBUTE_IDS = "indexedAttributeIds";
+
+    /**
+     * all the policies of the collection, with the position they were added at
+     */
+    private Map<URI, IndexedPolicy> policies = new ConcurrentHashMap<URI, IndexedPolicy>();
+
+    /**
+     * identifiers of the indexed policies, by attribute id and value
+     */
+    private Map<String, Set<URI>> index = new ConcurrentHashMap<String, Set<URI>>();
+
+    /**
+     * identifiers of the policies which are evaluated for every request
+     */
+    private Set<URI> unindexedPolicies = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+
+    private AtomicInteger policyOrder = new AtomicInteger();
+
+    private Set<String> indexedAttributeIds = PolicyTarget.DEFAULT_INDEXED_ATTRIBUTE_IDS;
+
+    /**
+     * the optional combining algorithm used when wrapping multiple policies
+     * if no algorithm is defined, only one applicable algorithm is used
+     */
+    private PolicyCombiningAlgorithm combiningAlg;
+
+    /**
+     * the optional policy id used when wrapping multiple policies
+     */
+    private URI parentId;
+
+    @Override
+    public void init(Properties properties) throws Exception {
+        String parentIdProperty = properties.getProperty("parentId");
+        if (parentIdProperty != null) {
+            parentId = new URI(parentIdProperty);
+        }
+        String indexedAttributeIdsProperty = properties.getProperty(INDEXED_ATTRIBUTE_IDS);
+        if (indexedAttributeIdsProperty != null && indexedAttributeIdsProperty.trim().length() > 0) {
+            indexedAttributeIds = new HashSet<String>(Arrays.asList(
+                    indexedAttributeIdsProperty.trim().split("\\s+")));
+        }
+    }
+
+    @Override
+    public synchronized boolean addPolicy(AbstractPolicy policy) {
+
+        URI identifier = policy.getId();
+        IndexedPolicy previous = policies.get(identifier);
+        PolicyTarget policyTarget = new PolicyTarget();
+        policyTarget.setTarget(policy.getTarget());
+        policyTarget.setPolicyId(identifier.toString());
+        Set<String> keys = policyTarget.getAttributeValueKeys(indexedAttributeIds);
+        int order = previous != null ? previous.order : policyOrder.getAndIncrement();
+        policies.put(identifier, new IndexedPolicy(policy, order, keys));
+
+        // the new entries are added before the stale ones are removed, so that a policy which
+        // is replaced can always be found
+        if (keys == null) {
+            unindexedPolicies.add(identifier);
+        } else {
+            for (String key : keys) {
+                Set<URI> identifiers = index.get(key);
+                if (identifiers == null) {
+                    identifiers = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+                    index.put(key, identifiers);
+                }
+                identifiers.add(identifier);
+            }
+        }
+
+        if (previous != null) {
+            if (previous.keys == null) {
+                if (keys != null) {
+                    unindexedPolicies.remove(identifier);
+                }
+            } else {
+                for (String key : previous.keys) {
+                    if (keys == null || !keys.contains(key)) {
+                        Set<URI> identifiers = index.get(key);
+                        if (identifiers != null) {
+                            identifiers.remove(identifier);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("XACML policy " + identifier + (keys == null ? " is not indexed" :
+                    " is indexed with " + keys.size() + " attribute values"));
+        }
+        return previous != null;
+    }
+
+    @Override
+    public AbstractPolicy getEffectivePolicy(EvaluationCtx context) throws EntitlementException {
+
+        // setup a list of matching policies
+        ArrayList<AbstractPolicy> list = new ArrayList<AbstractPolicy>();
+
+        for (AbstractPolicy policy : getCandidatePolicies(context)) {
+
+            // see if we match
+            MatchResult match = policy.match(context);
+            int result = match.getResult();
+
+            // if there was an error, we stop right away
+            if (result == MatchResult.INDETERMINATE) {
+                log.error(match.getStatus().getMessage());
+                throw new EntitlementException(match.getStatus().getMessage());
+            }
+
+            // if we matched, we keep track of the matching policy...
+            if (result == MatchResult.MATCH) {
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Matching XACML policy found " + policy.getId().toString());
+                }
+
+                if ((combiningAlg == null) && (list.size() > 0)) {
+                    log.error("Too many applicable top-level policies");
+                    throw new EntitlementException("Too many applicable top-level policies");
+                }
+
+                list.add(policy);
+            }
+        }
+
+        // no errors happened during the search, so now take the right
+        // action based on how many policies we found
+        switch (list.size()) {
+        case 0:
+            if (log.isDebugEnabled()) {
+                log.debug("No matching XACML policy found");
+            }
+            return null;
+        case 1:
+            return list.get(0);
+        default:
+            return new PolicySet(parentId, combiningAlg, null, list);
+        }
+    }
+
+    @Override
+    public AbstractPolicy getPolicy(URI policyId) {
+        IndexedPolicy indexedPolicy = policies.get(policyId);
+        return indexedPolicy != null ? indexedPolicy.policy : null;
+    }
+
+    @Override
+    public AbstractPolicy getPolicy(URI identifier, int type, VersionConstraints constraints) {
+
+        AbstractPolicy policy = getPolicy(identifier);
+
+        if (policy != null) {
+            // we found a valid version, so see if it's the right kind,
+            // and if it is then we return it
+            if (type == PolicyReference.POLICY_REFERENCE) {
+                if (policy instanceof Policy)
+                    return policy;
+            } else {
+                if (policy instanceof PolicySet)
+                    return policy;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setPolicyCombiningAlgorithm(PolicyCombiningAlgorithm algorithm) {
+        this.combiningAlg = algorithm;
+    }
+
+    /**
+     * Finds the policies which may apply to the given request, in the order they were added
+     *
+     * @param context XACML request ctx
+     * @return candidate policies
+     */
+    private Iterable<AbstractPolicy> getCandidatePolicies(EvaluationCtx context) {
+
+        Set<String> requestKeys = getRequestKeys(context);
+        if (requestKeys == null) {
+            return getPolicies(policies.keySet()).values();
+        }
+
+        TreeMap<Integer, AbstractPolicy> candidates = getPolicies(unindexedPolicies);
+        for (String key : requestKeys) {
+            Set<URI> identifiers = index.get(key);
+            if (identifiers != null) {
+                candidates.putAll(getPolicies(identifiers));
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(candidates.size() + " of " + policies.size() + " XACML policies are evaluated");
+        }
+        return candidates.values();
+    }
+
+    private TreeMap<Integer, AbstractPolicy> getPolicies(Set<URI> identifiers) {
+        TreeMap<Integer, AbstractPolicy> orderedPolicies = new TreeMap<Integer, AbstractPolicy>();
+        for (URI identifier : identifiers) {
+            IndexedPolicy indexedPolicy = policies.get(identifier);
+            if (indexedPolicy != null) {
+                orderedPolicies.put(indexedPolicy.order, indexedPolicy.policy);
+            }
+        }
+        return orderedPolicies;
+    }
+
+    /**
+     * Reads the values of the indexed attributes sent with the request, from the attributes
+     * which the request context holds by category
+     *
+     * @param context XACML request ctx
+     * @return index keys of the request, or <code>null</code> if the request could not be read
+     */
+    private Set<String> getRequestKeys(EvaluationCtx context) {
+
+        AbstractRequestCtx requestCtx = context.getRequestCtx();
+        if (requestCtx == null || requestCtx.getAttributesSet() == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("XACML request attributes are not known, all the policies are evaluated");
+            }
+            return null;
+        }
+
+        Set<String> keys = new HashSet<String>();
+        for (Attributes attributes : requestCtx.getAttributesSet()) {
+            String category = attributes.getCategory().toString();
+            for (Attribute attribute : attributes.getAttributes()) {
+                String attributeId = attribute.getId().toString();
+                if (indexedAttributeIds.contains(attributeId)) {
+                    for (AttributeValue value : attribute.getValues()) {
+                        keys.add(PolicyTarget.getAttributeValueKey(category, attributeId, value.encode()));
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Policy of the collection together with its position and index keys
+     */
+    private static class IndexedPolicy {
+
+        private AbstractPolicy policy;
+
+        private int order;
+
+        private Set<String> keys;
+
+        private IndexedPolicy(AbstractPolicy policy, int order, Set<String> keys) {
+            this.policy = policy;
+            this.order = order;
+            this.keys = keys;
+        }
+    }
+}
@@ -38,13 +38,25 @@ public abstract class AbstractPolicyFinderModule implements PolicyFinderModule {
 
     private static Log log = LogFactory.getLog(AbstractPolicyFinderModule.class);
     /**
-     * This method must be called by the module when its policies are updated
+     * This method must be called by the module when its policies are updated. The cached decisions
+     * are invalidated right away, since the changed policies are not known, and the policies are
+     * reloaded in every node.
      */
     public static void invalidateCache() {
         DecisionInvalidationCache.getInstance().invalidateCache();
         EntitlementPolicyInvalidationCache.getInstance().invalidateCache();
     }
 
+    /**
+     * This method should be called by the module when one of its policies is updated, instead of
+     * {@link #invalidateCache()}, so that only that policy is reloaded.
+     *
+     * @param policyId identifier of the updated policy
+     */
+    public static void invalidateCache(String policyId) {
+        EntitlementPolicyInvalidationCache.getInstance().invalidateCache(policyId);
+    }
+
     @Override
     public String[] getOrderedPolicyIdentifiers() {
 
@@ -98,6 +110,34 @@ public abstract class AbstractPolicyFinderModule implements PolicyFinderModule {
 
     }
 
+    /**
+     * gets the ids of the policies returned by <code>getActivePolicies</code>, in the same order,
+     * without reading the policies. This lets the PDP read only the changed policies when the
+     * policies are reloaded. A module which overrides <code>getActivePolicies</code> must override
+     * this method too, or return null.
+     *
+     * @return array of policy ids as Strings, or null if they can not be found without reading
+     * the policies, in which case all the active policies are read
+     */
+    public String[] getOrderedActivePolicyIdentifiers() {
+        // the module itself knows which of its policies are active
+        if(isPolicyDeActivationSupport()){
+            return null;
+        }
+        List<String> policyIds = new ArrayList<String>();
+        String[] policyIdentifiers = getOrderedPolicyIdentifiers();
+        if(policyIdentifiers != null){
+            for(String identifier : policyIdentifiers){
+                PolicyStoreDTO data  = EntitlementAdminEngine.getInstance().
+                        getPolicyDataStore().getPolicyData(identifier);
+                if(data != null && data.isActive()){
+                    policyIds.add(identifier);
+                }
+            }
+        }
+        return policyIds.toArray(new String[policyIds.size()]);
+    }
+
 
     @Override
     public boolean isDefaultCategoriesSupported() {
@@ -26,30 +26,51 @@ import org.wso2.balana.ctx.EvaluationCtx;
 import org.wso2.balana.ctx.Status;
 import org.wso2.balana.finder.*;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.EntitlementException;
+import org.wso2.carbon.identity.entitlement.cache.DecisionCache;
 import org.wso2.carbon.identity.entitlement.cache.DecisionInvalidationCache;
 import org.wso2.carbon.identity.entitlement.cache.EntitlementPolicyInvalidationCache;
+import org.wso2.carbon.identity.entitlement.cache.SimpleDecisionCache;
 import org.wso2.carbon.identity.entitlement.internal.EntitlementServiceComponent;
 import org.wso2.carbon.identity.entitlement.pap.EntitlementAdminEngine;
 import org.wso2.carbon.identity.entitlement.policy.collection.PolicyCollection;
 import org.wso2.carbon.identity.entitlement.policy.PolicyReader;
+import org.wso2.carbon.identity.entitlement.policy.PolicyTarget;
 import org.wso2.carbon.identity.entitlement.policy.collection.SimplePolicyCollection;
 import org.wso2.carbon.identity.entitlement.policy.store.DefaultPolicyDataStore;
 import org.wso2.carbon.identity.entitlement.policy.store.PolicyDataStore;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Policy finder of the WSO2 entitlement engine.  This an implementation of <code>PolicyFinderModule</code>
  * of Balana engine. Extensions can be plugged with this. 
+ * <p/>
+ * When the policies are reloaded, they are compared with the policies which were loaded before,
+ * and only the cached decisions of the requests which the changed policies can apply to are
+ * invalidated. These are found by the subject, resource and action identifiers the targets of the
+ * changed policies require. All the cached decisions are invalidated when such values can not be
+ * found for a changed policy, when the order of the policies or the policy combining algorithm has
+ * changed, or when referenced policies have been used.
  */
 public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModule {
 
     private List<PolicyFinderModule> finderModules = null;
 
-    private PolicyCollection policyCollection;
+    private volatile PolicyCollection policyCollection;
 
     private PolicyFinder finder;
 
@@ -60,12 +81,49 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
 
 	private EntitlementPolicyInvalidationCache policyInvalidationCache = EntitlementPolicyInvalidationCache.getInstance();
 
-    private LinkedHashMap<URI, AbstractPolicy> policyReferenceCache = null;
+    private volatile LinkedHashMap<URI, AbstractPolicy> policyReferenceCache = null;
 
     private int maxReferenceCacheEntries = PDPConstants.MAX_NO_OF_IN_MEMORY_POLICIES;
 
+    /**
+     * value of the policy invalidation cache when the policies were last loaded
+     */
+    private volatile int policyGeneration;
+
+    /**
+     * loaded policies in their order, to find the policies which are changed by a reload
+     */
+    private Map<URI, PolicyState> policyStates;
+
+    private String policyCombiningAlgorithmId;
+
+    /**
+     * ids of the attributes which the attribute designators of the loaded policies refer to
+     */
+    private volatile Set<String> referencedAttributeIds = Collections.emptySet();
+
+    private DecisionCache decisionCache;
+
+    private SimpleDecisionCache simpleDecisionCache;
+
     public PolicyReader policyReader;
 
+    /**
+     * whether a background reload of the policies is scheduled or running
+     */
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private static volatile ExecutorService reloadExecutor;
+
+    private static final Object reloadExecutorLock = new Object();
+
+    private static final int RELOAD_THREAD_POOL_SIZE = 2;
+
+    private static final long RELOAD_THREAD_KEEP_ALIVE = 60;
+
+    private static final Pattern ATTRIBUTE_DESIGNATOR_ID = Pattern.compile(
+            "<(?:[\\w.-]+:)?\\w*AttributeDesignator\\b[^>]*?\\bAttributeId\\s*=\\s*[\"']([^\"']*)[\"']");
+
     private static Log log = LogFactory.getLog(CarbonPolicyFinder.class);
 
     @Override
@@ -73,7 +131,6 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
         initFinish = false;
         this.finder = finder;
         init();
-        policyReferenceCache.clear();
     }
 
     private synchronized void init(){
@@ -84,6 +141,24 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
         
         log.info("Initializing of policy store is started at :  " + new Date());
 
+        // read before the policies, so that a change made while loading them triggers a reload
+        policyGeneration = policyInvalidationCache.getGeneration();
+        loadPolicies(null);
+        initFinish = true;
+        log.info("Initializing of policy store is finished at :  " + new Date());
+    }
+
+    /**
+     * Loads the policies into a new policy collection, and swaps it in once it is complete, so
+     * that requests keep being evaluated against the previous policies while they are loaded.
+     *
+     * @param changedPolicyIds identifiers of the policies which have changed since the policies
+     * were last loaded, or null to load all the policies
+     */
+    private synchronized void loadPolicies(Set<String> changedPolicyIds){
+
+        boolean referencesUsed = policyReferenceCache != null && !policyReferenceCache.isEmpty();
+
         String maxEntries = EntitlementServiceComponent.getEntitlementConfig().getEngineProperties().
                 getProperty(PDPConstants.MAX_POLICY_REFERENCE_ENTRIES);
 
@@ -95,7 +170,7 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
             }
         }
 
-        policyReferenceCache = new LinkedHashMap<URI, AbstractPolicy>(){
+        LinkedHashMap<URI, AbstractPolicy> tempPolicyReferenceCache = new LinkedHashMap<URI, AbstractPolicy>(){
 
             @Override
             protected boolean removeEldestEntry(Map.Entry eldest) {
@@ -114,16 +189,8 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
             this.finderModules = new ArrayList<PolicyFinderModule>(finderModules.keySet());
         }
 
-        PolicyCollection tempPolicyCollection = null;
-        
-        // get policy collection
-        Map<PolicyCollection, Properties> policyCollections = EntitlementServiceComponent.
-                                                getEntitlementConfig().getPolicyCollections();
-        if(policyCollections != null && policyCollections.size() > 0){
-            tempPolicyCollection =  policyCollections.entrySet().iterator().next().getKey();
-        } else {
-            tempPolicyCollection = new SimplePolicyCollection();
-        }
+        PolicyCollection tempPolicyCollection = createPolicyCollection();
+        Map<URI, PolicyState> tempPolicyStates = new LinkedHashMap<URI, PolicyState>();
 
         // get policy reader
         policyReader = PolicyReader.getInstance(finder);
@@ -145,25 +212,129 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
 
             tempPolicyCollection.setPolicyCombiningAlgorithm(policyCombiningAlgorithm);
 
-            for(PolicyFinderModule finderModule : this.finderModules){
-                log.info("Start retrieving policies from " + finderModule + " at : " + new Date());
-                String[] policies = finderModule.getActivePolicies();
-                for(String policy : policies){
-                    AbstractPolicy abstractPolicy = policyReader.getPolicy(policy);
-                    if(abstractPolicy != null){
-                        tempPolicyCollection.addPolicy(abstractPolicy);
-                    }
-                }
-                log.info("Finish retrieving policies from " + finderModule + " at : " + new Date());
+            if(changedPolicyIds == null ||
+                    !loadChangedPolicies(changedPolicyIds, tempPolicyCollection, tempPolicyStates)){
+                loadAllPolicies(tempPolicyCollection, tempPolicyStates);
             }
         } else {
             log.warn("No Carbon policy finder modules are registered");
 
         }
-        
+
+        // requests are evaluated against the new policies from here on
         policyCollection = tempPolicyCollection;
-        initFinish = true;
-        log.info("Initializing of policy store is finished at :  " + new Date());
+        policyReferenceCache = tempPolicyReferenceCache;
+
+        String tempPolicyCombiningAlgorithmId = policyCombiningAlgorithm != null ?
+                policyCombiningAlgorithm.getIdentifier().toString() : null;
+        if (policyStates != null) {
+            invalidateDecisions(policyStates, tempPolicyStates, referencesUsed ||
+                    !equals(policyCombiningAlgorithmId, tempPolicyCombiningAlgorithmId));
+        }
+        policyStates = tempPolicyStates;
+        policyCombiningAlgorithmId = tempPolicyCombiningAlgorithmId;
+
+        Set<String> tempReferencedAttributeIds = new HashSet<String>();
+        for (PolicyState state : tempPolicyStates.values()) {
+            tempReferencedAttributeIds.addAll(state.attributeIds);
+        }
+        referencedAttributeIds = Collections.unmodifiableSet(tempReferencedAttributeIds);
+    }
+
+    private void loadAllPolicies(PolicyCollection collection, Map<URI, PolicyState> states) {
+
+        for(PolicyFinderModule finderModule : this.finderModules){
+            log.info("Start retrieving policies from " + finderModule + " at : " + new Date());
+            String[] policies = finderModule.getActivePolicies();
+            for(String policy : policies){
+                AbstractPolicy abstractPolicy = policyReader.getPolicy(policy);
+                if(abstractPolicy != null){
+                    collection.addPolicy(abstractPolicy);
+                    states.put(abstractPolicy.getId(), new PolicyState(abstractPolicy.getId().toString(),
+                            policy, abstractPolicy));
+                }
+            }
+            log.info("Finish retrieving policies from " + finderModule + " at : " + new Date());
+        }
+    }
+
+    /**
+     * Loads the policies by reading only the changed policies from the finder modules, and reusing
+     * the previously loaded version of the other policies.
+     *
+     * @return false if the active policies of a finder module can not be found without reading
+     * them all, in which case nothing is loaded
+     */
+    private boolean loadChangedPolicies(Set<String> changedPolicyIds, PolicyCollection collection,
+                                        Map<URI, PolicyState> states) {
+
+        if (policyStates == null) {
+            return false;
+        }
+
+        List<String[]> modulePolicyIds = new ArrayList<String[]>();
+        for (PolicyFinderModule finderModule : this.finderModules) {
+            // modules which implement the interface directly can only list their active policies
+            // by reading them
+            String[] policyIds = finderModule instanceof AbstractPolicyFinderModule ?
+                    ((AbstractPolicyFinderModule) finderModule).getOrderedActivePolicyIdentifiers() : null;
+            if (policyIds == null) {
+                return false;
+            }
+            modulePolicyIds.add(policyIds);
+        }
+
+        Map<String, PolicyState> loadedStates = new HashMap<String, PolicyState>();
+        for (PolicyState state : policyStates.values()) {
+            loadedStates.put(state.identifier, state);
+        }
+
+        int readPolicies = 0;
+        for (int i = 0; i < this.finderModules.size(); i++) {
+            PolicyFinderModule finderModule = this.finderModules.get(i);
+            for (String policyId : modulePolicyIds.get(i)) {
+                PolicyState state = changedPolicyIds.contains(policyId) ? null : loadedStates.get(policyId);
+                if (state == null) {
+                    String policy = finderModule.getPolicy(policyId);
+                    AbstractPolicy abstractPolicy = policy != null ? policyReader.getPolicy(policy) : null;
+                    if (abstractPolicy == null) {
+                        continue;
+                    }
+                    state = new PolicyState(policyId, policy, abstractPolicy);
+                    readPolicies++;
+                }
+                collection.addPolicy(state.abstractPolicy);
+                states.put(state.abstractPolicy.getId(), state);
+            }
+        }
+
+        log.info(readPolicies + " changed policies are read, and " + (states.size() - readPolicies) +
+                " policies are kept at : " + new Date());
+        return true;
+    }
+
+    /**
+     * Creates an empty policy collection of the configured type, so that the policies can be
+     * loaded into it while the current collection is in use
+     */
+    private PolicyCollection createPolicyCollection() {
+
+        Map<PolicyCollection, Properties> policyCollections = EntitlementServiceComponent.
+                                                getEntitlementConfig().getPolicyCollections();
+        if(policyCollections == null || policyCollections.size() == 0){
+            return new SimplePolicyCollection();
+        }
+
+        Map.Entry<PolicyCollection, Properties> entry = policyCollections.entrySet().iterator().next();
+        try {
+            PolicyCollection collection = entry.getKey().getClass().newInstance();
+            collection.init(entry.getValue());
+            return collection;
+        } catch (Exception e) {
+            log.error("Error while creating policy collection : " + entry.getKey().getClass().getName() +
+                    ". Hence, the configured instance is used", e);
+            return entry.getKey();
+        }
     }
 
     @Override
@@ -184,17 +355,7 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
     @Override
     public PolicyFinderResult findPolicy(EvaluationCtx context) {
 
-        if(policyInvalidationCache.isInvalidate()){
-            init(this.finder);
-            policyReferenceCache.clear();
-            DecisionInvalidationCache.getInstance().invalidateCache();
-            if(log.isDebugEnabled()){
-                int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
-                log.debug("Invalidation cache message is received. " +
-                "Re-initialized policy finder module of current node and invalidate decision " +
-                        "caching for tenantId : " + tenantId);
-            }
-        }
+        reloadIfInvalidated();
 
         try{
             AbstractPolicy policy = policyCollection.getEffectivePolicy(context);
@@ -215,6 +376,7 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
     public PolicyFinderResult findPolicy(URI idReference, int type, VersionConstraints constraints,
                                                             PolicyMetaData parentMetaData) {
 
+        LinkedHashMap<URI, AbstractPolicy> policyReferenceCache = this.policyReferenceCache;
         AbstractPolicy policy = policyReferenceCache.get(idReference);
         
         if(policy == null){
@@ -250,4 +412,252 @@ public class CarbonPolicyFinder extends org.wso2.balana.finder.PolicyFinderModul
     public void clearPolicyCache(){
         policyInvalidationCache.clear();
     }
+
+    /**
+     * @return ids of the attributes which the attribute designators of the loaded policies refer
+     * to, such as the claims which the PIP attribute finders are asked for
+     */
+    public Set<String> getReferencedAttributeIds() {
+        return referencedAttributeIds;
+    }
+
+    /**
+     * Sets the decision caches whose entries are invalidated when the policies are reloaded. If
+     * they are not set, all the decisions are invalidated through the decision invalidation cache.
+     *
+     * @param decisionCache decision cache
+     * @param simpleDecisionCache simple decision cache
+     */
+    public void setDecisionCaches(DecisionCache decisionCache, SimpleDecisionCache simpleDecisionCache) {
+        this.decisionCache = decisionCache;
+        this.simpleDecisionCache = simpleDecisionCache;
+    }
+
+    /**
+     * Reloads the policies if they have been invalidated since they were last loaded, in this
+     * node or in any other node of the cluster. Only the changed policies are read when they are
+     * known. The policies are reloaded in the background, and requests are evaluated against the
+     * previously loaded policies until the reload is complete.
+     */
+    public void reloadIfInvalidated() {
+
+        if (policyInvalidationCache.getGeneration() == policyGeneration) {
+            return;
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            return;
+        }
+
+        final int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        final String tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        try {
+            getReloadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        PrivilegedCarbonContext.startTenantFlow();
+                        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                        carbonContext.setTenantId(tenantId);
+                        carbonContext.setTenantDomain(tenantDomain);
+                        reload();
+                    } catch (Exception e) {
+                        log.error("Error while reloading the policies of tenant : " + tenantId, e);
+                    } finally {
+                        reloading.set(false);
+                        PrivilegedCarbonContext.endTenantFlow();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the bundle is being deactivated
+            reloading.set(false);
+        }
+    }
+
+    private synchronized void reload() {
+
+        int generation;
+        // policies changed while reloading are loaded by the next round
+        while ((generation = policyInvalidationCache.getGeneration()) != policyGeneration) {
+            Set<String> changedPolicyIds = policyInvalidationCache.getChangedPolicyIds(policyGeneration, generation);
+            // read before the policies, so that a change made while loading them triggers a reload
+            policyGeneration = generation;
+            log.info("Reloading of " + (changedPolicyIds != null ? "changed" : "all") +
+                    " policies is started at :  " + new Date());
+            loadPolicies(changedPolicyIds);
+            log.info("Reloading of policies is finished at :  " + new Date());
+        }
+        if(log.isDebugEnabled()){
+            int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+            log.debug("Invalidation cache message is received. " +
+            "Re-initialized policy finder module of current node and invalidate decision " +
+                    "caching for tenantId : " + tenantId);
+        }
+    }
+
+    private static ExecutorService getReloadExecutor() {
+        if (reloadExecutor == null) {
+            synchronized (reloadExecutorLock) {
+                if (reloadExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(RELOAD_THREAD_POOL_SIZE,
+                            RELOAD_THREAD_POOL_SIZE, RELOAD_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new PolicyReloadThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    reloadExecutor = executor;
+                }
+            }
+        }
+        return reloadExecutor;
+    }
+
+    /**
+     * Shuts down the threads which reload the policies. They are created again when the policies
+     * are reloaded next.
+     */
+    public static void shutdownReloadExecutor() {
+        synchronized (reloadExecutorLock) {
+            if (reloadExecutor != null) {
+                reloadExecutor.shutdown();
+                reloadExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Invalidates the cached decisions which the difference of the given policies can change
+     *
+     * @param oldPolicies policies which were loaded before
+     * @param newPolicies policies which are loaded now
+     * @param invalidateAll whether all the cached decisions must be invalidated anyway
+     */
+    private void invalidateDecisions(Map<URI, PolicyState> oldPolicies, Map<URI, PolicyState> newPolicies,
+                                     boolean invalidateAll) {
+
+        Set<String> attributeValueKeys = new HashSet<String>();
+        boolean changed = invalidateAll;
+
+        List<URI> oldOrder = new ArrayList<URI>();
+        for (Map.Entry<URI, PolicyState> entry : oldPolicies.entrySet()) {
+            PolicyState newState = newPolicies.get(entry.getKey());
+            if (newState == null || !newState.policy.equals(entry.getValue().policy)) {
+                changed = true;
+                if (invalidateAll || !addKeys(attributeValueKeys, entry.getValue(), newState)) {
+                    invalidateAll = true;
+                }
+            }
+            if (newState != null) {
+                oldOrder.add(entry.getKey());
+            }
+        }
+
+        List<URI> newOrder = new ArrayList<URI>();
+        for (Map.Entry<URI, PolicyState> entry : newPolicies.entrySet()) {
+            if (oldPolicies.containsKey(entry.getKey())) {
+                newOrder.add(entry.getKey());
+            } else {
+                changed = true;
+                if (invalidateAll || !addKeys(attributeValueKeys, null, entry.getValue())) {
+                    invalidateAll = true;
+                }
+            }
+        }
+
+        if (!oldOrder.equals(newOrder)) {
+            changed = true;
+            invalidateAll = true;
+        }
+
+        if (!changed) {
+            if (log.isDebugEnabled()) {
+                log.debug("Reloaded policies are not changed, cached decisions are kept");
+            }
+            return;
+        }
+
+        if (decisionCache == null || simpleDecisionCache == null) {
+            DecisionInvalidationCache.getInstance().invalidateCache();
+            return;
+        }
+
+        // simple decisions do not keep the attribute values of their requests
+        simpleDecisionCache.clearCache();
+        if (invalidateAll) {
+            decisionCache.invalidateAll();
+            if (log.isDebugEnabled()) {
+                log.debug("All the cached decisions are invalidated by the reloaded policies");
+            }
+        } else {
+            decisionCache.invalidateAttributeValues(attributeValueKeys);
+            if (log.isDebugEnabled()) {
+                log.debug("Cached decisions of " + attributeValueKeys.size() +
+                        " attribute values are invalidated by the reloaded policies");
+            }
+        }
+    }
+
+    // adds the keys of the old and the new version of a changed policy, returns false if the
+    // decisions it can change are not known
+    private boolean addKeys(Set<String> attributeValueKeys, PolicyState oldState, PolicyState newState) {
+        if ((oldState != null && oldState.targetKeys == null) ||
+                (newState != null && newState.targetKeys == null)) {
+            return false;
+        }
+        if (oldState != null) {
+            attributeValueKeys.addAll(oldState.targetKeys);
+        }
+        if (newState != null) {
+            attributeValueKeys.addAll(newState.targetKeys);
+        }
+        return true;
+    }
+
+    private static boolean equals(String value, String otherValue) {
+        return value == null ? otherValue == null : value.equals(otherValue);
+    }
+
+    /**
+     * Loaded policy together with the attribute values one of which a request must carry for it
+     * to apply
+     */
+    private static class PolicyState {
+
+        private String identifier;
+
+        private String policy;
+
+        private AbstractPolicy abstractPolicy;
+
+        private Set<String> targetKeys;
+
+        private Set<String> attributeIds = new HashSet<String>();
+
+        private PolicyState(String identifier, String policy, AbstractPolicy abstractPolicy) {
+            this.identifier = identifier;
+            this.policy = policy;
+            this.abstractPolicy = abstractPolicy;
+            PolicyTarget policyTarget = new PolicyTarget();
+            policyTarget.setTarget(abstractPolicy.getTarget());
+            policyTarget.setPolicyId(abstractPolicy.getId().toString());
+            this.targetKeys = policyTarget.getAttributeValueKeys(PolicyTarget.DEFAULT_INDEXED_ATTRIBUTE_IDS);
+            Matcher matcher = ATTRIBUTE_DESIGNATOR_ID.matcher(policy);
+            while (matcher.find()) {
+                attributeIds.add(matcher.group(1));
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads which reload the policies
+     */
+    private static class PolicyReloadThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "EntitlementPolicyReloader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
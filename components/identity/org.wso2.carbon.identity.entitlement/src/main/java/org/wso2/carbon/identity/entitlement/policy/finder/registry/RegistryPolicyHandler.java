@@ -18,29 +18,13 @@
 
 package org.wso2.carbon.identity.entitlement.policy.finder.registry;
 
-import org.wso2.carbon.identity.entitlement.policy.store.RegistryPolicyStoreManageModule;
-import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.carbon.registry.core.jdbc.handlers.Handler;
-import org.wso2.carbon.registry.core.jdbc.handlers.RequestContext;
 
 /**
- *  Registry policy handler
+ *  Registry policy handler. The handlers run before the resource is written, hence the policies
+ *  are invalidated by the {@link org.wso2.carbon.identity.entitlement.policy.store.RegistryPolicyStoreManageModule}
+ *  once the registry write returns, so that a reload does not read the old version of a policy.
  */
 public class RegistryPolicyHandler extends Handler {
 
-    @Override
-    public void put(RequestContext requestContext) throws RegistryException {
-
-        RegistryPolicyStoreManageModule.invalidateCache();
-        super.put(requestContext);     
-    }
-
-    @Override
-    public void delete(RequestContext requestContext) throws RegistryException {
-
-        RegistryPolicyStoreManageModule.invalidateCache();
-        super.delete(requestContext);
-    }
-
-
 }
@@ -127,6 +127,51 @@ public class RegistryPolicyReader {
 
 
 
+    /**
+     * Reads the ids of all the policies in their order, from the registry resource names and
+     * properties only, without reading and parsing the policies. Here we assume registry resource
+     * name as the policy id.
+     *
+     * @param active only return the ids of active policies
+     * @return policy ids as String[]
+     * @throws EntitlementException throws, if fails
+     */
+    public String[] readAllPolicyIds(boolean active) throws EntitlementException {
+
+        Resource[] resources = getAllPolicyResource();
+
+        if (resources == null) {
+            return new String[0];
+        }
+        List<PolicyDTO> policyDTOList = new ArrayList<PolicyDTO>();
+        for (Resource resource : resources) {
+            PolicyDTO dto = new PolicyDTO();
+            String path = resource.getPath();
+            dto.setPolicyId(path.substring(path.lastIndexOf(RegistryConstants.PATH_SEPARATOR) + 1));
+            String policyOrder = resource.getProperty("order");
+            if(policyOrder != null){
+                dto.setPolicyOrder(Integer.parseInt(policyOrder));
+            }
+            String policyActive = resource.getProperty("active");
+            if(policyActive != null){
+                dto.setActive(Boolean.parseBoolean(policyActive));
+            }
+            if(!active || dto.isActive()){
+                policyDTOList.add(dto);
+            }
+        }
+
+        PolicyDTO[] policyDTOs = policyDTOList.toArray(new PolicyDTO[policyDTOList.size()]);
+        // same order as readAllPolicies
+        Arrays.sort(policyDTOs, new PolicyOrderComparator());
+
+        String[] policyIds = new String[policyDTOs.length];
+        for (int i = 0; i < policyDTOs.length; i++) {
+            policyIds[i] = policyDTOs[i].getPolicyId();
+        }
+        return policyIds;
+    }
+
     /**
      * This returns all the policy ids as String list. Here we assume registry resource name as
      * the policy id.
@@ -26,6 +26,7 @@ import org.wso2.carbon.identity.entitlement.EntitlementException;
 import org.wso2.carbon.identity.entitlement.PDPConstants;
 import org.wso2.carbon.identity.entitlement.EntitlementUtil;
 import org.wso2.carbon.identity.entitlement.cache.DecisionInvalidationCache;
+import org.wso2.carbon.identity.entitlement.cache.EntitlementPolicyInvalidationCache;
 import org.wso2.carbon.identity.entitlement.cache.PolicySearchCache;
 import org.wso2.carbon.identity.entitlement.dto.*;
 import org.wso2.carbon.identity.entitlement.internal.EntitlementServiceComponent;
@@ -49,6 +50,13 @@ public class PolicySearch {
 
     private PolicySearchCache policySearchCache = null;
 
+    /**
+     * values of the decision and policy invalidation caches when the search cache was last cleared
+     */
+    private volatile int decisionGeneration;
+
+    private volatile int policyGeneration;
+
     public PolicySearch(boolean cachingEnable, int cachingInterval) {
         // get registered finder modules
 		Map<PolicyFinderModule, Properties> finderModules = EntitlementServiceComponent.
@@ -63,6 +71,22 @@ public class PolicySearch {
         // Note that PolicySearchCache also uses EntitlementEngine.getInstance().getPdpDecisionCacheEnable()
         // to set cache timeout.
         this.policySearchCache = new PolicySearchCache(cachingInterval);
+        this.decisionGeneration = DecisionInvalidationCache.getInstance().getGeneration();
+        this.policyGeneration = EntitlementPolicyInvalidationCache.getInstance().getGeneration();
+    }
+
+    /**
+     * Clears the search cache if decisions or policies have been invalidated since it was last
+     * cleared. Search results are not scoped to attribute values, so any policy change clears it.
+     */
+    private void clearCacheIfInvalidated() {
+        int currentDecisionGeneration = DecisionInvalidationCache.getInstance().getGeneration();
+        int currentPolicyGeneration = EntitlementPolicyInvalidationCache.getInstance().getGeneration();
+        if (currentDecisionGeneration != decisionGeneration || currentPolicyGeneration != policyGeneration) {
+            decisionGeneration = currentDecisionGeneration;
+            policyGeneration = currentPolicyGeneration;
+            policySearchCache.clearCache();
+        }
     }
 
     /**
@@ -84,9 +108,7 @@ public class PolicySearch {
 
         if(cachingEnable){
 
-            if(DecisionInvalidationCache.getInstance().isInvalidate()){
-                policySearchCache.clearCache();
-            }
+            clearCacheIfInvalidated();
 
             cacheKey = (subjectId != null  ? subjectId : "")  + (subjectName != null  ? subjectName : "") +
                                     (resourceName != null  ? resourceName : "") +
@@ -300,9 +322,7 @@ public class PolicySearch {
 
         if(cachingEnable){
 
-            if(DecisionInvalidationCache.getInstance().isInvalidate()){
-                policySearchCache.clearCache();
-            }
+            clearCacheIfInvalidated();
 
             int hashCode = 0;
             for(AttributeDTO dto : givenAttributes){
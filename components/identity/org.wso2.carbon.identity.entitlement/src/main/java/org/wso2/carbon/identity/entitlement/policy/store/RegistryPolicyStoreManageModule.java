@@ -119,6 +119,8 @@ public class RegistryPolicyStoreManageModule extends AbstractPolicyFinderModule
                 }
             }
             registry.put(policyPath, resource);
+            // invalidated once the policy is written, so that the old version is not reloaded
+            invalidateCache(policy.getPolicyId());
         } catch (RegistryException e) {
             log.error("Error while persisting policy",e);
             throw new EntitlementException("Error while persisting policy" , e);
@@ -171,6 +173,7 @@ public class RegistryPolicyStoreManageModule extends AbstractPolicyFinderModule
 
             policyPath = policyStorePath + policyIdentifier;
             registry.delete(policyPath);
+            invalidateCache(policyIdentifier);
             return true;
         } catch (RegistryException e) {
             log.error(e);
@@ -245,6 +248,21 @@ public class RegistryPolicyStoreManageModule extends AbstractPolicyFinderModule
 
     }
 
+    /**
+     * Returns the identifiers of the active policies in their order, without reading the policies
+     *
+     * @return policy identifiers, or null if they can not be retrieved
+     */
+    @Override
+    public String[] getOrderedActivePolicyIdentifiers() {
+        try {
+            return getPolicyReader().readAllPolicyIds(true);
+        } catch (Exception e) {
+            log.error("Policy identifiers can not be retrieved from registry policy finder module" , e);
+        }
+        return null;
+    }
+
     @Override
     public String[] getPolicyIdentifiers() {
         String[] policyIds = null;
@@ -35,6 +35,8 @@ import java.util.List;
  */
 public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
     private static Log log = LogFactory.getLog(ThriftEntitlementServiceImpl.class);
+    /* Error of a session which is not authenticated, which the clients renew the session on. */
+    private static final String NOT_AUTHENTICATED_ERROR = "User is not authenticated. Please login first.";
     /* Handler to ThriftAuthenticatorService which handles authentication to admin services. */
     private static ThriftAuthenticatorService thriftAuthenticatorService;
     /* Handler to actual entitlement service which is going to be wrapped by thrift interface */
@@ -75,7 +77,7 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                         throw new EntitlementException(error);
                     }
                 } else {
-                    String authErrorMsg = "User is not authenticated. Please login first.";
+                    String authErrorMsg = NOT_AUTHENTICATED_ERROR;
                     log.error(authErrorMsg);
                     throw new EntitlementException(authErrorMsg);
                 }
@@ -86,6 +88,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // the error is sent to the client as it is, so that it can tell an expired session
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -108,7 +113,7 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                         throw new EntitlementException(error);
                     }
                 } else {
-                    String authErrorMsg = "User is not authenticated. Please login first.";
+                    String authErrorMsg = NOT_AUTHENTICATED_ERROR;
                     log.error(authErrorMsg);
                     throw new EntitlementException(authErrorMsg);
                 }
@@ -119,6 +124,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // the error is sent to the client as it is, so that it can tell an expired session
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -143,7 +151,7 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                         throw new EntitlementException(error);
                     }
                 } else {
-                    String authErrorMsg = "User is not authenticated. Please login first.";
+                    String authErrorMsg = NOT_AUTHENTICATED_ERROR;
                     log.error(authErrorMsg);
                     throw new EntitlementException(authErrorMsg);
                 }
@@ -154,6 +162,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // the error is sent to the client as it is, so that it can tell an expired session
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -175,7 +186,7 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                         throw new EntitlementException(error);
                     }
                 } else {
-                    String authErrorMsg = "User is not authenticated. Please login first.";
+                    String authErrorMsg = NOT_AUTHENTICATED_ERROR;
                     log.error(authErrorMsg);
                     throw new EntitlementException(authErrorMsg);
                 }
@@ -186,6 +197,9 @@ public class ThriftEntitlementServiceImpl implements EntitlementService.Iface {
                 log.error(initErrorMsg);
                 throw new EntitlementException(initErrorMsg);
             }
+        } catch (EntitlementException e) {
+            // the error is sent to the client as it is, so that it can tell an expired session
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Error occurred when invoking the Thrift based Entitlement Service.";
             log.error(errorMsg, e);
@@ -0,0 +1,359 @@
+/*
+*Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process cache of access tokens which sits in front of the {@link OAuthCache}, so that
+ * validating a frequently used token does not need a round trip to the distributed cache or
+ * the database.
+ * <p/>
+ * An entry is kept until the token expires or until the cache grows beyond its configured
+ * size. When tokens are revoked or change state, the local entries of those tokens are dropped,
+ * and the invalidated tokens, or clients and users, are published as an invalidation event to a
+ * distributed cache. The event carries the invalidations of the latest events too. Every node
+ * looks up the latest event at most once per configured check interval, and drops the entries of
+ * the events it has not seen yet. Only a node which has missed more events than an event carries,
+ * e.g. a node which has just joined the cluster, clears all its entries.
+ * <p/>
+ * Every invalidation bumps a generation before it drops entries. A token read from the database
+ * is added with the generation taken before the read, and is dropped again if an invalidation
+ * ran in between, so that a revocation is not undone by a concurrent read.
+ */
+public class AccessTokenNearCache {
+
+    private static Log log = LogFactory.getLog(AccessTokenNearCache.class);
+
+    private static final String INVALIDATION_CACHE_NAME = "OAuthTokenInvalidationCache";
+
+    private static final CacheKey INVALIDATION_EVENT_KEY = new OAuthCacheKey("TokenInvalidationEvent");
+
+    private static final int MAX_PUBLISH_ATTEMPTS = 5;
+
+    // invalidations carried by an event, including its own
+    private static final int MAX_INVALIDATION_HISTORY = 100;
+
+    private static final AccessTokenNearCache instance = new AccessTokenNearCache();
+
+    private ConcurrentMap<String, NearCacheEntry> tokens = new ConcurrentHashMap<String, NearCacheEntry>();
+
+    private BaseCache<CacheKey, CacheEntry> invalidationCache =
+            new BaseCache<CacheKey, CacheEntry>(INVALIDATION_CACHE_NAME);
+
+    private AtomicLong lastInvalidationCheck = new AtomicLong();
+
+    private AtomicLong generation = new AtomicLong();
+
+    private volatile String lastSeenStamp;
+
+    private AccessTokenNearCache() {
+    }
+
+    public static AccessTokenNearCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return OAuthServerConfiguration.getInstance().isAccessTokenNearCacheEnabled();
+    }
+
+    /**
+     * Returns the access token cached against the given identifier
+     *
+     * @param accessTokenIdentifier access token identifier
+     * @return cached access token or <code>null</code> if it is not cached or has expired
+     */
+    public AccessTokenDO getValueFromCache(String accessTokenIdentifier) {
+        checkInvalidationEvents();
+        NearCacheEntry entry = tokens.get(accessTokenIdentifier);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiryTime <= System.currentTimeMillis()) {
+            tokens.remove(accessTokenIdentifier, entry);
+            return null;
+        }
+        return entry.accessTokenDO;
+    }
+
+    /**
+     * @return generation of the invalidations, to be taken before the access token which is
+     *         added to the cache is read
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Adds an access token to the cache, unless entries were invalidated since the given
+     * generation. The entry lives at most until the token expires.
+     *
+     * @param accessTokenIdentifier access token identifier
+     * @param accessTokenDO         access token
+     * @param readGeneration        generation taken before the access token was read
+     */
+    public void addToCache(String accessTokenIdentifier, AccessTokenDO accessTokenDO, long readGeneration) {
+        long expiryTime = accessTokenDO.getIssuedTime().getTime() + accessTokenDO.getValidityPeriod();
+        if (expiryTime <= System.currentTimeMillis() || generation.get() != readGeneration) {
+            return;
+        }
+        int maxSize = OAuthServerConfiguration.getInstance().getAccessTokenNearCacheSize();
+        if (tokens.size() >= maxSize) {
+            evict(maxSize);
+        }
+        NearCacheEntry entry = new NearCacheEntry(accessTokenDO, expiryTime);
+        tokens.put(accessTokenIdentifier, entry);
+        // an invalidation which ran before the entry was added may not have dropped it
+        if (generation.get() != readGeneration) {
+            tokens.remove(accessTokenIdentifier, entry);
+        }
+    }
+
+    /**
+     * Drops the given access token from this node and from the distributed OAuth cache, and
+     * notifies the other nodes of the cluster.
+     *
+     * @param accessTokenIdentifier access token identifier
+     */
+    public void clearCacheEntry(String accessTokenIdentifier) {
+        generation.incrementAndGet();
+        tokens.remove(accessTokenIdentifier);
+        if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
+            try {
+                startSuperTenantFlow();
+                OAuthCache.getInstance().clearCacheEntry(new OAuthCacheKey(accessTokenIdentifier));
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+        publishInvalidation(new Invalidation(UUID.randomUUID().toString(),
+                Collections.singleton(accessTokenIdentifier), Collections.<String>emptySet()));
+    }
+
+    /**
+     * Drops all the access tokens issued to the given client for the given user from this
+     * node, and notifies the other nodes of the cluster.
+     *
+     * @param consumerKey    consumer key of the client
+     * @param authorizedUser authorized user
+     */
+    public void clearCacheEntries(String consumerKey, String authorizedUser) {
+        Set<String> users = Collections.singleton(getUserKey(consumerKey, authorizedUser));
+        removeEntries(Collections.<String>emptySet(), users);
+        publishInvalidation(new Invalidation(UUID.randomUUID().toString(),
+                Collections.<String>emptySet(), users));
+    }
+
+    private void removeEntries(Set<String> accessTokenIdentifiers, Set<String> users) {
+        generation.incrementAndGet();
+        for (String accessTokenIdentifier : accessTokenIdentifiers) {
+            tokens.remove(accessTokenIdentifier);
+        }
+        if (users.isEmpty()) {
+            return;
+        }
+        Iterator<NearCacheEntry> iterator = tokens.values().iterator();
+        while (iterator.hasNext()) {
+            AccessTokenDO accessTokenDO = iterator.next().accessTokenDO;
+            if (users.contains(getUserKey(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser()))) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private String getUserKey(String consumerKey, String authorizedUser) {
+        // user names are matched ignoring the case
+        return consumerKey + ":" + (authorizedUser != null ? authorizedUser.toLowerCase() : null);
+    }
+
+    private void evict(int maxSize) {
+        long currentTime = System.currentTimeMillis();
+        Iterator<NearCacheEntry> iterator = tokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiryTime <= currentTime) {
+                iterator.remove();
+            }
+        }
+        // no expired entries to drop, hence drop arbitrary entries to make room for new ones
+        iterator = tokens.values().iterator();
+        while (tokens.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void checkInvalidationEvents() {
+        long currentTime = System.currentTimeMillis();
+        long lastCheck = lastInvalidationCheck.get();
+        long interval = OAuthServerConfiguration.getInstance().getAccessTokenNearCacheInvalidationCheckInterval();
+        // only one thread goes to the distributed cache within an interval
+        if (currentTime - lastCheck < interval ||
+                !lastInvalidationCheck.compareAndSet(lastCheck, currentTime)) {
+            return;
+        }
+        CacheEntry entry;
+        try {
+            startSuperTenantFlow();
+            entry = invalidationCache.getValueFromCache(INVALIDATION_EVENT_KEY);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (!(entry instanceof InvalidationEvent)) {
+            return;
+        }
+        InvalidationEvent event = (InvalidationEvent) entry;
+        if (event.getStamp().equals(lastSeenStamp)) {
+            return;
+        }
+
+        // the invalidations which follow the last one seen are applied. A node which has not seen
+        // any event yet applies all of them
+        int seen = -1;
+        for (int i = 0; lastSeenStamp != null && i < event.invalidations.size(); i++) {
+            if (event.invalidations.get(i).stamp.equals(lastSeenStamp)) {
+                seen = i;
+                break;
+            }
+        }
+        if (lastSeenStamp != null && seen < 0) {
+            generation.incrementAndGet();
+            tokens.clear();
+            if (log.isDebugEnabled()) {
+                log.debug("Access token near cache was cleared since invalidations on the cluster were missed");
+            }
+        } else {
+            Set<String> accessTokenIdentifiers = new HashSet<String>();
+            Set<String> users = new HashSet<String>();
+            for (Invalidation invalidation : event.invalidations.subList(seen + 1, event.invalidations.size())) {
+                accessTokenIdentifiers.addAll(invalidation.tokens);
+                users.addAll(invalidation.users);
+            }
+            removeEntries(accessTokenIdentifiers, users);
+        }
+        lastSeenStamp = event.getStamp();
+    }
+
+    private void publishInvalidation(Invalidation invalidation) {
+        try {
+            startSuperTenantFlow();
+            // the event is chained to the latest event with a compare and set, so that concurrent
+            // invalidations of other nodes are not lost
+            for (int i = 0; i < MAX_PUBLISH_ATTEMPTS; i++) {
+                CacheEntry entry = invalidationCache.getValueFromCache(INVALIDATION_EVENT_KEY);
+                if (entry instanceof InvalidationEvent) {
+                    InvalidationEvent latest = (InvalidationEvent) entry;
+                    if (invalidationCache.replaceInCache(INVALIDATION_EVENT_KEY, latest,
+                            new InvalidationEvent(latest.invalidations, invalidation))) {
+                        return;
+                    }
+                } else if (invalidationCache.addToCacheIfAbsent(INVALIDATION_EVENT_KEY,
+                        new InvalidationEvent(Collections.<Invalidation>emptyList(), invalidation))) {
+                    return;
+                }
+            }
+            // an event which does not follow the others makes all the nodes clear their entries
+            invalidationCache.addToCache(INVALIDATION_EVENT_KEY,
+                    new InvalidationEvent(Collections.<Invalidation>emptyList(), invalidation));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void startSuperTenantFlow() {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        carbonContext.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+    }
+
+    private static class NearCacheEntry {
+
+        private final AccessTokenDO accessTokenDO;
+        private final long expiryTime;
+
+        private NearCacheEntry(AccessTokenDO accessTokenDO, long expiryTime) {
+            this.accessTokenDO = accessTokenDO;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    private static class Invalidation implements Serializable {
+
+        private static final long serialVersionUID = 6532078941402741355L;
+
+        private String stamp;
+
+        private Set<String> tokens;
+
+        // consumer key and authorized user of the invalidated tokens
+        private Set<String> users;
+
+        private Invalidation(String stamp, Set<String> tokens, Set<String> users) {
+            this.stamp = stamp;
+            this.tokens = new HashSet<String>(tokens);
+            this.users = new HashSet<String>(users);
+        }
+    }
+
+    private static class InvalidationEvent extends CacheEntry {
+
+        private static final long serialVersionUID = -2912284317251837216L;
+
+        // the latest invalidations, oldest first
+        private List<Invalidation> invalidations;
+
+        private InvalidationEvent(List<Invalidation> previous, Invalidation invalidation) {
+            int from = Math.max(0, previous.size() - MAX_INVALIDATION_HISTORY + 1);
+            this.invalidations = new ArrayList<Invalidation>(previous.subList(from, previous.size()));
+            this.invalidations.add(invalidation);
+        }
+
+        private String getStamp() {
+            return invalidations.get(invalidations.size() - 1).stamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InvalidationEvent && getStamp().equals(((InvalidationEvent) o).getStamp());
+        }
+
+        @Override
+        public int hashCode() {
+            return getStamp().hashCode();
+        }
+    }
+}
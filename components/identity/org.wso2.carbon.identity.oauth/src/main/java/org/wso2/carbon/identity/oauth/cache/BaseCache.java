@@ -20,14 +20,23 @@ package org.wso2.carbon.identity.oauth.cache;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.Caching;
+import javax.cache.Status;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A base class for all cache implementations in oauth module.
+ * <p/>
+ * The resolved cache of each tenant is kept so that the cache manager is not looked up on every
+ * operation, and every operation maps to a single cache call, since each call is a remote round
+ * trip when the cache is distributed.
  */
 public class BaseCache <K extends Serializable, V extends Serializable> {
 
@@ -36,19 +45,35 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
     private static final String OAUTH_CACHE_MANAGER = "OAuthCacheManager";
     private String CACHE_NAME;
 
+    private ConcurrentMap<Integer, Cache<K, V>> caches = new ConcurrentHashMap<Integer, Cache<K, V>>();
+
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+    private AtomicLong getTime = new AtomicLong();
+    private AtomicLong putCount = new AtomicLong();
+    private AtomicLong putTime = new AtomicLong();
+
 	public BaseCache(String cacheName) {
 		this.CACHE_NAME = cacheName;
 	}
 
 	private Cache<K,V> getBaseCache() {
-    	CacheManager manager = Caching.getCacheManagerFactory().getCacheManager(BaseCache.OAUTH_CACHE_MANAGER);
-        Cache<K,V> cache = manager.getCache(CACHE_NAME);
+        // cache managers are tenant aware, hence the resolved cache is kept per tenant
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        Cache<K, V> cache = caches.get(tenantId);
+        if (cache == null || cache.getStatus() != Status.STARTED) {
+            CacheManager manager = Caching.getCacheManagerFactory().getCacheManager(BaseCache.OAUTH_CACHE_MANAGER);
+            cache = manager.getCache(CACHE_NAME);
+            if (cache != null) {
+                caches.put(tenantId, cache);
+            }
+        }
         return cache;
 	}
     
 
 	/**
-	 * Add a cache entry.
+	 * Add a cache entry. An existing entry for the same key is replaced.
 	 * 
 	 * @param key
 	 *            Key which cache entry is indexed.
@@ -56,15 +81,45 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	 *            Actual object where cache entry is placed.
 	 */
 	public void addToCache(K key, V entry) {
-		// Element already in the cache. Remove it first
-		clearCacheEntry(key);
-		
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
+            long start = System.nanoTime();
 			cache.put(key, entry);
+            putTime.addAndGet(System.nanoTime() - start);
+            putCount.incrementAndGet();
 		}
 	}
 
+	/**
+	 * Add a cache entry, if there is no entry for the key.
+	 *
+	 * @param key
+	 *            Key which cache entry is indexed.
+	 * @param entry
+	 *            Actual object where cache entry is placed.
+	 * @return <code>true</code> if the entry was added
+	 */
+	public boolean addToCacheIfAbsent(K key, V entry) {
+		Cache<K,V> cache = getBaseCache();
+		return cache != null && cache.putIfAbsent(key, entry);
+	}
+
+	/**
+	 * Replaces a cache entry, if the key is mapped to the given entry.
+	 *
+	 * @param key
+	 *            Key which cache entry is indexed.
+	 * @param oldEntry
+	 *            Entry which is expected to be in the cache.
+	 * @param newEntry
+	 *            Entry to replace it with.
+	 * @return <code>true</code> if the entry was replaced
+	 */
+	public boolean replaceInCache(K key, V oldEntry, V newEntry) {
+		Cache<K,V> cache = getBaseCache();
+		return cache != null && cache.replace(key, oldEntry, newEntry);
+	}
+
 	/**
 	 * Retrieves a cache entry.
 	 * 
@@ -75,9 +130,15 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	public V getValueFromCache(K key) {
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
-			if (cache.containsKey(key)) {
-				return (V) cache.get(key);
-			}
+            long start = System.nanoTime();
+            V value = cache.get(key);
+            getTime.addAndGet(System.nanoTime() - start);
+            if (value != null) {
+                hitCount.incrementAndGet();
+            } else {
+                missCount.incrementAndGet();
+            }
+            return value;
 		}
 		return null;
 	}
@@ -91,9 +152,7 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 	public void clearCacheEntry(K key) {
 		Cache<K,V> cache = getBaseCache();
 		if (cache != null) {
-			if (cache.containsKey(key)) {
-				cache.remove(key);
-			}
+			cache.remove(key);
 		}
 	}
 
@@ -107,4 +166,32 @@ public class BaseCache <K extends Serializable, V extends Serializable> {
 		}
 	}
 
+    public String getCacheName() {
+        return CACHE_NAME;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return average latency of a cache lookup in nano seconds
+     */
+    public long getAverageGetTime() {
+        long count = hitCount.get() + missCount.get();
+        return count == 0 ? 0 : getTime.get() / count;
+    }
+
+    /**
+     * @return average latency of a cache put in nano seconds
+     */
+    public long getAveragePutTime() {
+        long count = putCount.get();
+        return count == 0 ? 0 : putTime.get() / count;
+    }
+
 }
@@ -85,6 +85,27 @@ public class OAuthServerConfiguration {
 		// Enable/Disable cache
 		private static final String ENABLE_CACHE = "EnableOAuthCache";
 
+		// In-process access token cache used for token validation
+		private static final String ACCESS_TOKEN_NEAR_CACHE = "AccessTokenNearCache";
+		private static final String ACCESS_TOKEN_NEAR_CACHE_SIZE = "Size";
+		private static final String ACCESS_TOKEN_NEAR_CACHE_INVALIDATION_CHECK_INTERVAL = "InvalidationCheckInterval";
+
+		// Write-behind persistence of issued access tokens
+		private static final String ACCESS_TOKEN_WRITE_BEHIND = "AccessTokenWriteBehind";
+		private static final String ACCESS_TOKEN_WRITE_BEHIND_QUEUE_SIZE = "QueueSize";
+		private static final String ACCESS_TOKEN_WRITE_BEHIND_BATCH_SIZE = "BatchSize";
+		private static final String ACCESS_TOKEN_WRITE_BEHIND_WRITER_COUNT = "WriterCount";
+
+		// Signed self-contained (JWT) access tokens
+		private static final String SELF_CONTAINED_ACCESS_TOKEN = "SelfContainedAccessToken";
+		private static final String SELF_CONTAINED_ACCESS_TOKEN_REVOCATION_CHECK_INTERVAL = "RevocationCheckInterval";
+
+		// Background cleanup of expired, revoked and inactive tokens
+		private static final String TOKEN_CLEANUP = "TokenCleanup";
+		private static final String TOKEN_CLEANUP_INTERVAL = "Interval";
+		private static final String TOKEN_CLEANUP_BATCH_SIZE = "BatchSize";
+		private static final String TOKEN_CLEANUP_BATCH_PAUSE = "BatchPause";
+
         // Enable/Disable refresh token renewal on each refresh_token grant request
         private static final String RENEW_REFRESH_TOKEN_FOR_REFRESH_GRANT = "RenewRefreshTokenForRefreshGrant";
 
@@ -158,6 +179,32 @@ public class OAuthServerConfiguration {
 
 	private boolean cacheEnabled = true;
 
+	private boolean accessTokenNearCacheEnabled = false;
+
+	private int accessTokenNearCacheSize = 10000;
+
+	private long accessTokenNearCacheInvalidationCheckInterval = 1000;
+
+	private boolean accessTokenWriteBehindEnabled = false;
+
+	private int accessTokenWriteBehindQueueSize = 10000;
+
+	private int accessTokenWriteBehindBatchSize = 100;
+
+	private int accessTokenWriteBehindWriterCount = 1;
+
+	private boolean selfContainedAccessTokenEnabled = false;
+
+	private long selfContainedAccessTokenRevocationCheckInterval = 1000;
+
+	private boolean tokenCleanupEnabled = false;
+
+	private long tokenCleanupIntervalInSeconds = 3600;
+
+	private int tokenCleanupBatchSize = 1000;
+
+	private long tokenCleanupBatchPause = 100;
+
     private boolean isRefreshTokenRenewalEnabled = true;
 
 	private boolean assertionsUserNameEnabled = false;
@@ -276,6 +323,15 @@ public class OAuthServerConfiguration {
 			// read caching configurations
 			parseCachingConfiguration(oauthElem);
 
+			// read access token write-behind configurations
+			parseAccessTokenWriteBehindConfiguration(oauthElem);
+
+			// read self-contained access token configurations
+			parseSelfContainedAccessTokenConfiguration(oauthElem);
+
+			// read token cleanup configurations
+			parseTokenCleanupConfiguration(oauthElem);
+
             // read refresh token renewal config
             parseRefreshTokenRenewalConfiguration(oauthElem);
 
@@ -343,6 +399,58 @@ public class OAuthServerConfiguration {
 		return cacheEnabled;
 	}
 
+	public boolean isAccessTokenNearCacheEnabled() {
+		return accessTokenNearCacheEnabled;
+	}
+
+	public int getAccessTokenNearCacheSize() {
+		return accessTokenNearCacheSize;
+	}
+
+	public long getAccessTokenNearCacheInvalidationCheckInterval() {
+		return accessTokenNearCacheInvalidationCheckInterval;
+	}
+
+	public boolean isAccessTokenWriteBehindEnabled() {
+		return accessTokenWriteBehindEnabled;
+	}
+
+	public int getAccessTokenWriteBehindQueueSize() {
+		return accessTokenWriteBehindQueueSize;
+	}
+
+	public int getAccessTokenWriteBehindBatchSize() {
+		return accessTokenWriteBehindBatchSize;
+	}
+
+	public int getAccessTokenWriteBehindWriterCount() {
+		return accessTokenWriteBehindWriterCount;
+	}
+
+	public boolean isSelfContainedAccessTokenEnabled() {
+		return selfContainedAccessTokenEnabled;
+	}
+
+	public long getSelfContainedAccessTokenRevocationCheckInterval() {
+		return selfContainedAccessTokenRevocationCheckInterval;
+	}
+
+	public boolean isTokenCleanupEnabled() {
+		return tokenCleanupEnabled;
+	}
+
+	public long getTokenCleanupIntervalInSeconds() {
+		return tokenCleanupIntervalInSeconds;
+	}
+
+	public int getTokenCleanupBatchSize() {
+		return tokenCleanupBatchSize;
+	}
+
+	public long getTokenCleanupBatchPause() {
+		return tokenCleanupBatchPause;
+	}
+
     public boolean isRefreshTokenRenewalEnabled(){
         return isRefreshTokenRenewalEnabled;
     }
@@ -826,6 +934,116 @@ public class OAuthServerConfiguration {
 		if (log.isDebugEnabled()) {
 			log.debug("Enable OAuth Cache was set to : " + cacheEnabled);
 		}
+
+		OMElement nearCacheElem =
+		                          oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_NEAR_CACHE));
+		if (nearCacheElem != null) {
+			OMElement enabledElem = nearCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ENABLED));
+			if (enabledElem != null) {
+				accessTokenNearCacheEnabled = Boolean.parseBoolean(enabledElem.getText().trim());
+			}
+			OMElement sizeElem =
+			                     nearCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_NEAR_CACHE_SIZE));
+			if (sizeElem != null) {
+				accessTokenNearCacheSize = Integer.parseInt(sizeElem.getText().trim());
+			}
+			OMElement intervalElem =
+			                         nearCacheElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_NEAR_CACHE_INVALIDATION_CHECK_INTERVAL));
+			if (intervalElem != null) {
+				accessTokenNearCacheInvalidationCheckInterval = Long.parseLong(intervalElem.getText().trim());
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Access token near cache enabled : " + accessTokenNearCacheEnabled + ", size : " +
+			          accessTokenNearCacheSize + ", invalidation check interval : " +
+			          accessTokenNearCacheInvalidationCheckInterval + "ms");
+		}
+	}
+
+	private void parseAccessTokenWriteBehindConfiguration(OMElement oauthConfigElem) {
+		OMElement writeBehindElem =
+		                            oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_WRITE_BEHIND));
+		if (writeBehindElem != null) {
+			OMElement enabledElem = writeBehindElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ENABLED));
+			if (enabledElem != null) {
+				accessTokenWriteBehindEnabled = Boolean.parseBoolean(enabledElem.getText().trim());
+			}
+			OMElement queueSizeElem =
+			                          writeBehindElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_WRITE_BEHIND_QUEUE_SIZE));
+			if (queueSizeElem != null) {
+				accessTokenWriteBehindQueueSize = Integer.parseInt(queueSizeElem.getText().trim());
+			}
+			OMElement batchSizeElem =
+			                          writeBehindElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_WRITE_BEHIND_BATCH_SIZE));
+			if (batchSizeElem != null) {
+				accessTokenWriteBehindBatchSize = Integer.parseInt(batchSizeElem.getText().trim());
+			}
+			OMElement writerCountElem =
+			                            writeBehindElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ACCESS_TOKEN_WRITE_BEHIND_WRITER_COUNT));
+			if (writerCountElem != null) {
+				accessTokenWriteBehindWriterCount = Integer.parseInt(writerCountElem.getText().trim());
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Access token write-behind enabled : " + accessTokenWriteBehindEnabled + ", queue size : " +
+			          accessTokenWriteBehindQueueSize + ", batch size : " + accessTokenWriteBehindBatchSize +
+			          ", writer count : " + accessTokenWriteBehindWriterCount);
+		}
+	}
+
+	private void parseSelfContainedAccessTokenConfiguration(OMElement oauthConfigElem) {
+		OMElement selfContainedElem =
+		                              oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.SELF_CONTAINED_ACCESS_TOKEN));
+		if (selfContainedElem != null) {
+			OMElement enabledElem = selfContainedElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ENABLED));
+			if (enabledElem != null) {
+				selfContainedAccessTokenEnabled = Boolean.parseBoolean(enabledElem.getText().trim());
+			}
+			OMElement intervalElem =
+			                         selfContainedElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.SELF_CONTAINED_ACCESS_TOKEN_REVOCATION_CHECK_INTERVAL));
+			if (intervalElem != null) {
+				selfContainedAccessTokenRevocationCheckInterval = Long.parseLong(intervalElem.getText().trim());
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Self-contained access tokens enabled : " + selfContainedAccessTokenEnabled +
+			          ", revocation check interval : " + selfContainedAccessTokenRevocationCheckInterval + "ms");
+		}
+	}
+
+	private void parseTokenCleanupConfiguration(OMElement oauthConfigElem) {
+		OMElement cleanupElem =
+		                        oauthConfigElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_CLEANUP));
+		if (cleanupElem != null) {
+			OMElement enabledElem = cleanupElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.ENABLED));
+			if (enabledElem != null) {
+				tokenCleanupEnabled = Boolean.parseBoolean(enabledElem.getText().trim());
+			}
+			OMElement intervalElem =
+			                         cleanupElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_CLEANUP_INTERVAL));
+			if (intervalElem != null) {
+				tokenCleanupIntervalInSeconds = Long.parseLong(intervalElem.getText().trim());
+			}
+			OMElement batchSizeElem =
+			                          cleanupElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_CLEANUP_BATCH_SIZE));
+			if (batchSizeElem != null) {
+				tokenCleanupBatchSize = Integer.parseInt(batchSizeElem.getText().trim());
+			}
+			OMElement batchPauseElem =
+			                           cleanupElem.getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_CLEANUP_BATCH_PAUSE));
+			if (batchPauseElem != null) {
+				tokenCleanupBatchPause = Long.parseLong(batchPauseElem.getText().trim());
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Token cleanup enabled : " + tokenCleanupEnabled + ", interval : " +
+			          tokenCleanupIntervalInSeconds + "s, batch size : " + tokenCleanupBatchSize +
+			          ", batch pause : " + tokenCleanupBatchPause + "ms");
+		}
 	}
 
     private void parseRefreshTokenRenewalConfiguration(OMElement oauthConfigElem) {
@@ -23,6 +23,8 @@ import org.apache.commons.logging.LogFactory;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.dao.AccessTokenPersistenceQueue;
+import org.wso2.carbon.identity.oauth2.dao.ExpiredTokenPurger;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.core.service.RealmService;
 
@@ -54,12 +56,18 @@ public class OAuthServiceComponent {
             }
         }
 
+        // schedule the cleanup of expired tokens, if it is enabled
+        ExpiredTokenPurger.getInstance().start();
+
         if (log.isDebugEnabled()) {
             log.info("Identity OAuth bundle is activated");
         }
     }
 
     protected void deactivate(ComponentContext context) {
+        ExpiredTokenPurger.getInstance().stop();
+        // write the access tokens which are still queued for persistence
+        AccessTokenPersistenceQueue.getInstance().shutdown();
         if (log.isDebugEnabled()) {
             log.info("Identity OAuth bundle is deactivated");
         }
@@ -38,6 +38,7 @@ import org.wso2.carbon.identity.oauth2.dto.*;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.AccessTokenIssuer;
+import org.wso2.carbon.identity.oauth2.token.JWTAccessTokenBuilder;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.api.Claim;
 import org.wso2.carbon.user.core.UserStoreManager;
@@ -213,6 +214,14 @@ public class OAuth2Service extends AbstractAdmin {
                     revokeRespDTO.setErrorMsg("Unauthorized Client");
                     return revokeRespDTO;
                 }
+                // self-contained access tokens are persisted against the identifier they carry
+                JWTAccessTokenBuilder jwtAccessTokenBuilder = JWTAccessTokenBuilder.getInstance();
+                if (jwtAccessTokenBuilder.isEnabled() && jwtAccessTokenBuilder.isJWTAccessToken(revokeRequestDTO.getToken())) {
+                    AccessTokenDO jwtAccessTokenDO = jwtAccessTokenBuilder.validateAccessToken(revokeRequestDTO.getToken());
+                    if (jwtAccessTokenDO != null) {
+                        revokeRequestDTO.setToken(jwtAccessTokenDO.getAccessToken());
+                    }
+                }
                 boolean refreshTokenFirst = false;
                 if(revokeRequestDTO.getToken_type() != null && revokeRequestDTO.equals("refresh_token")){
                     refreshTokenFirst = true;
@@ -22,7 +22,6 @@ import org.apache.axiom.util.base64.Base64Utils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.core.model.OAuthAppDO;
 import org.wso2.carbon.identity.oauth.cache.CacheKey;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
@@ -36,6 +35,8 @@ import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationResponseDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.validators.OAuth2TokenValidationMessageContext;
+import org.wso2.carbon.security.SecurityConfigException;
+import org.wso2.carbon.security.keystore.KeyStoreCredentialCache;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
@@ -47,7 +48,6 @@ import java.util.Calendar;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class represents the JSON Web Token generator.
@@ -77,9 +77,6 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
 
     private boolean enableSigning = true;
 
-    private static ConcurrentHashMap<Integer, Key> privateKeys = new ConcurrentHashMap<Integer, Key>();
-    private static ConcurrentHashMap<Integer, Certificate> publicCerts = new ConcurrentHashMap<Integer, Certificate>();
-
     private ClaimCache claimsLocalCache;
 
     public JWTTokenGenerator() {
@@ -271,37 +268,7 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             throws IdentityOAuth2Exception {
 
         try {
-            //get tenant domain
-            String tenantDomain = MultitenantUtils.getTenantDomain(endUserName);
-            //get tenantId
-            int tenantId = getTenantId(endUserName);
-
-            Key privateKey = null;
-
-            if (!(privateKeys.containsKey(tenantId))) {
-                //get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                if(!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)){
-                    //derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    //obtain private key
-                    //TODO: maintain a hash map with tenants' private keys after first initialization
-                    privateKey = tenantKSM.getPrivateKey(jksName, tenantDomain);
-                }else{
-                    try{
-                        privateKey = tenantKSM.getDefaultPrivateKey();
-                    }catch (Exception e){
-                        log.error("Error while obtaining private key for super tenant",e);
-                    }
-                }
-                if (privateKey != null) {
-                    privateKeys.put(tenantId, privateKey);
-                }
-            } else {
-                privateKey = privateKeys.get(tenantId);
-            }
+            Key privateKey = getPrivateKey(endUserName);
 
             //initialize signature with private key and algorithm
             Signature signature = Signature.getInstance(signatureAlgorithm);
@@ -342,32 +309,7 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
     private String addCertToHeader(String endUserName) throws IdentityOAuth2Exception {
 
         try {
-            //get tenant domain
-            String tenantDomain = MultitenantUtils.getTenantDomain(endUserName);
-            //get tenantId
-            int tenantId = getTenantId(endUserName);
-            Certificate publicCert = null;
-
-            if (!(publicCerts.containsKey(tenantId))) {
-                //get tenant's key store manager
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-
-                KeyStore keyStore = null;
-                if(!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)){
-                    //derive key store name
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + ".jks";
-                    keyStore = tenantKSM.getKeyStore(jksName);
-                    publicCert = keyStore.getCertificate(tenantDomain);
-                }else{
-                    publicCert = tenantKSM.getDefaultPrimaryCertificate();
-                }
-                if (publicCert != null) {
-                    publicCerts.put(tenantId, publicCert);
-                }
-            } else {
-                publicCert = publicCerts.get(tenantId);
-            }
+            Certificate publicCert = getPublicCertificate(endUserName);
 
             //generate the SHA-1 thumbprint of the certificate
             //TODO: maintain a hashmap with tenants' pubkey thumbprints after first initialization
@@ -396,9 +338,6 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             jwtHeader.append("}");
             return jwtHeader.toString();
 
-        } catch (KeyStoreException e) {
-            String error = "Error in obtaining tenant's keystore";
-            throw new IdentityOAuth2Exception(error);
         } catch (CertificateEncodingException e) {
             String error = "Error in generating public cert thumbprint";
             throw new IdentityOAuth2Exception(error);
@@ -411,6 +350,65 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
         }
     }
 
+    /**
+     * Helper method to get the private key of the tenant of the given user, which is used to
+     * sign the tokens issued on behalf of that user.
+     *
+     * @param endUserName
+     * @return private key of the tenant
+     * @throws IdentityOAuth2Exception
+     */
+    public static Key getPrivateKey(String endUserName) throws IdentityOAuth2Exception {
+        //get tenant domain
+        String tenantDomain = MultitenantUtils.getTenantDomain(endUserName);
+        //get tenantId
+        int tenantId = getTenantId(endUserName);
+        try {
+            if (!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
+                //derive key store name
+                String ksName = tenantDomain.trim().replace(".", "-");
+                String jksName = ksName + ".jks";
+                //obtain private key
+                return KeyStoreCredentialCache.getInstance().getPrivateKey(tenantId, jksName, tenantDomain);
+            } else {
+                return KeyStoreCredentialCache.getInstance().getPrivateKey(tenantId, null, null);
+            }
+        } catch (SecurityConfigException e) {
+            log.error("Error while obtaining private key for tenant " + tenantDomain, e);
+            throw new IdentityOAuth2Exception("Error while obtaining private key for tenant "
+                    + tenantDomain);
+        }
+    }
+
+    /**
+     * Helper method to get the public certificate of the tenant of the given user, which is used
+     * to verify the tokens issued on behalf of that user.
+     *
+     * @param endUserName
+     * @return public certificate of the tenant
+     * @throws IdentityOAuth2Exception
+     */
+    public static Certificate getPublicCertificate(String endUserName) throws IdentityOAuth2Exception {
+        //get tenant domain
+        String tenantDomain = MultitenantUtils.getTenantDomain(endUserName);
+        //get tenantId
+        int tenantId = getTenantId(endUserName);
+        try {
+            if (!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
+                //derive key store name
+                String ksName = tenantDomain.trim().replace(".", "-");
+                String jksName = ksName + ".jks";
+                return KeyStoreCredentialCache.getInstance().getCertificate(tenantId, jksName, tenantDomain);
+            } else {
+                return KeyStoreCredentialCache.getInstance().getCertificate(tenantId, null, null);
+            }
+        } catch (SecurityConfigException e) {
+            log.error("Error while obtaining public certificate for tenant " + tenantDomain, e);
+            throw new IdentityOAuth2Exception("Error while obtaining public certificate for tenant "
+                    + tenantDomain);
+        }
+    }
+
     private long getTTL() {
         if (ttl != -1) {
             return ttl;
@@ -33,6 +33,7 @@ import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.authz.handlers.ResponseTypeHandler;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeReqDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeRespDTO;
+import org.wso2.carbon.identity.oauth2.token.JWTAccessTokenBuilder;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.utils.CarbonUtils;
 
@@ -150,6 +151,16 @@ public class AuthorizationHandlerManager {
         }
 
         authorizeRespDTO = authzHandler.issue(authzReqMsgCtx);
+
+        // hand out the issued access token as a signed self-contained token, if enabled
+        JWTAccessTokenBuilder jwtAccessTokenBuilder = JWTAccessTokenBuilder.getInstance();
+        if (jwtAccessTokenBuilder.isEnabled() && authorizeRespDTO.getErrorCode() == null &&
+                authorizeRespDTO.getAccessToken() != null) {
+            authorizeRespDTO.setAccessToken(jwtAccessTokenBuilder.buildAccessToken(
+                    authorizeRespDTO.getAccessToken(), authzReqDTO.getConsumerKey(), authzReqDTO.getUsername(),
+                    authzReqMsgCtx.getApprovedScope(), authorizeRespDTO.getValidityPeriod() * 1000,
+                    OAuthConstants.USER_TYPE_FOR_USER_TOKEN));
+        }
         return authorizeRespDTO;
     }
 
@@ -162,7 +162,7 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
             accessTokenDO.setTokenState(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE);
             accessTokenDO.setAccessToken(accessToken);
             // Persist the access token in database
-            tokenMgtDAO.storeAccessToken(accessToken, authorizationReqDTO.getConsumerKey(),
+            tokenMgtDAO.persistAccessToken(accessToken, authorizationReqDTO.getConsumerKey(),
                     accessTokenDO, userStoreDomain);
 
             // Add the access token to the cache.
@@ -0,0 +1,476 @@
+/*
+*Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind persistence of issued access tokens. Tokens are put on a bounded queue which is
+ * drained by writer threads that store them with JDBC batch inserts, one batch per access token
+ * table. Until a token is written it is served from memory by
+ * {@link TokenMgtDAO#retrieveAccessToken(String)}.
+ * <p/>
+ * When the queue is full the issuing thread waits for a short while and then stores the token
+ * itself, so that a slow database slows down token issuance rather than growing the queue.
+ * Operations which look up or update the stored tokens of a client and user, or a stored token,
+ * call {@link #flush(String, String)} or {@link #flush(String)} first. Only the pending tokens
+ * of that client and user, or that token, are written, so that they never miss a token which is
+ * still on the queue while the issuance of other tokens carries on. The pending tokens are indexed
+ * by user, and a token is claimed by whichever of a writer or a flush takes it first. A token
+ * written by a flush is left on the queue, and skipped by the writer which takes it.
+ * <p/>
+ * A batch which could not be written is put back on the queue and tried again, up to
+ * {@link #MAX_PERSIST_ATTEMPTS} times. Failures to write the tokens a lookup depends on are
+ * thrown to the lookup.
+ */
+public class AccessTokenPersistenceQueue {
+
+    private static final Log log = LogFactory.getLog(AccessTokenPersistenceQueue.class);
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static final int MAX_PERSIST_ATTEMPTS = 3;
+
+    private static final AccessTokenPersistenceQueue instance = new AccessTokenPersistenceQueue();
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private BlockingQueue<PendingAccessToken> queue;
+
+    // tokens which are queued or being written, by access token
+    private ConcurrentMap<String, PendingAccessToken> pendingTokens =
+            new ConcurrentHashMap<String, PendingAccessToken>();
+
+    // tokens which are queued or being written, by lower case authorized user
+    private ConcurrentMap<String, Set<PendingAccessToken>> pendingTokensByUser =
+            new ConcurrentHashMap<String, Set<PendingAccessToken>>();
+
+    private ExecutorService writers;
+
+    private volatile boolean shutdown = false;
+
+    private TokenMgtDAO tokenMgtDAO;
+
+    private AccessTokenPersistenceQueue() {
+        OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+        enabled = config.isAccessTokenWriteBehindEnabled();
+        batchSize = config.getAccessTokenWriteBehindBatchSize();
+        if (enabled) {
+            queue = new LinkedBlockingQueue<PendingAccessToken>(config.getAccessTokenWriteBehindQueueSize());
+            int writerCount = config.getAccessTokenWriteBehindWriterCount();
+            writers = Executors.newFixedThreadPool(writerCount);
+            for (int i = 0; i < writerCount; i++) {
+                writers.execute(new Writer());
+            }
+        }
+    }
+
+    public static AccessTokenPersistenceQueue getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled && !shutdown;
+    }
+
+    /**
+     * Queues an issued access token to be persisted.
+     *
+     * @param accessTokenDO   issued access token
+     * @param userStoreDomain user store domain of the access token table, if partitioned
+     * @throws IdentityOAuth2Exception if the token had to be stored synchronously and failed
+     */
+    public void add(AccessTokenDO accessTokenDO, String userStoreDomain) throws IdentityOAuth2Exception {
+        PendingAccessToken pending = new PendingAccessToken(accessTokenDO, userStoreDomain);
+        pendingTokens.put(accessTokenDO.getAccessToken(), pending);
+        index(pending);
+        boolean queued = false;
+        if (!shutdown) {
+            try {
+                queued = queue.offer(pending, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token persistence queue is full, storing the access token directly");
+            }
+            pending.claimed.set(true);
+            List<PendingAccessToken> batch = new ArrayList<PendingAccessToken>();
+            batch.add(pending);
+            if (!persist(batch).isEmpty()) {
+                done(pending, false);
+                throw new IdentityOAuth2Exception("Error while storing the access token of consumer key : " +
+                        accessTokenDO.getConsumerKey());
+            }
+        }
+    }
+
+    /**
+     * Returns an access token which is not yet written to the database, in the form it would be
+     * read back from the database.
+     *
+     * @param accessTokenIdentifier access token identifier
+     * @return pending access token or <code>null</code> if there is no such token on the queue
+     */
+    public AccessTokenDO getPendingAccessToken(String accessTokenIdentifier) {
+        PendingAccessToken pending = pendingTokens.get(accessTokenIdentifier);
+        if (pending == null) {
+            return null;
+        }
+        AccessTokenDO issued = pending.accessTokenDO;
+        // the validity period is kept in seconds when issued and in milliseconds when stored
+        AccessTokenDO accessTokenDO = new AccessTokenDO(issued.getConsumerKey(),
+                issued.getAuthzUser().toLowerCase(), issued.getScope(), issued.getIssuedTime(),
+                issued.getValidityPeriod() * 1000, issued.getTokenType());
+        accessTokenDO.setRefreshToken(issued.getRefreshToken());
+        return accessTokenDO;
+    }
+
+    /**
+     * Writes the pending access tokens of a client and user, and waits for those being written
+     * by the writers.
+     *
+     * @param consumerKey consumer key of the client, or <code>null</code> for all the clients
+     * @param authzUser   authorized user, or <code>null</code> for all the users
+     * @throws IdentityOAuth2Exception if a pending access token could not be written
+     */
+    public void flush(String consumerKey, String authzUser) throws IdentityOAuth2Exception {
+        if (!enabled || pendingTokens.isEmpty()) {
+            return;
+        }
+        Iterable<PendingAccessToken> candidates;
+        if (authzUser != null) {
+            candidates = pendingTokensByUser.get(authzUser.toLowerCase());
+            if (candidates == null) {
+                return;
+            }
+        } else {
+            candidates = pendingTokens.values();
+        }
+        List<PendingAccessToken> tokens = new ArrayList<PendingAccessToken>();
+        for (PendingAccessToken pending : candidates) {
+            AccessTokenDO accessTokenDO = pending.accessTokenDO;
+            if ((consumerKey == null || consumerKey.equals(accessTokenDO.getConsumerKey())) &&
+                    (authzUser == null || authzUser.equalsIgnoreCase(accessTokenDO.getAuthzUser()))) {
+                tokens.add(pending);
+            }
+        }
+        flush(tokens);
+    }
+
+    /**
+     * Writes the given access token if it is pending, or waits for it if it is being written by
+     * a writer.
+     *
+     * @param accessTokenIdentifier access token identifier
+     * @throws IdentityOAuth2Exception if the access token could not be written
+     */
+    public void flush(String accessTokenIdentifier) throws IdentityOAuth2Exception {
+        if (!enabled || pendingTokens.isEmpty()) {
+            return;
+        }
+        PendingAccessToken pending = pendingTokens.get(accessTokenIdentifier);
+        if (pending != null) {
+            List<PendingAccessToken> tokens = new ArrayList<PendingAccessToken>();
+            tokens.add(pending);
+            flush(tokens);
+        }
+    }
+
+    /**
+     * Stops the writers and writes the access tokens remaining on the queue
+     */
+    public void shutdown() {
+        if (!enabled || shutdown) {
+            return;
+        }
+        shutdown = true;
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Access token writers did not stop within " + SHUTDOWN_TIMEOUT_SECONDS + "s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingAccessToken> drained = new ArrayList<PendingAccessToken>();
+        List<PendingAccessToken> batch = new ArrayList<PendingAccessToken>();
+        while (queue.drainTo(drained, batchSize) > 0) {
+            claim(drained, batch);
+            drained.clear();
+            List<PendingAccessToken> failed = persist(batch);
+            if (!failed.isEmpty()) {
+                log.error(failed.size() + " access tokens could not be stored on shutdown");
+                done(failed, false);
+            }
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingAccessToken> tokens) throws IdentityOAuth2Exception {
+        // tokens which no writer has taken yet are written here, the others are being written by
+        // a writer
+        List<PendingAccessToken> batch = new ArrayList<PendingAccessToken>();
+        List<PendingAccessToken> inProgress = new ArrayList<PendingAccessToken>();
+        for (PendingAccessToken pending : tokens) {
+            if (pending.claimed.compareAndSet(false, true)) {
+                batch.add(pending);
+            } else {
+                inProgress.add(pending);
+            }
+        }
+        int failed = 0;
+        if (!batch.isEmpty()) {
+            List<PendingAccessToken> failedTokens = persist(batch);
+            retry(failedTokens);
+            failed = failedTokens.size();
+        }
+        for (PendingAccessToken pending : inProgress) {
+            if (!awaitPersisted(pending)) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new IdentityOAuth2Exception(failed + " pending access tokens could not be stored");
+        }
+    }
+
+    private boolean awaitPersisted(PendingAccessToken pending) throws IdentityOAuth2Exception {
+        try {
+            while (!pending.done.await(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // a batch which failed is put back on the queue, where it can be taken again
+                if (pending.claimed.compareAndSet(false, true)) {
+                    List<PendingAccessToken> batch = new ArrayList<PendingAccessToken>();
+                    batch.add(pending);
+                    List<PendingAccessToken> failedTokens = persist(batch);
+                    retry(failedTokens);
+                    return failedTokens.isEmpty();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityOAuth2Exception("Interrupted while waiting for pending access tokens to be stored", e);
+        }
+        return pending.persisted;
+    }
+
+    /**
+     * Writes a batch of tokens. The tokens which were written are marked as done.
+     *
+     * @param batch tokens to write
+     * @return tokens which could not be written
+     */
+    private List<PendingAccessToken> persist(List<PendingAccessToken> batch) {
+        Map<String, List<PendingAccessToken>> tokensByDomain = new HashMap<String, List<PendingAccessToken>>();
+        for (PendingAccessToken pending : batch) {
+            List<PendingAccessToken> tokens = tokensByDomain.get(pending.userStoreDomain);
+            if (tokens == null) {
+                tokens = new ArrayList<PendingAccessToken>();
+                tokensByDomain.put(pending.userStoreDomain, tokens);
+            }
+            tokens.add(pending);
+        }
+        List<PendingAccessToken> failed = new ArrayList<PendingAccessToken>();
+        for (Map.Entry<String, List<PendingAccessToken>> entry : tokensByDomain.entrySet()) {
+            List<AccessTokenDO> accessTokenDOs = new ArrayList<AccessTokenDO>();
+            for (PendingAccessToken pending : entry.getValue()) {
+                accessTokenDOs.add(pending.accessTokenDO);
+            }
+            try {
+                List<AccessTokenDO> failedDOs = getTokenMgtDAO().storeAccessTokens(accessTokenDOs, entry.getKey());
+                for (PendingAccessToken pending : entry.getValue()) {
+                    if (failedDOs.contains(pending.accessTokenDO)) {
+                        failed.add(pending);
+                    } else {
+                        done(pending, true);
+                    }
+                }
+            } catch (IdentityOAuth2Exception e) {
+                log.error("Error while persisting a batch of " + accessTokenDOs.size() + " access tokens", e);
+                failed.addAll(entry.getValue());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Puts the tokens which could not be written back on the queue, or gives up on the tokens
+     * which failed too many times
+     */
+    private void retry(List<PendingAccessToken> failed) {
+        for (PendingAccessToken pending : failed) {
+            if (pending.done.getCount() == 0) {
+                continue;
+            }
+            boolean queued = false;
+            if (++pending.attempts < MAX_PERSIST_ATTEMPTS && !shutdown) {
+                // a flush may claim the token as soon as it is released
+                pending.claimed.set(false);
+                queued = queue.offer(pending) || !pending.claimed.compareAndSet(false, true);
+            }
+            if (!queued) {
+                log.error("Access token of consumer key : " + pending.accessTokenDO.getConsumerKey() +
+                        " could not be stored after " + pending.attempts + " attempts");
+                done(pending, false);
+            }
+        }
+    }
+
+    private void done(List<PendingAccessToken> tokens, boolean persisted) {
+        for (PendingAccessToken pending : tokens) {
+            done(pending, persisted);
+        }
+    }
+
+    private void done(PendingAccessToken pending, boolean persisted) {
+        pending.persisted = persisted;
+        pendingTokens.remove(pending.accessTokenDO.getAccessToken(), pending);
+        unindex(pending);
+        pending.done.countDown();
+    }
+
+    private void index(PendingAccessToken pending) {
+        String user = pending.accessTokenDO.getAuthzUser().toLowerCase();
+        while (true) {
+            Set<PendingAccessToken> tokens = pendingTokensByUser.get(user);
+            if (tokens == null) {
+                Set<PendingAccessToken> newTokens =
+                        Collections.newSetFromMap(new ConcurrentHashMap<PendingAccessToken, Boolean>());
+                tokens = pendingTokensByUser.putIfAbsent(user, newTokens);
+                if (tokens == null) {
+                    tokens = newTokens;
+                }
+            }
+            synchronized (tokens) {
+                // the set is dropped once it is empty, and a new one is added for the user then
+                if (pendingTokensByUser.get(user) == tokens) {
+                    tokens.add(pending);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unindex(PendingAccessToken pending) {
+        String user = pending.accessTokenDO.getAuthzUser().toLowerCase();
+        Set<PendingAccessToken> tokens = pendingTokensByUser.get(user);
+        if (tokens == null) {
+            return;
+        }
+        synchronized (tokens) {
+            if (tokens.remove(pending) && tokens.isEmpty()) {
+                pendingTokensByUser.remove(user, tokens);
+            }
+        }
+    }
+
+    /**
+     * Adds the tokens which are claimed by the caller to the batch. The others have been written,
+     * or are being written, by a flush already.
+     */
+    private void claim(List<PendingAccessToken> tokens, List<PendingAccessToken> batch) {
+        for (PendingAccessToken pending : tokens) {
+            if (pending.claimed.compareAndSet(false, true)) {
+                batch.add(pending);
+            }
+        }
+    }
+
+    private TokenMgtDAO getTokenMgtDAO() {
+        if (tokenMgtDAO == null) {
+            tokenMgtDAO = new TokenMgtDAO();
+        }
+        return tokenMgtDAO;
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingAccessToken> drained = new ArrayList<PendingAccessToken>();
+            List<PendingAccessToken> batch = new ArrayList<PendingAccessToken>();
+            while (!shutdown || !queue.isEmpty()) {
+                try {
+                    PendingAccessToken first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        drained.add(first);
+                        queue.drainTo(drained, batchSize - 1);
+                        claim(drained, batch);
+                        if (!batch.isEmpty()) {
+                            retry(persist(batch));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable e) {
+                    log.error("Error while persisting access tokens", e);
+                    retry(batch);
+                } finally {
+                    drained.clear();
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private static class PendingAccessToken {
+
+        private final AccessTokenDO accessTokenDO;
+        private final String userStoreDomain;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // set by the writer or the flush which writes the token
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile boolean persisted;
+        private int attempts;
+
+        private PendingAccessToken(AccessTokenDO accessTokenDO, String userStoreDomain) {
+            this.accessTokenDO = accessTokenDO;
+            this.userStoreDomain = userStoreDomain;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+*Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.core.persistence.JDBCPersistenceManager;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes access tokens and authorization codes which can no longer be used, from
+ * the access token table, each partitioned access token table and the authorization code table.
+ * <p/>
+ * An access token is deleted once it has expired, and for active and expired tokens, once its
+ * refresh token has expired too. Revoked tokens are kept until they expire, since self-contained
+ * tokens are checked against them. An authorization code is deleted once it has expired.
+ * <p/>
+ * Each table is scanned in the order of creation time and key, through an index on them, a batch
+ * of rows at a time, and the purged rows of a batch are deleted in a single JDBC batch. The purger
+ * pauses between batches, so that it does not contend with token issuance. The number of purged
+ * rows and the number of rows created since the previous run are kept per table.
+ * <p/>
+ * The position of the first row which was kept is remembered for each table, and the next run
+ * starts from there, since the rows before it are purged. Rows may still be written with an
+ * earlier creation time, e.g. by another node or by the access token write-behind queue, hence
+ * each table is scanned from the start once a day.
+ */
+public class ExpiredTokenPurger {
+
+    private static final Log log = LogFactory.getLog(ExpiredTokenPurger.class);
+
+    private static final String AUTHORIZATION_CODE_TABLE = "IDN_OAUTH2_AUTHORIZATION_CODE";
+
+    private static final String TOKEN_STATE_INACTIVE = "INACTIVE";
+
+    private static final long FULL_SCAN_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private static final ExpiredTokenPurger instance = new ExpiredTokenPurger();
+
+    private ScheduledExecutorService scheduler;
+
+    private AtomicLong purgedAccessTokens = new AtomicLong();
+
+    private AtomicLong purgedAuthorizationCodes = new AtomicLong();
+
+    private Map<String, Long> purgedRowsInLastRun = new ConcurrentHashMap<String, Long>();
+
+    private Map<String, Long> createdRowsSinceLastRun = new ConcurrentHashMap<String, Long>();
+
+    // position up to which all the rows of each table are purged
+    private Map<String, Row> purgedUpTo = new ConcurrentHashMap<String, Row>();
+
+    private Map<String, Long> lastFullScanTime = new ConcurrentHashMap<String, Long>();
+
+    private volatile Timestamp lastRunTime;
+
+    private ExpiredTokenPurger() {
+    }
+
+    public static ExpiredTokenPurger getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedules the purger, if the token cleanup is enabled
+     */
+    public synchronized void start() {
+        OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+        if (!config.isTokenCleanupEnabled() || scheduler != null) {
+            return;
+        }
+        long interval = config.getTokenCleanupIntervalInSeconds();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    purge();
+                } catch (Throwable e) {
+                    log.error("Error while purging expired tokens", e);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        if (log.isDebugEnabled()) {
+            log.debug("Expired token purger is scheduled to run every " + interval + "s");
+        }
+    }
+
+    /**
+     * Stops the purger. A batch which is being deleted is completed.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Deletes the access tokens and authorization codes which can no longer be used
+     *
+     * @throws IdentityOAuth2Exception if the access token tables could not be resolved
+     */
+    public void purge() throws IdentityOAuth2Exception {
+        Timestamp runTime = new Timestamp(System.currentTimeMillis());
+        for (String accessTokenStoreTable : OAuth2Util.getAccessTokenStoreTables()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            long purged = purgeTable(accessTokenStoreTable, true,
+                    SQLQueries.GET_ACCESS_TOKENS_CREATED_BETWEEN, SQLQueries.REMOVE_ACCESS_TOKEN,
+                    SQLQueries.COUNT_ACCESS_TOKENS_CREATED_AFTER, "IDN_OAUTH2_ACCESS_TOKEN");
+            purgedAccessTokens.addAndGet(purged);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        long purged = purgeTable(AUTHORIZATION_CODE_TABLE, false,
+                SQLQueries.GET_AUTHZ_CODES_CREATED_BETWEEN, SQLQueries.REMOVE_AUTHZ_CODE,
+                SQLQueries.COUNT_AUTHZ_CODES_CREATED_AFTER, AUTHORIZATION_CODE_TABLE);
+        purgedAuthorizationCodes.addAndGet(purged);
+        lastRunTime = runTime;
+    }
+
+    /**
+     * @return number of access tokens purged since the server was started
+     */
+    public long getPurgedAccessTokenCount() {
+        return purgedAccessTokens.get();
+    }
+
+    /**
+     * @return number of authorization codes purged since the server was started
+     */
+    public long getPurgedAuthorizationCodeCount() {
+        return purgedAuthorizationCodes.get();
+    }
+
+    /**
+     * @return number of rows purged from each table in the last run
+     */
+    public Map<String, Long> getPurgedRowsInLastRun() {
+        return Collections.unmodifiableMap(purgedRowsInLastRun);
+    }
+
+    /**
+     * @return number of rows created in each table between the last two runs
+     */
+    public Map<String, Long> getCreatedRowsSinceLastRun() {
+        return Collections.unmodifiableMap(createdRowsSinceLastRun);
+    }
+
+    private long purgeTable(String table, boolean accessTokens, String selectSQL, String deleteSQL,
+                            String countSQL, String defaultTable) {
+        OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+        int batchSize = config.getTokenCleanupBatchSize();
+        long batchPause = config.getTokenCleanupBatchPause();
+        long refreshTokenValidity = config.getRefreshTokenValidityPeriodInSeconds() * 1000;
+        selectSQL = selectSQL.replace(defaultTable, table);
+        deleteSQL = deleteSQL.replace(defaultTable, table);
+        countSQL = countSQL.replace(defaultTable, table);
+
+        long currentTime = System.currentTimeMillis();
+        Row start = purgedUpTo.get(table);
+        Long lastFullScan = lastFullScanTime.get(table);
+        if (start == null || lastFullScan == null || currentTime - lastFullScan >= FULL_SCAN_INTERVAL) {
+            start = new Row(new Timestamp(0), "", true);
+            lastFullScanTime.put(table, currentTime);
+        }
+        Timestamp createdBefore = new Timestamp(currentTime);
+        Row cursor = start;
+        // whether all the rows read so far are purged
+        boolean purgedAll = true;
+        long purged = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Row> rows = readBatch(selectSQL, cursor, createdBefore, batchSize, accessTokens,
+                        currentTime, refreshTokenValidity);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<String> purgeable = new ArrayList<String>();
+                Row lastPurged = null;
+                for (Row row : rows) {
+                    if (row.purgeable) {
+                        purgeable.add(row.key);
+                        if (purgedAll) {
+                            lastPurged = row;
+                        }
+                    } else {
+                        purgedAll = false;
+                    }
+                }
+                if (!purgeable.isEmpty()) {
+                    purged += deleteBatch(deleteSQL, purgeable);
+                }
+                if (lastPurged != null) {
+                    purgedUpTo.put(table, lastPurged);
+                }
+                cursor = rows.get(rows.size() - 1);
+                if (batchPause > 0) {
+                    Thread.sleep(batchPause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IdentityException e) {
+            log.error("Error when getting an Identity Persistence Store instance.", e);
+        } catch (SQLException e) {
+            log.error("Error while purging expired rows from " + table, e);
+        }
+
+        purgedRowsInLastRun.put(table, purged);
+        Long created = countCreatedRows(countSQL, table);
+        if (created != null) {
+            createdRowsSinceLastRun.put(table, created);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Purged " + purged + " rows from " + table + ", " + created +
+                    " rows were created since the last run");
+        }
+        return purged;
+    }
+
+    // reads a batch of rows which follow the given row and were created before the given time,
+    // and marks the ones which can be purged
+    private List<Row> readBatch(String selectSQL, Row after, Timestamp createdBefore, int batchSize,
+                                boolean accessTokens, long currentTime, long refreshTokenValidity)
+            throws IdentityException, SQLException {
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        List<Row> rows = new ArrayList<Row>();
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            prepStmt = connection.prepareStatement(selectSQL);
+            prepStmt.setMaxRows(batchSize);
+            prepStmt.setTimestamp(1, after.timeCreated, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            prepStmt.setTimestamp(2, after.timeCreated, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            prepStmt.setString(3, after.key);
+            prepStmt.setTimestamp(4, createdBefore, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                Timestamp timeCreated = resultSet.getTimestamp(2, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                long expiryTime = timeCreated.getTime() + resultSet.getLong(3);
+                if (accessTokens) {
+                    String tokenState = resultSet.getString(4);
+                    boolean revoked = OAuthConstants.TokenStates.TOKEN_STATE_REVOKED.equals(tokenState) ||
+                            TOKEN_STATE_INACTIVE.equals(tokenState);
+                    // the refresh token of an active or expired token may outlive the access token
+                    if (!revoked) {
+                        expiryTime = Math.max(expiryTime, timeCreated.getTime() + refreshTokenValidity);
+                    }
+                }
+                rows.add(new Row(timeCreated, resultSet.getString(1), expiryTime < currentTime));
+            }
+            connection.commit();
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return rows;
+    }
+
+    private int deleteBatch(String deleteSQL, List<String> purgeable) throws IdentityException, SQLException {
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            connection.setAutoCommit(false);
+            prepStmt = connection.prepareStatement(deleteSQL);
+            for (String key : purgeable) {
+                prepStmt.setString(1, key);
+                prepStmt.addBatch();
+            }
+            prepStmt.executeBatch();
+            connection.commit();
+            return purgeable.size();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw e;
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    private Long countCreatedRows(String countSQL, String table) {
+        Timestamp since = lastRunTime;
+        if (since == null) {
+            return null;
+        }
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            prepStmt = connection.prepareStatement(countSQL);
+            prepStmt.setTimestamp(1, since, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+            resultSet = prepStmt.executeQuery();
+            Long count = resultSet.next() ? resultSet.getLong(1) : 0L;
+            connection.commit();
+            return count;
+        } catch (IdentityException e) {
+            log.error("Error when getting an Identity Persistence Store instance.", e);
+        } catch (SQLException e) {
+            log.error("Error while counting the rows created in " + table, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return null;
+    }
+
+    private static class Row {
+
+        private final Timestamp timeCreated;
+        private final String key;
+        private final boolean purgeable;
+
+        private Row(Timestamp timeCreated, String key, boolean purgeable) {
+            this.timeCreated = timeCreated;
+            this.key = key;
+            this.purgeable = purgeable;
+        }
+    }
+}
@@ -69,4 +69,29 @@ public class SQLQueries {
 
     public static final String GET_TOKEN_STATE = "SELECT TOKEN_STATE FROM IDN_OAUTH2_ACCESS_TOKEN " +
             "WHERE CONSUMER_KEY = ? AND AUTHZ_USER = ? AND TOKEN_SCOPE = ? AND TOKEN_STATE_ID = 'NONE'";
+
+    public static final String GET_ACCESS_TOKENS_BY_STATE_ID = "SELECT ACCESS_TOKEN, TIME_CREATED, VALIDITY_PERIOD " +
+            "FROM IDN_OAUTH2_ACCESS_TOKEN WHERE CONSUMER_KEY=? AND AUTHZ_USER=? AND TOKEN_STATE_ID=?";
+
+    public static final String GET_ACCESS_TOKEN_EXPIRY = "SELECT ACCESS_TOKEN, TIME_CREATED, VALIDITY_PERIOD " +
+            "FROM IDN_OAUTH2_ACCESS_TOKEN WHERE ACCESS_TOKEN=?";
+
+    public static final String GET_REVOKED_ACCESS_TOKENS_CREATED_AFTER = "SELECT ACCESS_TOKEN, TIME_CREATED, " +
+            "VALIDITY_PERIOD FROM IDN_OAUTH2_ACCESS_TOKEN WHERE TIME_CREATED > ? AND " +
+            "(TOKEN_STATE='REVOKED' OR TOKEN_STATE='INACTIVE') ORDER BY TIME_CREATED DESC";
+
+    public static final String GET_ACCESS_TOKENS_CREATED_BETWEEN = "SELECT ACCESS_TOKEN, TIME_CREATED, " +
+            "VALIDITY_PERIOD, TOKEN_STATE FROM IDN_OAUTH2_ACCESS_TOKEN WHERE (TIME_CREATED > ? OR " +
+            "(TIME_CREATED = ? AND ACCESS_TOKEN > ?)) AND TIME_CREATED < ? ORDER BY TIME_CREATED, ACCESS_TOKEN";
+
+    public static final String GET_AUTHZ_CODES_CREATED_BETWEEN = "SELECT AUTHORIZATION_CODE, TIME_CREATED, " +
+            "VALIDITY_PERIOD FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE (TIME_CREATED > ? OR " +
+            "(TIME_CREATED = ? AND AUTHORIZATION_CODE > ?)) AND TIME_CREATED < ? " +
+            "ORDER BY TIME_CREATED, AUTHORIZATION_CODE";
+
+    public static final String COUNT_ACCESS_TOKENS_CREATED_AFTER = "SELECT COUNT(*) FROM IDN_OAUTH2_ACCESS_TOKEN " +
+            "WHERE TIME_CREATED > ?";
+
+    public static final String COUNT_AUTHZ_CODES_CREATED_AFTER = "SELECT COUNT(*) FROM IDN_OAUTH2_AUTHORIZATION_CODE " +
+            "WHERE TIME_CREATED > ?";
 }
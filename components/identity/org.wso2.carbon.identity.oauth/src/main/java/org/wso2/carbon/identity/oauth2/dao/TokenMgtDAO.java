@@ -24,6 +24,7 @@ import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.core.model.OAuthAppDO;
 import org.wso2.carbon.identity.core.persistence.JDBCPersistenceManager;
 import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenNearCache;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
@@ -34,6 +35,8 @@ import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.AuthzCodeDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
+import org.wso2.carbon.identity.oauth2.token.AccessTokenRevocationList;
+import org.wso2.carbon.identity.oauth2.token.JWTAccessTokenBuilder;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 import java.sql.*;
@@ -93,30 +96,10 @@ public class TokenMgtDAO {
                                  String userStoreDomain) throws IdentityOAuth2Exception {
 
         PreparedStatement prepStmt = null;
-        String accessTokenStoreTable = "IDN_OAUTH2_ACCESS_TOKEN";
-        if (userStoreDomain != null) {
-            accessTokenStoreTable = accessTokenStoreTable + "_" + userStoreDomain;
-        }
-        String sql = "INSERT INTO " +
-                accessTokenStoreTable +
-                " (ACCESS_TOKEN, REFRESH_TOKEN, CONSUMER_KEY, AUTHZ_USER, TIME_CREATED, " +
-                "VALIDITY_PERIOD, TOKEN_SCOPE, TOKEN_STATE, USER_TYPE) " +
-                "VALUES (?,?,?,?,?,?,?,?,?)";
+        String sql = getStoreAccessTokenSQL(userStoreDomain);
         try {
             prepStmt = connection.prepareStatement(sql);
-            prepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(accessToken));
-            if(accessTokenDO.getRefreshToken() != null){
-                prepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(accessTokenDO.getRefreshToken()));
-            } else {
-                prepStmt.setString(2, accessTokenDO.getRefreshToken());
-            }
-            prepStmt.setString(3, persistenceProcessor.getProcessedClientId(consumerKey));
-            prepStmt.setString(4, accessTokenDO.getAuthzUser().toLowerCase());
-            prepStmt.setTimestamp(5, accessTokenDO.getIssuedTime(), Calendar.getInstance(TimeZone.getTimeZone("UTC")));
-            prepStmt.setLong(6, accessTokenDO.getValidityPeriod() * 1000);
-            prepStmt.setString(7, OAuth2Util.buildScopeString(accessTokenDO.getScope()));
-            prepStmt.setString(8, accessTokenDO.getTokenState());
-            prepStmt.setString(9, accessTokenDO.getTokenType());
+            setStoreAccessTokenParameters(prepStmt, accessToken, consumerKey, accessTokenDO);
             prepStmt.execute();
         } catch (SQLException e) {
             log.error("Error when executing the SQL : " + sql);
@@ -154,6 +137,107 @@ public class TokenMgtDAO {
         return false;
     }
 
+    /**
+     * Stores the given access token, or queues it to be stored in a batch when write-behind
+     * persistence of access tokens is enabled.
+     *
+     * @param accessToken     access token
+     * @param consumerKey     consumer key of the client
+     * @param accessTokenDO   issued access token
+     * @param userStoreDomain user store domain of the access token table, if partitioned
+     * @throws IdentityOAuth2Exception if the token could not be stored
+     */
+    public void persistAccessToken(String accessToken, String consumerKey, AccessTokenDO accessTokenDO,
+                                   String userStoreDomain) throws IdentityOAuth2Exception {
+        AccessTokenPersistenceQueue persistenceQueue = AccessTokenPersistenceQueue.getInstance();
+        if (persistenceQueue.isEnabled() && accessToken.equals(accessTokenDO.getAccessToken()) &&
+                consumerKey.equals(accessTokenDO.getConsumerKey())) {
+            persistenceQueue.add(accessTokenDO, userStoreDomain);
+        } else {
+            storeAccessToken(accessToken, consumerKey, accessTokenDO, userStoreDomain);
+        }
+    }
+
+    /**
+     * Stores the given access tokens of a single access token table in one batch. If the batch
+     * fails, e.g. a token violates a unique key constraint, the tokens are stored one by one.
+     *
+     * @param accessTokenDOs  access tokens
+     * @param userStoreDomain user store domain of the access token table, if partitioned
+     * @return access tokens which could not be stored one by one, after the batch failed
+     * @throws IdentityOAuth2Exception if a database connection could not be obtained
+     */
+    public List<AccessTokenDO> storeAccessTokens(List<AccessTokenDO> accessTokenDOs, String userStoreDomain)
+            throws IdentityOAuth2Exception {
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        String sql = getStoreAccessTokenSQL(userStoreDomain);
+        boolean batchFailed = false;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            connection.setAutoCommit(false);
+            prepStmt = connection.prepareStatement(sql);
+            for (AccessTokenDO accessTokenDO : accessTokenDOs) {
+                setStoreAccessTokenParameters(prepStmt, accessTokenDO.getAccessToken(),
+                        accessTokenDO.getConsumerKey(), accessTokenDO);
+                prepStmt.addBatch();
+            }
+            prepStmt.executeBatch();
+            connection.commit();
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new IdentityOAuth2Exception(errorMsg, e);
+        } catch (SQLException e) {
+            log.warn("Error while storing a batch of " + accessTokenDOs.size() + " access tokens, " +
+                    "storing them one by one : " + e.getMessage());
+            IdentityDatabaseUtil.rollBack(connection);
+            batchFailed = true;
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+        List<AccessTokenDO> failedDOs = new ArrayList<AccessTokenDO>();
+        if (batchFailed) {
+            for (AccessTokenDO accessTokenDO : accessTokenDOs) {
+                if (!storeAccessToken(accessTokenDO.getAccessToken(), accessTokenDO.getConsumerKey(),
+                        accessTokenDO, userStoreDomain)) {
+                    failedDOs.add(accessTokenDO);
+                }
+            }
+        }
+        return failedDOs;
+    }
+
+    private String getStoreAccessTokenSQL(String userStoreDomain) {
+        String accessTokenStoreTable = "IDN_OAUTH2_ACCESS_TOKEN";
+        if (userStoreDomain != null) {
+            accessTokenStoreTable = accessTokenStoreTable + "_" + userStoreDomain;
+        }
+        return "INSERT INTO " +
+                accessTokenStoreTable +
+                " (ACCESS_TOKEN, REFRESH_TOKEN, CONSUMER_KEY, AUTHZ_USER, TIME_CREATED, " +
+                "VALIDITY_PERIOD, TOKEN_SCOPE, TOKEN_STATE, USER_TYPE) " +
+                "VALUES (?,?,?,?,?,?,?,?,?)";
+    }
+
+    private void setStoreAccessTokenParameters(PreparedStatement prepStmt, String accessToken,
+                                               String consumerKey, AccessTokenDO accessTokenDO)
+            throws SQLException, IdentityOAuth2Exception {
+        prepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(accessToken));
+        if(accessTokenDO.getRefreshToken() != null){
+            prepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(accessTokenDO.getRefreshToken()));
+        } else {
+            prepStmt.setString(2, accessTokenDO.getRefreshToken());
+        }
+        prepStmt.setString(3, persistenceProcessor.getProcessedClientId(consumerKey));
+        prepStmt.setString(4, accessTokenDO.getAuthzUser().toLowerCase());
+        prepStmt.setTimestamp(5, accessTokenDO.getIssuedTime(), Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+        prepStmt.setLong(6, accessTokenDO.getValidityPeriod() * 1000);
+        prepStmt.setString(7, OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+        prepStmt.setString(8, accessTokenDO.getTokenState());
+        prepStmt.setString(9, accessTokenDO.getTokenType());
+    }
+
     public AccessTokenDO getValidAccessTokenIfExist(String consumerKey, String userName,
                                                                String userStoreDomain, String scope)
             throws IdentityOAuth2Exception {
@@ -164,6 +248,7 @@ public class TokenMgtDAO {
     public AccessTokenDO getValidAccessTokenIfExist(String consumerKey, String userName,
                                                                String userStoreDomain, String scope, boolean includeExpiredTokens)
                 throws IdentityOAuth2Exception {
+                AccessTokenPersistenceQueue.getInstance().flush(consumerKey, userName);
                 Connection connection = null;
                 try {
                         connection = JDBCPersistenceManager.getInstance().getDBConnection();
@@ -180,6 +265,7 @@ public class TokenMgtDAO {
     public AccessTokenDO getValidAccessTokenIfExist(String consumerKey, String userName,
                                                                String userStoreDomain, boolean includeExpiredTokens)
             throws IdentityOAuth2Exception {
+        AccessTokenPersistenceQueue.getInstance().flush(consumerKey, userName);
         Connection connection = null;
         try {
             connection = JDBCPersistenceManager.getInstance().getDBConnection();
@@ -608,6 +694,7 @@ public class TokenMgtDAO {
     }
 
     public void cleanUpAccessToken(String accessToken) throws IdentityOAuth2Exception {
+        AccessTokenPersistenceQueue.getInstance().flush(accessToken);
         Connection connection = null;
         PreparedStatement prepStmt = null;
         String userStoreDomain = null;
@@ -646,6 +733,15 @@ public class TokenMgtDAO {
 
     public AccessTokenDO retrieveAccessToken(String accessTokenIdentifier) throws IdentityOAuth2Exception {
 
+        // tokens which are not written yet are served from the persistence queue
+        if (AccessTokenPersistenceQueue.getInstance().isEnabled()) {
+            AccessTokenDO pendingDO = AccessTokenPersistenceQueue.getInstance()
+                    .getPendingAccessToken(accessTokenIdentifier);
+            if (pendingDO != null) {
+                return pendingDO;
+            }
+        }
+
         AccessTokenDO dataDO = null;
         Connection connection = null;
         PreparedStatement prepStmt = null;
@@ -713,6 +809,7 @@ public class TokenMgtDAO {
     public void setAccessTokenState(String consumerKey, String authorizedUser, String tokenState,
                                     String tokenStateId, String userStoreDomain, String scope)
             throws IdentityOAuth2Exception {
+        AccessTokenPersistenceQueue.getInstance().flush(consumerKey, authorizedUser);
         Connection connection = null;
         PreparedStatement prepStmt = null;
         try {
@@ -739,6 +836,16 @@ public class TokenMgtDAO {
             prepStmt.setString(5, scope);
             prepStmt.executeUpdate();
             connection.commit();
+            if (AccessTokenNearCache.getInstance().isEnabled()) {
+                AccessTokenNearCache.getInstance().clearCacheEntries(consumerKey, authorizedUser);
+            }
+            if (JWTAccessTokenBuilder.getInstance().isEnabled() &&
+                    !OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED.equals(tokenState)) {
+                addRevokedTokens(connection, SQLQueries.GET_ACCESS_TOKENS_BY_STATE_ID.replace(
+                        "IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable),
+                        persistenceProcessor.getProcessedClientId(consumerKey), authorizedUser.toLowerCase(),
+                        tokenStateId);
+            }
         } catch (IdentityException e) {
             String errorMsg = "Error when getting an Identity Persistence Store instance.";
             log.error(errorMsg, e);
@@ -761,6 +868,8 @@ public class TokenMgtDAO {
      */
     public void revokeTokensByClient(String token, String consumerKey) throws IdentityOAuth2Exception {
 
+        AccessTokenPersistenceQueue.getInstance().flush(token);
+
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
         Connection connection = null;
         PreparedStatement ps = null;
@@ -782,6 +891,14 @@ public class TokenMgtDAO {
                 log.debug("Number of rows being updated : " + count);
             }
             connection.commit();
+            if (AccessTokenNearCache.getInstance().isEnabled()) {
+                AccessTokenNearCache.getInstance().clearCacheEntry(token);
+            }
+            if (JWTAccessTokenBuilder.getInstance().isEnabled()) {
+                addRevokedTokens(connection, SQLQueries.GET_ACCESS_TOKEN_EXPIRY.replace(
+                        "IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable),
+                        persistenceProcessor.getProcessedAccessTokenIdentifier(token));
+            }
         } catch (SQLException e) {
             log.debug(e.getMessage(), e);
             IdentityDatabaseUtil.rollBack(connection);
@@ -803,6 +920,8 @@ public class TokenMgtDAO {
      */
     public void revokeTokensByResourceOwner(String[] apps, String authzUser) throws IdentityOAuth2Exception {
 
+        AccessTokenPersistenceQueue.getInstance().flush(null, authzUser);
+
         OAuthAppDAO appDAO = new OAuthAppDAO();
         authzUser = authzUser.toLowerCase();
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
@@ -814,17 +933,37 @@ public class TokenMgtDAO {
                 accessTokenStoreTable = OAuth2Util.getAccessTokenStoreTableFromUserId(authzUser);
             }
             OAuthAppDO[] oauthAppDOs =  getAppsAuthorizedByUser(authzUser);
+            List<String> revokedConsumerKeys = new ArrayList<String>();
+            Map<String, String> tokenStateIds = new HashMap<String, String>();
             dbConnection.setAutoCommit(false);
             for (String app : apps) {
                 for(OAuthAppDO appDO:oauthAppDOs){
                     appDO =  appDAO.getAppInformation(appDO.getOauthConsumerKey());
                     if(appDO.getApplicationName().equals(app)){
-                        revokeTokenForApp(dbConnection, appDO.getOauthConsumerKey(), authzUser, accessTokenStoreTable);
+                        String tokenStateId = revokeTokenForApp(dbConnection, appDO.getOauthConsumerKey(),
+                                authzUser, accessTokenStoreTable);
                         org.wso2.carbon.identity.oauth.OAuthUtil.clearOAuthCache(appDO.getOauthConsumerKey(), authzUser);
+                        revokedConsumerKeys.add(appDO.getOauthConsumerKey());
+                        if (tokenStateId != null) {
+                            tokenStateIds.put(appDO.getOauthConsumerKey(), tokenStateId);
+                        }
                     }
                 }
             }
             dbConnection.commit();
+            if (AccessTokenNearCache.getInstance().isEnabled()) {
+                for (String consumerKey : revokedConsumerKeys) {
+                    AccessTokenNearCache.getInstance().clearCacheEntries(consumerKey, authzUser);
+                }
+            }
+            if (JWTAccessTokenBuilder.getInstance().isEnabled()) {
+                for (Map.Entry<String, String> tokenStateId : tokenStateIds.entrySet()) {
+                    addRevokedTokens(dbConnection, SQLQueries.GET_ACCESS_TOKENS_BY_STATE_ID.replace(
+                            "IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable),
+                            persistenceProcessor.getProcessedClientId(tokenStateId.getKey()), authzUser,
+                            tokenStateId.getValue());
+                }
+            }
         } catch (SQLException e) {
             log.debug(e.getMessage(), e);
             IdentityDatabaseUtil.rollBack(dbConnection);
@@ -842,7 +981,11 @@ public class TokenMgtDAO {
 
     }
 
-    private void revokeTokenForApp(Connection dbConnection, String consumerKey, String authzUser, String accessTokenStoreTable)
+    /**
+     * @return state identifier the revoked access tokens are marked with, or <code>null</code> if
+     *         there were no access tokens to revoke
+     */
+    private String revokeTokenForApp(Connection dbConnection, String consumerKey, String authzUser, String accessTokenStoreTable)
             throws IdentityOAuth2Exception, SQLException {
 
         String userStoreDomain = null;
@@ -855,8 +998,9 @@ public class TokenMgtDAO {
             String sqlQuery = SQLQueries.REVOKE_ALL_ACCESS_TOKEN_BY_RESOURCE_OWNER.replace("IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable);
             PreparedStatement ps = null;
             ps = dbConnection.prepareStatement(sqlQuery);
+            String tokenStateId = UUID.randomUUID().toString();
             ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
-            ps.setString(2, UUID.randomUUID().toString());
+            ps.setString(2, tokenStateId);
             ps.setString(3, persistenceProcessor.getProcessedClientId(consumerKey));
             ps.setString(4, authzUser.toLowerCase());
 //            ps.setString(5, persistenceProcessor.getProcessedAccessTokenIdentifier(accessTokenDO.getAccessToken()));
@@ -864,7 +1008,107 @@ public class TokenMgtDAO {
             if (log.isDebugEnabled()) {
                 log.debug("Number of rows being updated : " + count);
             }
+            return tokenStateId;
+        }
+        return null;
+    }
+
+    /**
+     * Adds the access tokens selected by the given query to the revocation list of self-contained
+     * access tokens. If they could not be read, all the nodes check their access tokens again.
+     *
+     * @param connection database connection
+     * @param sql        query which selects the identifier, creation time and validity period of
+     *                   the revoked access tokens
+     * @param parameters parameters of the query
+     */
+    private void addRevokedTokens(Connection connection, String sql, String... parameters) {
+
+        Map<String, Long> revokedTokens = new HashMap<String, Long>();
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                prepStmt.setString(i + 1, parameters[i]);
+            }
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                long expiryTime = resultSet.getTimestamp(2, Calendar.getInstance(TimeZone.getTimeZone("UTC")))
+                        .getTime() + resultSet.getLong(3);
+                revokedTokens.put(persistenceProcessor.getPreprocessedAccessTokenIdentifier(
+                        resultSet.getString(1)), expiryTime);
+            }
+            AccessTokenRevocationList.getInstance().addRevokedTokens(revokedTokens);
+        } catch (SQLException e) {
+            log.error("Error when executing the SQL : " + sql, e);
+            AccessTokenRevocationList.getInstance().invalidate();
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Error while reading the revoked access tokens", e);
+            AccessTokenRevocationList.getInstance().invalidate();
+        } finally {
+            IdentityDatabaseUtil.closeResultSet(resultSet);
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        }
+    }
+
+    /**
+     * Reads the revoked and deactivated access tokens which are not expired yet, latest first
+     *
+     * @param createdAfter only the tokens created after this time are read
+     * @param maxTokens    maximum number of tokens read
+     * @return expiry time in milliseconds against each access token identifier
+     * @throws IdentityOAuth2Exception if the tokens could not be read
+     */
+    public Map<String, Long> getRevokedAccessTokens(Timestamp createdAfter, int maxTokens)
+            throws IdentityOAuth2Exception {
+
+        Map<String, Long> revokedTokens = new HashMap<String, Long>();
+        long currentTime = System.currentTimeMillis();
+        Connection connection = null;
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        String sql = SQLQueries.GET_REVOKED_ACCESS_TOKENS_CREATED_AFTER;
+        try {
+            connection = JDBCPersistenceManager.getInstance().getDBConnection();
+            for (String accessTokenStoreTable : OAuth2Util.getAccessTokenStoreTables()) {
+                if (revokedTokens.size() >= maxTokens) {
+                    break;
+                }
+                sql = SQLQueries.GET_REVOKED_ACCESS_TOKENS_CREATED_AFTER.replace(
+                        "IDN_OAUTH2_ACCESS_TOKEN", accessTokenStoreTable);
+                prepStmt = connection.prepareStatement(sql);
+                prepStmt.setMaxRows(maxTokens - revokedTokens.size());
+                prepStmt.setTimestamp(1, createdAfter, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                resultSet = prepStmt.executeQuery();
+                while (resultSet.next()) {
+                    long expiryTime = resultSet.getTimestamp(2, Calendar.getInstance(TimeZone.getTimeZone("UTC")))
+                            .getTime() + resultSet.getLong(3);
+                    if (expiryTime > currentTime) {
+                        revokedTokens.put(persistenceProcessor.getPreprocessedAccessTokenIdentifier(
+                                resultSet.getString(1)), expiryTime);
+                    }
+                }
+                IdentityDatabaseUtil.closeResultSet(resultSet);
+                IdentityDatabaseUtil.closeStatement(prepStmt);
+                resultSet = null;
+                prepStmt = null;
+            }
+            connection.commit();
+        } catch (IdentityOAuth2Exception e) {
+            throw e;
+        } catch (IdentityException e) {
+            String errorMsg = "Error when getting an Identity Persistence Store instance.";
+            log.error(errorMsg, e);
+            throw new IdentityOAuth2Exception(errorMsg, e);
+        } catch (SQLException e) {
+            log.error("Error when executing the SQL : " + sql);
+            log.error(e.getMessage(), e);
+            throw new IdentityOAuth2Exception("Error while reading the revoked access tokens", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
         }
+        return revokedTokens;
     }
 
     /**
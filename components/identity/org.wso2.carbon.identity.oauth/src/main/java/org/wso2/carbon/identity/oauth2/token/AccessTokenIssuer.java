@@ -206,6 +206,16 @@ public class AccessTokenIssuer {
         tokenRespDTO = authzGrantHandler.issue(tokReqMsgCtx);
         tokenRespDTO.setCallbackURI(oAuthAppDO.getCallbackUrl());
 
+        // hand out the issued access token as a signed self-contained token, if enabled
+        JWTAccessTokenBuilder jwtAccessTokenBuilder = JWTAccessTokenBuilder.getInstance();
+        if (jwtAccessTokenBuilder.isEnabled() && !tokenRespDTO.isError() && tokenRespDTO.getAccessToken() != null) {
+            String tokenType = authzGrantHandler.isOfTypeApplicationUser() ?
+                    OAuthConstants.USER_TYPE_FOR_USER_TOKEN : OAuthConstants.USER_TYPE_FOR_APPLICATION_TOKEN;
+            tokenRespDTO.setAccessToken(jwtAccessTokenBuilder.buildAccessToken(tokenRespDTO.getAccessToken(),
+                    tokenReqDTO.getClientId(), tokReqMsgCtx.getAuthorizedUser(), tokReqMsgCtx.getScope(),
+                    tokenRespDTO.getExpiresIn() * 1000, tokenType));
+        }
+
         String[] scopes = tokReqMsgCtx.getScope();
         if(scopes != null && scopes.length > 0){
             StringBuilder scopeString = new StringBuilder("");
@@ -0,0 +1,287 @@
+/*
+*Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.oauth.cache.BaseCache;
+import org.wso2.carbon.identity.oauth.cache.CacheEntry;
+import org.wso2.carbon.identity.oauth.cache.CacheKey;
+import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory list of the identifiers of revoked self-contained access tokens, which lets such
+ * tokens be rejected without a database lookup. Only tokens which have not expired yet are kept,
+ * since expired tokens are rejected anyway.
+ * <p/>
+ * The list is updated incrementally. The node which revokes or deactivates tokens adds them to its
+ * list, and publishes them as a revocation event to a distributed cache. Each event refers to the
+ * event it follows. Every node looks up the latest event at most once per configured check
+ * interval, and adds its tokens when it follows the last event the node has seen.
+ * <p/>
+ * A token which is not in the list is taken as valid, and the database is not read to validate a
+ * token. The list is resynchronized from the database when a node misses events, e.g. the events
+ * published before it started, and at most once per resync interval otherwise. A resync reads at
+ * most a bounded number of the latest revoked tokens, and only the tokens created within the
+ * configured access token validity period.
+ */
+public class AccessTokenRevocationList {
+
+    private static Log log = LogFactory.getLog(AccessTokenRevocationList.class);
+
+    private static final String INVALIDATION_CACHE_NAME = "OAuthTokenInvalidationCache";
+
+    private static final CacheKey REVOCATION_EVENT_KEY = new OAuthCacheKey("TokenRevocationEvent");
+
+    private static final int MAX_PUBLISH_ATTEMPTS = 5;
+
+    private static final int MAX_RESYNCED_TOKENS = 100000;
+
+    private static final long RESYNC_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    private static final AccessTokenRevocationList instance = new AccessTokenRevocationList();
+
+    // revoked tokens by identifier, with their expiry time
+    private ConcurrentMap<String, Long> revokedTokens = new ConcurrentHashMap<String, Long>();
+
+    private BaseCache<CacheKey, CacheEntry> invalidationCache =
+            new BaseCache<CacheKey, CacheEntry>(INVALIDATION_CACHE_NAME);
+
+    private AtomicLong lastRevocationCheck = new AtomicLong();
+
+    private AtomicLong lastResync = new AtomicLong();
+
+    // whether events were missed since the last resync, which is the case until the first one
+    private volatile boolean resyncRequired = true;
+
+    private volatile String lastSeenStamp;
+
+    private AccessTokenRevocationList() {
+    }
+
+    public static AccessTokenRevocationList getInstance() {
+        return instance;
+    }
+
+    /**
+     * Checks whether the given access token has been revoked
+     *
+     * @param accessTokenDO access token read from a JWT, with the validity period in milliseconds
+     * @return <code>true</code> if the token is in the list of revoked tokens
+     */
+    public boolean isRevoked(AccessTokenDO accessTokenDO) {
+        checkRevocationEvents();
+        String accessTokenIdentifier = accessTokenDO.getAccessToken();
+        Long expiryTime = revokedTokens.get(accessTokenIdentifier);
+        if (expiryTime == null) {
+            return false;
+        }
+        if (expiryTime <= System.currentTimeMillis()) {
+            revokedTokens.remove(accessTokenIdentifier, expiryTime);
+        }
+        return true;
+    }
+
+    /**
+     * Adds revoked or deactivated access tokens to the list of this node right away, and
+     * publishes them to the other nodes of the cluster.
+     *
+     * @param tokens expiry time in milliseconds against each access token identifier
+     */
+    public void addRevokedTokens(Map<String, Long> tokens) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        addTokens(tokens);
+        publishRevocationEvent(new HashMap<String, Long>(tokens));
+    }
+
+    /**
+     * Makes all the nodes of the cluster, including this one, resynchronize their lists from the
+     * database, when the tokens which were revoked are not known.
+     */
+    public void invalidate() {
+        resyncRequired = true;
+        try {
+            startSuperTenantFlow();
+            invalidationCache.addToCache(REVOCATION_EVENT_KEY,
+                    new RevocationEvent(UUID.randomUUID().toString(), null, new HashMap<String, Long>()));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void addTokens(Map<String, Long> tokens) {
+        revokedTokens.putAll(tokens);
+    }
+
+    private void checkRevocationEvents() {
+        long currentTime = System.currentTimeMillis();
+        long lastCheck = lastRevocationCheck.get();
+        long interval = OAuthServerConfiguration.getInstance().getSelfContainedAccessTokenRevocationCheckInterval();
+        // only one thread goes to the distributed cache within an interval
+        if (currentTime - lastCheck < interval ||
+                !lastRevocationCheck.compareAndSet(lastCheck, currentTime)) {
+            return;
+        }
+        try {
+            checkLatestEvent(currentTime);
+        } finally {
+            if (resyncRequired || currentTime - lastResync.get() >= RESYNC_INTERVAL) {
+                resync(currentTime);
+            }
+        }
+    }
+
+    private void checkLatestEvent(long currentTime) {
+        CacheEntry entry;
+        try {
+            startSuperTenantFlow();
+            entry = invalidationCache.getValueFromCache(REVOCATION_EVENT_KEY);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (!(entry instanceof RevocationEvent)) {
+            return;
+        }
+        RevocationEvent event = (RevocationEvent) entry;
+        if (event.stamp.equals(lastSeenStamp)) {
+            return;
+        }
+        addTokens(event.tokens);
+        if (lastSeenStamp == null || !lastSeenStamp.equals(event.previousStamp)) {
+            // the tokens of the events which were missed are not known, so they are read from
+            // the database
+            resyncRequired = true;
+            if (log.isDebugEnabled()) {
+                log.debug("Access token revocation events were missed, revoked tokens will be read again");
+            }
+        }
+        lastSeenStamp = event.stamp;
+        removeExpiredTokens(revokedTokens, currentTime);
+    }
+
+    /**
+     * Reads the revoked tokens which are not expired yet from the database. It is called by the
+     * single thread which checks the revocation events within an interval.
+     */
+    private void resync(long currentTime) {
+        lastResync.set(currentTime);
+        resyncRequired = false;
+        OAuthServerConfiguration config = OAuthServerConfiguration.getInstance();
+        long maxValidityPeriod = TimeUnit.SECONDS.toMillis(Math.max(config.getUserAccessTokenValidityPeriodInSeconds(),
+                config.getApplicationAccessTokenValidityPeriodInSeconds()));
+        try {
+            Map<String, Long> tokens = new TokenMgtDAO().getRevokedAccessTokens(
+                    new Timestamp(currentTime - maxValidityPeriod), MAX_RESYNCED_TOKENS);
+            addTokens(tokens);
+            if (tokens.size() >= MAX_RESYNCED_TOKENS) {
+                log.warn("Only the latest " + MAX_RESYNCED_TOKENS + " revoked access tokens are read");
+            }
+        } catch (IdentityOAuth2Exception e) {
+            // tried again once the revocation events are checked next
+            resyncRequired = true;
+            log.error("Error while reading the revoked access tokens", e);
+        }
+        removeExpiredTokens(revokedTokens, currentTime);
+    }
+
+    private void publishRevocationEvent(Map<String, Long> tokens) {
+        try {
+            startSuperTenantFlow();
+            // the event is chained to the latest event with a compare and set, so that concurrent
+            // events of other nodes are not lost
+            for (int i = 0; i < MAX_PUBLISH_ATTEMPTS; i++) {
+                CacheEntry entry = invalidationCache.getValueFromCache(REVOCATION_EVENT_KEY);
+                if (entry instanceof RevocationEvent) {
+                    RevocationEvent latest = (RevocationEvent) entry;
+                    if (invalidationCache.replaceInCache(REVOCATION_EVENT_KEY, latest,
+                            new RevocationEvent(UUID.randomUUID().toString(), latest.stamp, tokens))) {
+                        return;
+                    }
+                } else if (invalidationCache.addToCacheIfAbsent(REVOCATION_EVENT_KEY,
+                        new RevocationEvent(UUID.randomUUID().toString(), null, tokens))) {
+                    return;
+                }
+            }
+            // an event which does not follow any other makes all the nodes check their tokens again
+            invalidationCache.addToCache(REVOCATION_EVENT_KEY,
+                    new RevocationEvent(UUID.randomUUID().toString(), null, tokens));
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void removeExpiredTokens(ConcurrentMap<String, Long> tokens, long currentTime) {
+        for (Map.Entry<String, Long> token : tokens.entrySet()) {
+            if (token.getValue() <= currentTime) {
+                tokens.remove(token.getKey());
+            }
+        }
+    }
+
+    private void startSuperTenantFlow() {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(MultitenantConstants.SUPER_TENANT_ID);
+        carbonContext.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
+    }
+
+    private static class RevocationEvent extends CacheEntry {
+
+        private static final long serialVersionUID = 4102586813745379121L;
+
+        private String stamp;
+
+        private String previousStamp;
+
+        private Map<String, Long> tokens;
+
+        private RevocationEvent(String stamp, String previousStamp, Map<String, Long> tokens) {
+            this.stamp = stamp;
+            this.previousStamp = previousStamp;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RevocationEvent && stamp.equals(((RevocationEvent) o).stamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return stamp.hashCode();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+*Copyright (c) 2005-2013, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*WSO2 Inc. licenses this file to you under the Apache License,
+*Version 2.0 (the "License"); you may not use this file except
+*in compliance with the License.
+*You may obtain a copy of the License at
+*
+*http://www.apache.org/licenses/LICENSE-2.0
+*
+*Unless required by applicable law or agreed to in writing,
+*software distributed under the License is distributed on an
+*"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*KIND, either express or implied.  See the License for the
+*specific language governing permissions and limitations
+*under the License.
+*/
+
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.apache.amber.oauth2.common.utils.JSONUtils;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jettison.json.JSONException;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.authcontext.JWTTokenGenerator;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds and validates self-contained access tokens. Such a token is a JWT signed with the key of
+ * the tenant of the authorized user, which carries the identifier of the access token as its
+ * <code>jti</code> claim together with the client, user, scope and expiry of the token.
+ * <p/>
+ * The access token is still persisted against its identifier, so that refreshing and revoking it
+ * work as for opaque tokens, but validating it only needs the signature and the expiry of the
+ * JWT. Revoked tokens are rejected by the {@link AccessTokenRevocationList}.
+ */
+public class JWTAccessTokenBuilder {
+
+    private static final Log log = LogFactory.getLog(JWTAccessTokenBuilder.class);
+
+    private static final String JWT_HEADER = "{\"typ\":\"JWT\",\"alg\":\"RS256\"}";
+
+    private static final String SHA256_WITH_RSA = "SHA256withRSA";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final JWTAccessTokenBuilder instance = new JWTAccessTokenBuilder();
+
+    private JWTAccessTokenBuilder() {
+    }
+
+    public static JWTAccessTokenBuilder getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return OAuthServerConfiguration.getInstance().isSelfContainedAccessTokenEnabled();
+    }
+
+    /**
+     * Checks whether the given token has the structure of a JWT, i.e. three parts separated by
+     * dots. Opaque access tokens never contain a dot.
+     *
+     * @param token access token
+     * @return <code>true</code> if the token looks like a JWT
+     */
+    public boolean isJWTAccessToken(String token) {
+        int firstDot = token.indexOf('.');
+        if (firstDot < 0) {
+            return false;
+        }
+        int secondDot = token.indexOf('.', firstDot + 1);
+        return secondDot > 0 && token.indexOf('.', secondDot + 1) < 0;
+    }
+
+    /**
+     * Builds a signed JWT for the access token with the given identifier
+     *
+     * @param accessTokenIdentifier identifier the access token is persisted against
+     * @param consumerKey           consumer key of the client
+     * @param authorizedUser        authorized user
+     * @param scope                 scope of the access token
+     * @param expiresInMillis       remaining validity period of the access token
+     * @param tokenType             user type of the access token
+     * @return signed JWT
+     * @throws IdentityOAuth2Exception if the JWT could not be signed
+     */
+    public String buildAccessToken(String accessTokenIdentifier, String consumerKey, String authorizedUser,
+                                   String[] scope, long expiresInMillis, String tokenType)
+            throws IdentityOAuth2Exception {
+
+        long issuedAt = System.currentTimeMillis() / 1000;
+        long expiry = issuedAt + Math.max(expiresInMillis, 0) / 1000;
+
+        Map<String, Object> claims = new LinkedHashMap<String, Object>();
+        claims.put("iss", OAuthServerConfiguration.getInstance().getOpenIDConnectIDTokenIssuerIdentifier());
+        claims.put("sub", authorizedUser);
+        claims.put("aud", consumerKey);
+        claims.put("scope", OAuth2Util.buildScopeString(scope));
+        claims.put("usr_type", tokenType);
+        claims.put("jti", accessTokenIdentifier);
+        claims.put("iat", issuedAt);
+        claims.put("exp", expiry);
+
+        try {
+            String assertion = encode(JWT_HEADER.getBytes(UTF_8)) + "." +
+                    encode(JSONUtils.buildJSON(claims).getBytes(UTF_8));
+            Signature signature = Signature.getInstance(SHA256_WITH_RSA);
+            signature.initSign((PrivateKey) JWTTokenGenerator.getPrivateKey(authorizedUser));
+            signature.update(assertion.getBytes(UTF_8));
+            return assertion + "." + encode(signature.sign());
+        } catch (JSONException e) {
+            throw new IdentityOAuth2Exception("Error while building the claims of the access token", e);
+        } catch (GeneralSecurityException e) {
+            throw new IdentityOAuth2Exception("Error while signing the access token", e);
+        }
+    }
+
+    /**
+     * Validates the signature of the given JWT access token and reads the access token from its
+     * claims. The expiry and the revocation of the token are not checked.
+     *
+     * @param token JWT access token
+     * @return access token, with the validity period in milliseconds, or <code>null</code> if the
+     *         token is malformed or its signature is invalid
+     * @throws IdentityOAuth2Exception if the signature could not be verified
+     */
+    public AccessTokenDO validateAccessToken(String token) throws IdentityOAuth2Exception {
+        if (!isJWTAccessToken(token)) {
+            return null;
+        }
+        int lastDot = token.lastIndexOf('.');
+        String assertion = token.substring(0, lastDot);
+        String body = assertion.substring(assertion.indexOf('.') + 1);
+
+        Map<String, Object> claims;
+        try {
+            claims = JSONUtils.parseJSON(new String(Base64.decodeBase64(body.getBytes(UTF_8)), UTF_8));
+        } catch (JSONException e) {
+            log.debug("Malformed JWT access token", e);
+            return null;
+        }
+        String authorizedUser = getClaim(claims, "sub");
+        if (authorizedUser == null || getClaim(claims, "jti") == null || getClaim(claims, "iat") == null ||
+                getClaim(claims, "exp") == null) {
+            log.debug("Malformed JWT access token");
+            return null;
+        }
+
+        try {
+            Certificate certificate = JWTTokenGenerator.getPublicCertificate(authorizedUser);
+            if (certificate == null) {
+                return null;
+            }
+            Signature signature = Signature.getInstance(SHA256_WITH_RSA);
+            signature.initVerify(certificate.getPublicKey());
+            signature.update(assertion.getBytes(UTF_8));
+            if (!signature.verify(Base64.decodeBase64(token.substring(lastDot + 1).getBytes(UTF_8)))) {
+                log.debug("Invalid signature of the JWT access token");
+                return null;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IdentityOAuth2Exception("Error while verifying the signature of the access token", e);
+        }
+
+        try {
+            long issuedAt = Long.parseLong(getClaim(claims, "iat"));
+            long expiry = Long.parseLong(getClaim(claims, "exp"));
+            AccessTokenDO accessTokenDO = new AccessTokenDO(getClaim(claims, "aud"), authorizedUser,
+                    OAuth2Util.buildScopeArray(getClaim(claims, "scope")), new Timestamp(issuedAt * 1000),
+                    (expiry - issuedAt) * 1000, getClaim(claims, "usr_type"));
+            accessTokenDO.setAccessToken(getClaim(claims, "jti"));
+            return accessTokenDO;
+        } catch (NumberFormatException e) {
+            log.debug("Malformed JWT access token", e);
+            return null;
+        }
+    }
+
+    private String encode(byte[] bytes) {
+        return Base64.encodeBase64URLSafeString(bytes);
+    }
+
+    private String getClaim(Map<String, Object> claims, String name) {
+        Object value = claims == null ? null : claims.get(name);
+        return value == null ? null : value.toString();
+    }
+}
@@ -246,7 +246,7 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
             accessTokenDO.setAccessToken(accessToken);
             accessTokenDO.setTenantID(tokReqMsgCtx.getTenantID());
             // store new token
-            tokenMgtDAO.storeAccessToken(accessToken,
+            tokenMgtDAO.persistAccessToken(accessToken,
                     oAuth2AccessTokenReqDTO.getClientId(),
                     accessTokenDO, userStoreDomain);
 
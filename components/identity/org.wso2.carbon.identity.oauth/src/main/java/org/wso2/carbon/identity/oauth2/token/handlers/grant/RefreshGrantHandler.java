@@ -182,7 +182,7 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
                 UUID.randomUUID().toString(), userStoreDomain, scope);
 
         // store the new access token
-        tokenMgtDAO.storeAccessToken(accessToken, clientId, accessTokenDO, userStoreDomain);
+        tokenMgtDAO.persistAccessToken(accessToken, clientId, accessTokenDO, userStoreDomain);
 
         // Remove the previous access token (this is already a preprocessed token)
         //tokenMgtDAO.cleanUpAccessToken(oldAccessToken);
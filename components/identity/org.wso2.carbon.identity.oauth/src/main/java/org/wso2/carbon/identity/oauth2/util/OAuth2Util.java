@@ -19,9 +19,12 @@
 package org.wso2.carbon.identity.oauth2.util;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
@@ -324,6 +327,24 @@ public class OAuth2Util {
 		return userStoreDomain;
 	}
 
+	/**
+	 * Returns the access token table and, when access token partitioning is enabled, all the
+	 * partitioned access token tables.
+	 *
+	 * @return names of the access token tables
+	 * @throws IdentityOAuth2Exception if the user store domain mappings are invalid
+	 */
+	public static List<String> getAccessTokenStoreTables() throws IdentityOAuth2Exception {
+		List<String> accessTokenStoreTables = new ArrayList<String>();
+		accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE);
+		if (checkAccessTokenPartitioningEnabled() && checkUserNameAssertionEnabled()) {
+			for (String userStoreDomain : new TreeSet<String>(getAvailableUserStoreDomainMappings().values())) {
+				accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE + "_" + userStoreDomain);
+			}
+		}
+		return accessTokenStoreTables;
+	}
+
 	public static String getAccessTokenStoreTableFromUserId(String userId)
 			throws IdentityOAuth2Exception {
 		String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
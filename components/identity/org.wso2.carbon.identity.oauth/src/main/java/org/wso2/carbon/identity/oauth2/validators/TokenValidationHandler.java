@@ -20,6 +20,7 @@ package org.wso2.carbon.identity.oauth2.validators;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenNearCache;
 import org.wso2.carbon.identity.oauth.cache.CacheEntry;
 import org.wso2.carbon.identity.oauth.cache.CacheKey;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
@@ -32,6 +33,8 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2ClientApplicationDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationResponseDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.token.AccessTokenRevocationList;
+import org.wso2.carbon.identity.oauth2.token.JWTAccessTokenBuilder;
 
 import java.util.Hashtable;
 import java.util.Map;
@@ -179,8 +182,40 @@ public class TokenValidationHandler {
         AccessTokenDO accessTokenDO = null;
 
         boolean cacheHit = false;
+        boolean nearCacheHit = false;
+        boolean selfContained = false;
+        JWTAccessTokenBuilder jwtAccessTokenBuilder = JWTAccessTokenBuilder.getInstance();
+        // Self-contained tokens are validated by their signature, without a lookup.
+        if (jwtAccessTokenBuilder.isEnabled() && jwtAccessTokenBuilder.isJWTAccessToken(accessTokenIdentifier)) {
+            accessTokenDO = jwtAccessTokenBuilder.validateAccessToken(accessTokenIdentifier);
+            if (accessTokenDO == null) {
+                responseDTO.setValid(false);
+                responseDTO.setErrorMsg("Invalid input. Access token validation failed");
+                clientApp.setAccessTokenValidationResponse(responseDTO);
+                return clientApp;
+            }
+            if (AccessTokenRevocationList.getInstance().isRevoked(accessTokenDO)) {
+                log.debug("Access token has been revoked");
+                responseDTO.setValid(false);
+                responseDTO.setErrorMsg("Access token has been revoked");
+                clientApp.setAccessTokenValidationResponse(responseDTO);
+                return clientApp;
+            }
+            selfContained = true;
+        }
+        AccessTokenNearCache nearCache = AccessTokenNearCache.getInstance();
+        // taken before the token is read, so that a token revoked meanwhile is not cached
+        long nearCacheGeneration = nearCache.getGeneration();
+        // Check the in-process cache first, if it is enabled.
+        if (accessTokenDO == null && nearCache.isEnabled()) {
+            accessTokenDO = nearCache.getValueFromCache(accessTokenIdentifier);
+            if (accessTokenDO != null) {
+                cacheHit = true;
+                nearCacheHit = true;
+            }
+        }
         // Check the cache, if caching is enabled.
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
+        if (accessTokenDO == null && OAuthServerConfiguration.getInstance().isCacheEnabled()) {
             OAuthCache oauthCache = OAuthCache.getInstance();
             CacheKey cacheKey = new OAuthCacheKey(requestDTO.getAccessToken().getIdentifier());
             CacheEntry result = oauthCache.getValueFromCache(cacheKey);
@@ -226,7 +261,7 @@ public class TokenValidationHandler {
         }
 
         // Add the token back to the cache in the case of a cache miss
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled() && !cacheHit) {
+        if (OAuthServerConfiguration.getInstance().isCacheEnabled() && !cacheHit && !selfContained) {
             OAuthCache oauthCache = OAuthCache.getInstance();
             CacheKey cacheKey = new OAuthCacheKey(accessTokenIdentifier);
             oauthCache.addToCache(cacheKey, accessTokenDO);
@@ -234,6 +269,9 @@ public class TokenValidationHandler {
                 log.debug("Access Token Info object was added back to the cache.");
             }
         }
+        if (nearCache.isEnabled() && !nearCacheHit && !selfContained) {
+            nearCache.addToCache(accessTokenIdentifier, accessTokenDO, nearCacheGeneration);
+        }
 
         // Set the token expiry time
         long expiryTime = (issuedTimeInMillis + validityPeriodInMillis) - (currentTimeInMillis + timestampSkew);
@@ -25,6 +25,9 @@ public class GoogleConnectorConstants {
 	public static final String ATTRIBUTE_PASSWORD = "password";
 	public static final String ATTRIBUTE_PRIMARYEMAIL = "primaryEmail";
 
+	// maximum number of calls the Directory API takes in one batch request
+	public static final int MAX_BATCH_SIZE = 1000;
+
     public class PropertyConfig {
     	public static final String IDP_NAME = "Identity.Provisioning.Connector.Google.IdP";
     	public static final String DOMAIN_NAME = "Identity.Provisioning.Connector.Google.Domain.Name";
@@ -26,15 +26,18 @@ import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.axiom.util.base64.Base64Utils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.provisioning.AbstractOutboundProvisioningConnector;
+import org.wso2.carbon.identity.provisioning.BulkProvisioningException;
 import org.wso2.carbon.identity.provisioning.IdentityProvisioningConstants;
 import org.wso2.carbon.identity.provisioning.IdentityProvisioningException;
 import org.wso2.carbon.identity.provisioning.ProvisionedIdentifier;
@@ -43,7 +46,11 @@ import org.wso2.carbon.identity.provisioning.ProvisioningEntityType;
 import org.wso2.carbon.identity.provisioning.ProvisioningOperation;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.jackson2.JacksonFactory;
@@ -148,6 +155,135 @@ public class GoogleProvisioningConnector extends AbstractOutboundProvisioningCon
         return identifier;
     }
 
+    @Override
+    /**
+     * Creates, updates and deletes the users of the batch with batch requests of the Directory
+     * API, each of up to 1000 calls. The calls of a batch request may run in any order, so the
+     * queued calls are sent before an entity which is provisioned on its own, or a second call
+     * for the same user, so that the operations reach Google in the order they were requested.
+     */
+    public ProvisionedIdentifier[] provision(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityProvisioningException {
+
+        ProvisionedIdentifier[] provisionedIdentifiers = new ProvisionedIdentifier[provisioningEntities
+                .size()];
+        Throwable[] errors = new Throwable[provisioningEntities.size()];
+
+        // one Directory service, and so one credential, is used for all the calls of the batch
+        Directory service = getDirectoryService();
+        BatchRequest batch = service.batch();
+        List<Integer> queued = new ArrayList<Integer>();
+        Set<String> queuedIdentifiers = new HashSet<String>();
+
+        for (int i = 0; i < provisioningEntities.size(); i++) {
+            ProvisioningEntity provisioningEntity = provisioningEntities.get(i);
+            ProvisionedIdentifier provisionedIdentifier = provisioningEntity.getIdentifier();
+            boolean hasIdentifier = provisionedIdentifier != null
+                    && provisionedIdentifier.getIdentifier() != null;
+            boolean single = (provisioningEntity.isJitProvisioning() && !isJitProvisioningEnabled())
+                    || provisioningEntity.getEntityType() != ProvisioningEntityType.USER
+                    || !(provisioningEntity.getOperation() == ProvisioningOperation.POST || (hasIdentifier
+                    && (provisioningEntity.getOperation() == ProvisioningOperation.PUT
+                    || provisioningEntity.getOperation() == ProvisioningOperation.DELETE)));
+
+            if (!queued.isEmpty() && (single || (hasIdentifier
+                    && queuedIdentifiers.contains(provisionedIdentifier.getIdentifier())))) {
+                executeBatch(batch, queued, errors);
+                batch = service.batch();
+                queued.clear();
+                queuedIdentifiers.clear();
+            }
+            if (hasIdentifier) {
+                queuedIdentifiers.add(provisionedIdentifier.getIdentifier());
+            }
+
+            try {
+                if (single) {
+                    provisionedIdentifiers[i] = provision(provisioningEntity);
+                } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
+                    provisionedIdentifiers[i] = new ProvisionedIdentifier();
+                    service.users().insert(buildGoogleUser(provisioningEntity))
+                            .queue(batch, new ProvisioningBatchCallback<User>(provisioningEntity,
+                                    provisionedIdentifiers[i], errors, i));
+                    queued.add(i);
+                } else if (provisioningEntity.getOperation() == ProvisioningOperation.PUT
+                        && hasIdentifier) {
+                    User updateUser = updateGoogleUser(provisioningEntity);
+                    if (updateUser != null) {
+                        service.users().update(provisionedIdentifier.getIdentifier(), updateUser)
+                                .queue(batch, new ProvisioningBatchCallback<User>(
+                                        provisioningEntity, null, errors, i));
+                        queued.add(i);
+                    }
+                } else if (provisioningEntity.getOperation() == ProvisioningOperation.DELETE
+                        && hasIdentifier) {
+                    // creates a provisioned identifier for the de-provisioned user.
+                    provisionedIdentifiers[i] = new ProvisionedIdentifier();
+                    provisionedIdentifiers[i].setIdentifier(null);
+                    service.users().delete(provisionedIdentifier.getIdentifier())
+                            .queue(batch, new ProvisioningBatchCallback<Void>(provisioningEntity,
+                                    null, errors, i));
+                    queued.add(i);
+                } else {
+                    provisionedIdentifiers[i] = provision(provisioningEntity);
+                }
+            } catch (IdentityProvisioningException e) {
+                errors[i] = e;
+            } catch (IOException e) {
+                errors[i] = new IdentityProvisioningException("Error while provisioning Google user : "
+                        + provisioningEntity.getEntityName(), e);
+            }
+
+            if (queued.size() == GoogleConnectorConstants.MAX_BATCH_SIZE) {
+                executeBatch(batch, queued, errors);
+                batch = service.batch();
+                queued.clear();
+                queuedIdentifiers.clear();
+            }
+        }
+
+        if (!queued.isEmpty()) {
+            executeBatch(batch, queued, errors);
+        }
+
+        for (Throwable error : errors) {
+            if (error != null) {
+                throw new BulkProvisioningException("Error while provisioning some of the entities",
+                        provisionedIdentifiers, errors);
+            }
+        }
+        return provisionedIdentifiers;
+    }
+
+    @Override
+    /**
+     * 
+     */
+    public boolean isBulkProvisioningSupported() {
+        return true;
+    }
+
+    /**
+     * 
+     * @param batch
+     * @param queued positions of the entities of the batch
+     * @param errors
+     */
+    private void executeBatch(BatchRequest batch, List<Integer> queued, Throwable[] errors) {
+        if (log.isDebugEnabled()) {
+            log.debug("Executing a Google batch request of " + batch.size() + " calls");
+        }
+        try {
+            batch.execute();
+        } catch (IOException e) {
+            IdentityProvisioningException error = new IdentityProvisioningException(
+                    "Error while executing Google batch request", e);
+            for (Integer index : queued) {
+                errors[index] = error;
+            }
+        }
+    }
+
     protected void updateUser(ProvisioningEntity provisioningEntity)
             throws IdentityProvisioningException {
         boolean isDebugEnabled = log.isDebugEnabled();
@@ -541,4 +677,43 @@ public class GoogleProvisioningConnector extends AbstractOutboundProvisioningCon
     protected String generatePassword() {
         return new BigInteger(130, random).toString(32);
     }
+
+    /**
+     * Records the outcome of a call of a Google batch request
+     */
+    private static class ProvisioningBatchCallback<T> extends JsonBatchCallback<T> {
+
+        private ProvisioningEntity provisioningEntity;
+        private ProvisionedIdentifier createdIdentifier;
+        private Throwable[] errors;
+        private int index;
+
+        /**
+         * 
+         * @param provisioningEntity
+         * @param createdIdentifier identifier to set the email of the created user to, or null
+         * @param errors
+         * @param index
+         */
+        private ProvisioningBatchCallback(ProvisioningEntity provisioningEntity,
+                ProvisionedIdentifier createdIdentifier, Throwable[] errors, int index) {
+            this.provisioningEntity = provisioningEntity;
+            this.createdIdentifier = createdIdentifier;
+            this.errors = errors;
+            this.index = index;
+        }
+
+        @Override
+        public void onSuccess(T result, HttpHeaders responseHeaders) {
+            if (createdIdentifier != null && result instanceof User) {
+                createdIdentifier.setIdentifier(((User) result).getPrimaryEmail());
+            }
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+            errors[index] = new IdentityProvisioningException("Error while provisioning Google user : "
+                    + provisioningEntity.getEntityName() + " : " + error.getMessage());
+        }
+    }
 }
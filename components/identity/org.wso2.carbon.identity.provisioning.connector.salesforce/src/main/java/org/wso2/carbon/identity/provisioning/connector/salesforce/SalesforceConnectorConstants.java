@@ -44,6 +44,12 @@ public class SalesforceConnectorConstants {
 	public static final String CONTEXT_SERVICES_DATA = "/services/data/";
 	public static final String CONTEXT_SOOBJECTS_USER = "/sobjects/user/";
 	// Shouldnt contain slash at the end
+	public static final String CONTEXT_COMPOSITE_SOBJECTS = "/composite/sobjects";
+	public static final String USER_OBJECT_TYPE = "User";
+	// composite sobjects API is available from this API version and takes up to 200 records
+	public static final double COMPOSITE_SOBJECTS_MIN_API_VERSION = 42.0;
+	public static final int COMPOSITE_SOBJECTS_MAX_RECORDS = 200;
+	// Shouldnt contain slash at the end
 	public static final String CONTEXT_QUERY = "/query";
 	
 	public static final String CONTENT_TYPE_APPLICATION_JSON = "application/json";
@@ -35,7 +35,9 @@ import org.wso2.carbon.identity.provisioning.*;
 import org.wso2.carbon.utils.CarbonUtils;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -106,6 +108,229 @@ public class SalesforceProvisioningConnector extends AbstractOutboundProvisionin
         return identifier;
     }
 
+    @Override
+    /**
+     * Creates, updates and deactivates the users of the batch with the composite sobjects API,
+     * with up to 200 users in a request. Consecutive operations of the same kind go in the same
+     * request, so that the operations reach Salesforce in the order they were requested.
+     */
+    public ProvisionedIdentifier[] provision(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityProvisioningException {
+
+        ProvisionedIdentifier[] provisionedIdentifiers = new ProvisionedIdentifier[provisioningEntities
+                .size()];
+        Throwable[] errors = new Throwable[provisioningEntities.size()];
+        boolean failed = false;
+
+        // one access token is used for all the requests of the batch
+        String accessToken = null;
+        String pendingMethod = null;
+        List<Integer> pending = new ArrayList<Integer>();
+        JSONArray pendingRecords = new JSONArray();
+
+        for (int i = 0; i <= provisioningEntities.size(); i++) {
+            ProvisioningEntity provisioningEntity = i < provisioningEntities.size() ? provisioningEntities
+                    .get(i) : null;
+            String method = provisioningEntity != null ? getCompositeMethod(provisioningEntity) : null;
+
+            // the pending records are sent before an operation of another kind
+            if (!pending.isEmpty() && (method == null || !method.equals(pendingMethod))) {
+                if (accessToken == null) {
+                    try {
+                        accessToken = getAccessToken();
+                    } catch (IdentityProvisioningException e) {
+                        for (Integer index : pending) {
+                            errors[index] = e;
+                        }
+                        failed = true;
+                    }
+                }
+                if (accessToken != null) {
+                    failed |= sendRecords(pendingMethod, pendingRecords, pending, accessToken,
+                            "POST".equals(pendingMethod) ? provisionedIdentifiers : null, errors);
+                }
+                pending = new ArrayList<Integer>();
+                pendingRecords = new JSONArray();
+            }
+            if (provisioningEntity == null) {
+                break;
+            }
+
+            provisionedIdentifiers[i] = new ProvisionedIdentifier();
+            try {
+                if (method == null) {
+                    provisionedIdentifiers[i] = provision(provisioningEntity);
+                } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
+                    pendingRecords.put(buildRecord(buildJsonObject(provisioningEntity), null));
+                    pending.add(i);
+                } else if (provisioningEntity.getOperation() == ProvisioningOperation.PUT) {
+                    pendingRecords.put(buildRecord(buildJsonObject(provisioningEntity),
+                            provisioningEntity.getIdentifier().getIdentifier()));
+                    pending.add(i);
+                } else {
+                    JSONObject entity = new JSONObject();
+                    entity.put(SalesforceConnectorConstants.IS_ACTIVE, false);
+                    pendingRecords.put(buildRecord(entity, provisioningEntity.getIdentifier()
+                            .getIdentifier()));
+                    pending.add(i);
+                }
+                if (method != null) {
+                    pendingMethod = method;
+                }
+            } catch (IdentityProvisioningException e) {
+                errors[i] = e;
+                failed = true;
+            } catch (JSONException e) {
+                errors[i] = new IdentityProvisioningException("Error while creating JSON body", e);
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            throw new BulkProvisioningException("Error while provisioning some of the entities",
+                    provisionedIdentifiers, errors);
+        }
+        return provisionedIdentifiers;
+    }
+
+    /**
+     * @param provisioningEntity
+     * @return method of the composite sobjects API the entity is provisioned with, or null if it
+     *         is provisioned on its own
+     */
+    private String getCompositeMethod(ProvisioningEntity provisioningEntity) {
+        if ((provisioningEntity.isJitProvisioning() && !isJitProvisioningEnabled())
+                || provisioningEntity.getEntityType() != ProvisioningEntityType.USER) {
+            return null;
+        }
+        if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
+            return "POST";
+        }
+        if (provisioningEntity.getOperation() == ProvisioningOperation.PUT
+                || provisioningEntity.getOperation() == ProvisioningOperation.DELETE) {
+            return "PATCH";
+        }
+        return null;
+    }
+
+    @Override
+    /**
+     * 
+     */
+    public boolean isBulkProvisioningSupported() {
+        String apiVersion = configHolder
+                .getValue(SalesforceConnectorConstants.PropertyConfig.API_VERSION);
+        if (apiVersion == null) {
+            return false;
+        }
+        try {
+            double version = Double.parseDouble(apiVersion.trim().replaceFirst("^[vV]", ""));
+            return version >= SalesforceConnectorConstants.COMPOSITE_SOBJECTS_MIN_API_VERSION;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 
+     * @param entity
+     * @param provisionedId
+     * @return
+     * @throws JSONException
+     */
+    private JSONObject buildRecord(JSONObject entity, String provisionedId) throws JSONException {
+        JSONObject attributes = new JSONObject();
+        attributes.put("type", SalesforceConnectorConstants.USER_OBJECT_TYPE);
+        entity.put("attributes", attributes);
+        if (provisionedId != null) {
+            entity.put("id", provisionedId);
+        }
+        return entity;
+    }
+
+    /**
+     * Sends the given records to the composite sobjects API, in chunks of up to 200 records.
+     * 
+     * @param method POST to create or PATCH to update the records
+     * @param records
+     * @param indexes positions of the records in the batch
+     * @param accessToken
+     * @param provisionedIdentifiers identifiers to set the ids of the created records to, or null
+     * @param errors
+     * @return whether any of the records failed
+     */
+    private boolean sendRecords(final String method, JSONArray records, List<Integer> indexes,
+            String accessToken, ProvisionedIdentifier[] provisionedIdentifiers, Throwable[] errors) {
+
+        boolean isDebugEnabled = log.isDebugEnabled();
+        boolean failed = false;
+        HttpClient httpclient = new HttpClient();
+        int chunkSize = SalesforceConnectorConstants.COMPOSITE_SOBJECTS_MAX_RECORDS;
+
+        for (int start = 0; start < records.length(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, records.length());
+
+            PostMethod post = new PostMethod(this.getCompositeObjectsEndpoint()) {
+                @Override
+                public String getName() {
+                    return method;
+                }
+            };
+
+            try {
+                JSONArray chunk = new JSONArray();
+                for (int i = start; i < end; i++) {
+                    chunk.put(records.get(i));
+                }
+                JSONObject request = new JSONObject();
+                request.put("allOrNone", false);
+                request.put("records", chunk);
+
+                post.setRequestHeader(SalesforceConnectorConstants.AUTHORIZATION_HEADER_NAME,
+                        SalesforceConnectorConstants.AUTHORIZATION_HEADER_OAUTH + " " + accessToken);
+                post.setRequestEntity(new StringRequestEntity(request.toString(),
+                        SalesforceConnectorConstants.CONTENT_TYPE_APPLICATION_JSON, null));
+
+                httpclient.executeMethod(post);
+                if (isDebugEnabled) {
+                    log.debug("HTTP status " + post.getStatusCode() + " for " + method + " of "
+                            + (end - start) + " users");
+                }
+
+                if (post.getStatusCode() != HttpStatus.SC_OK) {
+                    throw new IdentityProvisioningException("recieved response status code :"
+                            + post.getStatusCode() + " text : " + post.getStatusText());
+                }
+
+                JSONArray results = new JSONArray(new JSONTokener(IOUtils.toString(post
+                        .getResponseBodyAsStream())));
+                for (int i = start; i < end; i++) {
+                    int index = indexes.get(i);
+                    JSONObject result = results.optJSONObject(i - start);
+                    if (result != null && result.optBoolean("success")) {
+                        if (provisionedIdentifiers != null) {
+                            provisionedIdentifiers[index].setIdentifier(result.optString("id"));
+                        }
+                    } else {
+                        errors[index] = new IdentityProvisioningException(
+                                "Error while provisioning the user : "
+                                        + (result != null ? result.opt("errors") : "no result"));
+                        failed = true;
+                    }
+                }
+            } catch (Exception e) {
+                for (int i = start; i < end; i++) {
+                    errors[indexes.get(i)] = e;
+                }
+                failed = true;
+            } finally {
+                post.releaseConnection();
+            }
+        }
+
+        return failed;
+    }
+
     /**
      * 
      * @param provisioningEntity
@@ -343,24 +568,33 @@ public class SalesforceProvisioningConnector extends AbstractOutboundProvisionin
 
         boolean isDebugEnabled = log.isDebugEnabled();
 
-        String accessToken = authenticate();
-        if (accessToken != null && !accessToken.isEmpty()) {
-            httpMethod.setRequestHeader(SalesforceConnectorConstants.AUTHORIZATION_HEADER_NAME,
-                    SalesforceConnectorConstants.AUTHORIZATION_HEADER_OAUTH + " " + accessToken);
+        String accessToken = getAccessToken();
+        httpMethod.setRequestHeader(SalesforceConnectorConstants.AUTHORIZATION_HEADER_NAME,
+                SalesforceConnectorConstants.AUTHORIZATION_HEADER_OAUTH + " " + accessToken);
 
-            if (isDebugEnabled) {
-                log.debug("Setting authorization header for method : " + httpMethod.getName()
-                        + " as follows,");
-                Header authorizationHeader = httpMethod
-                        .getRequestHeader(SalesforceConnectorConstants.AUTHORIZATION_HEADER_NAME);
-                log.debug(authorizationHeader.getName() + ": " + authorizationHeader.getValue());
-            }
-        } else {
-            throw new IdentityProvisioningException("Authentication failed");
+        if (isDebugEnabled) {
+            log.debug("Setting authorization header for method : " + httpMethod.getName()
+                    + " as follows,");
+            Header authorizationHeader = httpMethod
+                    .getRequestHeader(SalesforceConnectorConstants.AUTHORIZATION_HEADER_NAME);
+            log.debug(authorizationHeader.getName() + ": " + authorizationHeader.getValue());
         }
 
     }
 
+    /**
+     * 
+     * @return access token to the salesforce API
+     * @throws IdentityProvisioningException if the authentication failed
+     */
+    private String getAccessToken() throws IdentityProvisioningException {
+        String accessToken = authenticate();
+        if (accessToken == null || accessToken.isEmpty()) {
+            throw new IdentityProvisioningException("Authentication failed");
+        }
+        return accessToken;
+    }
+
     /**
      * authenticate to salesforce API.
      */
@@ -449,6 +683,18 @@ public class SalesforceProvisioningConnector extends AbstractOutboundProvisionin
         return url;
     }
 
+    /**
+     * builds salesforce composite sobjects end point using configurations
+     * 
+     * @return
+     */
+    private String getCompositeObjectsEndpoint() {
+        return configHolder.getValue(SalesforceConnectorConstants.PropertyConfig.DOMAIN_NAME)
+                + SalesforceConnectorConstants.CONTEXT_SERVICES_DATA
+                + configHolder.getValue(SalesforceConnectorConstants.PropertyConfig.API_VERSION)
+                + SalesforceConnectorConstants.CONTEXT_COMPOSITE_SOBJECTS;
+    }
+
     /**
      * Builds Salesforce query point using configurations
      * 
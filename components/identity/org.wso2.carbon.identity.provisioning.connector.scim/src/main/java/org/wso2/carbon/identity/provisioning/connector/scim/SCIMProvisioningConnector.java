@@ -1,5 +1,6 @@
 package org.wso2.carbon.identity.provisioning.connector.scim;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -9,14 +10,17 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.provisioning.AbstractOutboundProvisioningConnector;
+import org.wso2.carbon.identity.provisioning.BulkProvisioningException;
 import org.wso2.carbon.identity.provisioning.IdentityProvisioningConstants;
 import org.wso2.carbon.identity.provisioning.IdentityProvisioningException;
 import org.wso2.carbon.identity.provisioning.ProvisionedIdentifier;
 import org.wso2.carbon.identity.provisioning.ProvisioningEntity;
 import org.wso2.carbon.identity.provisioning.ProvisioningEntityType;
 import org.wso2.carbon.identity.provisioning.ProvisioningOperation;
+import org.wso2.carbon.identity.scim.common.impl.BulkProvisioningClient;
 import org.wso2.carbon.identity.scim.common.impl.ProvisioningClient;
 import org.wso2.carbon.identity.scim.common.utils.AttributeMapper;
+import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
 import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.charon.core.config.SCIMConfigConstants;
 import org.wso2.charon.core.config.SCIMProvider;
@@ -34,6 +38,7 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
 
     public static final String SCIM_USER_EP = "scim-user-ep";
     public static final String SCIM_GROUP_EP = "scim-group-ep";
+    public static final String SCIM_BULK_EP = "scim-bulk-ep";
     public static final String SCIM_USERNAME = "scim-username";
     public static final String SCIM_PASSWORD = "scim-password";
     public static final String SCIM_USERSTORE_DOMAIN = "scim-user-store-domain";
@@ -53,6 +58,8 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
                     populateSCIMProvider(property, SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
                 } else if (SCIM_GROUP_EP.equals(property.getName())) {
                     populateSCIMProvider(property, SCIMConfigConstants.ELEMENT_NAME_GROUP_ENDPOINT);
+                } else if (SCIM_BULK_EP.equals(property.getName())) {
+                    populateSCIMProvider(property, SCIMCommonConstants.ELEMENT_NAME_BULK_ENDPOINT);
                 } else if (SCIM_USERNAME.equals(property.getName())) {
                     populateSCIMProvider(property, SCIMConfigConstants.ELEMENT_NAME_USERNAME);
                 } else if (SCIM_PASSWORD.equals(property.getName())) {
@@ -70,7 +77,6 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
                 }
             }
         }
-
     }
 
     /**
@@ -116,6 +122,101 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
 
     }
 
+    /**
+     * Creates the users and groups of the batch with requests to the bulk endpoint of the SCIM
+     * provider. The other operations are provisioned one at a time, after the creations requested
+     * before them are sent, so that the operations reach the provider in the order they were
+     * requested.
+     */
+    @Override
+    public ProvisionedIdentifier[] provision(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityProvisioningException {
+
+        ProvisionedIdentifier[] provisionedIdentifiers = new ProvisionedIdentifier[provisioningEntities
+                .size()];
+        Throwable[] errors = new Throwable[provisioningEntities.size()];
+        boolean failed = false;
+
+        BulkProvisioningClient bulkProvisioningClient = new BulkProvisioningClient(scimProvider);
+        List<Integer> bulkEntities = new ArrayList<Integer>();
+
+        for (int i = 0; i < provisioningEntities.size(); i++) {
+            ProvisioningEntity provisioningEntity = provisioningEntities.get(i);
+            boolean bulk = provisioningEntity.getOperation() == ProvisioningOperation.POST
+                    && (!provisioningEntity.isJitProvisioning() || isJitProvisioningEnabled())
+                    && (provisioningEntity.getEntityType() == ProvisioningEntityType.USER
+                    || provisioningEntity.getEntityType() == ProvisioningEntityType.GROUP);
+
+            if (!bulk && !bulkEntities.isEmpty()) {
+                failed |= sendBulk(bulkProvisioningClient, bulkEntities, errors);
+                bulkProvisioningClient = new BulkProvisioningClient(scimProvider);
+                bulkEntities = new ArrayList<Integer>();
+            }
+
+            try {
+                if (!bulk) {
+                    provisionedIdentifiers[i] = provision(provisioningEntity);
+                } else if (provisioningEntity.getEntityType() == ProvisioningEntityType.USER) {
+                    bulkProvisioningClient.addCreateUser(buildUser(provisioningEntity));
+                    bulkEntities.add(i);
+                } else {
+                    bulkProvisioningClient.addCreateGroup(buildGroup(provisioningEntity));
+                    bulkEntities.add(i);
+                }
+            } catch (Exception e) {
+                errors[i] = e;
+                failed = true;
+            }
+        }
+
+        if (!bulkEntities.isEmpty()) {
+            failed |= sendBulk(bulkProvisioningClient, bulkEntities, errors);
+        }
+
+        if (failed) {
+            throw new BulkProvisioningException("Error while provisioning some of the entities",
+                    provisionedIdentifiers, errors);
+        }
+        return provisionedIdentifiers;
+    }
+
+    /**
+     * 
+     * @param bulkProvisioningClient
+     * @param bulkEntities positions of the operations of the bulk request in the batch
+     * @param errors
+     * @return whether any of the operations failed
+     */
+    private boolean sendBulk(BulkProvisioningClient bulkProvisioningClient,
+            List<Integer> bulkEntities, Throwable[] errors) {
+
+        boolean failed = false;
+        try {
+            List<String> bulkErrors = bulkProvisioningClient.provision();
+            for (int i = 0; i < bulkEntities.size(); i++) {
+                if (bulkErrors.get(i) != null) {
+                    errors[bulkEntities.get(i)] = new IdentityProvisioningException(
+                            bulkErrors.get(i));
+                    failed = true;
+                }
+            }
+        } catch (Exception e) {
+            for (Integer index : bulkEntities) {
+                errors[index] = e;
+            }
+            failed = true;
+        }
+        return failed;
+    }
+
+    /**
+     * 
+     */
+    @Override
+    public boolean isBulkProvisioningSupported() {
+        return scimProvider.getProperty(SCIMCommonConstants.ELEMENT_NAME_BULK_ENDPOINT) != null;
+    }
+
     /**
      * 
      * @param userEntity
@@ -167,25 +268,8 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
 
         try {
 
-            List<String> userNames = getUserNames(userEntity.getAttributes());
-            String userName = null;
-
-            if (userNames != null && userNames.size() > 0 && userNames.get(0) != null) {
-                userName = userNames.get(0);
-            }
-
             int httpMethod = SCIMConstants.POST;
-            User user = null;
-
-            // get single-valued claims
-            Map<String, String> singleValued = getSingleValuedClaims(userEntity.getAttributes());
-
-            // if user created through management console, claim values are not present.
-            user = (User) AttributeMapper.constructSCIMObjectFromAttributes(singleValued,
-                    SCIMConstants.USER_INT);
-
-            user.setUserName(userName);
-            user.setPassword(getPassword(userEntity.getAttributes()));
+            User user = buildUser(userEntity);
 
             ProvisioningClient scimProvsioningClient = new ProvisioningClient(scimProvider, user,
                     httpMethod, null);
@@ -196,6 +280,33 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
         }
     }
 
+    /**
+     * 
+     * @param userEntity
+     * @return
+     * @throws Exception
+     */
+    private User buildUser(ProvisioningEntity userEntity) throws Exception {
+
+        List<String> userNames = getUserNames(userEntity.getAttributes());
+        String userName = null;
+
+        if (userNames != null && userNames.size() > 0 && userNames.get(0) != null) {
+            userName = userNames.get(0);
+        }
+
+        // get single-valued claims
+        Map<String, String> singleValued = getSingleValuedClaims(userEntity.getAttributes());
+
+        // if user created through management console, claim values are not present.
+        User user = (User) AttributeMapper.constructSCIMObjectFromAttributes(singleValued,
+                SCIMConstants.USER_INT);
+
+        user.setUserName(userName);
+        user.setPassword(getPassword(userEntity.getAttributes()));
+        return user;
+    }
+
     /**
      * 
      * @param userEntity
@@ -235,28 +346,8 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
      */
     private String createGroup(ProvisioningEntity groupEntity) throws IdentityProvisioningException {
         try {
-            List<String> groupNames = getGroupNames(groupEntity.getAttributes());
-            String groupName = null;
-
-            if (groupNames != null && groupNames.size() > 0 && groupNames.get(0) != null) {
-                groupName = groupNames.get(0);
-            }
-
             int httpMethod = SCIMConstants.POST;
-            Group group = null;
-            group = new Group();
-            group.setDisplayName(groupName);
-
-            List<String> userList = getUserNames(groupEntity.getAttributes());
-
-            if (userList != null && userList.size() > 0) {
-                for (Iterator<String> iterator = userList.iterator(); iterator.hasNext();) {
-                    String userName = iterator.next();
-                    Map<String, Object> members = new HashMap<String, Object>();
-                    members.put(SCIMConstants.CommonSchemaConstants.DISPLAY, userName);
-                    group.setMember(members);
-                }
-            }
+            Group group = buildGroup(groupEntity);
 
             ProvisioningClient scimProvsioningClient = new ProvisioningClient(scimProvider, group,
                     httpMethod, null);
@@ -268,6 +359,37 @@ public class SCIMProvisioningConnector extends AbstractOutboundProvisioningConne
         return null;
     }
 
+    /**
+     * 
+     * @param groupEntity
+     * @return
+     * @throws Exception
+     */
+    private Group buildGroup(ProvisioningEntity groupEntity) throws Exception {
+
+        List<String> groupNames = getGroupNames(groupEntity.getAttributes());
+        String groupName = null;
+
+        if (groupNames != null && groupNames.size() > 0 && groupNames.get(0) != null) {
+            groupName = groupNames.get(0);
+        }
+
+        Group group = new Group();
+        group.setDisplayName(groupName);
+
+        List<String> userList = getUserNames(groupEntity.getAttributes());
+
+        if (userList != null && userList.size() > 0) {
+            for (Iterator<String> iterator = userList.iterator(); iterator.hasNext();) {
+                String userName = iterator.next();
+                Map<String, Object> members = new HashMap<String, Object>();
+                members.put(SCIMConstants.CommonSchemaConstants.DISPLAY, userName);
+                group.setMember(members);
+            }
+        }
+        return group;
+    }
+
     /**
      * 
      * @param groupEntity
@@ -50,6 +50,50 @@ public abstract class AbstractOutboundProvisioningConnector implements Serializa
     public abstract ProvisionedIdentifier provision(ProvisioningEntity provisioningEntity)
             throws IdentityProvisioningException;
 
+    /**
+     * Provisions a batch of entities. Connectors whose identity provider can take several
+     * operations in one request override this together with
+     * {@link #isBulkProvisioningSupported()}. By default the entities are provisioned one at a time.
+     * 
+     * @param provisioningEntities
+     * @return identifiers of the provisioned entities, in the order of the given entities.
+     * @throws BulkProvisioningException if only some of the entities could be provisioned.
+     * @throws IdentityProvisioningException if none of the entities could be provisioned.
+     */
+    public ProvisionedIdentifier[] provision(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityProvisioningException {
+
+        ProvisionedIdentifier[] provisionedIdentifiers = new ProvisionedIdentifier[provisioningEntities
+                .size()];
+        Throwable[] errors = new Throwable[provisioningEntities.size()];
+        boolean failed = false;
+
+        for (int i = 0; i < provisioningEntities.size(); i++) {
+            try {
+                provisionedIdentifiers[i] = provision(provisioningEntities.get(i));
+            } catch (IdentityProvisioningException e) {
+                errors[i] = e;
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            throw new BulkProvisioningException("Error while provisioning some of the entities",
+                    provisionedIdentifiers, errors);
+        }
+        return provisionedIdentifiers;
+    }
+
+    /**
+     * Override to return true when {@link #provision(List)} sends the entities to the identity
+     * provider in bulk, so that the queued provisioning requests are sent to it in batches.
+     * 
+     * @return
+     */
+    public boolean isBulkProvisioningSupported() {
+        return false;
+    }
+
     /**
      * override only if needed - if claims are controlled by the identity provider, this will return
      * null. If it is connector specific this must return the corresponding claim dialect.
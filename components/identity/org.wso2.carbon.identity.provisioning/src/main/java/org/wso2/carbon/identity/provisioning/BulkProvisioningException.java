@@ -0,0 +1,61 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.provisioning;
+
+/**
+ * Thrown by a bulk provisioning call when only some of the entities could be provisioned. The
+ * identifiers and the errors are given in the order of the entities of the call, with a
+ * <code>null</code> error for each entity which was provisioned.
+ */
+public class BulkProvisioningException extends IdentityProvisioningException {
+
+    private static final long serialVersionUID = -3907421687543817312L;
+
+    private ProvisionedIdentifier[] provisionedIdentifiers;
+    private Throwable[] errors;
+
+    /**
+     * 
+     * @param message
+     * @param provisionedIdentifiers
+     * @param errors
+     */
+    public BulkProvisioningException(String message, ProvisionedIdentifier[] provisionedIdentifiers,
+            Throwable[] errors) {
+        super(message);
+        this.provisionedIdentifiers = provisionedIdentifiers;
+        this.errors = errors;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public ProvisionedIdentifier[] getProvisionedIdentifiers() {
+        return provisionedIdentifiers;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public Throwable[] getErrors() {
+        return errors;
+    }
+}
@@ -47,6 +47,29 @@ public class IdentityProvisioningConstants {
         public static final String PREFIX_IDENTITY_PROVISIONING_CONNECTOR_CLASS = "Identity.Provisioning.Connector.Class.";
 
         public static final String DELIMATOR = ",";
+
+        public static final String IDENTITY_PROVISIONING_THREAD_POOL_SIZE = "Identity.Provisioning.ThreadPoolSize";
+
+        // connector settings, which can be given for a connector type as
+        // Identity.Provisioning.Connector.<type>.<setting> or for all the connectors as
+        // Identity.Provisioning.Connector.<setting>
+        public static final String CONNECTOR_MAX_CONCURRENCY = "MaxConcurrency";
+        public static final String CONNECTOR_RATE_LIMIT = "RateLimit";
+        public static final String CONNECTOR_QUEUE_SIZE = "QueueSize";
+        public static final String CONNECTOR_QUEUE_TIMEOUT = "QueueTimeout";
+        public static final String CONNECTOR_MAX_RETRIES = "MaxRetries";
+        public static final String CONNECTOR_RETRY_INTERVAL = "RetryInterval";
+        public static final String CONNECTOR_BATCH_SIZE = "BatchSize";
+
+        public static final int DEFAULT_THREAD_POOL_SIZE = 10;
+        public static final int DEFAULT_MAX_CONCURRENCY = 1;
+        public static final int DEFAULT_RATE_LIMIT = 0;
+        public static final int DEFAULT_QUEUE_SIZE = 1000;
+        public static final long DEFAULT_QUEUE_TIMEOUT = 30000;
+        public static final int DEFAULT_MAX_RETRIES = 3;
+        public static final long DEFAULT_RETRY_INTERVAL = 1000;
+        // requests are sent in batches only when a batch size is configured for the connector
+        public static final int DEFAULT_BATCH_SIZE = 1;
     }
 
 	public static class SQLQueries {
@@ -26,8 +26,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -363,12 +361,6 @@ public class OutboundProvisioningManager {
 
             ProvisioningEntity outboundProEntity;
 
-            ExecutorService executors = null;
-
-            if (connectors.size() > 0) {
-                executors = Executors.newFixedThreadPool(connectors.size());
-            }
-
             for (Iterator<Entry<String, RuntimeProvisioningConfig>> iterator = connectors
                     .entrySet().iterator(); iterator.hasNext();) {
 
@@ -464,17 +456,14 @@ public class OutboundProvisioningManager {
                         tenantDomainName, connector, connectorType, idPName, dao);
 
                 if (!entry.getValue().isBlocking()) {
-                    executors.execute(proThread);
+                    ProvisioningExecutor.getInstance().execute(proThread, tenantDomainName,
+                            idPName, connectorType);
                 } else {
                     proThread.run();
                 }
 
             }
 
-            if (executors != null) {
-                executors.shutdown();
-            }
-
         } catch (Exception e) {
             log.error("Error while out-bound provisioning.", e);
         }
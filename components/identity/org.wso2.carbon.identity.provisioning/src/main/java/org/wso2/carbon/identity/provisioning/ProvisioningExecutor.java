@@ -0,0 +1,675 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.provisioning;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.provisioning.IdentityProvisioningConstants.PropertyConfig;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * Runs the non-blocking out-bound provisioning requests on a pool of threads shared by all the
+ * tenants. The requests of each connector of a provisioning identity provider of a tenant are put
+ * in a bounded queue of their own, which is drained by at most the configured number of threads at
+ * a time, at the configured rate, so that a slow identity provider does not hold up the others.
+ * With the default of a single thread, the requests of a connector are provisioned in the order
+ * they were made. When a batch size is configured for a connector which supports bulk
+ * provisioning, the queued requests are sent to it in batches of up to that size, and the
+ * identifiers of the created entities are stored with a single batch of inserts.
+ * <p/>
+ * A request which the connector fails to provision is retried with an exponential back-off. The
+ * queue of the connector is held until the retry is done, so that the later requests, such as an
+ * update of an entity whose creation failed, are not provisioned before it. Once a request has
+ * failed the configured number of times, it is logged and kept as a dead letter, which can be
+ * submitted again with {@link #retryDeadLetters()}. When the queue of a connector is full, the
+ * caller waits up to the configured queue timeout for room in the queue, which slows the callers
+ * down instead of provisioning their requests ahead of the queued ones. A request which still
+ * cannot be queued, or which is made after the executor is shut down, is kept as a dead letter.
+ * <p/>
+ * The settings are read from identity-provision.properties of the carbon configuration directory.
+ * The executor is shut down when the bundle is deactivated, and a new one is created by
+ * {@link #start()} when it is activated again.
+ */
+public class ProvisioningExecutor {
+
+    private static final Log log = LogFactory.getLog(ProvisioningExecutor.class);
+
+    // dead letters kept for each connector, the oldest ones are dropped first
+    private static final int MAX_DEAD_LETTERS = 100;
+
+    private static final long MAX_RETRY_INTERVAL = 5 * 60 * 1000;
+
+    // order in which the provisioning requests are queued
+    private static final AtomicLong jobSequence = new AtomicLong();
+
+    private static volatile ProvisioningExecutor instance = new ProvisioningExecutor();
+
+    private Properties properties;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private ConcurrentMap<String, ConnectorQueue> queues = new ConcurrentHashMap<String, ConnectorQueue>();
+
+    private ProvisioningExecutor() {
+        properties = loadProperties();
+        int poolSize = getIntProperty(PropertyConfig.IDENTITY_PROVISIONING_THREAD_POOL_SIZE,
+                PropertyConfig.DEFAULT_THREAD_POOL_SIZE);
+        executor = new ScheduledThreadPoolExecutor(poolSize, new ProvisioningThreadFactory());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public static ProvisioningExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a new executor if the current one is shut down, with the settings read again.
+     */
+    public static synchronized void start() {
+        if (instance.executor.isShutdown()) {
+            instance = new ProvisioningExecutor();
+        }
+    }
+
+    /**
+     * Queues the given provisioning request, waiting for room in the queue of the connector if it
+     * is full. The request is kept as a dead letter if it cannot be queued.
+     * 
+     * @param provisioningThread
+     * @param tenantDomainName
+     * @param idPName
+     * @param connectorType
+     */
+    public void execute(ProvisioningThread provisioningThread, String tenantDomainName,
+            String idPName, String connectorType) {
+
+        ConnectorQueue queue = getQueue(tenantDomainName, idPName, connectorType);
+        ProvisioningJob job = new ProvisioningJob(provisioningThread);
+
+        if (executor.isShutdown()) {
+            queue.addDeadLetter(job, new IdentityProvisioningException(
+                    "Provisioning executor is shut down"));
+            return;
+        }
+        try {
+            if (!queue.offer(job, queue.queueTimeout)) {
+                queue.addDeadLetter(job, new IdentityProvisioningException("Provisioning queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.addDeadLetter(job, new IdentityProvisioningException(
+                    "Interrupted while waiting for room in the provisioning queue", e));
+        }
+    }
+
+    /**
+     * Submits the dead letters of all the connectors again.
+     * 
+     * @return number of requests submitted again.
+     */
+    public int retryDeadLetters() {
+        int count = 0;
+        for (ConnectorQueue queue : queues.values()) {
+            // only the dead letters there are now, as the requests may fail again
+            for (int i = queue.deadLetters.size(); i > 0; i--) {
+                DeadLetter deadLetter = queue.deadLetters.poll();
+                if (deadLetter == null) {
+                    break;
+                }
+                ProvisioningJob job = new ProvisioningJob(deadLetter.job.provisioningThread);
+                if (!queue.offer(job)) {
+                    queue.deadLetters.add(deadLetter);
+                    break;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 
+     * @return statistics of the provisioning queue of each connector.
+     */
+    public List<ProvisioningStatistics> getStatistics() {
+        List<ProvisioningStatistics> statistics = new ArrayList<ProvisioningStatistics>();
+        for (ConnectorQueue queue : queues.values()) {
+            statistics.add(queue.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops the threads of the executor. The requests which are still in the queues are not
+     * provisioned.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        int pending = 0;
+        for (ConnectorQueue queue : queues.values()) {
+            pending += queue.jobs.size() + queue.getRetryCount();
+        }
+        if (pending > 0) {
+            log.warn("Provisioning executor is shut down. " + pending
+                    + " queued provisioning requests are not provisioned");
+        }
+    }
+
+    private ConnectorQueue getQueue(String tenantDomainName, String idPName, String connectorType) {
+        String key = tenantDomainName + ":" + idPName + ":" + connectorType;
+        ConnectorQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = new ConnectorQueue(tenantDomainName, idPName, connectorType);
+            ConnectorQueue existingQueue = queues.putIfAbsent(key, queue);
+            if (existingQueue != null) {
+                queue = existingQueue;
+            }
+        }
+        return queue;
+    }
+
+    private Properties loadProperties() {
+        Properties properties = new Properties();
+        File configFile = new File(CarbonUtils.getCarbonConfigDirPath(),
+                PropertyConfig.CONFIG_FILE_NAME);
+        if (!configFile.exists()) {
+            if (log.isDebugEnabled()) {
+                log.debug(configFile + " is not found. Default provisioning settings are used");
+            }
+            return properties;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(configFile);
+            properties.load(inputStream);
+        } catch (IOException e) {
+            log.error("Error while loading " + configFile + ". Default provisioning settings are used", e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    log.error("Error while closing " + configFile, e);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private long getConnectorProperty(String connectorType, String setting, long defaultValue) {
+        String value = properties.getProperty(PropertyConfig.PREFIX_IDENTITY_PROVISIONING_CONNECTOR
+                + connectorType + "." + setting);
+        if (value == null) {
+            value = properties.getProperty(PropertyConfig.PREFIX_IDENTITY_PROVISIONING_CONNECTOR
+                    + setting);
+        }
+        return parse(setting, value, defaultValue);
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        return (int) parse(name, properties.getProperty(name), defaultValue);
+    }
+
+    private long parse(String name, String value, long defaultValue) {
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value " + value + " for " + name + ". Using the default value "
+                    + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A provisioning request together with the number of times it has failed
+     */
+    private static class ProvisioningJob {
+
+        private final ProvisioningThread provisioningThread;
+
+        private final long sequence;
+
+        private int failures;
+
+        // System.nanoTime() after which the failed request is retried
+        private long retryTime;
+
+        private ProvisioningJob(ProvisioningThread provisioningThread) {
+            this.provisioningThread = provisioningThread;
+            this.sequence = jobSequence.incrementAndGet();
+        }
+
+        private String describe() {
+            ProvisioningEntity entity = provisioningThread.getProvisioningEntity();
+            return entity.getOperation() + " " + entity.getEntityType() + " "
+                    + entity.getEntityName();
+        }
+    }
+
+    /**
+     * A provisioning request which could not be provisioned
+     */
+    private static class DeadLetter {
+
+        private final ProvisioningJob job;
+
+        private final String description;
+
+        private DeadLetter(ProvisioningJob job, Throwable error) {
+            this.job = job;
+            this.description = new Date() + " " + job.describe() + " : " + error.getMessage();
+        }
+    }
+
+    /**
+     * The queue of the provisioning requests of a connector of an identity provider of a tenant.
+     * Each thread which drains the queue provisions one request, and then schedules itself again
+     * after the wait required by the rate limit, so that waiting does not hold a pooled thread.
+     * The failed requests are kept apart, in the order they failed, and are provisioned before
+     * the queued ones once their back-off is over. Until then, the threads wait for them instead
+     * of taking the queued requests.
+     */
+    private class ConnectorQueue {
+
+        private final String name;
+        private final String tenantDomainName;
+        private final String idPName;
+        private final String connectorType;
+
+        private final int maxConcurrency;
+        private final long permitInterval;
+        private final long maxRetries;
+        private final long retryInterval;
+        private final int batchSize;
+        private final long queueTimeout;
+
+        private final BlockingQueue<ProvisioningJob> jobs;
+        private final LinkedList<ProvisioningJob> retries = new LinkedList<ProvisioningJob>();
+        private final ConcurrentLinkedQueue<DeadLetter> deadLetters = new ConcurrentLinkedQueue<DeadLetter>();
+
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+        private final AtomicLong nextPermitTime = new AtomicLong(System.nanoTime());
+
+        private final AtomicLong provisionedCount = new AtomicLong();
+        private final AtomicLong retryCount = new AtomicLong();
+        private final AtomicLong deadLetterCount = new AtomicLong();
+        private final AtomicLong attemptCount = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        private ConnectorQueue(String tenantDomainName, String idPName, String connectorType) {
+            this.name = connectorType + " connector of " + idPName + " of " + tenantDomainName;
+            this.tenantDomainName = tenantDomainName;
+            this.idPName = idPName;
+            this.connectorType = connectorType;
+
+            this.maxConcurrency = (int) Math.max(1, getConnectorProperty(connectorType,
+                    PropertyConfig.CONNECTOR_MAX_CONCURRENCY, PropertyConfig.DEFAULT_MAX_CONCURRENCY));
+            long rateLimit = getConnectorProperty(connectorType, PropertyConfig.CONNECTOR_RATE_LIMIT,
+                    PropertyConfig.DEFAULT_RATE_LIMIT);
+            this.permitInterval = rateLimit > 0 ? TimeUnit.SECONDS.toNanos(1) / rateLimit : 0;
+            this.maxRetries = getConnectorProperty(connectorType, PropertyConfig.CONNECTOR_MAX_RETRIES,
+                    PropertyConfig.DEFAULT_MAX_RETRIES);
+            this.retryInterval = Math.max(1, getConnectorProperty(connectorType,
+                    PropertyConfig.CONNECTOR_RETRY_INTERVAL, PropertyConfig.DEFAULT_RETRY_INTERVAL));
+            this.batchSize = (int) Math.max(1, getConnectorProperty(connectorType,
+                    PropertyConfig.CONNECTOR_BATCH_SIZE, PropertyConfig.DEFAULT_BATCH_SIZE));
+            int queueSize = (int) Math.max(1, getConnectorProperty(connectorType,
+                    PropertyConfig.CONNECTOR_QUEUE_SIZE, PropertyConfig.DEFAULT_QUEUE_SIZE));
+            this.jobs = new ArrayBlockingQueue<ProvisioningJob>(queueSize);
+            this.queueTimeout = Math.max(0, getConnectorProperty(connectorType,
+                    PropertyConfig.CONNECTOR_QUEUE_TIMEOUT, PropertyConfig.DEFAULT_QUEUE_TIMEOUT));
+        }
+
+        private boolean offer(ProvisioningJob job) {
+            if (!jobs.offer(job)) {
+                return false;
+            }
+            startWorker();
+            return true;
+        }
+
+        /**
+         * Queues the given request, waiting up to the given time in milliseconds for room in the
+         * queue
+         */
+        private boolean offer(ProvisioningJob job, long timeout) throws InterruptedException {
+            if (!jobs.offer(job, timeout, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            startWorker();
+            return true;
+        }
+
+        private void startWorker() {
+            while (true) {
+                int active = activeWorkers.get();
+                if (active >= maxConcurrency) {
+                    return;
+                }
+                if (activeWorkers.compareAndSet(active, active + 1)) {
+                    break;
+                }
+            }
+            schedule(reservePermit());
+        }
+
+        private void schedule(long delay) {
+            try {
+                executor.schedule(worker, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                activeWorkers.decrementAndGet();
+                log.warn("Provisioning executor is shut down. " + jobs.size()
+                        + " queued provisioning requests of the " + name + " are not provisioned");
+            }
+        }
+
+        private void release() {
+            activeWorkers.decrementAndGet();
+            // a request may have been queued after this worker last looked at the queue, while the
+            // worker still counted as active
+            if (!jobs.isEmpty() || getRetryCount() > 0) {
+                startWorker();
+            }
+        }
+
+        private void drain() {
+            ProvisioningJob job;
+            synchronized (retries) {
+                job = retries.peek();
+                if (job != null) {
+                    long wait = job.retryTime - System.nanoTime();
+                    if (wait > 0) {
+                        // the queued requests are held until the failed request is retried
+                        schedule(wait);
+                        return;
+                    }
+                    retries.poll();
+                }
+            }
+
+            if (job != null) {
+                process(job);
+            } else {
+                job = jobs.poll();
+                if (job == null) {
+                    release();
+                    return;
+                }
+                processQueued(job);
+            }
+
+            if (jobs.isEmpty() && getRetryCount() == 0) {
+                release();
+            } else {
+                schedule(reservePermit());
+            }
+        }
+
+        /**
+         * Provisions a request taken from the queue, together with the requests queued after it
+         * when they are sent in batches
+         */
+        private void processQueued(ProvisioningJob job) {
+            if (batchSize > 1 && job.provisioningThread.getConnector().isBulkProvisioningSupported()) {
+                List<ProvisioningJob> batch = new ArrayList<ProvisioningJob>();
+                batch.add(job);
+                jobs.drainTo(batch, batchSize - 1);
+                if (batch.size() > 1) {
+                    process(batch);
+                } else {
+                    process(job);
+                }
+            } else {
+                process(job);
+            }
+        }
+
+        private int getRetryCount() {
+            synchronized (retries) {
+                return retries.size();
+            }
+        }
+
+        /**
+         * @return time to wait in nanoseconds before the next request may be provisioned
+         */
+        private long reservePermit() {
+            if (permitInterval <= 0) {
+                return 0;
+            }
+            while (true) {
+                long currentTime = System.nanoTime();
+                long next = nextPermitTime.get();
+                long permitTime = next - currentTime > 0 ? next : currentTime;
+                if (nextPermitTime.compareAndSet(next, permitTime + permitInterval)) {
+                    return permitTime - currentTime;
+                }
+            }
+        }
+
+        private void process(ProvisioningJob job) {
+            ProvisionedIdentifier provisionedIdentifier;
+            long startTime = System.currentTimeMillis();
+            try {
+                provisionedIdentifier = job.provisioningThread.provision();
+            } catch (Exception e) {
+                recordLatency(startTime);
+                retry(job, e);
+                return;
+            }
+            recordLatency(startTime);
+            complete(job, provisionedIdentifier);
+        }
+
+        /**
+         * Provisions a batch of requests with a single bulk call of the connector. Only the
+         * requests which fail are queued again to be retried.
+         */
+        private void process(List<ProvisioningJob> batch) {
+            List<ProvisioningEntity> entities = new ArrayList<ProvisioningEntity>();
+            for (ProvisioningJob job : batch) {
+                entities.add(job.provisioningThread.getProvisioningEntity());
+            }
+
+            ProvisionedIdentifier[] provisionedIdentifiers;
+            Throwable[] errors = null;
+            long startTime = System.currentTimeMillis();
+            try {
+                provisionedIdentifiers = batch.get(0).provisioningThread.getConnector().provision(
+                        entities);
+            } catch (BulkProvisioningException e) {
+                provisionedIdentifiers = e.getProvisionedIdentifiers();
+                errors = e.getErrors();
+            } catch (Exception e) {
+                recordLatency(startTime);
+                for (ProvisioningJob job : batch) {
+                    retry(job, e);
+                }
+                return;
+            }
+            recordLatency(startTime);
+
+            List<ProvisioningJob> createdJobs = new ArrayList<ProvisioningJob>();
+            List<ProvisioningEntity> createdEntities = new ArrayList<ProvisioningEntity>();
+            for (int i = 0; i < batch.size(); i++) {
+                ProvisioningJob job = batch.get(i);
+                Throwable error = errors != null && i < errors.length ? errors[i] : null;
+                ProvisionedIdentifier provisionedIdentifier = provisionedIdentifiers != null
+                        && i < provisionedIdentifiers.length ? provisionedIdentifiers[i] : null;
+                if (error != null) {
+                    retry(job, error);
+                } else if (entities.get(i).getOperation() == ProvisioningOperation.POST) {
+                    job.provisioningThread.setProvisionedIdentifier(provisionedIdentifier);
+                    createdJobs.add(job);
+                    createdEntities.add(entities.get(i));
+                } else {
+                    complete(job, provisionedIdentifier);
+                }
+            }
+
+            if (createdJobs.isEmpty()) {
+                return;
+            }
+            try {
+                createdJobs.get(0).provisioningThread.storeProvisionedEntityIdentifiers(createdEntities);
+                provisionedCount.addAndGet(createdJobs.size());
+            } catch (Exception e) {
+                log.warn("Error while storing the identifiers of " + createdJobs.size()
+                        + " entities provisioned with the " + name + ". Storing them one by one", e);
+                for (ProvisioningJob job : createdJobs) {
+                    complete(job, job.provisioningThread.getProvisioningEntity().getIdentifier());
+                }
+            }
+        }
+
+        private void complete(ProvisioningJob job, ProvisionedIdentifier provisionedIdentifier) {
+            try {
+                job.provisioningThread.complete(provisionedIdentifier);
+                provisionedCount.incrementAndGet();
+            } catch (Exception e) {
+                // the entity is provisioned already, so it must not be provisioned again
+                addDeadLetter(job, e);
+            }
+        }
+
+        private void recordLatency(long startTime) {
+            long latency = System.currentTimeMillis() - startTime;
+            attemptCount.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max;
+            while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) {
+                // retry until the larger latency is recorded
+            }
+        }
+
+        private void retry(ProvisioningJob job, Throwable error) {
+            job.failures++;
+            if (job.failures > maxRetries) {
+                addDeadLetter(job, error);
+                return;
+            }
+
+            retryCount.incrementAndGet();
+            long delay = Math.min(retryInterval << Math.min(job.failures - 1, 20), MAX_RETRY_INTERVAL);
+            log.warn("Error while provisioning " + job.describe() + " with the " + name
+                    + ". Retrying in " + delay + " ms : " + error.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("Error while provisioning " + job.describe(), error);
+            }
+
+            // the worker which failed to provision the request picks it up once the delay is over.
+            // The failed requests are kept in the order they were queued, as a request which
+            // fails again goes back ahead of the ones queued after it
+            job.retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            synchronized (retries) {
+                ListIterator<ProvisioningJob> iterator = retries.listIterator(retries.size());
+                while (iterator.hasPrevious()) {
+                    if (iterator.previous().sequence < job.sequence) {
+                        iterator.next();
+                        break;
+                    }
+                }
+                iterator.add(job);
+            }
+        }
+
+        private void addDeadLetter(ProvisioningJob job, Throwable error) {
+            deadLetterCount.incrementAndGet();
+            log.error("Provisioning of " + job.describe() + " with the " + name
+                    + " failed permanently", error);
+            deadLetters.add(new DeadLetter(job, error));
+            while (deadLetters.size() > MAX_DEAD_LETTERS) {
+                deadLetters.poll();
+            }
+        }
+
+        private ProvisioningStatistics getStatistics() {
+            ProvisioningStatistics statistics = new ProvisioningStatistics(tenantDomainName,
+                    idPName, connectorType);
+            statistics.setQueueDepth(jobs.size() + getRetryCount());
+            statistics.setActiveThreads(activeWorkers.get());
+            statistics.setProvisionedCount(provisionedCount.get());
+            statistics.setRetryCount(retryCount.get());
+            statistics.setDeadLetterCount(deadLetterCount.get());
+            long attempts = attemptCount.get();
+            statistics.setAverageLatency(attempts > 0 ? totalLatency.get() / attempts : 0);
+            statistics.setMaxLatency(maxLatency.get());
+            List<String> descriptions = new ArrayList<String>();
+            for (DeadLetter deadLetter : deadLetters) {
+                descriptions.add(deadLetter.description);
+            }
+            statistics.setDeadLetters(descriptions);
+            return statistics;
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that queued provisioning requests do not keep the server from
+     * shutting down
+     */
+    private static class ProvisioningThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "OutboundProvisioning-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
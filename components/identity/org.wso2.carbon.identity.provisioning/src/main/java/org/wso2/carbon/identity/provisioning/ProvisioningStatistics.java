@@ -0,0 +1,203 @@
+/*
+ *  Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.provisioning;
+
+import java.util.List;
+
+/**
+ * A snapshot of the provisioning queue of a connector of an identity provider of a tenant.
+ */
+public class ProvisioningStatistics {
+
+    private String tenantDomainName;
+    private String idPName;
+    private String connectorType;
+    private int queueDepth;
+    private int activeThreads;
+    private long provisionedCount;
+    private long retryCount;
+    private long deadLetterCount;
+    private long averageLatency;
+    private long maxLatency;
+    private List<String> deadLetters;
+
+    /**
+     * 
+     * @param tenantDomainName
+     * @param idPName
+     * @param connectorType
+     */
+    public ProvisioningStatistics(String tenantDomainName, String idPName, String connectorType) {
+        this.tenantDomainName = tenantDomainName;
+        this.idPName = idPName;
+        this.connectorType = connectorType;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public String getTenantDomainName() {
+        return tenantDomainName;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public String getIdPName() {
+        return idPName;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public String getConnectorType() {
+        return connectorType;
+    }
+
+    /**
+     * 
+     * @return number of provisioning requests waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * 
+     * @param queueDepth
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * 
+     * @return number of threads provisioning the requests of the queue.
+     */
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /**
+     * 
+     * @param activeThreads
+     */
+    public void setActiveThreads(int activeThreads) {
+        this.activeThreads = activeThreads;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getProvisionedCount() {
+        return provisionedCount;
+    }
+
+    /**
+     * 
+     * @param provisionedCount
+     */
+    public void setProvisionedCount(long provisionedCount) {
+        this.provisionedCount = provisionedCount;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * 
+     * @param retryCount
+     */
+    public void setRetryCount(long retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getDeadLetterCount() {
+        return deadLetterCount;
+    }
+
+    /**
+     * 
+     * @param deadLetterCount
+     */
+    public void setDeadLetterCount(long deadLetterCount) {
+        this.deadLetterCount = deadLetterCount;
+    }
+
+    /**
+     * 
+     * @return average time taken by a call of the connector, in milliseconds.
+     */
+    public long getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * 
+     * @param averageLatency
+     */
+    public void setAverageLatency(long averageLatency) {
+        this.averageLatency = averageLatency;
+    }
+
+    /**
+     * 
+     * @return maximum time taken by a call of the connector, in milliseconds.
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * 
+     * @param maxLatency
+     */
+    public void setMaxLatency(long maxLatency) {
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * 
+     * @return descriptions of the most recent requests which could not be provisioned.
+     */
+    public List<String> getDeadLetters() {
+        return deadLetters;
+    }
+
+    /**
+     * 
+     * @param deadLetters
+     */
+    public void setDeadLetters(List<String> deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+}
@@ -1,7 +1,10 @@
 package org.wso2.carbon.identity.provisioning;
 
+import java.util.List;
 import java.util.UUID;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
 import org.wso2.carbon.identity.provisioning.dao.CacheBackedProvisioningMgtDAO;
 import org.wso2.carbon.idp.mgt.util.IdPManagementUtil;
@@ -9,6 +12,8 @@ import org.wso2.carbon.user.api.UserStoreException;
 
 public class ProvisioningThread implements Runnable {
 
+    private static final Log log = LogFactory.getLog(ProvisioningThread.class);
+
     private ProvisioningEntity provisioningEntity;
     private String tenantDomainName;
     private AbstractOutboundProvisioningConnector connector;
@@ -32,30 +37,97 @@ public class ProvisioningThread implements Runnable {
     public void run() {
 
         try {
-
-            ProvisionedIdentifier provisionedIdentifier = null;
             // real provisioning happens now.
-            provisionedIdentifier = connector.provision(provisioningEntity);
+            complete(provision());
+        } catch (Exception e) {
+            log.error("Error while provisioning " + provisioningEntity.getEntityType() + " "
+                    + provisioningEntity.getEntityName() + " to the identity provider " + idPName
+                    + " of " + tenantDomainName + " with the connector " + connectorType, e);
+        }
+    }
+
+    /**
+     * Sends the provisioning entity to the identity provider. This is the part which may be
+     * retried when it fails.
+     * 
+     * @return
+     * @throws IdentityProvisioningException
+     */
+    public ProvisionedIdentifier provision() throws IdentityProvisioningException {
+        return connector.provision(provisioningEntity);
+    }
+
+    /**
+     * Stores or deletes the provisioned identifier, once the entity is provisioned.
+     * 
+     * @param provisionedIdentifier
+     * @throws IdentityApplicationManagementException
+     */
+    public void complete(ProvisionedIdentifier provisionedIdentifier)
+            throws IdentityApplicationManagementException {
 
-            if (provisioningEntity.getOperation() == ProvisioningOperation.DELETE) {
-                deleteProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
-                        tenantDomainName);
-            } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
+        if (provisioningEntity.getOperation() == ProvisioningOperation.DELETE) {
+            deleteProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
+                    tenantDomainName);
+        } else if (provisioningEntity.getOperation() == ProvisioningOperation.POST) {
 
-                if (provisionedIdentifier == null || provisionedIdentifier.getIdentifier() == null) {
-                    provisionedIdentifier = new ProvisionedIdentifier();
-                    provisionedIdentifier.setIdentifier(UUID.randomUUID().toString());
-                }
+            setProvisionedIdentifier(provisionedIdentifier);
 
-                provisioningEntity.setIdentifier(provisionedIdentifier);
+            // store provisioned identifier for future reference.
+            storeProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
+                    tenantDomainName);
+        }
+    }
 
-                // store provisioned identifier for future reference.
-                storeProvisionedEntityIdentifier(idPName, connectorType, provisioningEntity,
-                        tenantDomainName);
-            }
-        } catch (Exception e) {
+    /**
+     * Sets the identifier of a created entity, or a random one if the connector did not give it
+     * an identifier.
+     * 
+     * @param provisionedIdentifier
+     */
+    public void setProvisionedIdentifier(ProvisionedIdentifier provisionedIdentifier) {
 
+        if (provisionedIdentifier == null || provisionedIdentifier.getIdentifier() == null) {
+            provisionedIdentifier = new ProvisionedIdentifier();
+            provisionedIdentifier.setIdentifier(UUID.randomUUID().toString());
         }
+
+        provisioningEntity.setIdentifier(provisionedIdentifier);
+    }
+
+    /**
+     * Stores the identifiers of the given entities created with the same connector of the same
+     * identity provider as this, with a single batch of inserts.
+     * 
+     * @param provisioningEntities
+     * @throws IdentityApplicationManagementException
+     */
+    public void storeProvisionedEntityIdentifiers(List<ProvisioningEntity> provisioningEntities)
+            throws IdentityApplicationManagementException {
+        try {
+            int tenantId = IdPManagementUtil.getTenantIdOfDomain(tenantDomainName);
+            dao.addProvisioningEntities(idPName, connectorType, provisioningEntities, tenantId,
+                    tenantDomainName);
+        } catch (UserStoreException e) {
+            throw new IdentityApplicationManagementException(
+                    "Error while storing provisioning identifiers.", e);
+        }
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public ProvisioningEntity getProvisioningEntity() {
+        return provisioningEntity;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public AbstractOutboundProvisioningConnector getConnector() {
+        return connector;
     }
 
     /**
@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.identity.provisioning.dao;
 
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
@@ -68,19 +70,37 @@ public class CacheBackedProvisioningMgtDAO {
         }
         
         
-		ProvisioningEntityCacheKey cacheKey = new ProvisioningEntityCacheKey(identityProviderName, connectorType,
-                provisioningEntity, tenantDomain);
-		ProvisioningEntityCacheEntry entry = new ProvisioningEntityCacheEntry();
-
-        ProvisioningEntity cachedProvisioningEntity = new ProvisioningEntity(provisioningEntity.getEntityType(),
-                provisioningEntity.getOperation());
-        ProvisionedIdentifier provisionedIdentifier = provisioningEntity.getIdentifier();
-        cachedProvisioningEntity.setIdentifier(provisionedIdentifier);
-        entry.setProvisioningEntity(cachedProvisioningEntity);
-        provisioningEntityCache.addToCache(cacheKey, entry);
+		addToCache(identityProviderName, connectorType, provisioningEntity, tenantDomain);
         	
     }
     
+    /**
+     * 
+     * @param identityProviderName
+     * @param connectorType
+     * @param provisioningEntities
+     * @param tenantId
+     * @param tenantDomain
+     * @throws IdentityApplicationManagementException
+     */
+    public void addProvisioningEntities(String identityProviderName, String connectorType,
+            List<ProvisioningEntity> provisioningEntities, int tenantId, String tenantDomain)
+            throws IdentityApplicationManagementException {
+
+        provisioningMgtDAO.addProvisioningEntities(identityProviderName, connectorType,
+                provisioningEntities, tenantId);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Caching " + provisioningEntities.size() + " newly added Provisioning Entities : "
+                    + "identityProviderName=" + identityProviderName
+                    + "&& connectorType=" + connectorType);
+        }
+
+        for (ProvisioningEntity provisioningEntity : provisioningEntities) {
+            addToCache(identityProviderName, connectorType, provisioningEntity, tenantDomain);
+        }
+    }
+
     /**
      * 
      * @param identityProviderName
@@ -189,4 +209,19 @@ public class CacheBackedProvisioningMgtDAO {
         }
     }
 
+    private void addToCache(String identityProviderName, String connectorType,
+            ProvisioningEntity provisioningEntity, String tenantDomain) {
+
+        ProvisioningEntityCacheKey cacheKey = new ProvisioningEntityCacheKey(identityProviderName, connectorType,
+                provisioningEntity, tenantDomain);
+        ProvisioningEntityCacheEntry entry = new ProvisioningEntityCacheEntry();
+
+        ProvisioningEntity cachedProvisioningEntity = new ProvisioningEntity(provisioningEntity.getEntityType(),
+                provisioningEntity.getOperation());
+        ProvisionedIdentifier provisionedIdentifier = provisioningEntity.getIdentifier();
+        cachedProvisioningEntity.setIdentifier(provisionedIdentifier);
+        entry.setProvisioningEntity(cachedProvisioningEntity);
+        provisioningEntityCache.addToCache(cacheKey, entry);
+    }
+
 }
@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -91,6 +92,56 @@ public class ProvisioningManagementDAO {
 		}
 	}
 
+	/**
+	 * Adds the given provisioning entities with a single batch of inserts
+	 * 
+	 * @param identityProviderName
+	 * @param connectorType
+	 * @param provisioningEntities
+	 * @param tenantId
+	 * @throws IdentityApplicationManagementException
+	 */
+	public void addProvisioningEntities(String identityProviderName, String connectorType,
+	                                    List<ProvisioningEntity> provisioningEntities, int tenantId)
+	                                                                                       throws IdentityApplicationManagementException {
+
+		Connection dbConnection = null;
+		PreparedStatement prepStmt = null;
+		try {
+			dbConnection = JDBCPersistenceManager.getInstance().getDBConnection();
+
+			// id of the identity provider
+			int idpId = getIdentityProviderIdentifier(dbConnection, identityProviderName, tenantId);
+
+			// id of the provisioning configuration
+			int provisioningConfigId = getProvisioningConfigurationIdentifier(dbConnection, idpId,
+			                                                               connectorType);
+
+			String sqlStmt = IdentityProvisioningConstants.SQLQueries.ADD_PROVISIONING_ENTITY_SQL;
+
+			prepStmt = dbConnection.prepareStatement(sqlStmt);
+			for (ProvisioningEntity provisioningEntity : provisioningEntities) {
+				prepStmt.setInt(1, provisioningConfigId);
+				prepStmt.setString(2, provisioningEntity.getEntityType().toString());
+				prepStmt.setString(3, UserCoreUtil.extractDomainFromName(provisioningEntity.getEntityName()));
+				prepStmt.setString(4, UserCoreUtil.removeDomainFromName(provisioningEntity.getEntityName()));
+				prepStmt.setString(5, provisioningEntity.getIdentifier().getIdentifier());
+				prepStmt.setInt(6, tenantId);
+				prepStmt.addBatch();
+			}
+
+			prepStmt.executeBatch();
+			dbConnection.commit();
+		} catch (SQLException e) {
+			IdentityApplicationManagementUtil.rollBack(dbConnection);
+			String msg = "Error occurred while adding Provisioning entities for tenant " + tenantId;
+			throw new IdentityApplicationManagementException(msg, e);
+		} finally {
+			IdentityApplicationManagementUtil.closeStatement(prepStmt);
+			IdentityApplicationManagementUtil.closeConnection(dbConnection);
+		}
+	}
+
 	/**
 	 * 
 	 * @param identityProviderName
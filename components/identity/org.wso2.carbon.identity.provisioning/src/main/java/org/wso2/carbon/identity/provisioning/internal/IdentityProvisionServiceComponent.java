@@ -34,6 +34,7 @@ import org.wso2.carbon.identity.application.common.model.ProvisioningConnectorCo
 import org.wso2.carbon.identity.application.mgt.listener.ApplicationMgtListener;
 import org.wso2.carbon.identity.provisioning.AbstractProvisioningConnectorFactory;
 import org.wso2.carbon.identity.provisioning.IdentityProvisioningException;
+import org.wso2.carbon.identity.provisioning.ProvisioningExecutor;
 import org.wso2.carbon.identity.provisioning.listener.ApplicationMgtProvisioningListener;
 import org.wso2.carbon.identity.provisioning.listener.DefaultInboundUserProvisioningListener;
 import org.wso2.carbon.identity.provisioning.listener.IdentityProviderMgtProvisioningListener;
@@ -71,6 +72,8 @@ public class IdentityProvisionServiceComponent {
 
         try {
             bundleContext = context.getBundleContext();
+            // the executor is shut down when the bundle is deactivated
+            ProvisioningExecutor.start();
 
             try {
                 bundleContext.registerService(UserOperationEventListener.class.getName(), new DefaultInboundUserProvisioningListener(), null);
@@ -197,6 +200,7 @@ public class IdentityProvisionServiceComponent {
      * @param context
      */
     protected void deactivate(ComponentContext context) {
+        ProvisioningExecutor.getInstance().shutdown();
         if (log.isDebugEnabled()) {
             log.debug("Identity Provision bundle is de-activated");
         }
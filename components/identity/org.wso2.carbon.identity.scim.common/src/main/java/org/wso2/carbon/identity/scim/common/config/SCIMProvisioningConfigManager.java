@@ -117,6 +117,27 @@ public class SCIMProvisioningConfigManager {
         }
     }
 
+    /**
+     * Reads a numeric property of provisioning-config.xml
+     *
+     * @param propertyName name of the property
+     * @param defaultValue value to use if the property is not set or not a number
+     * @return value of the property
+     */
+    public static int getIntProperty(String propertyName, int defaultValue) {
+        String value = scimConfig != null ? scimConfig.getAdditionalPropertyValue(propertyName) : null;
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value: " + value + " for the provisioning property: " + propertyName +
+                        ", using the default value: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     public static boolean isDumbMode() {
         return scimConfig.isDumbMode();
     }
@@ -0,0 +1,208 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.wso2.carbon.identity.scim.common.utils.BasicAuthUtil;
+import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
+import org.wso2.charon.core.client.SCIMClient;
+import org.wso2.charon.core.config.SCIMConfigConstants;
+import org.wso2.charon.core.config.SCIMProvider;
+import org.wso2.charon.core.exceptions.CharonException;
+import org.wso2.charon.core.objects.AbstractSCIMObject;
+import org.wso2.charon.core.objects.Group;
+import org.wso2.charon.core.objects.User;
+import org.wso2.charon.core.schema.SCIMConstants;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends several SCIM create operations to the bulk endpoint of a SCIM provider in one request, and
+ * reads the status of each operation from the bulk response. Unlike {@link ProvisioningClient},
+ * errors are reported to the caller, so that failed operations can be retried.
+ */
+public class BulkProvisioningClient {
+
+    private static Log logger = LogFactory.getLog(BulkProvisioningClient.class.getName());
+
+    private static final String BULK_SCHEMA = "urn:scim:schemas:core:1.0";
+    private static final String SCHEMAS = "schemas";
+    private static final String OPERATIONS = "Operations";
+    private static final String METHOD = "method";
+    private static final String BULK_ID = "bulkId";
+    private static final String PATH = "path";
+    private static final String DATA = "data";
+    private static final String STATUS = "status";
+    private static final String CODE = "code";
+    private static final String DESCRIPTION = "description";
+    private static final String POST = "POST";
+    private static final String USERS_PATH = "/Users";
+    private static final String GROUPS_PATH = "/Groups";
+
+    private SCIMProvider provider;
+    private SCIMClient scimClient = new SCIMClient();
+    private JSONArray operations = new JSONArray();
+
+    /**
+     * @param scimProvider provider, with the bulk endpoint set as
+     *                     {@link SCIMCommonConstants#ELEMENT_NAME_BULK_ENDPOINT}
+     */
+    public BulkProvisioningClient(SCIMProvider scimProvider) {
+        this.provider = scimProvider;
+    }
+
+    /**
+     * Adds an operation which creates the given user
+     *
+     * @param user
+     * @throws CharonException
+     */
+    public void addCreateUser(User user) throws CharonException {
+        addOperation(user, USERS_PATH);
+    }
+
+    /**
+     * Adds an operation which creates the given group
+     *
+     * @param group
+     * @throws CharonException
+     */
+    public void addCreateGroup(Group group) throws CharonException {
+        addOperation(group, GROUPS_PATH);
+    }
+
+    /**
+     * Sends the added operations in one bulk request.
+     *
+     * @return error of each operation in the order the operations were added, which is
+     *         <code>null</code> for the operations which succeeded
+     * @throws CharonException if the bulk request was not accepted by the provider
+     * @throws IOException     if the bulk request could not be sent
+     */
+    public List<String> provision() throws CharonException, IOException {
+
+        String bulkEPURL = provider.getProperty(SCIMCommonConstants.ELEMENT_NAME_BULK_ENDPOINT);
+        String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
+        String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
+
+        String request;
+        try {
+            JSONObject bulkRequest = new JSONObject();
+            bulkRequest.put(SCHEMAS, new JSONArray().put(BULK_SCHEMA));
+            bulkRequest.put(OPERATIONS, operations);
+            request = bulkRequest.toString();
+        } catch (JSONException e) {
+            throw new CharonException("Error in encoding the bulk request.");
+        }
+
+        PostMethod postMethod = new PostMethod(bulkEPURL);
+        postMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
+                                    BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
+        postMethod.setRequestEntity(new StringRequestEntity(request, SCIMConstants.APPLICATION_JSON, null));
+
+        try {
+            int responseStatus = ProvisioningConnectionManager.getHttpClient(bulkEPURL).executeMethod(postMethod);
+            String response = postMethod.getResponseBodyAsString();
+
+            logger.info("SCIM - bulk operation with " + operations.length() +
+                        " operations returned with response code: " + responseStatus);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Bulk Response: " + response);
+            }
+
+            if (!scimClient.evaluateResponseStatus(responseStatus)) {
+                throw new CharonException("Bulk request was rejected with response code: " +
+                                          responseStatus);
+            }
+            return readStatuses(response);
+        } finally {
+            postMethod.releaseConnection();
+        }
+    }
+
+    private void addOperation(AbstractSCIMObject scimObject, String path) throws CharonException {
+        String encodedObject = scimClient.encodeSCIMObject(
+                scimObject, SCIMConstants.identifyFormat(SCIMConstants.APPLICATION_JSON));
+        try {
+            JSONObject operation = new JSONObject();
+            operation.put(METHOD, POST);
+            operation.put(BULK_ID, String.valueOf(operations.length()));
+            operation.put(PATH, path);
+            operation.put(DATA, new JSONObject(encodedObject));
+            operations.put(operation);
+        } catch (JSONException e) {
+            throw new CharonException("Error in encoding the bulk operation.");
+        }
+    }
+
+    private List<String> readStatuses(String response) throws CharonException {
+
+        List<String> errors = new ArrayList<String>();
+        for (int i = 0; i < operations.length(); i++) {
+            // operations missing from the response are reported as failed
+            errors.add("No status returned for the bulk operation.");
+        }
+
+        try {
+            JSONArray results = new JSONObject(response).optJSONArray(OPERATIONS);
+            if (results == null) {
+                return errors;
+            }
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                int index;
+                try {
+                    index = Integer.parseInt(result.optString(BULK_ID));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (index < 0 || index >= errors.size()) {
+                    continue;
+                }
+
+                String code;
+                String description = null;
+                JSONObject status = result.optJSONObject(STATUS);
+                if (status != null) {
+                    code = status.optString(CODE);
+                    description = status.optString(DESCRIPTION, null);
+                } else {
+                    code = result.optString(STATUS);
+                }
+
+                if (code.startsWith("2")) {
+                    errors.set(index, null);
+                } else {
+                    errors.set(index, "Bulk operation failed with status " + code +
+                                      (description != null ? " : " + description : ""));
+                }
+            }
+        } catch (JSONException e) {
+            throw new CharonException("Error in decoding the bulk response.");
+        }
+        return errors;
+    }
+}
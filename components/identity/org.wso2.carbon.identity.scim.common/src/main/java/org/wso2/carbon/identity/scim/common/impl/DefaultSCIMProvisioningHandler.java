@@ -13,17 +13,12 @@ import org.wso2.charon.core.schema.SCIMConstants;
 import org.wso2.charon.core.provisioning.ProvisioningHandler;
 
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class DefaultSCIMProvisioningHandler implements ProvisioningHandler {
 
     private static Log logger = LogFactory.getLog(DefaultSCIMProvisioningHandler.class.getName());
     protected SCIMProvisioningConfigManager provisioningManager;
 
-    //to make provisioning requests sent to different providers parallel.
-    private ExecutorService provisioningThreadPool = Executors.newCachedThreadPool();
-
     private int objectType;
     //variables used in runnable's run method in a particular instance of the object:
     private String consumerName;
@@ -75,11 +70,11 @@ public class DefaultSCIMProvisioningHandler implements ProvisioningHandler {
 
         for (SCIMProvider scimProviderEntry : scimProviders.values()) {
             if (SCIMConstants.USER_INT == objectType) {
-                provisioningThreadPool.submit(new ProvisioningClient(
+                ProvisioningThreadPool.submit(new ProvisioningClient(
                         scimProviderEntry, (User) objectToBeProvisioned, provisioningMethod,
                         additionalProvisioningInformation));
             } else if (SCIMConstants.GROUP_INT == objectType) {
-                provisioningThreadPool.submit(new ProvisioningClient(
+                ProvisioningThreadPool.submit(new ProvisioningClient(
                         scimProviderEntry, (Group) objectToBeProvisioned, provisioningMethod,
                         additionalProvisioningInformation));
             }
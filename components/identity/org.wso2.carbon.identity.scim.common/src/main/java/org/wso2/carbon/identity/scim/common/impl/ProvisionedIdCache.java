@@ -0,0 +1,84 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.wso2.carbon.identity.scim.common.config.SCIMProvisioningConfigManager;
+import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the ids given by SCIM providers to the users and groups provisioned to them, so that
+ * updating or deleting them does not need a filter request to find the id first. The least
+ * recently used ids are dropped once the cache is full.
+ */
+public class ProvisionedIdCache {
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static Map<String, String> provisionedIds;
+
+    private ProvisionedIdCache() {
+    }
+
+    /**
+     * @param endpointURL user or group endpoint of the provider
+     * @param name        user name or group display name
+     * @return id of the user or group at the provider, or <code>null</code> if it is not known
+     */
+    public static String getId(String endpointURL, String name) {
+        return getProvisionedIds().get(getKey(endpointURL, name));
+    }
+
+    /**
+     * @param endpointURL user or group endpoint of the provider
+     * @param name        user name or group display name
+     * @param id          id of the user or group at the provider
+     */
+    public static void putId(String endpointURL, String name, String id) {
+        getProvisionedIds().put(getKey(endpointURL, name), id);
+    }
+
+    /**
+     * @param endpointURL user or group endpoint of the provider
+     * @param name        user name or group display name
+     */
+    public static void removeId(String endpointURL, String name) {
+        getProvisionedIds().remove(getKey(endpointURL, name));
+    }
+
+    private static String getKey(String endpointURL, String name) {
+        return endpointURL + "|" + name;
+    }
+
+    private static synchronized Map<String, String> getProvisionedIds() {
+        if (provisionedIds == null) {
+            final int cacheSize = SCIMProvisioningConfigManager.getIntProperty(
+                    SCIMCommonConstants.PROVISIONED_ID_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+            provisionedIds = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        }
+        return provisionedIds;
+    }
+}
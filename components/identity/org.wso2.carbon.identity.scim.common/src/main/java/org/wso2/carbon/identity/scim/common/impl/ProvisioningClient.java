@@ -19,6 +19,8 @@ package org.wso2.carbon.identity.scim.common.impl;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -51,6 +53,11 @@ import java.util.Map;
 /**
  * This class implements logic to initiate SCIM provisioning operations to other SCIM provider endpoints.
  * Since SCIM provisioning operations are usually run asynchronously, this runs in a separate thread.
+ * <p/>
+ * Requests are sent with the pooled http client of the provider endpoint, given by
+ * {@link ProvisioningConnectionManager}. The ids given by the provider to the provisioned users and
+ * groups are kept in the {@link ProvisionedIdCache}, so that updates and deletes are sent without
+ * filtering the user or group by name first.
  */
 public class ProvisioningClient implements Runnable {
 
@@ -110,12 +117,7 @@ public class ProvisioningClient implements Runnable {
             //get provider details
             String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
             String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
-
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
-            }
+            String contentType = getContentType();
 
             String encodedUser = scimClient.encodeSCIMObject((AbstractSCIMObject) scimObject,
                                                              SCIMConstants.identifyFormat(contentType));
@@ -125,33 +127,38 @@ public class ProvisioningClient implements Runnable {
 
             PostMethod postMethod = new PostMethod(userEPURL);
             //add basic auth header
-            postMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
+            postMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER, getAuthorizationHeader());
             //create request entity with the payload.
             RequestEntity requestEntity = new StringRequestEntity(encodedUser,
                                                                   contentType, null);
             postMethod.setRequestEntity(requestEntity);
 
-            //create http client
-            HttpClient httpClient = new HttpClient();
-            //send the request
-            int responseStatus = httpClient.executeMethod(postMethod);
+            try {
+                //send the request
+                int responseStatus = getHttpClient(userEPURL).executeMethod(postMethod);
 
-            logger.info("SCIM - create user operation returned with response code: " + responseStatus);
+                logger.info("SCIM - create user operation returned with response code: " + responseStatus);
 
-            String response = postMethod.getResponseBodyAsString();
-            if (logger.isDebugEnabled()) {
-                logger.debug("Create User Response: " + response);
-            }
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //try to decode the scim object to verify that it gets decoded without issue.
-                scimClient.decodeSCIMResponse(response, SCIMConstants.identifyFormat(contentType),
-                                              objectType);
-            } else {
-                //decode scim exception and extract the specific error message.
-                AbstractCharonException exception =
-                        scimClient.decodeSCIMException(response, SCIMConstants.identifyFormat(contentType));
-                logger.error(exception.getDescription());
+                String response = postMethod.getResponseBodyAsString();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Create User Response: " + response);
+                }
+                if (scimClient.evaluateResponseStatus(responseStatus)) {
+                    //decode the scim object to verify that it gets decoded without issue, and keep its id.
+                    SCIMObject createdUser = scimClient.decodeSCIMResponse(
+                            response, SCIMConstants.identifyFormat(contentType), objectType);
+                    userId = ((AbstractSCIMObject) createdUser).getId();
+                    if (userId != null) {
+                        ProvisionedIdCache.putId(userEPURL, ((User) scimObject).getUserName(), userId);
+                    }
+                } else {
+                    //decode scim exception and extract the specific error message.
+                    AbstractCharonException exception =
+                            scimClient.decodeSCIMException(response, SCIMConstants.identifyFormat(contentType));
+                    logger.error(exception.getDescription());
+                }
+            } finally {
+                postMethod.releaseConnection();
             }
 
         } catch (CharonException e) {
@@ -182,68 +189,25 @@ public class ProvisioningClient implements Runnable {
         try {
             //get provider details
             String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
-            String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
-
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
-            }
-
-            /*get the userId of the user being provisioned from the particular provider by filtering
-              with user name*/
-            GetMethod getMethod = new GetMethod(userEPURL);
-            //add filter query parameter
-            getMethod.setQueryString(USER_FILTER + ((User) scimObject).getUserName());
-            //add authorization headers
-            getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                       BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-
-            //create http client
-            HttpClient httpFilterClient = new HttpClient();
-            //send the request
-            int responseStatus = httpFilterClient.executeMethod(getMethod);
+            String contentType = getContentType();
+            SCIMClient scimClient = new SCIMClient();
 
-            String response = getMethod.getResponseBodyAsString();
-            if (logger.isDebugEnabled()) {
-                logger.debug("SCIM - filter operation inside 'delete user' provisioning " +
-                             "returned with response code: " + responseStatus);
-                logger.debug("Filter User Response: " + response);
+            //send the delete request to the user, found by the user name.
+            HttpMethodBase deleteMethod = sendToProvisionedObject(
+                    userEPURL, USER_FILTER, ((User) scimObject).getUserName(), SCIMConstants.DELETE, null);
+            if (deleteMethod == null) {
+                logger.error("User: " + ((User) scimObject).getUserName() + " is not found at the SCIM provider.");
+                return;
             }
-            SCIMClient scimClient = new SCIMClient();
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //decode the response to extract the userId.
-                ListedResource listedResource = scimClient.decodeSCIMResponseWithListedResource(
-                        response, SCIMConstants.identifyFormat(contentType), objectType);
-                List<SCIMObject> users = listedResource.getScimObjects();
-                String userId = null;
-                //we expect only one user in the list
-                for (SCIMObject user : users) {
-                    userId = ((User) user).getId();
-                }
-                String url = userEPURL + "/" + userId;
-                //now send the delete request.
-                DeleteMethod deleteMethod = new DeleteMethod(url);
-                deleteMethod.addRequestHeader(
-                        SCIMConstants.AUTHORIZATION_HEADER,
-                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-                HttpClient httpDeleteClient = new HttpClient();
-                int deleteResponseStatus = httpDeleteClient.executeMethod(deleteMethod);
-                String deleteResponse = deleteMethod.getResponseBodyAsString();
-                logger.info("SCIM - delete user operation returned with response code: " +
-                            deleteResponseStatus);
-                if (!scimClient.evaluateResponseStatus(deleteResponseStatus)) {
-                    //decode scim exception and extract the specific error message.
-                    AbstractCharonException exception =
-                            scimClient.decodeSCIMException(
-                                    deleteResponse, SCIMConstants.identifyFormat(contentType));
-                    logger.error(exception.getDescription());
-                }
-            } else {
+            int deleteResponseStatus = deleteMethod.getStatusCode();
+            String deleteResponse = deleteMethod.getResponseBodyAsString();
+            logger.info("SCIM - delete user operation returned with response code: " +
+                        deleteResponseStatus);
+            if (!scimClient.evaluateResponseStatus(deleteResponseStatus)) {
                 //decode scim exception and extract the specific error message.
                 AbstractCharonException exception =
                         scimClient.decodeSCIMException(
-                                response, SCIMConstants.identifyFormat(contentType));
+                                deleteResponse, SCIMConstants.identifyFormat(contentType));
                 logger.error(exception.getDescription());
             }
         } catch (CharonException e) {
@@ -269,79 +233,29 @@ public class ProvisioningClient implements Runnable {
         try {
             //get provider details
             String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
-            String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
-
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
-            }
+            String contentType = getContentType();
+            SCIMClient scimClient = new SCIMClient();
 
-            /*get the userId of the user being provisioned from the particular provider by filtering
-              with user name*/
-            GetMethod getMethod = new GetMethod(userEPURL);
-            //add filter query parameter
-            getMethod.setQueryString(USER_FILTER + ((User) scimObject).getUserName());
-            //add authorization headers
-            getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                       BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-
-            //create http client
-            HttpClient httpFilterClient = new HttpClient();
-            //send the request
-            int responseStatus = httpFilterClient.executeMethod(getMethod);
+            String encodedUser = scimClient.encodeSCIMObject(
+                    (AbstractSCIMObject) scimObject, SCIMConstants.identifyFormat(contentType));
 
-            String response = getMethod.getResponseBodyAsString();
-            if (logger.isDebugEnabled()) {
-                logger.debug("SCIM - filter operation inside 'delete user' provisioning " +
-                             "returned with response code: " + responseStatus);
-                logger.debug("Filter User Response: " + response);
+            //send the update request to the user, found by the user name.
+            HttpMethodBase putMethod = sendToProvisionedObject(
+                    userEPURL, USER_FILTER, ((User) scimObject).getUserName(), SCIMConstants.PUT, encodedUser);
+            if (putMethod == null) {
+                logger.error("Trying to update a user entry which doesn't support SCIM. " +
+                             "Usually internal carbon User entries such as admin role doesn't support SCIM attributes.");
+                return;
             }
-            SCIMClient scimClient = new SCIMClient();
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //decode the response to extract the userId.
-                ListedResource listedResource = scimClient.decodeSCIMResponseWithListedResource(
-                        response, SCIMConstants.identifyFormat(contentType), objectType);
-                List<SCIMObject> users = listedResource.getScimObjects();
-                String userId = null;
-                //we expect only one user in the list
-                for (SCIMObject user : users) {
-                    userId = ((User) user).getId();
-                    if (userId == null) {
-                        logger.error("Trying to update a user entry which doesn't support SCIM. " +
-                                     "Usually internal carbon User entries such as admin role doesn't support SCIM attributes.");
-                        return;
-                    }
-                }
-                String url = userEPURL + "/" + userId;
-                //now send the update request.
-                PutMethod putMethod = new PutMethod(url);
-                putMethod.addRequestHeader(
-                        SCIMConstants.AUTHORIZATION_HEADER,
-                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-                String encodedUser = scimClient.encodeSCIMObject(
-                        (AbstractSCIMObject) scimObject, SCIMConstants.identifyFormat(contentType));
-                RequestEntity putRequestEntity = new StringRequestEntity(
-                        encodedUser, contentType, null);
-                putMethod.setRequestEntity(putRequestEntity);
-
-                HttpClient httpUpdateClient = new HttpClient();
-                int updateResponseStatus = httpUpdateClient.executeMethod(putMethod);
-                String updateResponse = putMethod.getResponseBodyAsString();
-                logger.info("SCIM - update user operation returned with response code: " +
-                            updateResponseStatus);
-                if (!scimClient.evaluateResponseStatus(updateResponseStatus)) {
-                    //decode scim exception and extract the specific error message.
-                    AbstractCharonException exception =
-                            scimClient.decodeSCIMException(
-                                    updateResponse, SCIMConstants.identifyFormat(contentType));
-                    logger.error(exception.getDescription());
-                }
-            } else {
+            int updateResponseStatus = putMethod.getStatusCode();
+            String updateResponse = putMethod.getResponseBodyAsString();
+            logger.info("SCIM - update user operation returned with response code: " +
+                        updateResponseStatus);
+            if (!scimClient.evaluateResponseStatus(updateResponseStatus)) {
                 //decode scim exception and extract the specific error message.
                 AbstractCharonException exception =
                         scimClient.decodeSCIMException(
-                                response, SCIMConstants.identifyFormat(contentType));
+                                updateResponse, SCIMConstants.identifyFormat(contentType));
                 logger.error(exception.getDescription());
             }
         } catch (CharonException e) {
@@ -367,73 +281,16 @@ public class ProvisioningClient implements Runnable {
     public void provisionCreateGroup() {
         try {
             //get provider details
-            String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
             String groupEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_GROUP_ENDPOINT);
-            String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
-
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
-            }
+            String contentType = getContentType();
             SCIMClient scimClient = new SCIMClient();
-            //get list of users in the group, if any, by userNames
-            List<String> users = ((Group) scimObject).getMembersWithDisplayName();
-
-            Group copiedGroup = null;
-            if (users != null && users.size() != 0) {
-                //create a deep copy of the group since we are going to update the member ids
-                copiedGroup = (Group) CopyUtil.deepCopy(scimObject);
-                //delete existing members in the group since we are going to update it with
-                copiedGroup.deleteAttribute(SCIMConstants.GroupSchemaConstants.MEMBERS);
-                //create http client
-                HttpClient httpFilterUserClient = new HttpClient();
-                //create get method for filtering
-                GetMethod getMethod = new GetMethod(userEPURL);
-                getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                           BasicAuthUtil.getBase64EncodedBasicAuthHeader(
-                                                   userName, password));
-                //get corresponding userIds
-                for (String user : users) {
-                    String filter = USER_FILTER + user;
-                    getMethod.setQueryString(filter);
-                    int responseCode = httpFilterUserClient.executeMethod(getMethod);
-                    String response = getMethod.getResponseBodyAsString();
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("SCIM - 'filter user' operation inside 'create group' provisioning " +
-                                     "returned with response code: " + responseCode);
-                        logger.debug("Filter User Response: " + response);
-                    }
-                    //check for success of the response
-                    if (scimClient.evaluateResponseStatus(responseCode)) {
-                        ListedResource listedUserResource =
-                                scimClient.decodeSCIMResponseWithListedResource(
-                                        response, SCIMConstants.identifyFormat(contentType),
-                                        SCIMConstants.USER_INT);
-                        List<SCIMObject> filteredUsers = listedUserResource.getScimObjects();
-                        String userId = null;
-                        for (SCIMObject filteredUser : filteredUsers) {
-                            //we expect only one result here
-                            userId = ((User) filteredUser).getId();
-                        }
-                        copiedGroup.setGroupMember(userId, user);
-                    } else {
-                        //decode scim exception and extract the specific error message.
-                        AbstractCharonException exception =
-                                scimClient.decodeSCIMException(
-                                        response, SCIMConstants.identifyFormat(contentType));
-                        logger.error(exception.getDescription());
-                    }
-                }
-            }
 
-            //provision create group operation
-            HttpClient httpCreateGroupClient = new HttpClient();
+            //replace the members of the group with their ids at the provider, if any.
+            Group copiedGroup = copyGroupWithMemberIds();
 
             PostMethod postMethod = new PostMethod(groupEPURL);
             //add basic auth header
-            postMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
+            postMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER, getAuthorizationHeader());
             //encode group
             String encodedGroup = null;
             if (copiedGroup != null) {
@@ -448,25 +305,33 @@ public class ProvisioningClient implements Runnable {
             RequestEntity requestEntity = new StringRequestEntity(encodedGroup, contentType, null);
             postMethod.setRequestEntity(requestEntity);
 
-            //send the request
-            int responseStatus = httpCreateGroupClient.executeMethod(postMethod);
+            try {
+                //send the request
+                int responseStatus = getHttpClient(groupEPURL).executeMethod(postMethod);
 
-            logger.info("SCIM - create group operation returned with response code: " + responseStatus);
+                logger.info("SCIM - create group operation returned with response code: " + responseStatus);
 
-            String postResponse = postMethod.getResponseBodyAsString();
+                String postResponse = postMethod.getResponseBodyAsString();
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Create Group Response: " + postResponse);
-            }
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //try to decode the scim object to verify that it gets decoded without issue.
-                scimClient.decodeSCIMResponse(postResponse, SCIMConstants.JSON,
-                                              objectType);
-            } else {
-                //decode scim exception and extract the specific error message.
-                AbstractCharonException exception =
-                        scimClient.decodeSCIMException(postResponse, SCIMConstants.JSON);
-                logger.error(exception.getDescription());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Create Group Response: " + postResponse);
+                }
+                if (scimClient.evaluateResponseStatus(responseStatus)) {
+                    //decode the scim object to verify that it gets decoded without issue, and keep its id.
+                    SCIMObject createdGroup = scimClient.decodeSCIMResponse(postResponse, SCIMConstants.JSON,
+                                                                            objectType);
+                    String groupId = ((AbstractSCIMObject) createdGroup).getId();
+                    if (groupId != null) {
+                        ProvisionedIdCache.putId(groupEPURL, ((Group) scimObject).getDisplayName(), groupId);
+                    }
+                } else {
+                    //decode scim exception and extract the specific error message.
+                    AbstractCharonException exception =
+                            scimClient.decodeSCIMException(postResponse, SCIMConstants.JSON);
+                    logger.error(exception.getDescription());
+                }
+            } finally {
+                postMethod.releaseConnection();
             }
         } catch (BadRequestException e) {
             logger.error("Error in provisioning 'create group' operation.");
@@ -495,68 +360,25 @@ public class ProvisioningClient implements Runnable {
         try {
             //get provider details
             String groupEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_GROUP_ENDPOINT);
-            String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
-
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
-            }
-
-            /*get the groupId of the group being provisioned from the particular provider by filtering
-              with display name*/
-            GetMethod getMethod = new GetMethod(groupEPURL);
-            //add filter query parameter
-            getMethod.setQueryString(GROUP_FILTER + ((Group) scimObject).getDisplayName());
-            //add authorization headers
-            getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                       BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-
-            //create http client
-            HttpClient httpFilterClient = new HttpClient();
-            //send the request
-            int responseStatus = httpFilterClient.executeMethod(getMethod);
-            String response = getMethod.getResponseBodyAsString();
+            String contentType = getContentType();
+            SCIMClient scimClient = new SCIMClient();
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("SCIM - filter operation inside 'delete group' provisioning " +
-                             "returned with response code: " + responseStatus);
-                logger.debug("Filter Group Response: " + response);
+            //send the delete request to the group, found by the display name.
+            HttpMethodBase deleteMethod = sendToProvisionedObject(
+                    groupEPURL, GROUP_FILTER, ((Group) scimObject).getDisplayName(), SCIMConstants.DELETE, null);
+            if (deleteMethod == null) {
+                logger.error("Group: " + ((Group) scimObject).getDisplayName() + " is not found at the SCIM provider.");
+                return;
             }
-            SCIMClient scimClient = new SCIMClient();
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //decode the response to extract the groupId.
-                ListedResource listedResource = scimClient.decodeSCIMResponseWithListedResource(
-                        response, SCIMConstants.identifyFormat(contentType), objectType);
-                List<SCIMObject> groups = listedResource.getScimObjects();
-                String groupId = null;
-                //we expect only one user in the list
-                for (SCIMObject group : groups) {
-                    groupId = ((Group) group).getId();
-                }
-                String url = groupEPURL + "/" + groupId;
-                //now send the delete request.
-                DeleteMethod deleteMethod = new DeleteMethod(url);
-                deleteMethod.addRequestHeader(
-                        SCIMConstants.AUTHORIZATION_HEADER,
-                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-                HttpClient httpDeleteClient = new HttpClient();
-                int deleteResponseStatus = httpDeleteClient.executeMethod(deleteMethod);
-                String deleteResponse = deleteMethod.getResponseBodyAsString();
-                logger.info("SCIM - delete group operation returned with response code: " +
-                            deleteResponseStatus);
-                if (!scimClient.evaluateResponseStatus(deleteResponseStatus)) {
-                    //decode scim exception and extract the specific error message.
-                    AbstractCharonException exception =
-                            scimClient.decodeSCIMException(
-                                    deleteResponse, SCIMConstants.identifyFormat(contentType));
-                    logger.error(exception.getDescription());
-                }
-            } else {
+            int deleteResponseStatus = deleteMethod.getStatusCode();
+            String deleteResponse = deleteMethod.getResponseBodyAsString();
+            logger.info("SCIM - delete group operation returned with response code: " +
+                        deleteResponseStatus);
+            if (!scimClient.evaluateResponseStatus(deleteResponseStatus)) {
                 //decode scim exception and extract the specific error message.
                 AbstractCharonException exception =
                         scimClient.decodeSCIMException(
-                                response, SCIMConstants.identifyFormat(contentType));
+                                deleteResponse, SCIMConstants.identifyFormat(contentType));
                 logger.error(exception.getDescription());
             }
         } catch (CharonException e) {
@@ -582,137 +404,41 @@ public class ProvisioningClient implements Runnable {
         try {
             //get provider details
             String groupEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_GROUP_ENDPOINT);
-            String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
-            String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
-            String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
-            String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
+            String contentType = getContentType();
+            SCIMClient scimClient = new SCIMClient();
 
-            if (contentType == null) {
-                contentType = SCIMConstants.APPLICATION_JSON;
+            //find the group by its old name if the role name is updated
+            String groupName = ((Group) scimObject).getDisplayName();
+            boolean isRoleNameChanged = additionalProvisioningInformation != null &&
+                    Boolean.TRUE.equals(additionalProvisioningInformation.get(
+                            SCIMCommonConstants.IS_ROLE_NAME_CHANGED_ON_UPDATE));
+            if (isRoleNameChanged) {
+                groupName = (String) additionalProvisioningInformation.get(SCIMCommonConstants.OLD_GROUP_NAME);
             }
 
-            /*get the groupId of the group being provisioned from the particular provider by filtering
-              with display name*/
-            GetMethod getMethod = new GetMethod(groupEPURL);
-            //add filter query parameter
-            //check if role name is updated
-            if (additionalProvisioningInformation != null && (Boolean) additionalProvisioningInformation.get(
-                    SCIMCommonConstants.IS_ROLE_NAME_CHANGED_ON_UPDATE)) {
-                getMethod.setQueryString(
-                        GROUP_FILTER + additionalProvisioningInformation.get(SCIMCommonConstants.OLD_GROUP_NAME));
-            } else {
-                getMethod.setQueryString(GROUP_FILTER + ((Group) scimObject).getDisplayName());
-            }
-            //add authorization headers
-            getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                       BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
+            String encodedGroup = scimClient.encodeSCIMObject(
+                    (AbstractSCIMObject) scimObject, SCIMConstants.identifyFormat(contentType));
 
-            //create http client
-            HttpClient httpFilterClient = new HttpClient();
-            //send the request
-            int responseStatus = httpFilterClient.executeMethod(getMethod);
-
-            String response = getMethod.getResponseBodyAsString();
-            if (logger.isDebugEnabled()) {
-                logger.debug("SCIM - filter operation inside 'update group' provisioning " +
-                             "returned with response code: " + responseStatus);
-                logger.debug("Filter Group Response: " + response);
+            //now send the update request.
+            HttpMethodBase putMethod = sendToProvisionedObject(
+                    groupEPURL, GROUP_FILTER, groupName, SCIMConstants.PUT, encodedGroup);
+            if (putMethod == null) {
+                logger.error("Group: " + groupName + " is not found at the SCIM provider.");
+                return;
             }
-            SCIMClient scimClient = new SCIMClient();
-            if (scimClient.evaluateResponseStatus(responseStatus)) {
-                //decode the response to extract the groupId.
-                ListedResource listedResource = scimClient.decodeSCIMResponseWithListedResource(
-                        response, SCIMConstants.identifyFormat(contentType), objectType);
-                List<SCIMObject> groups = listedResource.getScimObjects();
-                String groupId = null;
-                //we expect only one user in the list
-                for (SCIMObject group : groups) {
-                    groupId = ((Group) group).getId();
-                }
-
-                String url = groupEPURL + "/" + groupId;
-
-                //now start sending the update request.
-
-                //get list of users in the group, if any, by userNames
-                List<String> users = ((Group) scimObject).getMembersWithDisplayName();
-
-                Group copiedGroup = null;
-                if (users != null && users.size() != 0) {
-                    //create a deep copy of the group since we are going to update the member ids
-                    copiedGroup = (Group) CopyUtil.deepCopy(scimObject);
-                    //delete existing members in the group since we are going to update it with
-                    copiedGroup.deleteAttribute(SCIMConstants.GroupSchemaConstants.MEMBERS);
-                    //create http client
-                    HttpClient httpFilterUserClient = new HttpClient();
-                    //create get method for filtering
-                    GetMethod getUserMethod = new GetMethod(userEPURL);
-                    getUserMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER,
-                                                   BasicAuthUtil.getBase64EncodedBasicAuthHeader(
-                                                           userName, password));
-                    //get corresponding userIds
-                    for (String user : users) {
-                        String filter = USER_FILTER + user;
-                        getUserMethod.setQueryString(filter);
-                        int responseCode = httpFilterUserClient.executeMethod(getUserMethod);
-                        String filterUserResponse = getUserMethod.getResponseBodyAsString();
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("SCIM - 'filter user' operation inside 'update group' provisioning " +
-                                         "returned with response code: " + responseCode);
-                            logger.debug("Filter User Response: " + filterUserResponse);
-                        }
-                        //check for success of the response
-                        if (scimClient.evaluateResponseStatus(responseCode)) {
-                            ListedResource listedUserResource =
-                                    scimClient.decodeSCIMResponseWithListedResource(
-                                            filterUserResponse, SCIMConstants.identifyFormat(contentType),
-                                            SCIMConstants.USER_INT);
-                            List<SCIMObject> filteredUsers = listedUserResource.getScimObjects();
-                            String userId = null;
-                            for (SCIMObject filteredUser : filteredUsers) {
-                                //we expect only one result here
-                                userId = ((User) filteredUser).getId();
-                            }
-                            copiedGroup.setGroupMember(userId, user);
-                        } else {
-                            //decode scim exception and extract the specific error message.
-                            AbstractCharonException exception =
-                                    scimClient.decodeSCIMException(
-                                            filterUserResponse, SCIMConstants.identifyFormat(contentType));
-                            logger.error(exception.getDescription());
-                        }
-                    }
-                }
+            int updateResponseStatus = putMethod.getStatusCode();
+            String updateResponse = putMethod.getResponseBodyAsString();
 
-                //now send the update request.
-                PutMethod putMethod = new PutMethod(url);
-                putMethod.addRequestHeader(
-                        SCIMConstants.AUTHORIZATION_HEADER,
-                        BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password));
-                String encodedGroup = scimClient.encodeSCIMObject(
-                        (AbstractSCIMObject) scimObject, SCIMConstants.identifyFormat(contentType));
-                RequestEntity putRequestEntity = new StringRequestEntity(
-                        encodedGroup, contentType, null);
-                putMethod.setRequestEntity(putRequestEntity);
-
-                HttpClient httpUpdateClient = new HttpClient();
-                int updateResponseStatus = httpUpdateClient.executeMethod(putMethod);
-                String updateResponse = putMethod.getResponseBodyAsString();
-
-                logger.info("SCIM - update group operation returned with response code: " +
-                            updateResponseStatus);
-                if (!scimClient.evaluateResponseStatus(updateResponseStatus)) {
-                    //decode scim exception and extract the specific error message.
-                    AbstractCharonException exception = scimClient.decodeSCIMException(
-                            updateResponse, SCIMConstants.identifyFormat(contentType));
-                    logger.error(exception.getDescription());
-                }
-            } else {
+            logger.info("SCIM - update group operation returned with response code: " +
+                        updateResponseStatus);
+            if (!scimClient.evaluateResponseStatus(updateResponseStatus)) {
                 //decode scim exception and extract the specific error message.
-                AbstractCharonException exception =
-                        scimClient.decodeSCIMException(
-                                response, SCIMConstants.identifyFormat(contentType));
+                AbstractCharonException exception = scimClient.decodeSCIMException(
+                        updateResponse, SCIMConstants.identifyFormat(contentType));
                 logger.error(exception.getDescription());
+            } else if (isRoleNameChanged) {
+                //the id is looked up by the new name next time
+                ProvisionedIdCache.removeId(groupEPURL, groupName);
             }
         } catch (CharonException e) {
             logger.error("Error in provisioning 'delete group' operation.");
@@ -733,6 +459,164 @@ public class ProvisioningClient implements Runnable {
         }
     }
 
+    /**
+     * Creates a deep copy of the group with the members set by their ids at the provider
+     *
+     * @return copy of the group, or <code>null</code> if the group has no members
+     */
+    private Group copyGroupWithMemberIds() throws CharonException, BadRequestException, IOException {
+        String userEPURL = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USER_ENDPOINT);
+
+        //get list of users in the group, if any, by userNames
+        List<String> users = ((Group) scimObject).getMembersWithDisplayName();
+
+        Group copiedGroup = null;
+        if (users != null && users.size() != 0) {
+            //create a deep copy of the group since we are going to update the member ids
+            copiedGroup = (Group) CopyUtil.deepCopy(scimObject);
+            //delete existing members in the group since we are going to update it with
+            copiedGroup.deleteAttribute(SCIMConstants.GroupSchemaConstants.MEMBERS);
+            //get corresponding userIds
+            for (String user : users) {
+                String userId = getProvisionedId(userEPURL, USER_FILTER, user);
+                copiedGroup.setGroupMember(userId, user);
+            }
+        }
+        return copiedGroup;
+    }
+
+    /**
+     * Sends a request to the user or group of the given name at the provider. If the request to
+     * an id read from the {@link ProvisionedIdCache} fails as not found, the object may have been
+     * re-created at the provider, so its id is looked up again and the request is sent once more.
+     *
+     * @param endpointURL user or group endpoint of the provider
+     * @param filter      filter to find the object by name
+     * @param name        user name or group display name
+     * @param httpMethod  SCIMConstants.PUT or SCIMConstants.DELETE
+     * @param payload     encoded object for a PUT request
+     * @return the executed request, with its response read, or <code>null</code> if the id of the
+     *         object could not be found
+     */
+    private HttpMethodBase sendToProvisionedObject(String endpointURL, String filter, String name,
+                                                   int httpMethod, String payload)
+            throws CharonException, BadRequestException, IOException {
+
+        boolean isCached = ProvisionedIdCache.getId(endpointURL, name) != null;
+        String id = getProvisionedId(endpointURL, filter, name);
+        if (id == null) {
+            return null;
+        }
+        HttpMethodBase method = send(endpointURL + "/" + id, httpMethod, payload);
+
+        if (isCached && method.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+            ProvisionedIdCache.removeId(endpointURL, name);
+            id = getProvisionedId(endpointURL, filter, name);
+            if (id == null) {
+                return null;
+            }
+            method = send(endpointURL + "/" + id, httpMethod, payload);
+        }
+
+        if (SCIMConstants.DELETE == httpMethod) {
+            ProvisionedIdCache.removeId(endpointURL, name);
+        }
+        return method;
+    }
+
+    /**
+     * Gets the id of the user or group of the given name at the provider, from the
+     * {@link ProvisionedIdCache} or else by filtering the objects of the provider by name.
+     *
+     * @return id of the object, or <code>null</code> if it could not be found
+     */
+    private String getProvisionedId(String endpointURL, String filter, String name)
+            throws CharonException, BadRequestException, IOException {
+
+        String id = ProvisionedIdCache.getId(endpointURL, name);
+        if (id != null) {
+            return id;
+        }
+
+        String contentType = getContentType();
+        GetMethod getMethod = new GetMethod(endpointURL);
+        //add filter query parameter
+        getMethod.setQueryString(filter + name);
+        //add authorization headers
+        getMethod.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER, getAuthorizationHeader());
+
+        try {
+            //send the request
+            int responseStatus = getHttpClient(endpointURL).executeMethod(getMethod);
+            String response = getMethod.getResponseBodyAsString();
+            if (logger.isDebugEnabled()) {
+                logger.debug("SCIM - filter operation for: " + name + " returned with response code: " +
+                             responseStatus);
+                logger.debug("Filter Response: " + response);
+            }
+
+            SCIMClient scimClient = new SCIMClient();
+            if (scimClient.evaluateResponseStatus(responseStatus)) {
+                int filteredType = USER_FILTER.equals(filter) ? SCIMConstants.USER_INT : SCIMConstants.GROUP_INT;
+                ListedResource listedResource = scimClient.decodeSCIMResponseWithListedResource(
+                        response, SCIMConstants.identifyFormat(contentType), filteredType);
+                //we expect only one object in the list
+                for (SCIMObject filteredObject : listedResource.getScimObjects()) {
+                    id = ((AbstractSCIMObject) filteredObject).getId();
+                }
+                if (id != null) {
+                    ProvisionedIdCache.putId(endpointURL, name, id);
+                }
+            } else {
+                //decode scim exception and extract the specific error message.
+                AbstractCharonException exception =
+                        scimClient.decodeSCIMException(response, SCIMConstants.identifyFormat(contentType));
+                logger.error(exception.getDescription());
+            }
+        } finally {
+            getMethod.releaseConnection();
+        }
+        return id;
+    }
+
+    private HttpMethodBase send(String url, int httpMethod, String payload) throws IOException {
+        HttpMethodBase method;
+        if (SCIMConstants.PUT == httpMethod) {
+            PutMethod putMethod = new PutMethod(url);
+            putMethod.setRequestEntity(new StringRequestEntity(payload, getContentType(), null));
+            method = putMethod;
+        } else {
+            method = new DeleteMethod(url);
+        }
+        method.addRequestHeader(SCIMConstants.AUTHORIZATION_HEADER, getAuthorizationHeader());
+        try {
+            getHttpClient(url).executeMethod(method);
+            //read the response before the connection is given back to the pool
+            method.getResponseBodyAsString();
+        } finally {
+            method.releaseConnection();
+        }
+        return method;
+    }
+
+    private HttpClient getHttpClient(String endpointURL) {
+        return ProvisioningConnectionManager.getHttpClient(endpointURL);
+    }
+
+    private String getAuthorizationHeader() {
+        String userName = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_USERNAME);
+        String password = provider.getProperty(SCIMConfigConstants.ELEMENT_NAME_PASSWORD);
+        return BasicAuthUtil.getBase64EncodedBasicAuthHeader(userName, password);
+    }
+
+    private String getContentType() {
+        String contentType = provider.getProperty(SCIMConstants.CONTENT_TYPE_HEADER);
+        if (contentType == null) {
+            contentType = SCIMConstants.APPLICATION_JSON;
+        }
+        return contentType;
+    }
+
     /**
      * When an object implementing interface <code>Runnable</code> is used
      * to create a thread, starting the thread causes the object's
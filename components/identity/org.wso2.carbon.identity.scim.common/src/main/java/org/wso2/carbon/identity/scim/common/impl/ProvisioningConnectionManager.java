@@ -0,0 +1,132 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.scim.common.config.SCIMProvisioningConfigManager;
+import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one pooled HTTP client for each SCIM provider endpoint, so that provisioning requests
+ * sent to a provider reuse kept-alive connections instead of opening a connection each. Idle
+ * connections are closed in the background.
+ */
+public class ProvisioningConnectionManager {
+
+    private static Log logger = LogFactory.getLog(ProvisioningConnectionManager.class.getName());
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+    private static final int DEFAULT_CONNECTION_TIMEOUT = 10000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+
+    //http clients by the scheme, host and port of the provider endpoints
+    private static Map<String, HttpClient> httpClients = new ConcurrentHashMap<String, HttpClient>();
+
+    private static IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+
+    private ProvisioningConnectionManager() {
+    }
+
+    /**
+     * Gets the pooled http client used to send requests to the given endpoint
+     *
+     * @param endpointURL URL of a SCIM provider endpoint
+     * @return http client shared by the endpoints of the same host
+     */
+    public static HttpClient getHttpClient(String endpointURL) {
+        String endpointKey = getEndpointKey(endpointURL);
+        HttpClient httpClient = httpClients.get(endpointKey);
+        if (httpClient == null) {
+            synchronized (ProvisioningConnectionManager.class) {
+                httpClient = httpClients.get(endpointKey);
+                if (httpClient == null) {
+                    httpClient = createHttpClient();
+                    httpClients.put(endpointKey, httpClient);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Created pooled http client for SCIM provider endpoint: " + endpointKey);
+                    }
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Closes the connections of all the http clients
+     */
+    public static synchronized void shutdown() {
+        if (idleConnectionTimeoutThread != null) {
+            idleConnectionTimeoutThread.shutdown();
+            idleConnectionTimeoutThread = null;
+        }
+        for (HttpClient httpClient : httpClients.values()) {
+            ((MultiThreadedHttpConnectionManager) httpClient.getHttpConnectionManager()).shutdown();
+        }
+        httpClients.clear();
+    }
+
+    private static HttpClient createHttpClient() {
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(SCIMProvisioningConfigManager.getIntProperty(
+                SCIMCommonConstants.PROVISIONING_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        params.setMaxTotalConnections(SCIMProvisioningConfigManager.getIntProperty(
+                SCIMCommonConstants.PROVISIONING_MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_TOTAL_CONNECTIONS));
+        params.setConnectionTimeout(SCIMProvisioningConfigManager.getIntProperty(
+                SCIMCommonConstants.PROVISIONING_CONNECTION_TIMEOUT, DEFAULT_CONNECTION_TIMEOUT));
+        params.setSoTimeout(SCIMProvisioningConfigManager.getIntProperty(
+                SCIMCommonConstants.PROVISIONING_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT));
+        //connections closed by the provider while idle in the pool are detected before reuse
+        params.setStaleCheckingEnabled(true);
+
+        if (idleConnectionTimeoutThread == null) {
+            int idleConnectionTimeout = SCIMProvisioningConfigManager.getIntProperty(
+                    SCIMCommonConstants.PROVISIONING_IDLE_CONNECTION_TIMEOUT, DEFAULT_IDLE_CONNECTION_TIMEOUT);
+            idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+            idleConnectionTimeoutThread.setName("SCIMProvisioningIdleConnectionCloser");
+            idleConnectionTimeoutThread.setConnectionTimeout(idleConnectionTimeout);
+            idleConnectionTimeoutThread.setTimeoutInterval(Math.max(idleConnectionTimeout / 2, 1000));
+            idleConnectionTimeoutThread.start();
+        }
+        idleConnectionTimeoutThread.addConnectionManager(connectionManager);
+
+        return new HttpClient(connectionManager);
+    }
+
+    private static String getEndpointKey(String endpointURL) {
+        try {
+            URL url = new URL(endpointURL);
+            int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            return url.getProtocol() + "://" + url.getHost() + ":" + port;
+        } catch (MalformedURLException e) {
+            return endpointURL;
+        }
+    }
+}
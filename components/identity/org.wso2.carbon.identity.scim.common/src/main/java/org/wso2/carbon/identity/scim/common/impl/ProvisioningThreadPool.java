@@ -0,0 +1,89 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.wso2.carbon.identity.scim.common.config.SCIMProvisioningConfigManager;
+import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool which runs the SCIM provisioning requests asynchronously. When all the
+ * threads are busy and the queue is full, a request is run in the thread which submits it, which
+ * slows down the user operations instead of piling up threads or requests.
+ */
+public class ProvisioningThreadPool {
+
+    private static final int DEFAULT_THREAD_POOL_SIZE = 20;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final long KEEP_ALIVE_TIME = 60;
+
+    private static ThreadPoolExecutor executor;
+
+    private ProvisioningThreadPool() {
+    }
+
+    /**
+     * Submits the given provisioning request to the pool
+     *
+     * @param provisioningRequest provisioning client or handler to run
+     */
+    public static void submit(Runnable provisioningRequest) {
+        getExecutor().execute(provisioningRequest);
+    }
+
+    /**
+     * Stops the pool once the submitted requests are run
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int poolSize = SCIMProvisioningConfigManager.getIntProperty(
+                    SCIMCommonConstants.PROVISIONING_THREAD_POOL_SIZE, DEFAULT_THREAD_POOL_SIZE);
+            int queueSize = SCIMProvisioningConfigManager.getIntProperty(
+                    SCIMCommonConstants.PROVISIONING_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+            executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                                              new ArrayBlockingQueue<Runnable>(queueSize),
+                                              new ProvisioningThreadFactory(),
+                                              new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private static class ProvisioningThreadFactory implements ThreadFactory {
+
+        private AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SCIMProvisioning-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
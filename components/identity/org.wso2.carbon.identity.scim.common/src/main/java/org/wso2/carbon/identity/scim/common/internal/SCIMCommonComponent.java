@@ -7,6 +7,8 @@ import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.scim.common.config.SCIMProviderDAO;
 import org.wso2.carbon.identity.scim.common.config.SCIMProviderDTO;
 import org.wso2.carbon.identity.scim.common.config.SCIMProvisioningConfigManager;
+import org.wso2.carbon.identity.scim.common.impl.ProvisioningConnectionManager;
+import org.wso2.carbon.identity.scim.common.impl.ProvisioningThreadPool;
 import org.wso2.carbon.identity.scim.common.listener.SCIMUserOperationListener;
 import org.wso2.carbon.identity.scim.common.utils.IdentitySCIMException;
 import org.wso2.carbon.identity.scim.common.utils.SCIMCommonUtils;
@@ -81,6 +83,14 @@ public class SCIMCommonComponent {
         }
     }
     
+    protected void deactivate(ComponentContext ctx) {
+        ProvisioningThreadPool.shutdown();
+        ProvisioningConnectionManager.shutdown();
+        if (logger.isDebugEnabled()) {
+            logger.debug("SCIM Common component is deactivated");
+        }
+    }
+
     protected void setIdentityUtil(IdentityUtil idnUtil) {
         identityUtil = idnUtil;
     }
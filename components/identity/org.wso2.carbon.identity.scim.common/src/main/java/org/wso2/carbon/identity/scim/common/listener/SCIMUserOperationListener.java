@@ -24,6 +24,7 @@ import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.scim.common.config.SCIMProvisioningConfigManager;
 import org.wso2.carbon.identity.scim.common.group.SCIMGroupHandler;
+import org.wso2.carbon.identity.scim.common.impl.ProvisioningThreadPool;
 import org.wso2.carbon.identity.scim.common.utils.AttributeMapper;
 import org.wso2.carbon.identity.scim.common.utils.IdentitySCIMException;
 import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
@@ -49,8 +50,6 @@ import org.wso2.charon.core.util.AttributeUtil;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * This is to perform SCIM related operation on User Operations.
@@ -61,8 +60,6 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
 
     private static Log log = LogFactory.getLog(SCIMUserOperationListener.class);
 
-    //to make provisioning to other providers asynchronously happen.
-    private ExecutorService provisioningThreadPool = Executors.newCachedThreadPool();
     private String provisioningHandlerImplClass= SCIMProvisioningConfigManager.getProvisioningHandlers()[0];
 
     public int getExecutionOrderId() {
@@ -184,7 +181,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
                 //create a map with provisioning data
                 Map<String, Object> provisioningData = new HashMap<String, Object>();
 
-                provisioningThreadPool.submit(getProvisioningHandlerFromUser(
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromUser(
                         consumerUserId, user, SCIMConstants.POST, null));
             }
         } catch (NotFoundException e) {
@@ -263,7 +260,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
 						User user = new User();
 						user.setUserName(userName);
 						user.setPassword((String) credential);
-						provisioningThreadPool
+						ProvisioningThreadPool
 								.submit(getProvisioningHandlerFromUser(consumerUserId, user, SCIMConstants.PUT, null));
 					}
 				}
@@ -296,7 +293,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
             if (isProvisioningActionAuthorized(false, null) && isSCIMConsumerEnabled(consumerUserId)) {
                 user = new User();
                 user.setUserName(userName);
-                provisioningThreadPool.submit(getProvisioningHandlerFromUser(consumerUserId, user, SCIMConstants.DELETE, null));
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromUser(consumerUserId, user, SCIMConstants.DELETE, null));
             }
         } catch (CharonException e) {
             throw new UserStoreException("Error in provisioning delete operation");
@@ -382,7 +379,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
 									}
                                 user = (User) AttributeMapper.constructSCIMObjectFromAttributes(
                                         attributes, SCIMConstants.USER_INT);
-                                provisioningThreadPool.submit(getProvisioningHandlerFromUser(
+                                ProvisioningThreadPool.submit(getProvisioningHandlerFromUser(
                                         consumerUserId, user, SCIMConstants.PUT, null));
                             }
                         }
@@ -480,7 +477,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
                         group.setMember(members);
                     }
                 }
-                provisioningThreadPool.submit(getProvisioningHandlerFromGroup(
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromGroup(
                         consumerUserId, group, SCIMConstants.POST, null));
             }
         } catch (CharonException e) {
@@ -528,7 +525,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
             if (isProvisioningActionAuthorized(false, null) && isSCIMConsumerEnabled(consumerUserId)) {
                 group = new Group();
                 group.setDisplayName(roleName);
-                provisioningThreadPool.submit(getProvisioningHandlerFromGroup(consumerUserId, group, SCIMConstants.DELETE, null));
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromGroup(consumerUserId, group, SCIMConstants.DELETE, null));
             }
         } catch (CharonException e) {
             throw new UserStoreException("Error in provisioning delete operation");
@@ -592,7 +589,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
                 Group group = new Group();
                 group.setDisplayName(newRoleName);
 
-                provisioningThreadPool.submit(getProvisioningHandlerFromGroup(
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromGroup(
                         consumerUserId, group, SCIMConstants.PUT, additionalInformation));
             }
         } catch (CharonException e) {
@@ -640,7 +637,7 @@ public class SCIMUserOperationListener implements UserOperationEventListener {
                         group.setMember(members);
                     }
                 }
-                provisioningThreadPool.submit(getProvisioningHandlerFromGroup(
+                ProvisioningThreadPool.submit(getProvisioningHandlerFromGroup(
                         consumerUserId, group, SCIMConstants.PUT, null));
             }
         } catch (CharonException e) {
@@ -33,6 +33,19 @@ public class SCIMCommonConstants {
     public static final String PROVISIONING_USER_PERMISSION = "/permission/admin/login";
     public static final String RESOURCE_TO_BE_AUTHORIZED = "ui.execute";
 
+    //provider property holding the bulk endpoint of the SCIM provider
+    public static final String ELEMENT_NAME_BULK_ENDPOINT = "bulkEndpoint";
+
+    //properties of provisioning-config.xml to tune outbound provisioning
+    public static final String PROVISIONING_MAX_CONNECTIONS_PER_HOST = "provisioning-max-connections-per-host";
+    public static final String PROVISIONING_MAX_TOTAL_CONNECTIONS = "provisioning-max-total-connections";
+    public static final String PROVISIONING_CONNECTION_TIMEOUT = "provisioning-connection-timeout";
+    public static final String PROVISIONING_SOCKET_TIMEOUT = "provisioning-socket-timeout";
+    public static final String PROVISIONING_IDLE_CONNECTION_TIMEOUT = "provisioning-idle-connection-timeout";
+    public static final String PROVISIONING_THREAD_POOL_SIZE = "provisioning-thread-pool-size";
+    public static final String PROVISIONING_QUEUE_SIZE = "provisioning-queue-size";
+    public static final String PROVISIONED_ID_CACHE_SIZE = "provisioned-id-cache-size";
+
     //cache id
     public static final String SCIM_CACHE = "SCIM_CACHE";
 
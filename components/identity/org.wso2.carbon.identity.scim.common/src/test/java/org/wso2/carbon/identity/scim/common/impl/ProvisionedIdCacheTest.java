@@ -0,0 +1,87 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProvisionedIdCacheTest {
+
+    //the cache is not configured, hence it keeps the default number of ids
+    private static final int CACHE_SIZE = 10000;
+
+    @Test
+    public void testCachedIdIsReturned() {
+        String userEPURL = "https://provider1.example.com/scim/Users";
+        Assert.assertNull(ProvisionedIdCache.getId(userEPURL, "hasini"));
+
+        ProvisionedIdCache.putId(userEPURL, "hasini", "2417e51c-438b-45b1-a38b-0bb4c64d9832");
+        Assert.assertEquals("2417e51c-438b-45b1-a38b-0bb4c64d9832", ProvisionedIdCache.getId(userEPURL, "hasini"));
+
+        ProvisionedIdCache.putId(userEPURL, "hasini", "5c1f3e9a-6a5b-4d8e-9f61-0d2c7b1e4a10");
+        Assert.assertEquals("5c1f3e9a-6a5b-4d8e-9f61-0d2c7b1e4a10", ProvisionedIdCache.getId(userEPURL, "hasini"));
+    }
+
+    @Test
+    public void testIdsAreKeptByEndpoint() {
+        String userEPURL = "https://provider2.example.com/scim/Users";
+        String groupEPURL = "https://provider2.example.com/scim/Groups";
+        String otherUserEPURL = "https://provider3.example.com/scim/Users";
+
+        ProvisionedIdCache.putId(userEPURL, "admin", "user-id");
+        ProvisionedIdCache.putId(groupEPURL, "admin", "group-id");
+
+        Assert.assertEquals("user-id", ProvisionedIdCache.getId(userEPURL, "admin"));
+        Assert.assertEquals("group-id", ProvisionedIdCache.getId(groupEPURL, "admin"));
+        Assert.assertNull(ProvisionedIdCache.getId(otherUserEPURL, "admin"));
+        Assert.assertNull(ProvisionedIdCache.getId(userEPURL, "administrator"));
+    }
+
+    @Test
+    public void testRemovedIdIsNotReturned() {
+        String userEPURL = "https://provider4.example.com/scim/Users";
+        ProvisionedIdCache.putId(userEPURL, "hasini", "hasini-id");
+        ProvisionedIdCache.putId(userEPURL, "gunasinghe", "gunasinghe-id");
+
+        ProvisionedIdCache.removeId(userEPURL, "hasini");
+
+        Assert.assertNull(ProvisionedIdCache.getId(userEPURL, "hasini"));
+        Assert.assertEquals("gunasinghe-id", ProvisionedIdCache.getId(userEPURL, "gunasinghe"));
+        //removing an id which is not cached does nothing
+        ProvisionedIdCache.removeId(userEPURL, "hasini");
+        Assert.assertNull(ProvisionedIdCache.getId(userEPURL, "hasini"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIdIsDropped() {
+        String userEPURL = "https://provider5.example.com/scim/Users";
+        String fillerEPURL = "https://provider6.example.com/scim/Users";
+        ProvisionedIdCache.putId(userEPURL, "used", "used-id");
+        ProvisionedIdCache.putId(userEPURL, "unused", "unused-id");
+        for (int i = 2; i < CACHE_SIZE; i++) {
+            ProvisionedIdCache.putId(fillerEPURL, "user" + i, "id" + i);
+        }
+
+        Assert.assertEquals("used-id", ProvisionedIdCache.getId(userEPURL, "used"));
+        ProvisionedIdCache.putId(fillerEPURL, "user" + CACHE_SIZE, "id" + CACHE_SIZE);
+
+        Assert.assertNull(ProvisionedIdCache.getId(userEPURL, "unused"));
+        Assert.assertEquals("used-id", ProvisionedIdCache.getId(userEPURL, "used"));
+        Assert.assertEquals("id" + CACHE_SIZE, ProvisionedIdCache.getId(fillerEPURL, "user" + CACHE_SIZE));
+    }
+}
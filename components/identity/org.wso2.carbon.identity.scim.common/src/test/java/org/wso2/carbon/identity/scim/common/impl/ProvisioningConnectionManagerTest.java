@@ -0,0 +1,97 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.common.impl;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ProvisioningConnectionManagerTest {
+
+    @After
+    public void tearDown() {
+        ProvisioningConnectionManager.shutdown();
+    }
+
+    @Test
+    public void testClientIsSharedByEndpointsOfAHost() {
+        HttpClient userClient = ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Users");
+        HttpClient groupClient = ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Groups");
+        HttpClient explicitPortClient =
+                ProvisioningConnectionManager.getHttpClient("https://provider.example.com:443/scim/Bulk");
+
+        Assert.assertNotNull(userClient);
+        Assert.assertSame(userClient, groupClient);
+        Assert.assertSame(userClient, explicitPortClient);
+        Assert.assertSame(userClient, ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Users"));
+    }
+
+    @Test
+    public void testClientsAreKeptByHostAndPort() {
+        HttpClient client = ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Users");
+
+        Assert.assertNotSame(client, ProvisioningConnectionManager.getHttpClient("https://other.example.com/scim/Users"));
+        Assert.assertNotSame(client, ProvisioningConnectionManager.getHttpClient("https://provider.example.com:9443/scim/Users"));
+        Assert.assertNotSame(client, ProvisioningConnectionManager.getHttpClient("http://provider.example.com/scim/Users"));
+    }
+
+    @Test
+    public void testShutdownDropsTheClients() {
+        HttpClient client = ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Users");
+        ProvisioningConnectionManager.shutdown();
+
+        HttpClient newClient = ProvisioningConnectionManager.getHttpClient("https://provider.example.com/scim/Users");
+        Assert.assertNotNull(newClient);
+        Assert.assertNotSame(client, newClient);
+    }
+
+    @Test
+    public void testConcurrentRequestsGetOneClient() throws Exception {
+        int threadCount = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<HttpClient>> clients = new ArrayList<Future<HttpClient>>();
+            for (int i = 0; i < threadCount; i++) {
+                clients.add(executor.submit(new Callable<HttpClient>() {
+                    public HttpClient call() throws Exception {
+                        start.await();
+                        return ProvisioningConnectionManager.getHttpClient("https://concurrent.example.com/scim/Users");
+                    }
+                }));
+            }
+            start.countDown();
+
+            HttpClient client = clients.get(0).get();
+            for (Future<HttpClient> future : clients) {
+                Assert.assertSame(client, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.wso2.carbon.identity.scim.provider.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,7 @@ import org.wso2.carbon.identity.scim.common.utils.AttributeMapper;
 import org.wso2.carbon.identity.scim.common.utils.IdentitySCIMException;
 import org.wso2.carbon.identity.scim.common.utils.SCIMCommonConstants;
 import org.wso2.carbon.identity.scim.common.utils.SCIMCommonUtils;
+import org.wso2.carbon.identity.scim.provider.util.SCIMProviderConstants;
 import org.wso2.carbon.user.api.ClaimMapping;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserCoreConstants;
@@ -61,9 +63,15 @@ public class SCIMUserManager implements UserManager {
     private UserStoreManager carbonUM = null;
     private ClaimManager carbonClaimManager = null;
     private String consumerName;
+    //SCIM claim URIs, read once for all the users returned by a request
+    private String[] scimClaimURIs;
+    //groups of the roles, looked up once for all the users returned by a request
+    private Map<String, Group> roleGroups = new HashMap<String, Group>();
 
     private static Log log = LogFactory.getLog(SCIMUserManager.class);
 
+    private static final String DESCENDING_SORT_ORDER = "descending";
+
     //to make provisioning to other providers asynchronously happen.
     private ExecutorService provisioningThreadPool = Executors.newCachedThreadPool();
 
@@ -198,33 +206,92 @@ public class SCIMUserManager implements UserManager {
     }
 
     public List<User> listUsers() throws CharonException {
-        List<User> users = new ArrayList();
+        List<String> userNames = this.listUserNames(1, -1);
+        if (userNames.isEmpty()) {
+            return null;
+        }
+        return this.getSCIMUsers(userNames, null);
+    }
+
+    /**
+     * Lists the names of the users in the given page. Only the users up to the end of the page are
+     * read from the user store, so that the user names of the whole user store are not listed to
+     * return the first pages.
+     *
+     * @param startIndex 1-based index of the first user of the page
+     * @param count      number of users in the page, or -1 for all the users after startIndex
+     * @return user names of the page
+     * @throws CharonException
+     */
+    public List<String> listUserNames(int startIndex, int count) throws CharonException {
+        List<String> pageUserNames = new ArrayList<String>();
+        if (count == 0) {
+            return pageUserNames;
+        }
+        startIndex = Math.max(startIndex, 1);
         try {
-            String[] userNames = carbonUM.listUsers("*", -1);
-            if (userNames != null && userNames.length != 0) {
-                for (String userName : userNames) {
-                	if(userName.contains(UserCoreConstants.NAME_COMBINER)) {
-                		userName = userName.split("\\"+ UserCoreConstants.NAME_COMBINER)[0];
-                	}
-                    if (CarbonConstants.REGISTRY_ANONNYMOUS_USERNAME.equals(userName)) {
-                        continue;
-                    }
-                    User scimUser = this.getSCIMUser(userName);
-                    //if SCIM-ID is not present in the attributes, skip
-                    if (scimUser.getId() == null) {
-                        continue;
-                    }
-                    Map<String, Attribute> attrMap = scimUser.getAttributeList();
-                    if (attrMap != null && !attrMap.isEmpty()) {
-                        users.add(scimUser);
-                    }
+            String[] userNames = carbonUM.listUsers("*", count < 0 ? -1 : startIndex - 1 + count);
+            if (userNames == null) {
+                return pageUserNames;
+            }
+            for (int i = startIndex - 1; i < userNames.length; i++) {
+                if (count > 0 && pageUserNames.size() == count) {
+                    break;
                 }
-            } else {
-                return null;
+                String userName = userNames[i];
+                if (userName.contains(UserCoreConstants.NAME_COMBINER)) {
+                    userName = userName.split("\\" + UserCoreConstants.NAME_COMBINER)[0];
+                }
+                if (CarbonConstants.REGISTRY_ANONNYMOUS_USERNAME.equals(userName)) {
+                    continue;
+                }
+                pageUserNames.add(userName);
             }
         } catch (org.wso2.carbon.user.core.UserStoreException e) {
             throw new CharonException("Error while retrieving users from user store..", e);
         }
+        return pageUserNames;
+    }
+
+    /**
+     * Get the user with the given name, reading only the claims of the given attributes.
+     *
+     * @param userName
+     * @param requiredAttributes names of the SCIM attributes to be returned, or <code>null</code>
+     *                           for all the attributes. id and userName are always returned.
+     * @return user, or <code>null</code> if the user does not have a SCIM id
+     * @throws CharonException
+     */
+    public User getSCIMUser(String userName, List<String> requiredAttributes) throws CharonException {
+        User scimUser;
+        try {
+            scimUser = this.getSCIMUser(userName, this.getSCIMClaimURIs(requiredAttributes),
+                                        this.isRequiredAttribute(SCIMConstants.GROUPS_URI,
+                                                                 requiredAttributes));
+        } catch (UserStoreException e) {
+            throw new CharonException("Error in getting user information from Carbon User Store for " +
+                                      "user: " + userName, e);
+        }
+        //if SCIM-ID is not present in the attributes, skip
+        if (scimUser.getId() == null) {
+            return null;
+        }
+        return scimUser;
+    }
+
+    private List<User> getSCIMUsers(List<String> userNames, List<String> requiredAttributes)
+            throws CharonException {
+        List<User> users = new ArrayList<User>();
+        for (String userName : userNames) {
+            User scimUser = this.getSCIMUser(userName, requiredAttributes);
+            if (scimUser == null) {
+                continue;
+            }
+            Map<String, Attribute> attrMap = scimUser.getAttributeList();
+            if (attrMap != null && !attrMap.isEmpty()) {
+                users.add(scimUser);
+            }
+        }
         return users;
     }
 
@@ -284,12 +351,28 @@ public class SCIMUserManager implements UserManager {
         return filteredUsers;
     }
 
-    public List<User> listUsersBySort(String s, String s1) {
-        return null;
+    public List<User> listUsersBySort(String sortBy, String sortOrder) throws CharonException {
+        //only sorting by user name is supported, since it does not need the claims of all the users
+        if (sortBy == null || !SCIMConstants.USER_NAME_URI.equalsIgnoreCase(getAttributeURI(sortBy))) {
+            throw new CharonException("Sorting users by: " + sortBy + " is not supported.");
+        }
+        List<String> userNames = this.listUserNames(1, -1);
+        if (userNames.isEmpty()) {
+            return null;
+        }
+        Collections.sort(userNames, String.CASE_INSENSITIVE_ORDER);
+        if (DESCENDING_SORT_ORDER.equalsIgnoreCase(sortOrder)) {
+            Collections.reverse(userNames);
+        }
+        return this.getSCIMUsers(userNames, null);
     }
 
-    public List<User> listUsersWithPagination(int i, int i1) {
-        return null;
+    public List<User> listUsersWithPagination(int startIndex, int count) throws CharonException {
+        List<String> userNames = this.listUserNames(startIndex, count);
+        if (userNames.isEmpty()) {
+            return null;
+        }
+        return this.getSCIMUsers(userNames, null);
     }
 
     public User updateUser(User user) throws CharonException {
@@ -406,6 +489,8 @@ public class SCIMUserManager implements UserManager {
     }
 
     public Group createGroup(Group group) throws CharonException, DuplicateResourceException {
+        //groups looked up for the users so far may be changed by this operation
+        roleGroups.clear();
         SCIMProvisioningConfigManager provisioningConfigManager =
                 SCIMProvisioningConfigManager.getInstance();
 
@@ -625,6 +710,8 @@ public class SCIMUserManager implements UserManager {
     }
 
     public Group updateGroup(Group oldGroup, Group newGroup) throws CharonException {
+        //groups looked up for the users so far may be changed by this operation
+        roleGroups.clear();
         SCIMProvisioningConfigManager provisioningConfigManager =
                 SCIMProvisioningConfigManager.getInstance();
         
@@ -751,6 +838,8 @@ public class SCIMUserManager implements UserManager {
     }
 
     public void deleteGroup(String groupId) throws NotFoundException, CharonException {
+        //groups looked up for the users so far may be changed by this operation
+        roleGroups.clear();
         SCIMProvisioningConfigManager provisioningConfigManager =
                 SCIMProvisioningConfigManager.getInstance();
         //if operating in dumb mode, do not persist the operation, only provision to providers
@@ -797,18 +886,20 @@ public class SCIMUserManager implements UserManager {
     }
 
     private User getSCIMUser(String userName) throws CharonException {
-        User scimUser = null;
         try {
-            //get claims related to SCIM claim dialect
-            ClaimMapping[] claims = carbonClaimManager.getAllClaimMappings(SCIMCommonUtils.SCIM_CLAIM_DIALECT);
+            return this.getSCIMUser(userName, this.getSCIMClaimURIs(null), true);
+        } catch (UserStoreException e) {
+            throw new CharonException("Error in getting user information from Carbon User Store for " +
+                                      "user: " + userName, e);
+        }
+    }
 
-            List<String> claimURIList = new ArrayList<String>();
-            for (ClaimMapping claim : claims) {
-                claimURIList.add(claim.getClaim().getClaimUri());
-            }
+    private User getSCIMUser(String userName, String[] claimURIs, boolean includeGroups)
+            throws CharonException {
+        User scimUser = null;
+        try {
             //obtain user claim values
-            Map<String, String> attributes = carbonUM.getUserClaimValues(
-                    userName, claimURIList.toArray(new String[claimURIList.size()]), null);
+            Map<String, String> attributes = carbonUM.getUserClaimValues(userName, claimURIs, null);
             //skip simple type addresses claim coz it is complex with sub types in the schema
             if (attributes.containsKey(SCIMConstants.ADDRESSES_URI)) {
                 attributes.remove(SCIMConstants.ADDRESSES_URI);
@@ -816,12 +907,15 @@ public class SCIMUserManager implements UserManager {
 
             // Add username with domain name
             attributes.put(SCIMConstants.USER_NAME_URI, userName);
-            
-            //get groups of user and add it as groups attribute
-            String[] roles = carbonUM.getRoleListOfUser(userName);
+
             //construct the SCIM Object from the attributes
             scimUser = (User) AttributeMapper.constructSCIMObjectFromAttributes(
                     attributes, SCIMConstants.USER_INT);
+            if (!includeGroups) {
+                return scimUser;
+            }
+            //get groups of user and add it as groups attribute
+            String[] roles = carbonUM.getRoleListOfUser(userName);
             //add groups of user:
             for (String role : roles) {
                 if (UserCoreUtil.isEveryoneRole(role, carbonUM.getRealmConfiguration())
@@ -834,7 +928,13 @@ public class SCIMUserManager implements UserManager {
                     // skip intenal roles
                     continue;
                 }
-                Group group = getGroupOnlyWithMetaAttributes(role);
+                Group group;
+                if (roleGroups.containsKey(role)) {
+                    group = roleGroups.get(role);
+                } else {
+                    group = getGroupOnlyWithMetaAttributes(role);
+                    roleGroups.put(role, group);
+                }
 				if (group != null) { // can be null for non SCIM groups
 					scimUser.setGroup(null, group.getId(), role);
 				}
@@ -855,6 +955,71 @@ public class SCIMUserManager implements UserManager {
         return scimUser;
     }
 
+    /**
+     * Get the URIs of the SCIM claims of the given attributes. The claim mappings of the SCIM
+     * dialect are read once, and reused for the other users returned by the same request.
+     *
+     * @param requiredAttributes names of the SCIM attributes, or <code>null</code> for all
+     * @return claim URIs
+     * @throws UserStoreException
+     */
+    private String[] getSCIMClaimURIs(List<String> requiredAttributes) throws UserStoreException {
+        if (scimClaimURIs == null) {
+            //get claims related to SCIM claim dialect
+            ClaimMapping[] claims = carbonClaimManager.getAllClaimMappings(SCIMCommonUtils.SCIM_CLAIM_DIALECT);
+
+            List<String> claimURIList = new ArrayList<String>();
+            for (ClaimMapping claim : claims) {
+                claimURIList.add(claim.getClaim().getClaimUri());
+            }
+            scimClaimURIs = claimURIList.toArray(new String[claimURIList.size()]);
+        }
+        if (requiredAttributes == null) {
+            return scimClaimURIs;
+        }
+        List<String> requiredClaimURIs = new ArrayList<String>();
+        for (String claimURI : scimClaimURIs) {
+            //id is always read, since users without a SCIM id are not returned
+            if (SCIMConstants.ID_URI.equals(claimURI) || isRequiredAttribute(claimURI, requiredAttributes)) {
+                requiredClaimURIs.add(claimURI);
+            }
+        }
+        return requiredClaimURIs.toArray(new String[requiredClaimURIs.size()]);
+    }
+
+    /**
+     * Checks whether the attribute of the given claim URI is one of the required attributes, or a
+     * sub attribute of one of them (e.g. name.givenName of name).
+     *
+     * @param claimURI
+     * @param requiredAttributes attribute names or URIs, or <code>null</code> for all
+     * @return
+     */
+    private boolean isRequiredAttribute(String claimURI, List<String> requiredAttributes) {
+        if (requiredAttributes == null) {
+            return true;
+        }
+        for (String requiredAttribute : requiredAttributes) {
+            String attributeURI = getAttributeURI(requiredAttribute);
+            if (claimURI.equalsIgnoreCase(attributeURI) ||
+                claimURI.toLowerCase().startsWith(attributeURI.toLowerCase() + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attributeName name of a core SCIM attribute, or URI of an attribute
+     * @return URI of the attribute
+     */
+    private String getAttributeURI(String attributeName) {
+        if (attributeName.indexOf(':') < 0) {
+            return SCIMProviderConstants.DEFAULT_SCIM_DIALECT + ":" + attributeName;
+        }
+        return attributeName;
+    }
+
     /**
      * Get the full group with all the details including users.
      *
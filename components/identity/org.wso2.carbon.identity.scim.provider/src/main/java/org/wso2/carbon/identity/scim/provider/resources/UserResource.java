@@ -20,7 +20,9 @@ package org.wso2.carbon.identity.scim.provider.resources;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.scim.provider.impl.IdentitySCIMManager;
+import org.wso2.carbon.identity.scim.provider.impl.SCIMUserManager;
 import org.wso2.carbon.identity.scim.provider.util.JAXRSResponseBuilder;
+import org.wso2.carbon.identity.scim.provider.util.ListedUsersStreamingOutput;
 import org.wso2.charon.core.encoder.Encoder;
 import org.wso2.charon.core.exceptions.BadRequestException;
 import org.wso2.charon.core.exceptions.CharonException;
@@ -43,6 +45,9 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.util.ArrayList;
+import java.util.List;
 
 @Path("/")
 public class UserResource extends AbstractResource {
@@ -253,6 +258,13 @@ public class UserResource extends AbstractResource {
             UserManager userManager = IdentitySCIMManager.getInstance().getUserManager(
                     authorization);
 
+            if (filter == null && sortBy == null && userManager instanceof SCIMUserManager
+                    && SCIMConstants.APPLICATION_JSON.equals(format)) {
+                // read only the requested page and attributes, and stream the users.
+                return listUsers((SCIMUserManager) userManager, encoder, searchAttribute,
+                        startIndex, count);
+            }
+
             // create charon-SCIM user endpoint and hand-over the request.
             UserResourceEndpoint userResourceEndpoint = new UserResourceEndpoint();
             SCIMResponse scimResponse = null;
@@ -303,6 +315,64 @@ public class UserResource extends AbstractResource {
         }
     }
 
+    /**
+     * Lists the users of the given page with the given attributes, as a JSON response which is
+     * written while the users are read from the user store. The claims are read only for the users
+     * of the page.
+     * <p/>
+     * When a count is given, the user names are listed only up to one user past the page, so the
+     * totalResults of the response is approximate: it is exact on the last page, and otherwise
+     * counts the users up to the end of the page plus one, so that a client which pages until
+     * startIndex exceeds totalResults reads all the users. Without a count, all the user names,
+     * up to the maximum list length of the user store, are listed.
+     *
+     * @param userManager
+     * @param encoder
+     * @param attributes  comma separated attributes to be returned, or <code>null</code> for all
+     * @param startIndex  1-based index of the first user, or <code>null</code>
+     * @param count       number of users to be returned, or <code>null</code> for all
+     * @return
+     * @throws CharonException
+     * @throws BadRequestException if startIndex or count is not a number
+     */
+    private Response listUsers(SCIMUserManager userManager, Encoder encoder, String attributes,
+            String startIndex, String count) throws CharonException, BadRequestException {
+        List<String> requiredAttributes = null;
+        if (attributes != null) {
+            requiredAttributes = new ArrayList<String>();
+            for (String attribute : attributes.split(",")) {
+                if (attribute.trim().length() > 0) {
+                    requiredAttributes.add(attribute.trim());
+                }
+            }
+        }
+
+        int pageStartIndex;
+        int pageCount;
+        try {
+            pageStartIndex = startIndex != null ? Math.max(Integer.parseInt(startIndex), 1) : 1;
+            pageCount = count != null ? Integer.parseInt(count) : -1;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(ResponseCodeConstants.DESC_BAD_REQUEST_GET);
+        }
+        boolean paginated = startIndex != null || count != null;
+
+        List<String> userNames;
+        if (pageCount < 0) {
+            userNames = userManager.listUserNames(1, -1);
+        } else {
+            // one more user than the page, to tell whether there are users after it
+            userNames = userManager.listUserNames(1,
+                    (int) Math.min((long) pageStartIndex + pageCount, Integer.MAX_VALUE));
+        }
+        int fromIndex = Math.min(pageStartIndex - 1, userNames.size());
+        int toIndex = pageCount < 0 ? userNames.size() : Math.min(fromIndex + pageCount, userNames.size());
+        StreamingOutput output = new ListedUsersStreamingOutput(userManager, encoder,
+                userNames.subList(fromIndex, toIndex), userNames.size(), requiredAttributes,
+                paginated ? pageStartIndex : -1);
+        return Response.ok(output, SCIMConstants.APPLICATION_JSON).build();
+    }
+
     @PUT
     @Path("{id}")
     public Response updateUser(@PathParam(SCIMConstants.CommonSchemaConstants.ID) String id,
@@ -0,0 +1,108 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.identity.scim.provider.util;
+
+import org.wso2.carbon.identity.scim.provider.impl.SCIMUserManager;
+import org.wso2.charon.core.encoder.Encoder;
+import org.wso2.charon.core.exceptions.CharonException;
+import org.wso2.charon.core.objects.User;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a list of users as a SCIM listed resource in JSON, reading and encoding one user at a
+ * time while the response is written, so that the users of a large page are not all held in
+ * memory at once.
+ * <p/>
+ * Users without a SCIM id are not written, which is only known once a user is read, so the counts
+ * are written after the users. They leave out the skipped users of the page.
+ */
+public class ListedUsersStreamingOutput implements StreamingOutput {
+
+    private SCIMUserManager userManager;
+    private Encoder encoder;
+    private List<String> userNames;
+    private int totalResults;
+    private List<String> requiredAttributes;
+    private int startIndex;
+    private boolean paginated;
+
+    /**
+     * @param userManager        user manager to read the users from
+     * @param encoder            JSON encoder of the users
+     * @param userNames          names of the users to be written
+     * @param totalResults       number of users of all the pages
+     * @param requiredAttributes attributes to be written for each user, or <code>null</code> for all
+     * @param startIndex         index of the first user of the page, or -1 if not paginated
+     */
+    public ListedUsersStreamingOutput(SCIMUserManager userManager, Encoder encoder,
+                                      List<String> userNames, int totalResults,
+                                      List<String> requiredAttributes, int startIndex) {
+        this.userManager = userManager;
+        this.encoder = encoder;
+        this.userNames = userNames;
+        this.totalResults = totalResults;
+        this.requiredAttributes = requiredAttributes;
+        this.startIndex = startIndex;
+        this.paginated = startIndex > 0;
+    }
+
+    public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        writer.write("{\"" + SCIMProviderConstants.LISTED_RESOURCE_SCHEMAS + "\":[\"" +
+                     SCIMProviderConstants.DEFAULT_SCIM_DIALECT + "\"],");
+        writer.write("\"" + SCIMProviderConstants.LISTED_RESOURCE_RESOURCES + "\":[");
+        int written = 0;
+        int skipped = 0;
+        try {
+            for (String userName : userNames) {
+                User user = userManager.getSCIMUser(userName, requiredAttributes);
+                if (user == null) {
+                    skipped++;
+                    continue;
+                }
+                if (written > 0) {
+                    writer.write(",");
+                }
+                writer.write(encoder.encodeSCIMObject(user));
+                written++;
+            }
+        } catch (CharonException e) {
+            //the status is already sent, hence the response can only be cut short
+            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        writer.write("],");
+        if (paginated) {
+            writer.write("\"" + SCIMProviderConstants.LISTED_RESOURCE_ITEMS_PER_PAGE + "\":" +
+                         written + ",");
+            writer.write("\"" + SCIMProviderConstants.LISTED_RESOURCE_START_INDEX + "\":" +
+                         startIndex + ",");
+        }
+        writer.write("\"" + SCIMProviderConstants.LISTED_RESOURCE_TOTAL_RESULTS + "\":" +
+                     (totalResults - skipped) + "}");
+        writer.flush();
+    }
+}
@@ -32,5 +32,11 @@ public class SCIMProviderConstants {
     
     public static final String DEFAULT_SCIM_DIALECT = "urn:scim:schemas:core:1.0";
 
+    public static final String LISTED_RESOURCE_SCHEMAS = "schemas";
+    public static final String LISTED_RESOURCE_TOTAL_RESULTS = "totalResults";
+    public static final String LISTED_RESOURCE_ITEMS_PER_PAGE = "itemsPerPage";
+    public static final String LISTED_RESOURCE_START_INDEX = "startIndex";
+    public static final String LISTED_RESOURCE_RESOURCES = "Resources";
+
 
 }
@@ -26,22 +26,19 @@ import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 import org.wso2.carbon.base.ServerConfiguration;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.sso.saml.SAMLSSOConstants;
 import org.wso2.carbon.identity.sso.saml.util.SAMLSSOUtil;
-import org.wso2.carbon.security.keystore.KeyStoreAdmin;
+import org.wso2.carbon.security.keystore.KeyStoreCredentialCache;
 import org.wso2.carbon.utils.AuthenticationObserver;
 import org.wso2.carbon.utils.TenantUtils;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import javax.crypto.SecretKey;
-import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
@@ -77,9 +74,7 @@ public class SignKeyDataHolder implements X509Credential {
 
     public SignKeyDataHolder(String username) throws IdentityException {
         String keyAlias = null;
-        KeyStoreAdmin keyAdmin ;
-        KeyStoreManager keyMan ;
-        Certificate[] certificates ;
+        KeyStoreCredentialCache credentialCache = KeyStoreCredentialCache.getInstance();
         int tenantID;
         String tenantDomain;
         String userTenantDomain;
@@ -111,16 +106,8 @@ public class SignKeyDataHolder implements X509Credential {
             if (tenantID != MultitenantConstants.SUPER_TENANT_ID) {
                 String keyStoreName = SAMLSSOUtil.generateKSNameFromDomainName(tenantDomain);
                 keyAlias = tenantDomain;
-                keyMan = KeyStoreManager.getInstance(tenantID);
-                KeyStore keyStore = keyMan.getKeyStore(keyStoreName);
-                issuerPK = (PrivateKey) keyMan.getPrivateKey(keyStoreName, tenantDomain);
-                certificates = keyStore.getCertificateChain(keyAlias);
-                issuerCerts = new X509Certificate[certificates.length];
-
-                int i = 0;
-                for (Certificate certificate : certificates) {
-                    issuerCerts[i++] = (X509Certificate) certificate;
-                }
+                issuerPK = credentialCache.getPrivateKey(tenantID, keyStoreName, tenantDomain);
+                issuerCerts = credentialCache.getCertificateChain(tenantID, keyStoreName, keyAlias);
 
                 signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_RSA;
 
@@ -133,20 +120,8 @@ public class SignKeyDataHolder implements X509Credential {
                 keyAlias = ServerConfiguration.getInstance().getFirstProperty(
                         "Security.KeyStore.KeyAlias");
 
-                keyAdmin = new KeyStoreAdmin(tenantID,
-                        SAMLSSOUtil.getRegistryService().getGovernanceSystemRegistry());
-                keyMan = KeyStoreManager.getInstance(tenantID);
-
-                issuerPK = (PrivateKey) keyAdmin.getPrivateKey(keyAlias, true);
-
-                certificates = keyMan.getPrimaryKeyStore().getCertificateChain(keyAlias);
-
-                issuerCerts = new X509Certificate[certificates.length];
-
-                int i = 0;
-                for (Certificate certificate : certificates) {
-                    issuerCerts[i++] = (X509Certificate) certificate;
-                }
+                issuerPK = credentialCache.getPrivateKey(tenantID, null, keyAlias);
+                issuerCerts = credentialCache.getCertificateChain(tenantID, null, keyAlias);
 
                 signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_RSA;
 
@@ -35,9 +35,15 @@ import java.security.cert.CertificateEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Default SSOSigner. Holds no per request state, hence a single initialized instance is shared
+ * by all the threads.
+ */
 public class DefaultSSOSigner implements SSOSigner{
     @Override
     public void init() throws IdentityException {
+        // Init.init() is synchronized, do it once here rather than on every signing call
+        org.apache.xml.security.Init.init();
     }
 
     @Override
@@ -92,7 +98,6 @@ public class DefaultSSOSigner implements SSOSigner{
 
         marshaller.marshall(assertion);
 
-        org.apache.xml.security.Init.init();
         Signer.signObjects(signatureList);
         return assertion;
     } catch (Exception e) {
@@ -136,7 +141,6 @@ public class DefaultSSOSigner implements SSOSigner{
 
             marshaller.marshall(response);
 
-            org.apache.xml.security.Init.init();
             Signer.signObjects(signatureList);
             return response;
 
@@ -25,7 +25,8 @@ import org.opensaml.xml.security.x509.X509Credential;
 import org.wso2.carbon.identity.base.IdentityException;
 
 /**
- * Interface to Sign and validate the signature in SAML assertion
+ * Interface to Sign and validate the signature in SAML assertion. A single instance is created
+ * and initialized per server, hence implementations must be thread safe.
  */
 
 public interface SSOSigner {
@@ -30,6 +30,7 @@ import org.wso2.carbon.identity.base.IdentityConstants;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.sso.saml.SSOServiceProviderConfigManager;
 import org.wso2.carbon.identity.sso.saml.admin.FileBasedConfigManager;
+import org.wso2.carbon.identity.sso.saml.logout.LogoutRequestSender;
 import org.wso2.carbon.identity.sso.saml.servlet.SAMLSSOProviderServlet;
 import org.wso2.carbon.identity.sso.saml.util.SAMLSSOUtil;
 import org.wso2.carbon.registry.core.service.RegistryService;
@@ -70,6 +71,8 @@ public class IdentitySAMLSSOServiceComponent{
 
     protected void activate(ComponentContext ctxt) {
         SAMLSSOUtil.setBundleContext(ctxt.getBundleContext());
+        // the logout request threads are shut down when the bundle is deactivated
+        LogoutRequestSender.start();
         HttpService httpService = SAMLSSOUtil.getHttpService();
         
         // Register SAML SSO servlet
@@ -126,6 +129,7 @@ public class IdentitySAMLSSOServiceComponent{
 
     protected void deactivate(ComponentContext ctxt) {
         SAMLSSOUtil.setBundleContext(null);
+        LogoutRequestSender.getInstance().shutdown();
         if (log.isDebugEnabled()) {
             log.info("Identity SAML SSO bundle is deactivated");
         }
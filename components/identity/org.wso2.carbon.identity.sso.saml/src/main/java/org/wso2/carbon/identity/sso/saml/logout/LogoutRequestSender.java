@@ -20,16 +20,23 @@ package org.wso2.carbon.identity.sso.saml.logout;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.RequestAddCookies;
+import org.apache.http.client.protocol.ResponseProcessCookies;
 import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.wso2.carbon.identity.base.IdentityConstants;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.sso.saml.dto.SingleLogoutRequestDTO;
 import org.wso2.carbon.identity.sso.saml.util.SAMLSSOUtil;
 
@@ -37,29 +44,72 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is used to send logout requests to each and every session participant. It follows a fire and
  * forget approach where the task of sending each and every logout request is submitted to a threadpool
  * as a job. This class implements a singleton, because it is expensive to create thread pool for each
  * and every object.
+ * <p/>
+ * All the requests share a single pooled, keep-alive HTTP client. The number of requests in flight
+ * to a single service provider endpoint is bounded. A request to an endpoint which is busy waits in
+ * the queue of the endpoint, and is handed to the thread pool when a request in flight completes.
+ * Failed requests are re-scheduled on a timer instead of blocking a worker thread while waiting,
+ * and the configured retry interval is doubled on each attempt.
+ * <p/>
+ * The threads are stopped when the bundle is deactivated, and created again by {@link #start()}
+ * when it is activated again.
  */
 public class LogoutRequestSender {
 
     private static Log log = LogFactory.getLog(LogoutRequestSender.class);
 
-    private static ExecutorService threadPool = Executors.newFixedThreadPool(2);
+    private static final int DEFAULT_THREAD_POOL_SIZE = 10;
 
-    private static LogoutRequestSender instance = new LogoutRequestSender();
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_SP = 5;
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    // the retry interval is doubled on each attempt up to this many times
+    private static final int MAX_RETRY_BACKOFF_SHIFT = 10;
+
+    private static volatile LogoutRequestSender instance = new LogoutRequestSender();
+
+    private ThreadPoolExecutor threadPool;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private DefaultHttpClient httpClient;
+
+    private int maxConnectionsPerSP;
+
+    private ConcurrentMap<String, EndpointPermits> endpointPermits =
+            new ConcurrentHashMap<String, EndpointPermits>();
+
+    private ConcurrentMap<String, EndpointStatistics> endpointStatistics =
+            new ConcurrentHashMap<String, EndpointStatistics>();
+
+    private AtomicInteger scheduledRetries = new AtomicInteger();
 
     /**
      * This class is used to model a single logout request that is being sent to a session participant.
@@ -70,109 +120,182 @@ public class LogoutRequestSender {
 
         private SingleLogoutRequestDTO logoutReqDTO;
 
-        public LogoutReqSenderTask(SingleLogoutRequestDTO logoutReqDTO) {
+        private String endpoint;
+
+        private int attempt = 0;
+
+        // whether a permit of the endpoint was handed over to this task by a completed request
+        private boolean permitHeld;
+
+        public LogoutReqSenderTask(SingleLogoutRequestDTO logoutReqDTO, String endpoint) {
             this.logoutReqDTO = logoutReqDTO;
+            this.endpoint = endpoint;
         }
 
         public void run() {
-            List<NameValuePair> logoutReqParams = new ArrayList<NameValuePair>();
-            // set the logout request
-            logoutReqParams.add(new BasicNameValuePair("SAMLRequest", logoutReqDTO.getLogoutResponse()));
+            EndpointPermits permits = getEndpointPermits(endpoint);
+            if (!permitHeld && !permits.acquire(this)) {
+                // too many requests in flight to this service provider. The task is run again when
+                // one of them completes
+                return;
+            }
+            permitHeld = false;
+
+            int statusCode = 0;
+            long startTime = System.currentTimeMillis();
             try {
-                int port = derivePortFromAssertionConsumerURL(logoutReqDTO.getAssertionConsumerURL());
+                List<NameValuePair> logoutReqParams = new ArrayList<NameValuePair>();
+                // set the logout request
+                logoutReqParams.add(new BasicNameValuePair("SAMLRequest", logoutReqDTO.getLogoutResponse()));
                 UrlEncodedFormEntity entity = new UrlEncodedFormEntity(logoutReqParams, "UTF-8");
                 HttpPost httpPost = new HttpPost(logoutReqDTO.getAssertionConsumerURL());
                 httpPost.setEntity(entity);
                 httpPost.addHeader("Cookie", "JSESSIONID=" + logoutReqDTO.getRpSessionId());
-                TrustManager easyTrustManager = new X509TrustManager() {
-                    public void checkClientTrusted(
-                            java.security.cert.X509Certificate[] x509Certificates,
-                            String s)
-                            throws java.security.cert.CertificateException {
-                    }
 
-                    public void checkServerTrusted(
-                            java.security.cert.X509Certificate[] x509Certificates,
-                            String s)
-                            throws java.security.cert.CertificateException {
-                    }
+                // send the logout request as a POST
+                HttpResponse response = httpClient.execute(httpPost);
+                statusCode = response.getStatusLine().getStatusCode();
+                //Completely consume the response to release the connection back to the pool
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException e) {
+                // ignore this exception since retrying is enabled if the request failed.
+                if (log.isDebugEnabled()) {
+                    log.debug("Error sending logout request to : " +
+                              logoutReqDTO.getAssertionConsumerURL(), e);
+                }
+            } catch (RuntimeException e) {
+                log.error("Runtime exception occurred.", e);
+            } finally {
+                permits.release();
+            }
 
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return null;
-                    }
-                };
-
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                sslContext.init(null, new TrustManager[]{easyTrustManager}, null);
-                SSLSocketFactory sf = new SSLSocketFactory(sslContext);
-                sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-                Scheme httpsScheme = new Scheme("https", sf, port);
-
-                HttpClient httpClient = new DefaultHttpClient();
-                httpClient.getConnectionManager().getSchemeRegistry().register(httpsScheme);
-                
-                HttpResponse response = null;
-                boolean isSuccessfullyLogout = false;
-                for (int currentRetryCount = 0; currentRetryCount < SAMLSSOUtil.getSingleLogoutRetryCount(); currentRetryCount++) {
-                    int statusCode = 0;
-                    
-                    //Completely consume the previous response before retrying 
-                    if (response != null) {
-                    	HttpEntity httpEntity = response.getEntity();
-    					if (httpEntity != null && httpEntity.isStreaming()) {
-    						InputStream instream = httpEntity.getContent();
-    						if (instream != null)
-    							instream.close();
-    					}
-                    }
-                    
-                    // send the logout request as a POST
-                    try {
-                        response = httpClient.execute(httpPost);
-                        statusCode = response.getStatusLine().getStatusCode();
-                    } catch (IOException e) {
-                        // ignore this exception since retrying is enabled if response is null.
-                    }
-                    if (response != null && SAMLSSOUtil.isHttpSuccessStatusCode(statusCode)) {
-                        log.info("single logout request is sent to : " + logoutReqDTO.getAssertionConsumerURL() +
-                                 " is returned with " + HttpStatus.getStatusText(response.getStatusLine().getStatusCode()));
-                        isSuccessfullyLogout = true;
-                        break;
-                    } else {
-                        if (statusCode != 0) {
-                            log.warn("Failed single logout response from " +
-                                     logoutReqDTO.getAssertionConsumerURL() + " with status code " +
-                                     HttpStatus.getStatusText(statusCode));
-                        }
-                        try {
-                            synchronized (Thread.currentThread()) {
-                                Thread.currentThread().wait(SAMLSSOUtil.getSingleLogoutRetryInterval());
-                            }
-                            log.info("Sending single log out request again with retry count " +
-                                     (currentRetryCount + 1) + " after waiting for " +
-                                     SAMLSSOUtil.getSingleLogoutRetryInterval() + " milli seconds to " +
-                                     logoutReqDTO.getAssertionConsumerURL());
-                        } catch (InterruptedException e) {
-                            //Todo: handle this in better way.
-                        }
-                    }
+            boolean isSuccessfullyLogout = SAMLSSOUtil.isHttpSuccessStatusCode(statusCode);
+            getEndpointStatistics(endpoint).addRequest(System.currentTimeMillis() - startTime,
+                                                       isSuccessfullyLogout);
+            attempt++;
 
+            if (isSuccessfullyLogout) {
+                log.info("single logout request is sent to : " + logoutReqDTO.getAssertionConsumerURL() +
+                         " is returned with " + HttpStatus.getStatusText(statusCode));
+            } else {
+                if (statusCode != 0) {
+                    log.warn("Failed single logout response from " +
+                             logoutReqDTO.getAssertionConsumerURL() + " with status code " +
+                             HttpStatus.getStatusText(statusCode));
                 }
-                if (!isSuccessfullyLogout) {
+                if (attempt < SAMLSSOUtil.getSingleLogoutRetryCount()) {
+                    long retryInterval = SAMLSSOUtil.getSingleLogoutRetryInterval() <<
+                                         Math.min(attempt - 1, MAX_RETRY_BACKOFF_SHIFT);
+                    log.info("Sending single log out request again with retry count " + attempt +
+                             " after waiting for " + retryInterval +
+                             " milli seconds to " + logoutReqDTO.getAssertionConsumerURL());
+                    schedule(this, retryInterval);
+                } else {
                     log.error("Single logout failed after retrying " + SAMLSSOUtil.getSingleLogoutRetryCount() +
-                              " times with time interval " + SAMLSSOUtil.getSingleLogoutRetryInterval() + " in milli seconds.");
+                              " times with initial time interval " + SAMLSSOUtil.getSingleLogoutRetryInterval() +
+                              " in milli seconds.");
                 }
+            }
+        }
+    }
 
-            } catch (IOException e) {
-                log.error("Error sending logout requests to : " +
-                          logoutReqDTO.getAssertionConsumerURL(), e);
-            } catch (GeneralSecurityException e) {
-                log.error("Error registering the EasySSLProtocolSocketFactory", e);
-            } catch (RuntimeException e) {
-                log.error("Runtime exception occurred.", e);
-            } catch (URISyntaxException e) {
-                log.error("Error deriving port from the assertion consumer url", e);
+    /**
+     * The permits to send requests to a single service provider endpoint, and the tasks waiting
+     * for one of them, in the order they arrived.
+     */
+    private class EndpointPermits {
+
+        private int available = maxConnectionsPerSP;
+
+        private LinkedList<LogoutReqSenderTask> waitingTasks = new LinkedList<LogoutReqSenderTask>();
+
+        /**
+         * @return <code>true</code> if the task may send its request now, else the task is kept
+         * until a permit is released
+         */
+        private synchronized boolean acquire(LogoutReqSenderTask task) {
+            if (available > 0) {
+                available--;
+                return true;
+            }
+            waitingTasks.add(task);
+            return false;
+        }
+
+        /**
+         * Hands the permit over to the next waiting task, if any
+         */
+        private void release() {
+            LogoutReqSenderTask task;
+            synchronized (this) {
+                task = waitingTasks.poll();
+                if (task == null) {
+                    available++;
+                    return;
+                }
+            }
+            task.permitHeld = true;
+            try {
+                threadPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the permit is not held by any task now
+                synchronized (this) {
+                    available++;
+                }
+                log.warn("Single logout request to " + task.logoutReqDTO.getAssertionConsumerURL() +
+                         " is not sent since the single logout thread pool is shut down");
+            }
+        }
+
+        /**
+         * @return number of tasks waiting for a permit
+         */
+        private synchronized int getWaitingCount() {
+            return waitingTasks.size();
+        }
+    }
+
+    /**
+     * Latency and outcome statistics of the logout requests sent to a single service provider
+     * endpoint.
+     */
+    public static class EndpointStatistics {
+
+        private AtomicLong requestCount = new AtomicLong();
+
+        private AtomicLong failureCount = new AtomicLong();
+
+        private AtomicLong totalLatency = new AtomicLong();
+
+        private AtomicLong maxLatency = new AtomicLong();
+
+        private void addRequest(long latency, boolean isSuccess) {
+            requestCount.incrementAndGet();
+            if (!isSuccess) {
+                failureCount.incrementAndGet();
             }
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+                max = maxLatency.get();
+            }
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+
+        public long getAverageLatency() {
+            long count = requestCount.get();
+            return count == 0 ? 0 : totalLatency.get() / count;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency.get();
         }
     }
 
@@ -180,7 +303,41 @@ public class LogoutRequestSender {
      * A private constructor since we are implementing a singleton here
      */
     private LogoutRequestSender() {
+        int poolSize = getIntProperty(IdentityConstants.ServerConfig.SINGLE_LOGOUT_THREAD_POOL_SIZE,
+                                      DEFAULT_THREAD_POOL_SIZE);
+        maxConnectionsPerSP = getIntProperty(
+                IdentityConstants.ServerConfig.SINGLE_LOGOUT_MAX_CONNECTIONS_PER_SP,
+                DEFAULT_MAX_CONNECTIONS_PER_SP);
+        int timeout = getIntProperty(IdentityConstants.ServerConfig.SINGLE_LOGOUT_TIMEOUT,
+                                     DEFAULT_TIMEOUT);
 
+        threadPool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                                            new LinkedBlockingQueue<Runnable>());
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+
+        SchemeRegistry schemeRegistry = SchemeRegistryFactory.createDefault();
+        try {
+            schemeRegistry.register(new Scheme("https", 443, createSSLSocketFactory()));
+        } catch (GeneralSecurityException e) {
+            log.error("Error registering the EasySSLProtocolSocketFactory", e);
+        }
+        PoolingClientConnectionManager connectionManager =
+                new PoolingClientConnectionManager(schemeRegistry);
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerSP);
+
+        httpClient = new DefaultHttpClient(connectionManager);
+        HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), timeout);
+        HttpConnectionParams.setSoTimeout(httpClient.getParams(), timeout);
+        // the client is shared by all the participants, hence cookies must not be kept in the
+        // client. The session cookie of each participant is set on its request.
+        httpClient.removeRequestInterceptorByClass(RequestAddCookies.class);
+        httpClient.removeResponseInterceptorByClass(ResponseProcessCookies.class);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Single logout thread pool size is set to " + poolSize +
+                      " and maximum connections per service provider is set to " + maxConnectionsPerSP);
+        }
     }
 
     /**
@@ -192,6 +349,15 @@ public class LogoutRequestSender {
         return instance;
     }
 
+    /**
+     * Creates the thread pools and the HTTP client again, if they were shut down
+     */
+    public static synchronized void start() {
+        if (instance.threadPool.isShutdown()) {
+            instance = new LogoutRequestSender();
+        }
+    }
+
     /**
      * takes an array of SingleLogoutRequestDTO objects, creates and submits each of them as a task
      * to the thread pool
@@ -204,7 +370,20 @@ public class LogoutRequestSender {
         }
         // For each logoutReq, create a new task and submit it to the thread pool.
         for (SingleLogoutRequestDTO reqDTO : singleLogoutRequestDTOs) {
-            threadPool.submit(new LogoutReqSenderTask(reqDTO));
+            String endpoint;
+            try {
+                endpoint = deriveEndpointFromAssertionConsumerURL(reqDTO.getAssertionConsumerURL());
+            } catch (URISyntaxException e) {
+                log.error("Error sending logout requests to : " + reqDTO.getAssertionConsumerURL(), e);
+                continue;
+            }
+            try {
+                threadPool.execute(new LogoutReqSenderTask(reqDTO, endpoint));
+            } catch (RejectedExecutionException e) {
+                log.warn("Single logout request to " + reqDTO.getAssertionConsumerURL() +
+                         " is not sent since the single logout thread pool is shut down");
+                continue;
+            }
             if (log.isDebugEnabled()) {
                 log.debug("A logoutReqSenderTask is assigned to the thread pool");
 
@@ -213,13 +392,130 @@ public class LogoutRequestSender {
     }
 
     /**
-     * This method is used to derive the port from the assertion consumer URL.
+     * @return number of logout requests waiting for a free thread, or for a request in flight to
+     * their service provider endpoint to complete
+     */
+    public int getQueueDepth() {
+        int queueDepth = threadPool.getQueue().size();
+        for (EndpointPermits permits : endpointPermits.values()) {
+            queueDepth += permits.getWaitingCount();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @return number of logout requests waiting for their retry interval to elapse
+     */
+    public int getScheduledRetryCount() {
+        return scheduledRetries.get();
+    }
+
+    /**
+     * @return statistics of the logout requests sent so far, keyed by service provider endpoint
+     */
+    public Map<String, EndpointStatistics> getEndpointStatistics() {
+        return new HashMap<String, EndpointStatistics>(endpointStatistics);
+    }
+
+    /**
+     * Stops accepting new logout requests and releases the pooled connections
+     */
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        threadPool.shutdown();
+        httpClient.getConnectionManager().shutdown();
+    }
+
+    private void schedule(final LogoutReqSenderTask task, long delay) {
+        scheduledRetries.incrementAndGet();
+        try {
+            retryScheduler.schedule(new Runnable() {
+                public void run() {
+                    scheduledRetries.decrementAndGet();
+                    try {
+                        threadPool.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        log.warn("Single logout request to " + task.logoutReqDTO.getAssertionConsumerURL() +
+                                 " is not retried since the single logout thread pool is shut down");
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            scheduledRetries.decrementAndGet();
+            log.warn("Single logout request to " + task.logoutReqDTO.getAssertionConsumerURL() +
+                     " is not retried since the single logout thread pool is shut down");
+        }
+    }
+
+    private EndpointPermits getEndpointPermits(String endpoint) {
+        EndpointPermits permits = endpointPermits.get(endpoint);
+        if (permits == null) {
+            EndpointPermits newPermits = new EndpointPermits();
+            permits = endpointPermits.putIfAbsent(endpoint, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
+    private EndpointStatistics getEndpointStatistics(String endpoint) {
+        EndpointStatistics statistics = endpointStatistics.get(endpoint);
+        if (statistics == null) {
+            EndpointStatistics newStatistics = new EndpointStatistics();
+            statistics = endpointStatistics.putIfAbsent(endpoint, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+            }
+        }
+        return statistics;
+    }
+
+    private SSLSocketFactory createSSLSocketFactory() throws GeneralSecurityException {
+        TrustManager easyTrustManager = new X509TrustManager() {
+            public void checkClientTrusted(
+                    java.security.cert.X509Certificate[] x509Certificates,
+                    String s)
+                    throws java.security.cert.CertificateException {
+            }
+
+            public void checkServerTrusted(
+                    java.security.cert.X509Certificate[] x509Certificates,
+                    String s)
+                    throws java.security.cert.CertificateException {
+            }
+
+            public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        };
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{easyTrustManager}, null);
+        return new SSLSocketFactory(sslContext, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = IdentityUtil.getProperty(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value " + value + " for " + name + ". Default value " +
+                         defaultValue + " will be used.");
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * This method is used to derive the endpoint (host and port) from the assertion consumer URL.
      *
      * @param assertionConsumerURL Assertion Consumer URL
-     * @return Port, if mentioned in the URL, or else 443 as the default value
+     * @return host:port, where port is 443 unless mentioned in the URL or the URL is http
      * @throws MalformedURLException when the ACS is malformed.
      */
-    private int derivePortFromAssertionConsumerURL(String assertionConsumerURL)
+    private String deriveEndpointFromAssertionConsumerURL(String assertionConsumerURL)
             throws URISyntaxException {
         int port = 443;    // use 443 as the default port
         try {
@@ -229,13 +525,12 @@ public class LogoutRequestSender {
             } else if ("http".equals(uri.getScheme())) {  // if it is using http
                 port = 80;
             }
+            return uri.getHost() + ":" + port;
         } catch (URISyntaxException e) {
             log.error("Error deriving port from the assertion consumer url", e);
             throw e;
         }
-        return port;
     }
 
 
 }
-
@@ -96,8 +96,10 @@ public class SSOSessionPersistenceManager {
                         Registry registry = (Registry)PrivilegedCarbonContext.getThreadLocalCarbonContext().getRegistry(RegistryType.SYSTEM_CONFIGURATION);
                         spDO = identityPersistenceManager.getServiceProvider(registry, issuer);
                     }
-                    //give priority to assertion consuming URL if specified in the request
+                    //give priority to assertion consuming URL if specified in the request. The
+                    //service provider is copied, as it is shared by the other sessions
                     if (assertionConsumerURL != null) {
+                        spDO = new SAMLSSOServiceProviderDO(spDO);
                         spDO.setAssertionConsumerUrl(assertionConsumerURL);
                     }
                     sessionInfoData.addServiceProvider(spDO.getIssuer(), spDO, rpSessionId);
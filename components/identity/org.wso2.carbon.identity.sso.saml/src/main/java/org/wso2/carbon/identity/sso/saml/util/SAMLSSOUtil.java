@@ -27,7 +27,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.security.KeyStore;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -76,7 +75,6 @@ import org.w3c.dom.ls.LSOutput;
 import org.w3c.dom.ls.LSSerializer;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.context.RegistryType;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
 import org.wso2.carbon.identity.application.common.model.ClaimMapping;
 import org.wso2.carbon.identity.application.common.model.FederatedAuthenticatorConfig;
@@ -103,6 +101,7 @@ import org.wso2.carbon.identity.sso.saml.validators.SAML2HTTPRedirectSignatureVa
 import org.wso2.carbon.idp.mgt.IdentityProviderManager;
 import org.wso2.carbon.registry.core.Registry;
 import org.wso2.carbon.registry.core.service.RegistryService;
+import org.wso2.carbon.security.keystore.KeyStoreCredentialCache;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.ConfigurationContextService;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
@@ -126,9 +125,10 @@ public class SAMLSSOUtil {
     private static final Set<Character> UNRESERVED_CHARACTERS = new HashSet<Character>();
     private static String responseBuilderClassName = null;
 
-    private static SSOEncrypter ssoEncrypter = null;
-    private static SSOSigner ssoSigner = null;
-    private static SAML2HTTPRedirectSignatureValidator samlHTTPRedirectSignatureValidator = null;
+    private static volatile SSOEncrypter ssoEncrypter = null;
+    private static volatile SSOSigner ssoSigner = null;
+    private static volatile SAML2HTTPRedirectSignatureValidator samlHTTPRedirectSignatureValidator = null;
+    private static final Object signerLock = new Object();
     private static ThreadLocal tenantDomainInThreadLocal = new ThreadLocal();
     private static ThreadLocal<Boolean> isSaaSApplication = null;
     
@@ -475,13 +475,7 @@ public class SAMLSSOUtil {
         doBootstrap();
         try {
 
-            synchronized (Runtime.getRuntime().getClass()){
-                ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                        "SSOService.SAMLSSOSigner").trim()).newInstance();
-                ssoSigner.init();
-            }
-
-            return ssoSigner.doSignResponse(response, signatureAlgorithm, cred);
+            return getSSOSigner().doSignResponse(response, signatureAlgorithm, cred);
 
         } catch (ClassNotFoundException e) {
             throw new IdentityException("Class not found: "
@@ -503,13 +497,7 @@ public class SAMLSSOUtil {
         doBootstrap();
         try {
 
-            synchronized (Runtime.getRuntime().getClass()){
-                ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                        "SSOService.SAMLSSOSigner").trim()).newInstance();
-                ssoSigner.init();
-            }
-
-            return ssoSigner.doSetSignature(assertion, signatureAlgorithm,cred);
+            return getSSOSigner().doSetSignature(assertion, signatureAlgorithm,cred);
 //            Signature signature = (Signature) buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
 //            signature.setSigningCredential(cred);
 //            signature.setSignatureAlgorithm(signatureAlgorithm);
@@ -564,12 +552,7 @@ public class SAMLSSOUtil {
         try {
             X509Credential cred = SAMLSSOUtil.getX509CredentialImplForTenant(domainName, alias);
 
-                synchronized (Runtime.getRuntime().getClass()){
-                            ssoEncrypter = (SSOEncrypter)Class.forName(IdentityUtil.getProperty(
-                                    "SSOService.SAMLSSOEncrypter").trim()).newInstance();
-                            ssoEncrypter.init();
-                }
-                return  ssoEncrypter.doEncryptedAssertion(assertion, cred, alias, encryptionAlgorithm);
+            return getSSOEncrypter().doEncryptedAssertion(assertion, cred, alias, encryptionAlgorithm);
 //
 //            Credential symmetricCredential = SecurityHelper.getSimpleCredential(
 //                    SecurityHelper.generateSymmetricKey(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256));
@@ -603,6 +586,77 @@ public class SAMLSSOUtil {
     }
 
 
+    /**
+     * Returns the configured SSOService.SAMLSSOSigner. The signer is instantiated and initialized
+     * only once and shared by all the threads afterwards, hence implementations must be thread
+     * safe.
+     *
+     * @return initialized SSOSigner
+     */
+    private static SSOSigner getSSOSigner() throws ClassNotFoundException,
+            InstantiationException, IllegalAccessException, IdentityException {
+        SSOSigner signer = ssoSigner;
+        if (signer == null) {
+            synchronized (signerLock) {
+                signer = ssoSigner;
+                if (signer == null) {
+                    signer = (SSOSigner) Class.forName(IdentityUtil.getProperty(
+                            "SSOService.SAMLSSOSigner").trim()).newInstance();
+                    signer.init();
+                    ssoSigner = signer;
+                }
+            }
+        }
+        return signer;
+    }
+
+    /**
+     * Returns the configured SSOService.SAMLSSOEncrypter, instantiated and initialized once.
+     *
+     * @return initialized SSOEncrypter
+     */
+    private static SSOEncrypter getSSOEncrypter() throws ClassNotFoundException,
+            InstantiationException, IllegalAccessException, IdentityException {
+        SSOEncrypter encrypter = ssoEncrypter;
+        if (encrypter == null) {
+            synchronized (signerLock) {
+                encrypter = ssoEncrypter;
+                if (encrypter == null) {
+                    encrypter = (SSOEncrypter) Class.forName(IdentityUtil.getProperty(
+                            "SSOService.SAMLSSOEncrypter").trim()).newInstance();
+                    encrypter.init();
+                    ssoEncrypter = encrypter;
+                }
+            }
+        }
+        return encrypter;
+    }
+
+    /**
+     * Returns the configured SSOService.SAML2HTTPRedirectSignatureValidator, instantiated and
+     * initialized once.
+     *
+     * @return initialized SAML2HTTPRedirectSignatureValidator
+     */
+    private static SAML2HTTPRedirectSignatureValidator getSAMLHTTPRedirectSignatureValidator()
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException,
+            IdentityException {
+        SAML2HTTPRedirectSignatureValidator validator = samlHTTPRedirectSignatureValidator;
+        if (validator == null) {
+            synchronized (signerLock) {
+                validator = samlHTTPRedirectSignatureValidator;
+                if (validator == null) {
+                    validator = (SAML2HTTPRedirectSignatureValidator) Class.forName(
+                            IdentityUtil.getProperty("SSOService.SAML2HTTPRedirectSignatureValidator")
+                                    .trim()).newInstance();
+                    validator.init();
+                    samlHTTPRedirectSignatureValidator = validator;
+                }
+            }
+        }
+        return validator;
+    }
+
     /**
      * Builds SAML Elements
      *
@@ -678,22 +732,17 @@ public class SAMLSSOUtil {
             }
         }
 
-        KeyStoreManager keyStoreManager;
-        // get an instance of the corresponding Key Store Manager instance
-        keyStoreManager = KeyStoreManager.getInstance(tenantID);
-
         X509CredentialImpl credentialImpl = null;
-        KeyStore keyStore;
 
         try {
+            java.security.cert.X509Certificate cert;
             if (tenantID != -1234) {// for tenants, load private key from their generated key store
-                keyStore = keyStoreManager.getKeyStore(generateKSNameFromDomainName(domainName));
+                cert = KeyStoreCredentialCache.getInstance().getCertificate(tenantID,
+                        generateKSNameFromDomainName(domainName), alias);
             } else { // for super tenant, load the default pub. cert using the
                 // config. in carbon.xml
-                keyStore = keyStoreManager.getPrimaryKeyStore();
+                cert = KeyStoreCredentialCache.getInstance().getCertificate(tenantID, null, alias);
             }
-            java.security.cert.X509Certificate cert =
-                    (java.security.cert.X509Certificate) keyStore.getCertificate(alias);
             credentialImpl = new X509CredentialImpl(cert);
 
         } catch (Exception e) {
@@ -799,13 +848,7 @@ public class SAMLSSOUtil {
                                                     String alias, String domainName) throws IdentityException{
         try {
 
-                synchronized (Runtime.getRuntime().getClass()){
-                    samlHTTPRedirectSignatureValidator = (SAML2HTTPRedirectSignatureValidator)Class.forName(IdentityUtil.getProperty(
-                            "SSOService.SAML2HTTPRedirectSignatureValidator").trim()).newInstance();
-                    samlHTTPRedirectSignatureValidator.init();
-                }
-
-                return samlHTTPRedirectSignatureValidator.validateSignature(queryString, issuer,
+                return getSAMLHTTPRedirectSignatureValidator().validateSignature(queryString, issuer,
                         alias, domainName);
 
         } catch (SecurityException e) {
@@ -848,13 +891,7 @@ public class SAMLSSOUtil {
             try {
                 X509Credential cred = SAMLSSOUtil.getX509CredentialImplForTenant(domainName, alias);
 
-                synchronized (Runtime.getRuntime().getClass()){
-                    ssoSigner = (SSOSigner)Class.forName(IdentityUtil.getProperty(
-                            "SSOService.SAMLSSOSigner").trim()).newInstance();
-                    ssoSigner.init();
-                }
-
-                return ssoSigner.doValidateXMLSignature(request, cred, alias);
+                return getSSOSigner().doValidateXMLSignature(request, cred, alias);
             } catch (IdentitySAML2SSOException ignore) {
                 log.warn("Signature validation failed for the SAML Message : Failed to construct the X509CredentialImpl for the alias " +
                         alias);
@@ -902,6 +939,9 @@ public class SAMLSSOUtil {
         	spDO = persistenceManager.getServiceProvider(registry,authnReqDTO.getIssuer());
         }
 
+        // the service provider may be shared by other requests, so it is not changed
+        String spAttributeConsumingServiceIndex = spDO.getAttributeConsumingServiceIndex();
+
         if(!authnReqDTO.isIdPInitSSO()){
 
             AuthnRequestImpl request = null;
@@ -917,7 +957,7 @@ public class SAMLSSOUtil {
             if (request.getAttributeConsumingServiceIndex() == null) {
                 if (authnReqDTO.getAttributeConsumingServiceIndex() != 0) {
                     index = authnReqDTO.getAttributeConsumingServiceIndex();
-                    spDO.setAttributeConsumingServiceIndex(String.valueOf(index));
+                    spAttributeConsumingServiceIndex = String.valueOf(index);
                 } else {
                     return null; // not requesting for attributes
                 }
@@ -927,7 +967,7 @@ public class SAMLSSOUtil {
         } else {
             index = authnReqDTO.getAttributeConsumingServiceIndex();
             if(index != 0){
-                spDO.setAttributeConsumingServiceIndex(String.valueOf(index));
+                spAttributeConsumingServiceIndex = String.valueOf(index);
             }
 
         }
@@ -937,9 +977,9 @@ public class SAMLSSOUtil {
 		 * IMPORTANT : checking if the consumer index in the request matches the
 		 * given id to the SP
 		 */
-        if (spDO.getAttributeConsumingServiceIndex() == null ||
-                "".equals(spDO.getAttributeConsumingServiceIndex()) ||
-                index != Integer.parseInt(spDO.getAttributeConsumingServiceIndex())) {
+        if (spAttributeConsumingServiceIndex == null ||
+                "".equals(spAttributeConsumingServiceIndex) ||
+                index != Integer.parseInt(spAttributeConsumingServiceIndex)) {
             log.debug("Invalid AttributeConsumingServiceIndex in AuthnRequest");
             return null;
         }
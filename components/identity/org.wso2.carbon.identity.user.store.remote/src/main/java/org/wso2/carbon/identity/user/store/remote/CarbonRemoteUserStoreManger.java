@@ -2,9 +2,7 @@ package org.wso2.carbon.identity.user.store.remote;
 
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
@@ -26,13 +24,22 @@ import org.wso2.carbon.user.core.util.UserCoreUtil;
 
 public class CarbonRemoteUserStoreManger implements UserStoreManager {
 
-    private WSUserStoreManager remoteUserStore;
+    private RemoteUserStoreServerPool remoteServers;
     private RealmConfiguration realmConfig;
     private String domainName;
     private UserStoreManager secondaryUserStoreManager;
-    private Map<String, WSUserStoreManager> remoteServers = new HashMap<String, WSUserStoreManager>();
     private static Log log = LogFactory.getLog(CarbonRemoteUserStoreManger.class);
-    private static final String CONNECTION_REFUSED = "Connection refused";
+
+    private static final String SERVER_SELECTION = "serverSelection";
+    private static final String LEAST_LATENCY = "LeastLatency";
+    private static final String WRITE_QUORUM = "writeQuorum";
+    private static final String HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+    private static final String FAILURE_THRESHOLD = "failureThreshold";
+    private static final String CIRCUIT_OPEN_TIME = "circuitOpenTime";
+    private static final int DEFAULT_WRITE_QUORUM = 0;
+    private static final long DEFAULT_HEALTH_CHECK_INTERVAL = 30000;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_CIRCUIT_OPEN_TIME = 30000;
 
     public CarbonRemoteUserStoreManger() {
 
@@ -57,9 +64,14 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         }
 
         String[] serverUrls = realmConfig.getUserStoreProperty("serverUrls").split(",");
+        int failureThreshold = (int) getLongProperty(realmConfig, FAILURE_THRESHOLD,
+                DEFAULT_FAILURE_THRESHOLD);
+        long circuitOpenTime = getLongProperty(realmConfig, CIRCUIT_OPEN_TIME,
+                DEFAULT_CIRCUIT_OPEN_TIME);
+        RemoteUserStoreServer[] servers = new RemoteUserStoreServer[serverUrls.length];
 
         for (int i = 0; i < serverUrls.length; i++) {
-            remoteUserStore = new WSUserStoreManager(
+            WSUserStoreManager remoteUserStore = new WSUserStoreManager(
                     realmConfig.getUserStoreProperty("remoteUserName"),
                     realmConfig.getUserStoreProperty("password"), serverUrls[i],
                     configurationContext);
@@ -68,11 +80,19 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
                 log.debug("Remote Servers for User Management : " + serverUrls[i]);
             }
 
-            remoteServers.put(serverUrls[i], remoteUserStore);
+            servers[i] = new RemoteUserStoreServer(serverUrls[i], remoteUserStore,
+                    failureThreshold, circuitOpenTime);
         }
 
+        remoteServers = new RemoteUserStoreServerPool(servers,
+                LEAST_LATENCY.equalsIgnoreCase(realmConfig.getUserStoreProperty(SERVER_SELECTION)),
+                (int) getLongProperty(realmConfig, WRITE_QUORUM, DEFAULT_WRITE_QUORUM),
+                getLongProperty(realmConfig, HEALTH_CHECK_INTERVAL, DEFAULT_HEALTH_CHECK_INTERVAL));
+
         this.realmConfig = realmConfig;
         domainName = realmConfig.getUserStoreProperty(UserStoreConfigConstants.DOMAIN_NAME);
+        // a reloaded user store configuration replaces the server pool of the same user store
+        RemoteUserStoreServerPool.replace(realmConfig.getTenantId() + ":" + domainName, remoteServers);
     }
 
     /**
@@ -112,6 +132,27 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         mandatoryProperties = new Property[] { remoteServerUserName, password, serverUrls,
                 disabled, passwordJavaScriptRegEx, usernameJavaScriptRegEx, roleNameJavaScriptRegEx };
         properties.setMandatoryProperties(mandatoryProperties);
+
+        Property serverSelection = new Property(SERVER_SELECTION, "RoundRobin",
+                "Server Selection#Selection of the remote server for reads: RoundRobin or LeastLatency",
+                null);
+        Property writeQuorum = new Property(WRITE_QUORUM, String.valueOf(DEFAULT_WRITE_QUORUM),
+                "Write Quorum#Number of remote servers which must apply an update, 0 for all the servers",
+                null);
+        Property healthCheckInterval = new Property(HEALTH_CHECK_INTERVAL,
+                String.valueOf(DEFAULT_HEALTH_CHECK_INTERVAL),
+                "Health Check Interval#Interval in milliseconds of the remote server health check, 0 to disable",
+                null);
+        Property failureThreshold = new Property(FAILURE_THRESHOLD,
+                String.valueOf(DEFAULT_FAILURE_THRESHOLD),
+                "Failure Threshold#Consecutive connection failures after which a remote server is not used",
+                null);
+        Property circuitOpenTime = new Property(CIRCUIT_OPEN_TIME,
+                String.valueOf(DEFAULT_CIRCUIT_OPEN_TIME),
+                "Circuit Open Time#Time in milliseconds after which an unused remote server is tried again",
+                null);
+        properties.setOptionalProperties(new Property[] { serverSelection, writeQuorum,
+                healthCheckInterval, failureThreshold, circuitOpenTime });
         return properties;
     }
 
@@ -119,102 +160,45 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
 	 * 
 	 */
     @Override
-    public boolean isExistingRole(String roleName, boolean isShared)
+    public boolean isExistingRole(final String roleName, final boolean isShared)
             throws org.wso2.carbon.user.api.UserStoreException {
-        boolean rolesExists = false;
-        try {
-            rolesExists = remoteUserStore.isExistingRole(roleName, isShared);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+        return remoteServers.read(new RemoteUserStoreOperation<Boolean>() {
+            public Boolean execute(WSUserStoreManager userStore)
+                    throws org.wso2.carbon.user.api.UserStoreException {
+                return userStore.isExistingRole(roleName, isShared);
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        rolesExists = remoteStore.getValue().isExistingRole(roleName, isShared);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return rolesExists;
+        });
     }
 
     @Override
     public void addRole(String roleName, String[] userList, Permission[] permissions,
             boolean isSharedRole) throws org.wso2.carbon.user.api.UserStoreException {
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addRole(roleName, userList, permissions);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to update the remote server : " + remoteStore.getKey());
-            }
-        }
-
+        addRole(roleName, userList, permissions);
     }
 
     @Override
-    public void addRole(String roleName, String[] userList, Permission[] permissions)
-            throws org.wso2.carbon.user.api.UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-
-            try {
-                remoteStore.getValue().addRole(roleName, userList, permissions);
-            } catch (org.wso2.carbon.user.api.UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to update the remote server : " + remoteStore.getKey());
+    public void addRole(final String roleName, final String[] userList,
+            final Permission[] permissions) throws org.wso2.carbon.user.api.UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore)
+                    throws org.wso2.carbon.user.api.UserStoreException {
+                userStore.addRole(roleName, userList, permissions);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public Map<String, String> getProperties(org.wso2.carbon.user.api.Tenant tenant)
+    public Map<String, String> getProperties(final org.wso2.carbon.user.api.Tenant tenant)
             throws org.wso2.carbon.user.api.UserStoreException {
-        Map<String, String> properties = new HashMap<String, String>();
-        try {
-            properties = remoteUserStore.getProperties(tenant);
-        } catch (org.wso2.carbon.user.api.UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        properties = remoteStore.getValue().getProperties(tenant);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
+        Map<String, String> properties = remoteServers
+                .read(new RemoteUserStoreOperation<Map<String, String>>() {
+                    public Map<String, String> execute(WSUserStoreManager userStore)
+                            throws org.wso2.carbon.user.api.UserStoreException {
+                        return userStore.getProperties(tenant);
                     }
-                }
-            }
-        }
-        return properties;
+                });
+        return properties != null ? properties : new HashMap<String, String>();
     }
 
     @Override
@@ -238,7 +222,12 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
 
     @Override
     public ClaimManager getClaimManager() throws org.wso2.carbon.user.api.UserStoreException {
-        return remoteUserStore.getClaimManager();
+        return remoteServers.read(new RemoteUserStoreOperation<ClaimManager>() {
+            public ClaimManager execute(WSUserStoreManager userStore)
+                    throws org.wso2.carbon.user.api.UserStoreException {
+                return userStore.getClaimManager();
+            }
+        });
     }
 
     @Override
@@ -254,909 +243,339 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     }
 
     @Override
-    public String[] listUsers(String filter, int maxItemLimit) throws UserStoreException {
-
-        String[] users = null;
-
-        try {
-            users = remoteUserStore.listUsers(filter, maxItemLimit);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().listUsers(filter, maxItemLimit);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
+    public String[] listUsers(final String filter, final int maxItemLimit)
+            throws UserStoreException {
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.listUsers(filter, maxItemLimit);
             }
-        } else {
-            users = new String[0];
-        }
-
-        return users;
+        }));
     }
 
     @Override
-    public boolean isExistingUser(String userName) throws UserStoreException {
-        boolean usersExists = false;
-        try {
-            usersExists = remoteUserStore.isExistingUser(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+    public boolean isExistingUser(final String userName) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<Boolean>() {
+            public Boolean execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.isExistingUser(userName);
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        usersExists = remoteStore.getValue().isExistingUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return usersExists;
+        });
     }
 
     @Override
-    public boolean isExistingRole(String roleName) throws UserStoreException {
-        boolean roleExists = false;
-        try {
-            roleExists = remoteUserStore.isExistingRole(roleName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roleExists = remoteStore.getValue().isExistingRole(roleName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public boolean isExistingRole(final String roleName) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<Boolean>() {
+            public Boolean execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.isExistingRole(roleName);
             }
-        }
-        return roleExists;
+        });
     }
 
     @Override
     public String[] getRoleNames() throws UserStoreException {
-
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleNames();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleNames();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getRoleNames();
             }
-        }
-
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
-            }
-        } else {
-            roles = new String[0];
-        }
-
-        return roles;
+        }));
     }
 
     @Override
-    public String[] getRoleNames(boolean noHybridRoles) throws UserStoreException {
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleNames(noHybridRoles);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleNames(noHybridRoles);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public String[] getRoleNames(final boolean noHybridRoles) throws UserStoreException {
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getRoleNames(noHybridRoles);
             }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
-            }
-        } else {
-            roles = new String[0];
-        }
-
-        return roles;
+        }));
     }
 
     @Override
-    public String[] getProfileNames(String userName) throws UserStoreException {
-
-        String[] profileNames = new String[0];
-
-        try {
-            profileNames = remoteUserStore.getProfileNames(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        profileNames = remoteStore.getValue().getRoleListOfUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public String[] getProfileNames(final String userName) throws UserStoreException {
+        String[] profileNames = remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getProfileNames(userName);
             }
-        }
-        return profileNames;
+        });
+        return profileNames != null ? profileNames : new String[0];
     }
 
     @Override
-    public String[] getRoleListOfUser(String userName) throws UserStoreException {
-        String[] roles = null;
-
-        try {
-            roles = remoteUserStore.getRoleListOfUser(userName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getRoleListOfUser(userName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
+    public String[] getRoleListOfUser(final String userName) throws UserStoreException {
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getRoleListOfUser(userName);
             }
-        } else {
-            roles = new String[0];
-        }
-        return roles;
+        }));
     }
 
     @Override
-    public String[] getUserListOfRole(String roleName) throws UserStoreException {
-        String[] users = null;
-
-        try {
-            users = remoteUserStore.getUserListOfRole(roleName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().getUserListOfRole(roleName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public String[] getUserListOfRole(final String roleName) throws UserStoreException {
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getUserListOfRole(roleName);
             }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
-            }
-        } else {
-            users = new String[0];
-        }
-
-        return users;
+        }));
     }
 
     @Override
-    public String getUserClaimValue(String userName, String claim, String profileName)
-            throws UserStoreException {
-        String claimValue = null;
-        try {
-            claimValue = remoteUserStore.getUserClaimValue(userName, claim, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claimValue = remoteStore.getValue().getUserClaimValue(userName, claim,
-                                profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public String getUserClaimValue(final String userName, final String claim,
+            final String profileName) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<String>() {
+            public String execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getUserClaimValue(userName, claim, profileName);
             }
-        }
-        return claimValue;
+        });
     }
 
     @Override
-    public Map<String, String> getUserClaimValues(String userName, String[] claims,
-            String profileName) throws UserStoreException {
-        Map<String, String> claimValue = new HashMap<String, String>();
-
-        try {
-            claimValue = remoteUserStore.getUserClaimValues(userName, claims, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claimValue = remoteStore.getValue().getUserClaimValues(userName, claims,
-                                profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
+    public Map<String, String> getUserClaimValues(final String userName, final String[] claims,
+            final String profileName) throws UserStoreException {
+        Map<String, String> claimValues = remoteServers
+                .read(new RemoteUserStoreOperation<Map<String, String>>() {
+                    public Map<String, String> execute(WSUserStoreManager userStore)
+                            throws UserStoreException {
+                        return userStore.getUserClaimValues(userName, claims, profileName);
                     }
-                }
-            }
-        }
-        return claimValue;
+                });
+        return claimValues != null ? claimValues : new HashMap<String, String>();
     }
 
-    /**
-     * 
-     */
     @Override
-    public Claim[] getUserClaimValues(String userName, String profileName)
+    public Claim[] getUserClaimValues(final String userName, final String profileName)
             throws UserStoreException {
-        Claim[] claim = new Claim[0];
-        try {
-            claim = remoteUserStore.getUserClaimValues(userName, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        claim = remoteStore.getValue().getUserClaimValues(userName, profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        Claim[] claims = remoteServers.read(new RemoteUserStoreOperation<Claim[]>() {
+            public Claim[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getUserClaimValues(userName, profileName);
             }
-        }
-        return claim;
+        });
+        return claims != null ? claims : new Claim[0];
     }
 
-    /**
-     * 
-     */
     @Override
     public String[] getAllProfileNames() throws UserStoreException {
-        String[] profileNames = new String[0];
-        try {
-            profileNames = remoteUserStore.getAllProfileNames();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        profileNames = remoteStore.getValue().getAllProfileNames();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+        String[] profileNames = remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getAllProfileNames();
             }
-        }
-        return profileNames;
+        });
+        return profileNames != null ? profileNames : new String[0];
     }
 
     @Override
     public boolean isReadOnly() throws UserStoreException {
-        boolean readOnly = false;
-        try {
-            readOnly = remoteUserStore.isReadOnly();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+        return remoteServers.read(new RemoteUserStoreOperation<Boolean>() {
+            public Boolean execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.isReadOnly();
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        readOnly = remoteStore.getValue().isReadOnly();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return readOnly;
+        });
     }
 
     @Override
-    public void addUser(String userName, Object credential, String[] roleList,
-            Map<String, String> claims, String profileName) throws UserStoreException {
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addUser(userName, credential, roleList, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void addUser(final String userName, final Object credential, final String[] roleList,
+            final Map<String, String> claims, final String profileName) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.addUser(userName, credential, roleList, claims, profileName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
     public void addUser(String userName, Object credential, String[] roleList,
             Map<String, String> claims, String profileName, boolean requirePasswordChange)
             throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().addUser(userName, credential, roleList, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
-            }
-        }
+        addUser(userName, credential, roleList, claims, profileName);
     }
 
     @Override
-    public void updateCredential(String userName, Object newCredential, Object oldCredential)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateCredential(userName, newCredential, oldCredential);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void updateCredential(final String userName, final Object newCredential,
+            final Object oldCredential) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.updateCredential(userName, newCredential, oldCredential);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void updateCredentialByAdmin(String userName, Object newCredential)
+    public void updateCredentialByAdmin(final String userName, final Object newCredential)
             throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateCredentialByAdmin(userName, newCredential);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.updateCredentialByAdmin(userName, newCredential);
+                return null;
             }
-        }
+        });
     }
 
     @Override
     public void deleteUser(String userName) throws UserStoreException {
         
-        userName = UserCoreUtil.removeDomainFromName(userName);
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUser(userName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+        final String tenantAwareUserName = UserCoreUtil.removeDomainFromName(userName);
+
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.deleteUser(tenantAwareUserName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
     public void deleteRole(String roleName) throws UserStoreException {
         
-        roleName = UserCoreUtil.removeDomainFromName(roleName);
-
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteRole(roleName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+        final String domainLessRoleName = UserCoreUtil.removeDomainFromName(roleName);
+
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.deleteRole(domainLessRoleName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void updateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateUserListOfRole(roleName, deletedUsers, newUsers);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void updateUserListOfRole(final String roleName, final String[] deletedUsers,
+            final String[] newUsers) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.updateUserListOfRole(roleName, deletedUsers, newUsers);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void updateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateRoleListOfUser(userName, deletedRoles, newRoles);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void updateRoleListOfUser(final String userName, final String[] deletedRoles,
+            final String[] newRoles) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.updateRoleListOfUser(userName, deletedRoles, newRoles);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void setUserClaimValue(String userName, String claimURI, String claimValue,
-            String profileName) throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().setUserClaimValue(userName, claimURI, claimValue,
-                        profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void setUserClaimValue(final String userName, final String claimURI,
+            final String claimValue, final String profileName) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.setUserClaimValue(userName, claimURI, claimValue, profileName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void setUserClaimValues(String userName, Map<String, String> claims, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().setUserClaimValues(userName, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void setUserClaimValues(final String userName, final Map<String, String> claims,
+            final String profileName) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.setUserClaimValues(userName, claims, profileName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void deleteUserClaimValue(String userName, String claimURI, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUserClaimValue(userName, claimURI, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void deleteUserClaimValue(final String userName, final String claimURI,
+            final String profileName) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.deleteUserClaimValue(userName, claimURI, profileName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
-    public void deleteUserClaimValues(String userName, String[] claims, String profileName)
-            throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().deleteUserClaimValues(userName, claims, profileName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void deleteUserClaimValues(final String userName, final String[] claims,
+            final String profileName) throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.deleteUserClaimValues(userName, claims, profileName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
     public String[] getHybridRoles() throws UserStoreException {
-        String[] roles = new String[0];
-        try {
-            roles = remoteUserStore.getHybridRoles();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getHybridRoles();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getHybridRoles();
             }
-        } else {
-            return new String[0];
-        }
-        return roles;
+        }));
     }
 
     @Override
     public String[] getAllSecondaryRoles() throws UserStoreException {
-        String[] roles = new String[0];
-
-        try {
-            roles = remoteUserStore.getAllSecondaryRoles();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getAllSecondaryRoles();
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        roles = remoteStore.getValue().getAllSecondaryRoles();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        if (roles != null) {
-            for (int i = 0; i < roles.length; i++) {
-                roles[i] = domainName + "/" + roles[i];
-            }
-        } else {
-            return new String[0];
-        }
-        return roles;
+        }));
     }
 
     @Override
-    public Date getPasswordExpirationTime(String username) throws UserStoreException {
-        Date date = null;
-        try {
-            date = remoteUserStore.getPasswordExpirationTime(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+    public Date getPasswordExpirationTime(final String username) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<Date>() {
+            public Date execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getPasswordExpirationTime(username);
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        date = remoteStore.getValue().getPasswordExpirationTime(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return date;
+        });
     }
 
     @Override
-    public int getUserId(String username) throws UserStoreException {
-        int userId = -1;
-        try {
-            userId = remoteUserStore.getUserId(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        userId = remoteStore.getValue().getUserId(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public int getUserId(final String username) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<Integer>() {
+            public Integer execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getUserId(username);
             }
-        }
-        return userId;
+        });
     }
 
     @Override
-    public int getTenantId(String username) throws UserStoreException {
-        int tenantId = -1;
-        try {
-            tenantId = remoteUserStore.getTenantId(username);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        tenantId = remoteStore.getValue().getTenantId(username);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
+    public int getTenantId(final String username) throws UserStoreException {
+        return remoteServers.read(new RemoteUserStoreOperation<Integer>() {
+            public Integer execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getTenantId(username);
             }
-        }
-        return tenantId;
+        });
     }
 
     @Override
     public int getTenantId() throws UserStoreException {
-        int tenantId = -1;
-        try {
-            tenantId = remoteUserStore.getTenantId();
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+        return remoteServers.read(new RemoteUserStoreOperation<Integer>() {
+            public Integer execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getTenantId();
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        tenantId = remoteStore.getValue().getTenantId();
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-        return tenantId;
+        });
     }
 
     @Override
-    public Map<String, String> getProperties(Tenant tenant) throws UserStoreException {
-        Map<String, String> properties = new HashMap<String, String>();
-        try {
-            properties = remoteUserStore.getProperties(tenant);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
-            }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        properties = remoteStore.getValue().getProperties(tenant);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
+    public Map<String, String> getProperties(final Tenant tenant) throws UserStoreException {
+        Map<String, String> properties = remoteServers
+                .read(new RemoteUserStoreOperation<Map<String, String>>() {
+                    public Map<String, String> execute(WSUserStoreManager userStore)
+                            throws UserStoreException {
+                        return userStore.getProperties(tenant);
                     }
-                }
-            }
-        }
-        return properties;
+                });
+        return properties != null ? properties : new HashMap<String, String>();
     }
 
     @Override
-    public void updateRoleName(String roleName, String newRoleName) throws UserStoreException {
-        for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers.entrySet()
-                .iterator(); iterator.hasNext();) {
-            Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-            try {
-                remoteStore.getValue().updateRoleName(roleName, newRoleName);
-            } catch (UserStoreException e) {
-                if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                    throw e;
-                }
-                log.error("Failed to connect to the remote server : " + remoteStore.getKey());
+    public void updateRoleName(final String roleName, final String newRoleName)
+            throws UserStoreException {
+        remoteServers.write(new RemoteUserStoreOperation<Object>() {
+            public Object execute(WSUserStoreManager userStore) throws UserStoreException {
+                userStore.updateRoleName(roleName, newRoleName);
+                return null;
             }
-        }
+        });
     }
 
     @Override
@@ -1165,42 +584,13 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
     }
 
     @Override
-    public String[] getUserList(String claim, String claimValue, String profileName)
-            throws UserStoreException {
-        String[] users = new String[0];
-        try {
-            users = remoteUserStore.getUserList(claim, claimValue, profileName);
-        } catch (UserStoreException e) {
-            if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                throw e;
+    public String[] getUserList(final String claim, final String claimValue,
+            final String profileName) throws UserStoreException {
+        return addDomainName(remoteServers.read(new RemoteUserStoreOperation<String[]>() {
+            public String[] execute(WSUserStoreManager userStore) throws UserStoreException {
+                return userStore.getUserList(claim, claimValue, profileName);
             }
-            synchronized (this) {
-                for (Iterator<Entry<String, WSUserStoreManager>> iterator = remoteServers
-                        .entrySet().iterator(); iterator.hasNext();) {
-                    Entry<String, WSUserStoreManager> remoteStore = iterator.next();
-                    try {
-                        users = remoteStore.getValue().getUserList(claim, claimValue, profileName);
-                        remoteUserStore = remoteStore.getValue();
-                        break;
-                    } catch (UserStoreException ex) {
-                        if (!CONNECTION_REFUSED.equalsIgnoreCase(e.getMessage())) {
-                            throw e;
-                        }
-                        log.error("Failed to connect to the remote server : "
-                                + remoteStore.getKey());
-                    }
-                }
-            }
-        }
-
-        if (users != null) {
-            for (int i = 0; i < users.length; i++) {
-                users[i] = domainName + "/" + users[i];
-            }
-        } else {
-            return new String[0];
-        }
-        return users;
+        }));
     }
 
     @Override
@@ -1229,4 +619,29 @@ public class CarbonRemoteUserStoreManger implements UserStoreManager {
         return realmConfig;
     }
 
+    private String[] addDomainName(String[] names) {
+        if (names == null) {
+            return new String[0];
+        }
+        for (int i = 0; i < names.length; i++) {
+            names[i] = domainName + "/" + names[i];
+        }
+        return names;
+    }
+
+    private static long getLongProperty(RealmConfiguration realmConfig, String name,
+            long defaultValue) {
+        String value = realmConfig.getUserStoreProperty(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value : " + value + " for the property : " + name
+                    + ". Hence using the default value : " + defaultValue);
+            return defaultValue;
+        }
+    }
+
 }
@@ -0,0 +1,37 @@
+/*
+ *  Copyright (c) 2005-2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.user.store.remote;
+
+import org.wso2.carbon.um.ws.api.WSUserStoreManager;
+import org.wso2.carbon.user.api.UserStoreException;
+
+/**
+ * An operation run on one of the remote servers of the user store.
+ *
+ * @param <T> result of the operation
+ */
+public interface RemoteUserStoreOperation<T> {
+
+    /**
+     * @param userStore user store manager of the remote server
+     * @return result of the operation
+     * @throws UserStoreException
+     */
+    T execute(WSUserStoreManager userStore) throws UserStoreException;
+}
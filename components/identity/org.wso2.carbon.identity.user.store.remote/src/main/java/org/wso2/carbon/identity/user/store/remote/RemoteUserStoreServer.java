@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2005-2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.user.store.remote;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.um.ws.api.WSUserStoreManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A remote server of the user store. A circuit breaker takes the server out of the read rotation
+ * after consecutive connection failures, and lets a single request through to try it again once
+ * the open time has passed. The average latency of the calls to the server is kept, to pick the
+ * fastest server for reads.
+ */
+public class RemoteUserStoreServer {
+
+    private static Log log = LogFactory.getLog(RemoteUserStoreServer.class);
+
+    private String url;
+    private WSUserStoreManager userStore;
+    private int failureThreshold;
+    private long openTime;
+
+    private AtomicInteger consecutiveFailures = new AtomicInteger();
+    // time the circuit was opened at, or 0 while it is closed
+    private AtomicLong openedAt = new AtomicLong();
+    private volatile long averageLatency;
+
+    /**
+     * @param url              URL of the remote server
+     * @param userStore        user store manager of the remote server
+     * @param failureThreshold number of consecutive connection failures which open the circuit
+     * @param openTime         time in milliseconds after which an open circuit is tried again
+     */
+    public RemoteUserStoreServer(String url, WSUserStoreManager userStore, int failureThreshold,
+            long openTime) {
+        this.url = url;
+        this.userStore = userStore;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public WSUserStoreManager getUserStore() {
+        return userStore;
+    }
+
+    public long getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Checks whether a request can be sent to the server. While the circuit is open, only one
+     * request is let through each open time.
+     * 
+     * @return <code>true</code> if the circuit is closed, or if this request may try the server
+     */
+    public boolean isAvailable() {
+        long opened = openedAt.get();
+        if (opened == 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        return now - opened >= openTime && openedAt.compareAndSet(opened, now);
+    }
+
+    /**
+     * @param latency time in milliseconds taken by the call
+     */
+    public void recordSuccess(long latency) {
+        consecutiveFailures.set(0);
+        if (openedAt.getAndSet(0) != 0) {
+            log.info("Remote server : " + url + " is available again");
+        }
+        long average = averageLatency;
+        averageLatency = average == 0 ? latency : (average * 7 + latency) / 8;
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && openedAt.getAndSet(System.currentTimeMillis()) == 0) {
+            log.warn("Remote server : " + url + " is taken out of rotation after "
+                    + failureThreshold + " consecutive connection failures");
+        }
+    }
+}
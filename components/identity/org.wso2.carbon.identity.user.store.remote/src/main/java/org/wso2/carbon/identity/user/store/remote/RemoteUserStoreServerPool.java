@@ -0,0 +1,351 @@
+/*
+ *  Copyright (c) 2005-2009, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.identity.user.store.remote;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.um.ws.api.WSUserStoreManager;
+import org.wso2.carbon.user.core.UserStoreException;
+
+/**
+ * The remote servers of a user store. Reads go to one available server, picked in round-robin
+ * or by the least average latency, and fail over to the next available server on connection
+ * failures without locking. Writes are sent to all the available servers in parallel, and succeed
+ * when no server rejected them and at least the write quorum of servers have applied them, so that
+ * only servers which could not be reached are left behind. A server whose circuit breaker is open
+ * is not called, and counts as unreachable. A background health check keeps the circuit breakers
+ * of the servers up to date.
+ */
+public class RemoteUserStoreServerPool {
+
+    private static Log log = LogFactory.getLog(RemoteUserStoreServerPool.class);
+
+    private static final String CONNECTION_REFUSED = "Connection refused";
+    private static final int WRITE_THREAD_POOL_SIZE = 20;
+    private static final int WRITE_QUEUE_SIZE = 1000;
+    private static final long KEEP_ALIVE_TIME = 60;
+
+    private static ThreadPoolExecutor writeExecutor;
+    private static ScheduledExecutorService healthCheckExecutor;
+
+    // pools in use, by user store, so that the pool replaced by a reloaded configuration is closed
+    private static Map<String, RemoteUserStoreServerPool> pools = new ConcurrentHashMap<String, RemoteUserStoreServerPool>();
+
+    private static final RemoteUserStoreOperation<Integer> HEALTH_CHECK = new RemoteUserStoreOperation<Integer>() {
+        public Integer execute(WSUserStoreManager userStore)
+                throws org.wso2.carbon.user.api.UserStoreException {
+            return userStore.getTenantId();
+        }
+    };
+
+    private static final Comparator<RemoteUserStoreServer> LATENCY_COMPARATOR = new Comparator<RemoteUserStoreServer>() {
+        public int compare(RemoteUserStoreServer server1, RemoteUserStoreServer server2) {
+            long latency1 = server1.getAverageLatency();
+            long latency2 = server2.getAverageLatency();
+            return latency1 < latency2 ? -1 : (latency1 == latency2 ? 0 : 1);
+        }
+    };
+
+    private RemoteUserStoreServer[] servers;
+    private boolean leastLatency;
+    private int writeQuorum;
+    private AtomicInteger nextServer = new AtomicInteger();
+    private ScheduledFuture<?> healthCheck;
+
+    /**
+     * @param servers             remote servers of the user store
+     * @param leastLatency        whether reads go to the server with the least average latency,
+     *                            instead of round-robin
+     * @param writeQuorum         number of servers which must apply a write, or 0 for all the
+     *                            servers
+     * @param healthCheckInterval interval in milliseconds of the health check, or 0 to disable it
+     */
+    public RemoteUserStoreServerPool(RemoteUserStoreServer[] servers, boolean leastLatency,
+            int writeQuorum, long healthCheckInterval) {
+        this.servers = servers;
+        this.leastLatency = leastLatency;
+        this.writeQuorum = writeQuorum > 0 ? Math.min(writeQuorum, servers.length) : servers.length;
+
+        if (healthCheckInterval > 0) {
+            healthCheck = getHealthCheckExecutor().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    checkHealth();
+                }
+            }, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs the operation on an available server, failing over to the other available servers on
+     * connection failures. If no server is available, all the servers are tried.
+     * 
+     * @param operation
+     * @return result of the operation
+     * @throws UserStoreException if the operation failed, or if no server could be reached
+     */
+    public <T> T read(RemoteUserStoreOperation<T> operation) throws UserStoreException {
+        org.wso2.carbon.user.api.UserStoreException lastFailure = null;
+        for (RemoteUserStoreServer server : getReadServers()) {
+            try {
+                return execute(server, operation);
+            } catch (org.wso2.carbon.user.api.UserStoreException e) {
+                if (!isConnectionFailure(e)) {
+                    throw toUserStoreException(e);
+                }
+                log.error("Failed to connect to the remote server : " + server.getUrl());
+                lastFailure = e;
+            }
+        }
+        throw new UserStoreException("Failed to connect to any of the remote servers", lastFailure);
+    }
+
+    /**
+     * Runs the operation on all the available servers in parallel, and waits until all of them
+     * are done. Servers which are not available or could not be reached are tolerated as long as
+     * the write quorum of servers applied the operation.
+     * 
+     * @param operation
+     * @throws UserStoreException if a server rejected the operation, or if fewer servers than the
+     *             write quorum could be reached
+     */
+    public void write(final RemoteUserStoreOperation<?> operation) throws UserStoreException {
+        CompletionService<Object> completionService = new ExecutorCompletionService<Object>(
+                getWriteExecutor());
+        int submitted = 0;
+        for (final RemoteUserStoreServer server : servers) {
+            if (!server.isAvailable()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Remote server : " + server.getUrl()
+                            + " is not available and is not updated");
+                }
+                continue;
+            }
+            submitted++;
+            completionService.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    try {
+                        return execute(server, operation);
+                    } catch (org.wso2.carbon.user.api.UserStoreException e) {
+                        if (isConnectionFailure(e)) {
+                            log.error("Failed to update the remote server : " + server.getUrl());
+                        }
+                        throw e;
+                    }
+                }
+            });
+        }
+
+        int applied = 0;
+        Throwable rejection = null;
+        for (int i = 0; i < submitted; i++) {
+            try {
+                completionService.take().get();
+                applied++;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!isConnectionFailure(cause) && rejection == null) {
+                    rejection = cause;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserStoreException("Interrupted while updating the remote servers", e);
+            }
+        }
+        if (rejection != null) {
+            if (rejection instanceof org.wso2.carbon.user.api.UserStoreException) {
+                throw toUserStoreException((org.wso2.carbon.user.api.UserStoreException) rejection);
+            }
+            throw new UserStoreException(rejection.getMessage(), rejection);
+        }
+        if (applied < writeQuorum) {
+            throw new UserStoreException("Update was applied on " + applied + " of "
+                    + servers.length + " remote servers, while " + writeQuorum + " are required");
+        }
+    }
+
+    /**
+     * Makes the given pool the pool of the user store, and closes the pool it replaces
+     * 
+     * @param userStoreKey key of the user store, by tenant and domain
+     * @param pool         pool created for the configuration of the user store
+     */
+    public static void replace(String userStoreKey, RemoteUserStoreServerPool pool) {
+        RemoteUserStoreServerPool replaced = pools.put(userStoreKey, pool);
+        if (replaced != null && replaced != pool) {
+            replaced.close();
+        }
+    }
+
+    /**
+     * Stops the health check of the pool
+     */
+    public void close() {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the threads shared by the server pools
+     */
+    public static synchronized void shutdown() {
+        pools.clear();
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            writeExecutor = null;
+        }
+        if (healthCheckExecutor != null) {
+            healthCheckExecutor.shutdownNow();
+            healthCheckExecutor = null;
+        }
+    }
+
+    private List<RemoteUserStoreServer> getReadServers() {
+        List<RemoteUserStoreServer> availableServers = new ArrayList<RemoteUserStoreServer>();
+        List<RemoteUserStoreServer> unavailableServers = new ArrayList<RemoteUserStoreServer>();
+        int start = (nextServer.getAndIncrement() & Integer.MAX_VALUE) % servers.length;
+        for (int i = 0; i < servers.length; i++) {
+            RemoteUserStoreServer server = servers[(start + i) % servers.length];
+            if (server.isAvailable()) {
+                availableServers.add(server);
+            } else {
+                unavailableServers.add(server);
+            }
+        }
+        if (availableServers.isEmpty()) {
+            return unavailableServers;
+        }
+        if (leastLatency) {
+            Collections.sort(availableServers, LATENCY_COMPARATOR);
+        }
+        return availableServers;
+    }
+
+    private void checkHealth() {
+        for (RemoteUserStoreServer server : servers) {
+            try {
+                execute(server, HEALTH_CHECK);
+            } catch (org.wso2.carbon.user.api.UserStoreException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Health check failed for the remote server : " + server.getUrl(), e);
+                }
+            } catch (RuntimeException e) {
+                log.error("Error while checking the health of the remote server : "
+                        + server.getUrl(), e);
+            }
+        }
+    }
+
+    private static <T> T execute(RemoteUserStoreServer server, RemoteUserStoreOperation<T> operation)
+            throws org.wso2.carbon.user.api.UserStoreException {
+        long start = System.currentTimeMillis();
+        try {
+            T result = operation.execute(server.getUserStore());
+            server.recordSuccess(System.currentTimeMillis() - start);
+            return result;
+        } catch (org.wso2.carbon.user.api.UserStoreException e) {
+            if (isConnectionFailure(e)) {
+                server.recordFailure();
+            } else {
+                // the server is reachable, even though it rejected the operation
+                server.recordSuccess(System.currentTimeMillis() - start);
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (CONNECTION_REFUSED.equalsIgnoreCase(cause.getMessage())
+                    || cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static UserStoreException toUserStoreException(
+            org.wso2.carbon.user.api.UserStoreException e) {
+        if (e instanceof UserStoreException) {
+            return (UserStoreException) e;
+        }
+        return new UserStoreException(e.getMessage(), e);
+    }
+
+    private static synchronized ThreadPoolExecutor getWriteExecutor() {
+        if (writeExecutor == null) {
+            writeExecutor = new ThreadPoolExecutor(WRITE_THREAD_POOL_SIZE, WRITE_THREAD_POOL_SIZE,
+                    KEEP_ALIVE_TIME, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                            WRITE_QUEUE_SIZE), new RemoteUserStoreThreadFactory(
+                            "RemoteUserStoreWriter-"), new ThreadPoolExecutor.CallerRunsPolicy());
+            writeExecutor.allowCoreThreadTimeOut(true);
+        }
+        return writeExecutor;
+    }
+
+    private static synchronized ScheduledExecutorService getHealthCheckExecutor() {
+        if (healthCheckExecutor == null) {
+            healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new RemoteUserStoreThreadFactory("RemoteUserStoreHealthCheck-"));
+        }
+        return healthCheckExecutor;
+    }
+
+    private static class RemoteUserStoreThreadFactory implements ThreadFactory {
+
+        private String namePrefix;
+        private AtomicInteger threadCount = new AtomicInteger();
+
+        RemoteUserStoreThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
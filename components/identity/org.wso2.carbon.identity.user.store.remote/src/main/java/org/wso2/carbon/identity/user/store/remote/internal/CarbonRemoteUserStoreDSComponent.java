@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.identity.user.store.remote.CarbonRemoteUserStoreManger;
+import org.wso2.carbon.identity.user.store.remote.RemoteUserStoreServerPool;
 import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.carbon.user.core.service.RealmService;
 
@@ -48,6 +49,7 @@ public class CarbonRemoteUserStoreDSComponent {
     }
 
     protected void deactivate(ComponentContext ctxt) {
+        RemoteUserStoreServerPool.shutdown();
         if (log.isDebugEnabled()) {
             log.debug("Carbon Carbon Remote User Store is deactivated ");
         }
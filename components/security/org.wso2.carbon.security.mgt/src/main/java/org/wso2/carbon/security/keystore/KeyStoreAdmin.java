@@ -236,6 +236,7 @@ public class KeyStoreAdmin {
 
 			resource.setContent(content);
 			registry.put(path, resource);
+			KeyStoreCredentialCache.getInstance().invalidate(tenantId, filename);
 		} catch (SecurityConfigException e) {
 			throw e;
 		} catch (Exception e) {
@@ -274,6 +275,7 @@ public class KeyStoreAdmin {
             resource.addProperty(SecurityConstants.PROP_TYPE, type);
             resource.setContent(content);
             registry.put(path, resource);
+            KeyStoreCredentialCache.getInstance().invalidate(tenantId, filename);
         } catch (SecurityConfigException e) {
             throw e;
         } catch (Exception e) {
@@ -305,6 +307,7 @@ public class KeyStoreAdmin {
                         " is already in use and can't be deleted");
 			}
 			registry.delete(path);
+			KeyStoreCredentialCache.getInstance().invalidate(tenantId, keyStoreName);
 		} catch (RegistryException e) {
 			log.error(e.getMessage(), e);
 			throw new SecurityConfigException(e.getMessage(), e);
@@ -342,6 +345,7 @@ public class KeyStoreAdmin {
 			ks.setCertificateEntry(fileName, cert);
 
 			keyMan.updateKeyStore(keyStoreName, ks);
+			KeyStoreCredentialCache.getInstance().invalidate(tenantId, keyStoreName);
 
 		} catch (SecurityConfigException e) {
 			throw e;
@@ -384,6 +388,7 @@ public class KeyStoreAdmin {
 			ks.setCertificateEntry(alias, cert);
 
 			keyMan.updateKeyStore(keyStoreName, ks);
+			KeyStoreCredentialCache.getInstance().invalidate(tenantId, keyStoreName);
 
 			return alias;
 
@@ -412,6 +417,7 @@ public class KeyStoreAdmin {
 
 			ks.deleteEntry(alias);
 			keyMan.updateKeyStore(keyStoreName, ks);
+			KeyStoreCredentialCache.getInstance().invalidate(tenantId, keyStoreName);
 		} catch (SecurityConfigException e) {
 			throw e;
 		} catch (Exception e) {
@@ -0,0 +1,317 @@
+/*
+*  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.carbon.security.keystore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.ServerConfiguration;
+import org.wso2.carbon.core.RegistryResources;
+import org.wso2.carbon.core.util.KeyStoreManager;
+import org.wso2.carbon.core.util.KeyStoreUtil;
+import org.wso2.carbon.registry.core.Registry;
+import org.wso2.carbon.registry.core.Resource;
+import org.wso2.carbon.security.SecurityConfigException;
+import org.wso2.carbon.security.SecurityConstants;
+import org.wso2.carbon.security.SecurityServiceHolder;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the parsed signing credentials (certificate, certificate chain and private key) of
+ * tenant key stores, keyed by tenant id, key store name and alias, so that signing and
+ * signature validation do not go through the KeyStoreManager on every request.
+ * <p/>
+ * A <code>null</code> key store name refers to the primary key store of the server and a
+ * <code>null</code> alias refers to the default key of the primary key store. Entries of a key
+ * store are dropped by {@link KeyStoreAdmin} whenever that key store is modified. As the key store
+ * may be modified on another node of the cluster, the last modified time of the key store resource
+ * in the registry is also checked on lookup, at most once per check interval for each entry, and
+ * the entry is loaded again if the key store has changed.
+ */
+public class KeyStoreCredentialCache {
+
+    private static Log log = LogFactory.getLog(KeyStoreCredentialCache.class);
+
+    private static KeyStoreCredentialCache instance = new KeyStoreCredentialCache();
+
+    // how often the registry is checked for changes of the key store of an entry, in milliseconds
+    private static final long LAST_MODIFIED_CHECK_INTERVAL = 10 * 1000;
+
+    private ConcurrentMap<CredentialKey, CredentialEntry> credentials =
+            new ConcurrentHashMap<CredentialKey, CredentialEntry>();
+
+    private KeyStoreCredentialCache() {
+    }
+
+    public static KeyStoreCredentialCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the certificate stored against the given alias
+     *
+     * @param tenantId     tenant id
+     * @param keyStoreName key store name, <code>null</code> for the primary key store
+     * @param alias        certificate alias, <code>null</code> for the default certificate
+     * @return certificate or <code>null</code> if there is no such entry
+     * @throws SecurityConfigException if the key store can not be loaded
+     */
+    public X509Certificate getCertificate(int tenantId, String keyStoreName, String alias)
+            throws SecurityConfigException {
+        CredentialEntry entry = getEntry(tenantId, keyStoreName, alias);
+        X509Certificate certificate = entry.certificate;
+        if (certificate == null) {
+            try {
+                KeyStoreManager keyMan = KeyStoreManager.getInstance(tenantId);
+                if (keyStoreName == null && alias == null) {
+                    certificate = keyMan.getDefaultPrimaryCertificate();
+                } else {
+                    certificate = (X509Certificate) getKeyStore(keyMan, keyStoreName)
+                            .getCertificate(alias);
+                }
+            } catch (Exception e) {
+                throw new SecurityConfigException("Error while loading the certificate of alias "
+                        + alias + " from key store " + keyStoreName, e);
+            }
+            entry.certificate = certificate;
+        }
+        return certificate;
+    }
+
+    /**
+     * Returns the certificate chain stored against the given alias
+     *
+     * @param tenantId     tenant id
+     * @param keyStoreName key store name, <code>null</code> for the primary key store
+     * @param alias        key alias
+     * @return certificate chain or <code>null</code> if there is no such entry
+     * @throws SecurityConfigException if the key store can not be loaded
+     */
+    public X509Certificate[] getCertificateChain(int tenantId, String keyStoreName, String alias)
+            throws SecurityConfigException {
+        CredentialEntry entry = getEntry(tenantId, keyStoreName, alias);
+        X509Certificate[] chain = entry.certificateChain;
+        if (chain == null) {
+            Certificate[] certificates;
+            try {
+                certificates = getKeyStore(KeyStoreManager.getInstance(tenantId), keyStoreName)
+                        .getCertificateChain(alias);
+            } catch (Exception e) {
+                throw new SecurityConfigException("Error while loading the certificate chain of "
+                        + "alias " + alias + " from key store " + keyStoreName, e);
+            }
+            if (certificates == null) {
+                return null;
+            }
+            chain = new X509Certificate[certificates.length];
+            for (int i = 0; i < certificates.length; i++) {
+                chain[i] = (X509Certificate) certificates[i];
+            }
+            entry.certificateChain = chain;
+        }
+        return chain.clone();
+    }
+
+    /**
+     * Returns the private key stored against the given alias
+     *
+     * @param tenantId     tenant id
+     * @param keyStoreName key store name, <code>null</code> for the primary key store
+     * @param alias        key alias, <code>null</code> for the default private key
+     * @return private key
+     * @throws SecurityConfigException if the key can not be loaded
+     */
+    public PrivateKey getPrivateKey(int tenantId, String keyStoreName, String alias)
+            throws SecurityConfigException {
+        CredentialEntry entry = getEntry(tenantId, keyStoreName, alias);
+        PrivateKey privateKey = entry.privateKey;
+        if (privateKey == null) {
+            Key key;
+            try {
+                KeyStoreManager keyMan = KeyStoreManager.getInstance(tenantId);
+                if (keyStoreName != null) {
+                    key = keyMan.getPrivateKey(keyStoreName, alias);
+                } else if (alias == null) {
+                    key = keyMan.getDefaultPrivateKey();
+                } else {
+                    String password = ServerConfiguration.getInstance().getFirstProperty(
+                            RegistryResources.SecurityManagement.SERVER_PRIVATE_KEY_PASSWORD);
+                    key = keyMan.getPrimaryKeyStore().getKey(alias, password.toCharArray());
+                }
+            } catch (Exception e) {
+                throw new SecurityConfigException("Error while loading the private key of alias "
+                        + alias + " from key store " + keyStoreName, e);
+            }
+            if (!(key instanceof PrivateKey)) {
+                throw new SecurityConfigException("No private key found for alias " + alias
+                        + " in key store " + keyStoreName);
+            }
+            privateKey = (PrivateKey) key;
+            entry.privateKey = privateKey;
+        }
+        return privateKey;
+    }
+
+    /**
+     * Drops all the cached credentials of the given key store
+     *
+     * @param tenantId     tenant id
+     * @param keyStoreName key store name, <code>null</code> for the primary key store
+     */
+    public void invalidate(int tenantId, String keyStoreName) {
+        boolean isPrimaryStore = keyStoreName == null || KeyStoreUtil.isPrimaryStore(keyStoreName);
+        Iterator<CredentialKey> iterator = credentials.keySet().iterator();
+        while (iterator.hasNext()) {
+            CredentialKey key = iterator.next();
+            if (key.tenantId == tenantId && (equals(key.keyStoreName, keyStoreName)
+                    || (isPrimaryStore && key.keyStoreName == null))) {
+                iterator.remove();
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Signing credentials of key store " + keyStoreName + " of tenant " +
+                    tenantId + " were invalidated");
+        }
+    }
+
+    private CredentialEntry getEntry(int tenantId, String keyStoreName, String alias)
+            throws SecurityConfigException {
+        CredentialKey key = new CredentialKey(tenantId, keyStoreName, alias);
+        CredentialEntry entry = credentials.get(key);
+        long currentTime = System.currentTimeMillis();
+        if (entry != null) {
+            if (currentTime - entry.lastChecked < LAST_MODIFIED_CHECK_INTERVAL) {
+                return entry;
+            }
+            long lastModified = getLastModified(tenantId, keyStoreName);
+            if (lastModified == entry.lastModified) {
+                entry.lastChecked = currentTime;
+                return entry;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Key store " + keyStoreName + " of tenant " + tenantId
+                        + " was modified. Loading its signing credentials again");
+            }
+            CredentialEntry newEntry = new CredentialEntry(lastModified, currentTime);
+            if (credentials.replace(key, entry, newEntry)) {
+                return newEntry;
+            }
+            // replaced or dropped meanwhile
+            entry = credentials.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        CredentialEntry newEntry = new CredentialEntry(getLastModified(tenantId, keyStoreName),
+                currentTime);
+        entry = credentials.putIfAbsent(key, newEntry);
+        return entry != null ? entry : newEntry;
+    }
+
+    /**
+     * @return last modified time of the given key store in the registry, or 0 for the primary key
+     *         store, which is not kept in the registry
+     */
+    private long getLastModified(int tenantId, String keyStoreName) throws SecurityConfigException {
+        if (keyStoreName == null || KeyStoreUtil.isPrimaryStore(keyStoreName)) {
+            return 0;
+        }
+        try {
+            Registry registry = SecurityServiceHolder.getRegistryService()
+                    .getGovernanceSystemRegistry(tenantId);
+            String path = SecurityConstants.KEY_STORES + "/" + keyStoreName;
+            if (!registry.resourceExists(path)) {
+                return 0;
+            }
+            Resource resource = registry.get(path);
+            return resource.getLastModified() != null ? resource.getLastModified().getTime() : 0;
+        } catch (Exception e) {
+            throw new SecurityConfigException("Error while reading key store " + keyStoreName
+                    + " of tenant " + tenantId + " from the registry", e);
+        }
+    }
+
+    private KeyStore getKeyStore(KeyStoreManager keyMan, String keyStoreName) throws Exception {
+        if (keyStoreName == null) {
+            return keyMan.getPrimaryKeyStore();
+        }
+        return keyMan.getKeyStore(keyStoreName);
+    }
+
+    private static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    private static class CredentialEntry {
+
+        // last modified time of the key store the credentials were loaded from
+        private final long lastModified;
+        private volatile long lastChecked;
+
+        private volatile X509Certificate certificate;
+        private volatile X509Certificate[] certificateChain;
+        private volatile PrivateKey privateKey;
+
+        private CredentialEntry(long lastModified, long lastChecked) {
+            this.lastModified = lastModified;
+            this.lastChecked = lastChecked;
+        }
+    }
+
+    private static class CredentialKey {
+
+        private final int tenantId;
+        private final String keyStoreName;
+        private final String alias;
+
+        private CredentialKey(int tenantId, String keyStoreName, String alias) {
+            this.tenantId = tenantId;
+            this.keyStoreName = keyStoreName;
+            this.alias = alias;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CredentialKey)) {
+                return false;
+            }
+            CredentialKey that = (CredentialKey) o;
+            return tenantId == that.tenantId
+                    && KeyStoreCredentialCache.equals(keyStoreName, that.keyStoreName)
+                    && KeyStoreCredentialCache.equals(alias, that.alias);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tenantId;
+            result = 31 * result + (keyStoreName != null ? keyStoreName.hashCode() : 0);
+            result = 31 * result + (alias != null ? alias.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -74,6 +74,22 @@ public class UserAdmin {
 		return names;
 	}
 
+    /**
+     * Lists a page of the users, ordered by their user names ignoring case
+     *
+     * @param filter user name filter
+     * @param limit maximum number of users listed from each user store
+     * @param startIndex index of the first user of the page, starting from 0
+     * @param pageSize maximum number of users in the page
+     * @return users of the page, followed by the flagged name which tells the domains having
+     *         more users than listed
+     * @throws UserAdminException
+     */
+	public FlaggedName[] listUsersByPage(String filter, int limit, int startIndex, int pageSize)
+			throws UserAdminException {
+		return getUserAdminProxy().listUsersByPage(filter, limit, startIndex, pageSize);
+	}
+
     /*
      * (non-Javadoc)
      * 
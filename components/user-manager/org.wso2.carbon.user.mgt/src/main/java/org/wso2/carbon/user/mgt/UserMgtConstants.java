@@ -35,5 +35,8 @@ public class UserMgtConstants {
     public static final String INTERNAL_ROLE = "Internal";
 
     public static final String EXTERNAL_ROLE = "External";      
+
+    //user store property setting the number of threads which add the users of a bulk import
+    public static final String BULK_IMPORT_THREAD_POOL_SIZE = "BulkImportThreadPoolSize";
     //component xml constants
 }
@@ -125,60 +125,39 @@ public class UserRealmProxy {
     }
 
     public FlaggedName[] listAllUsers(String filter, int maxLimit) throws UserAdminException{
-        FlaggedName[] flaggedNames = null;
+        return listUsersByPage(filter, maxLimit, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lists a page of the users matching the filter, ordered by their user names ignoring case.
+     * Only the users of the page are built into flagged names, and whether the users of a domain
+     * can be edited is looked up once for the domain.
+     *
+     * @param filter user name filter
+     * @param maxLimit maximum number of users listed from each user store
+     * @param startIndex index of the first user of the page, starting from 0
+     * @param pageSize maximum number of users in the page
+     * @return users of the page, followed by a flagged name whose item name tells whether the
+     *         primary user store has more users than listed, and whose display name holds the
+     *         secondary domains which have
+     * @throws UserAdminException if the users can not be listed
+     */
+    public FlaggedName[] listUsersByPage(String filter, int maxLimit, int startIndex, int pageSize)
+            throws UserAdminException {
+
+        ListedUser[] listedUsers;
         Map<String,Integer> userCount = new HashMap<String,Integer>();
+        UserStoreManager userStoreManager;
         try {
-            UserStoreManager userStoreManager = realm.getUserStoreManager();
+            userStoreManager = realm.getUserStoreManager();
             String[] users = userStoreManager.listUsers(filter, maxLimit);
-            flaggedNames = new FlaggedName[users.length+1];
-            int i = 0;
-            for (String user : users) {
-                flaggedNames[i] = new FlaggedName();
-                //check if display name present
-                int index = user.indexOf("|");
-                if (index > 0) { //if display name is appended
-                    flaggedNames[i].setItemName(user.substring(0, index));
-                    flaggedNames[i].setItemDisplayName(user.substring(index + 1));
-                } else {
-                    //if only user name is present
-                    flaggedNames[i].setItemName(user);
-                    // set Display name as the item name
-                    flaggedNames[i].setItemDisplayName(user);
-                }
-                int index1 = flaggedNames[i].getItemName() != null
-                        ? flaggedNames[i].getItemName().indexOf(CarbonConstants.DOMAIN_SEPARATOR) : -1;
-                boolean domainProvided = index1 > 0;
-                String domain = domainProvided ? flaggedNames[i].getItemName().substring(0, index1) : null;
-                if (domain != null && !UserCoreConstants.INTERNAL_DOMAIN.equalsIgnoreCase(domain)) {
-                    UserStoreManager secondaryUM =
-                            realm.getUserStoreManager().getSecondaryUserStoreManager(domain); 
-                    if (secondaryUM != null && secondaryUM.isReadOnly()) {
-                        flaggedNames[i].setEditable(false);
-                    } else {
-                        flaggedNames[i].setEditable(true);
-                    }
-                }else{
-                    if (realm.getUserStoreManager().isReadOnly()) {
-                        flaggedNames[i].setEditable(false);
-                    } else {
-                        flaggedNames[i].setEditable(true);
-                    }
-                }
-                if(domain != null){
-                    if(userCount.containsKey(domain)){
-                        userCount.put(domain,userCount.get(domain)+1);
-                    }else{
-                        userCount.put(domain,1);
-                    }
-                }else{
-                    if(userCount.containsKey(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME)){
-                        userCount.put(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME,
-                                userCount.get(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME)+1);
-                    }else{
-                        userCount.put(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME, 1);
-                    }
-                }
-                i++;
+            listedUsers = new ListedUser[users.length];
+            for (int i = 0; i < users.length; i++) {
+                listedUsers[i] = new ListedUser(users[i]);
+                String domain = listedUsers[i].domain != null ?
+                        listedUsers[i].domain : UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+                Integer count = userCount.get(domain);
+                userCount.put(domain, count != null ? count + 1 : 1);
             }
         } catch (UserStoreException e) {
             log.error(e.getMessage(), e);
@@ -187,33 +166,75 @@ public class UserRealmProxy {
             log.error(e.getMessage(), e);
             throw new UserAdminException(e.getMessage(), e);
         }
-        Arrays.sort(flaggedNames, new Comparator<FlaggedName>() {
-            public int compare(FlaggedName o1, FlaggedName o2) {
-                if(o1 == null || o2 == null){
-                    return 0;
-                }
-                return o1.getItemName().toLowerCase().compareTo(o2.getItemName().toLowerCase());
+        Arrays.sort(listedUsers);
+
+        int from = Math.min(Math.max(startIndex, 0), listedUsers.length);
+        int to = (int) Math.min((long) from + Math.max(pageSize, 0), listedUsers.length);
+        FlaggedName[] flaggedNames = new FlaggedName[to - from + 1];
+        Map<String, Boolean> readOnlyDomains = new HashMap<String, Boolean>();
+        try {
+            for (int i = from; i < to; i++) {
+                ListedUser listedUser = listedUsers[i];
+                FlaggedName flaggedName = new FlaggedName();
+                flaggedName.setItemName(listedUser.name);
+                flaggedName.setItemDisplayName(listedUser.displayName);
+                flaggedName.setEditable(!isReadOnly(userStoreManager, listedUser.domain, readOnlyDomains));
+                flaggedNames[i - from] = flaggedName;
             }
-        });
+        } catch (UserStoreException e) {
+            log.error(e.getMessage(), e);
+            throw new UserAdminException(e.getMessage(), e);
+        }
+        flaggedNames[flaggedNames.length - 1] = getExceededDomains(userCount);
+        return flaggedNames;
+    }
+
+    /**
+     * Finds whether the user store of the given domain is read only, looking it up once for each
+     * domain
+     */
+    private boolean isReadOnly(UserStoreManager userStoreManager, String domain,
+                               Map<String, Boolean> readOnlyDomains) throws UserStoreException {
+
+        if (domain == null || UserCoreConstants.INTERNAL_DOMAIN.equalsIgnoreCase(domain)) {
+            domain = null;
+        }
+        Boolean readOnly = readOnlyDomains.get(domain);
+        if (readOnly == null) {
+            if (domain != null) {
+                UserStoreManager secondaryUM = userStoreManager.getSecondaryUserStoreManager(domain);
+                readOnly = secondaryUM != null && secondaryUM.isReadOnly();
+            } else {
+                readOnly = userStoreManager.isReadOnly();
+            }
+            readOnlyDomains.put(domain, readOnly);
+        }
+        return readOnly;
+    }
+
+    /**
+     * Builds the flagged name which tells the domains that have more users than the maximum
+     * number listed, from the number of users listed from each domain
+     */
+    private FlaggedName getExceededDomains(Map<String, Integer> userCount) throws UserAdminException {
         String exceededDomains = "";
         boolean isPrimaryExceeding = false;
         try {
-            Map<String,Integer> maxUserListCount = ((AbstractUserStoreManager)realm.getUserStoreManager()).
-                    getMaxListCount(UserCoreConstants.RealmConfig.PROPERTY_MAX_USER_LIST);
+            Map<String,Integer> maxUserListCount = getMaxUserListCount();
             String[] domains = userCount.keySet().toArray(new String[userCount.keySet().size()]);
             for(int i=0;i<domains.length;i++){
                 if(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME.equalsIgnoreCase(domains[i])){
-                    if(userCount.get(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME).intValue() ==
-                            maxUserListCount.get(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME).intValue()){
+                    if(userCount.get(domains[i]).equals(
+                            maxUserListCount.get(UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME))){
                         isPrimaryExceeding = true;
                     }
                     continue;
                 }
                 if(userCount.get(domains[i]).equals(maxUserListCount.get(domains[i].toUpperCase()))){
-                    exceededDomains += domains[i];
-                    if(i != domains.length - 1){
+                    if(exceededDomains.length() > 0){
                         exceededDomains += ":";
                     }
+                    exceededDomains += domains[i];
                 }
             }
             FlaggedName flaggedName = new FlaggedName();
@@ -223,12 +244,19 @@ public class UserRealmProxy {
                 flaggedName.setItemName("false");
             }
             flaggedName.setItemDisplayName(exceededDomains);
-            flaggedNames[flaggedNames.length-1] = flaggedName;
+            return flaggedName;
         } catch (UserStoreException e) {
             log.error(e.getMessage(), e);
             throw new UserAdminException(e.getMessage(), e);
         }
-        return flaggedNames;
+    }
+
+    /**
+     * @return maximum number of users listed from each user store, by the upper case domain name
+     */
+    Map<String, Integer> getMaxUserListCount() throws UserStoreException {
+        return ((AbstractUserStoreManager) realm.getUserStoreManager()).
+                getMaxListCount(UserCoreConstants.RealmConfig.PROPERTY_MAX_USER_LIST);
     }
 
 	public FlaggedName[] getAllSharedRoleNames(String filter, int maxLimit)
@@ -1978,6 +2006,16 @@ public class UserRealmProxy {
                 config.setDefaultPassword(defaultPassword.trim());
             }
             UserStoreManager userStore = this.realm.getUserStoreManager();
+            String threadPoolSize = userStore.getRealmConfiguration().
+                    getUserStoreProperty(UserMgtConstants.BULK_IMPORT_THREAD_POOL_SIZE);
+            if (threadPoolSize != null) {
+                try {
+                    config.setThreadPoolSize(Integer.parseInt(threadPoolSize.trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid value for " + UserMgtConstants.BULK_IMPORT_THREAD_POOL_SIZE +
+                            " : " + threadPoolSize);
+                }
+            }
             if (fileName.endsWith("csv")) {
                 CSVUserBulkImport csvAdder = new CSVUserBulkImport(config);
                 csvAdder.addUserList(userStore);
@@ -2171,4 +2209,36 @@ public class UserRealmProxy {
 
         return ret;
     }
+
+    /**
+     * User name listed by a user store, split into its name, display name and domain, with the
+     * lower case form of the name by which the users are ordered
+     */
+    private static class ListedUser implements Comparable<ListedUser> {
+
+        private String name;
+        private String displayName;
+        private String domain;
+        private String sortKey;
+
+        private ListedUser(String user) {
+            //check if display name present
+            int index = user.indexOf("|");
+            if (index > 0) { //if display name is appended
+                name = user.substring(0, index);
+                displayName = user.substring(index + 1);
+            } else {
+                //if only user name is present, set display name as the user name
+                name = user;
+                displayName = user;
+            }
+            int domainIndex = name.indexOf(CarbonConstants.DOMAIN_SEPARATOR);
+            domain = domainIndex > 0 ? name.substring(0, domainIndex) : null;
+            sortKey = name.toLowerCase();
+        }
+
+        public int compareTo(ListedUser listedUser) {
+            return sortKey.compareTo(listedUser.sortKey);
+        }
+    }
 }
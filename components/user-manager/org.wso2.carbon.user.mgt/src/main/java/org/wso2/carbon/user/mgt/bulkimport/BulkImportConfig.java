@@ -23,6 +23,7 @@ public class BulkImportConfig {
     private InputStream inStream;
     private String fileName;
     private String defaultPassword;
+    private int threadPoolSize;
 
     public BulkImportConfig(InputStream inStream, String fileName) {
         this.inStream = inStream;
@@ -45,6 +46,17 @@ public class BulkImportConfig {
         this.defaultPassword = defaultPassword;
     }
 
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * @param threadPoolSize number of threads which add the users, or 0 to use the default
+     */
+    public void setThreadPoolSize(int threadPoolSize) {
+        this.threadPoolSize = threadPoolSize;
+    }
+
     public InputStream getInStream() {
         return inStream;
     }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2005-2007 WSO2, Inc. (http://wso2.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.user.mgt.bulkimport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.mgt.common.UserAdminException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds the users read from a bulk import file through a bounded pool of threads, so that the
+ * listeners run when a user is added do not make the users be added one after the other. Rows are
+ * read while the earlier rows are being added, the progress is logged, and the failure of each
+ * row is reported.
+ */
+public class BulkUserAdder {
+
+    private static Log log = LogFactory.getLog(BulkUserAdder.class);
+
+    private static final int DEFAULT_THREAD_POOL_SIZE = 4;
+    private static final int QUEUE_FACTOR = 10;
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private UserStoreManager userStore;
+    private BulkImportConfig config;
+    private ThreadPoolExecutor executor;
+
+    private int tenantId;
+    private String tenantDomain;
+    private String username;
+
+    private AtomicInteger handled = new AtomicInteger();
+    private AtomicInteger added = new AtomicInteger();
+    private AtomicInteger duplicates = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+    private List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    private volatile String lastError = "UNKNOWN";
+
+    public BulkUserAdder(UserStoreManager userStore, BulkImportConfig config) {
+        this.userStore = userStore;
+        this.config = config;
+
+        CarbonContext carbonContext = CarbonContext.getThreadLocalCarbonContext();
+        this.tenantId = carbonContext.getTenantId();
+        this.tenantDomain = carbonContext.getTenantDomain();
+        this.username = carbonContext.getUsername();
+
+        int poolSize = config.getThreadPoolSize() > 0 ? config.getThreadPoolSize() : DEFAULT_THREAD_POOL_SIZE;
+        // when all the threads are busy, the reading thread adds the user itself, which stops
+        // reading the file from getting far ahead of the users added
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(poolSize * QUEUE_FACTOR),
+                new BulkImportThreadFactory(config.getFileName()), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Adds the user of the given row, once the earlier rows are handed to the threads
+     *
+     * @param row      number of the row in the file, starting from 1 for the first user
+     * @param userName user name read from the row
+     */
+    public void addUser(final int row, final String userName) {
+
+        if (userName == null || userName.trim().length() == 0) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    PrivilegedCarbonContext.startTenantFlow();
+                    PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                    carbonContext.setTenantId(tenantId);
+                    carbonContext.setTenantDomain(tenantDomain);
+                    carbonContext.setUsername(username);
+                    addToUserStore(row, userName);
+                } finally {
+                    PrivilegedCarbonContext.endTenantFlow();
+                    int count = handled.incrementAndGet();
+                    if (count % PROGRESS_INTERVAL == 0) {
+                        log.info("Bulk import of " + config.getFileName() + " : " + count +
+                                " rows handled, " + added.get() + " users added, " + failed.get() + " failed");
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the import when the file could not be read to the end. The rows handed to the threads
+     * are added before it returns.
+     */
+    public void stop() {
+        awaitTermination();
+        log.warn("Bulk import of " + config.getFileName() + " stopped after " + handled.get() +
+                " rows were handled, " + added.get() + " users added, " + failed.get() + " failed");
+    }
+
+    /**
+     * Completes the import once all the rows of the file are read
+     *
+     * @throws UserAdminException if some of the users were not added
+     */
+    public void complete() throws UserAdminException {
+
+        awaitTermination();
+        log.info("Bulk import of " + config.getFileName() + " is completed : " + handled.get() +
+                " rows handled, " + added.get() + " users added, " + duplicates.get() +
+                " duplicates, " + failed.get() + " failed");
+
+        boolean fail = failed.get() > 0;
+        boolean success = added.get() > 0;
+        String failedRows = failures.isEmpty() ? "" : " Failed rows : " + failures +
+                (failed.get() > failures.size() ? " and " + (failed.get() - failures.size()) + " more" : "");
+
+        if (fail && success) {
+            throw new UserAdminException("Error occurs while importing user names. " +
+                    "Some user names were successfully imported. Some were not. Last error was : " +
+                    lastError + "." + failedRows);
+        }
+
+        if(fail && !success){
+            throw new UserAdminException("Error occurs while importing user names. " +
+                    "All user names were not imported. Last error was : " + lastError + "." + failedRows);
+        }
+        if (duplicates.get() > 0) {
+            throw new UserAdminException("Detected duplicate user names. " +
+                    "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
+        }
+    }
+
+    private void addToUserStore(int row, String userName) {
+        try {
+            if (!userStore.isExistingUser(userName)) {
+                userStore.addUser(userName, config.getDefaultPassword(), null, null, null, true);
+                added.incrementAndGet();
+            } else {
+                duplicates.incrementAndGet();
+            }
+        } catch (Exception e) {
+            // the same user name may be added by another row of the file at the same time
+            try {
+                if (userStore.isExistingUser(userName)) {
+                    duplicates.incrementAndGet();
+                    return;
+                }
+            } catch (Exception ignore) {
+                // the failure to add the user is reported
+            }
+            if(log.isDebugEnabled()) {
+                log.debug("Error while importing user " + userName + " of row " + row, e);
+            }
+            lastError = e.getMessage();
+            failed.incrementAndGet();
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+                failures.add(row + " (" + userName + ") : " + e.getMessage());
+            }
+        }
+    }
+
+    private void awaitTermination() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Waiting for the users of " + config.getFileName() + " to be added");
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class BulkImportThreadFactory implements ThreadFactory {
+
+        private String fileName;
+        private AtomicInteger threadCount = new AtomicInteger();
+
+        private BulkImportThreadFactory(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "UserBulkImport-" + fileName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
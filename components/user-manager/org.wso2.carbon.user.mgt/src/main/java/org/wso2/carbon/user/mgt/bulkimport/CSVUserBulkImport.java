@@ -38,54 +38,27 @@ public class CSVUserBulkImport {
     }
 
     public void addUserList(UserStoreManager userStore) throws UserAdminException {
+        BulkUserAdder userAdder = new BulkUserAdder(userStore, config);
+        boolean read = false;
         try {
+            // rows are read one at a time, while the users of the earlier rows are added
             CSVReader csvReader = new CSVReader(reader, ',', '"', 1);
-            String password = config.getDefaultPassword();
             String[] line = csvReader.readNext();
-            boolean isDuplicate = false;
-            boolean fail = false;
-            boolean success = false;
-            String lastError = "UNKNOWN";
+            int row = 1;
             while (line != null && line.length > 0) {
-                String userName = line[0];
-                if(userName != null && userName.trim().length() > 0){
-                    try{
-                        if (!userStore.isExistingUser(userName)) {
-                            userStore.addUser(userName, password, null, null, null, true);
-                            success = true;
-                        } else {
-                            isDuplicate = true;
-                        }
-                    } catch (Exception e){
-                        if(log.isDebugEnabled()) {
-                            log.debug(e);
-                        }
-                        lastError = e.getMessage();
-                        fail = true;
-                    }
-                }
+                userAdder.addUser(row++, line[0]);
                 line = csvReader.readNext();
             }
-
-            if (fail && success) {
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "Some user names were successfully imported. Some were not. Last error was : " + lastError);
-            }
-
-            if(fail && !success){
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "All user names were not imported. Last error was : " + lastError);
-            }
-            if (isDuplicate) {
-                throw new UserAdminException("Detected duplicate user names. " +
-                        "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
-            }
-        } catch (UserAdminException e) {
-            throw e;
+            read = true;
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
             throw new UserAdminException(e.getMessage(), e);
+        } finally {
+            if (!read) {
+                userAdder.stop();
+            }
         }
+        userAdder.complete();
     }
 
 }
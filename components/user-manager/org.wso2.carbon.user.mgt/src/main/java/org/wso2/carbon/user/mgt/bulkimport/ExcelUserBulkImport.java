@@ -42,60 +42,39 @@ public class ExcelUserBulkImport {
     }
 
     public void addUserList(UserStoreManager userStore) throws UserAdminException {
+        Sheet sheet;
         try {
             Workbook wb = this.createWorkbook();
-            Sheet sheet = wb.getSheet(wb.getSheetName(0));
-            String password = config.getDefaultPassword();
-           
-            if (sheet == null || sheet.getLastRowNum() == -1) {
-                throw new UserAdminException("The first sheet is empty");
-            }
+            sheet = wb.getSheet(wb.getSheetName(0));
+        } catch (UserAdminException e) {
+            throw e;
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            throw new UserAdminException(e.getMessage(), e);
+        }
+        if (sheet == null || sheet.getLastRowNum() == -1) {
+            throw new UserAdminException("The first sheet is empty");
+        }
+
+        BulkUserAdder userAdder = new BulkUserAdder(userStore, config);
+        boolean read = false;
+        try {
             int limit = sheet.getLastRowNum();
-            boolean isDuplicate = false;
-            boolean fail = false;
-            boolean success = false;
-            String lastError = "UNKNOWN";
             for (int i = 1; i < limit+1; i++) {
                 Row row = sheet.getRow(i);
-                Cell cell = row.getCell(0);
-                String userName = cell.getStringCellValue();
-                if(userName != null && userName.trim().length() > 0){
-                    try{
-                        if (!userStore.isExistingUser(userName)) {
-                            userStore.addUser(userName, password, null, null, null, true);
-                            success = true;
-                        } else {
-                            isDuplicate = true;
-                        }
-                    } catch (Exception e){
-                        if(log.isDebugEnabled()) {
-                            log.debug(e);
-                        }
-                        lastError = e.getMessage();
-                        fail = true;
-                    }
-                }
-            }
-            
-            if (fail && success) {
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "Some user names were successfully imported. Some were not. Last error was : " + lastError);
-            }
-
-            if(fail && !success){
-                throw new UserAdminException("Error occurs while importing user names. " +
-                        "All user names were not imported. Last error was : " + lastError);
+                Cell cell = row != null ? row.getCell(0) : null;
+                userAdder.addUser(i, cell != null ? cell.getStringCellValue() : null);
             }
-            if (isDuplicate) {
-                throw new UserAdminException("Detected duplicate user names. " +
-                        "Failed to import duplicate users. Non-duplicate user names were successfully imported.");
-            }            
-        } catch (UserAdminException e) {
-            throw e;
+            read = true;
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
             throw new UserAdminException(e.getMessage(), e);
+        } finally {
+            if (!read) {
+                userAdder.stop();
+            }
         }
+        userAdder.complete();
     }
 
     public Workbook createWorkbook() throws Throwable {
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2005-2007 WSO2, Inc. (http://wso2.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.user.mgt;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.mgt.common.FlaggedName;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UserRealmProxyTestCase extends TestCase {
+
+    private static final String[] USERS = {"dave", "Carol", "FOO/erin", "alice|Alice Smith", "Bob", "FOO/frank"};
+
+    private String[] users;
+    private Map<String, Integer> maxUserListCount;
+    private AtomicInteger readOnlyLookups;
+
+    protected void setUp() throws Exception {
+        users = USERS;
+        maxUserListCount = new HashMap<String, Integer>();
+        maxUserListCount.put("PRIMARY", 100);
+        maxUserListCount.put("FOO", 100);
+        readOnlyLookups = new AtomicInteger();
+    }
+
+    public void testFirstPage() throws Exception {
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 0, 3);
+
+        assertEquals(4, page.length);
+        assertUsers(page, "alice", "Bob", "Carol");
+        assertEquals("Alice Smith", page[0].getItemDisplayName());
+        assertEquals("Bob", page[1].getItemDisplayName());
+    }
+
+    public void testLastPageIsPartial() throws Exception {
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 3, 5);
+
+        assertEquals(4, page.length);
+        assertUsers(page, "dave", "FOO/erin", "FOO/frank");
+    }
+
+    public void testNegativeStartIndexStartsFromTheFirstUser() throws Exception {
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, -5, 2);
+
+        assertEquals(3, page.length);
+        assertUsers(page, "alice", "Bob");
+    }
+
+    public void testStartIndexBeyondTheUsersGivesAnEmptyPage() throws Exception {
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, USERS.length, 10);
+        assertEquals(1, page.length);
+        assertMarker(page, "false", "");
+
+        page = createProxy().listUsersByPage("*", 100, Integer.MAX_VALUE, 10);
+        assertEquals(1, page.length);
+        assertMarker(page, "false", "");
+    }
+
+    public void testNegativeOrZeroPageSizeGivesAnEmptyPage() throws Exception {
+        assertEquals(1, createProxy().listUsersByPage("*", 100, 0, 0).length);
+        assertEquals(1, createProxy().listUsersByPage("*", 100, 2, -1).length);
+        assertEquals(1, createProxy().listUsersByPage("*", 100, 2, Integer.MIN_VALUE).length);
+    }
+
+    public void testOversizedPageSizeListsTheRemainingUsers() throws Exception {
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 4, Integer.MAX_VALUE);
+
+        assertEquals(3, page.length);
+        assertUsers(page, "FOO/erin", "FOO/frank");
+    }
+
+    public void testListAllUsers() throws Exception {
+        FlaggedName[] page = createProxy().listAllUsers("*", 100);
+
+        assertEquals(USERS.length + 1, page.length);
+        assertUsers(page, "alice", "Bob", "Carol", "dave", "FOO/erin", "FOO/frank");
+        assertMarker(page, "false", "");
+    }
+
+    public void testNoUsers() throws Exception {
+        users = new String[0];
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 0, 10);
+
+        assertEquals(1, page.length);
+        assertMarker(page, "false", "");
+    }
+
+    public void testReadOnlyIsLookedUpOncePerDomain() throws Exception {
+        FlaggedName[] page = createProxy().listAllUsers("*", 100);
+
+        for (int i = 0; i < page.length - 1; i++) {
+            // the secondary user store is read only
+            assertEquals(page[i].getItemName(), !page[i].getItemName().startsWith("FOO/"), page[i].isEditable());
+        }
+        assertEquals(2, readOnlyLookups.get());
+    }
+
+    public void testPrimaryCountMarker() throws Exception {
+        maxUserListCount.put("PRIMARY", 4);
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 0, 2);
+
+        assertEquals(3, page.length);
+        // the marker counts all the listed users, not only the users of the page
+        assertMarker(page, "true", "");
+    }
+
+    public void testSecondaryCountMarker() throws Exception {
+        maxUserListCount.put("FOO", 2);
+        FlaggedName[] page = createProxy().listUsersByPage("*", 100, 0, 2);
+
+        assertMarker(page, "false", "FOO");
+    }
+
+    public void testCountMarkerOfSeveralDomains() throws Exception {
+        users = new String[]{"alice", "FOO/bob", "BAR/carol", "BAZ/dave"};
+        maxUserListCount.put("PRIMARY", 1);
+        maxUserListCount.put("FOO", 1);
+        maxUserListCount.put("BAR", 1);
+        maxUserListCount.put("BAZ", 2);
+        FlaggedName[] page = createProxy().listAllUsers("*", 100);
+
+        FlaggedName marker = page[page.length - 1];
+        assertEquals("true", marker.getItemName());
+        String[] domains = marker.getItemDisplayName().split(":");
+        assertEquals(marker.getItemDisplayName(), 2, domains.length);
+        assertTrue(marker.getItemDisplayName(), "FOO".equals(domains[0]) || "FOO".equals(domains[1]));
+        assertTrue(marker.getItemDisplayName(), "BAR".equals(domains[0]) || "BAR".equals(domains[1]));
+    }
+
+    private void assertUsers(FlaggedName[] page, String... userNames) {
+        assertEquals(userNames.length + 1, page.length);
+        for (int i = 0; i < userNames.length; i++) {
+            assertEquals(userNames[i], page[i].getItemName());
+        }
+    }
+
+    private void assertMarker(FlaggedName[] page, String primaryExceeding, String exceededDomains) {
+        FlaggedName marker = page[page.length - 1];
+        assertEquals(primaryExceeding, marker.getItemName());
+        assertEquals(exceededDomains, marker.getItemDisplayName());
+    }
+
+    private UserRealmProxy createProxy() {
+        final UserStoreManager primaryStore = createUserStore(false, createUserStore(true, null));
+        UserRealm realm = (UserRealm) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{UserRealm.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getUserStoreManager".equals(method.getName())) {
+                            return primaryStore;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new UserRealmProxy(realm) {
+            @Override
+            Map<String, Integer> getMaxUserListCount() {
+                return maxUserListCount;
+            }
+        };
+    }
+
+    /**
+     * @return user store which lists the users of the test, and whose secondary user store of the
+     *         FOO domain is the given one
+     */
+    private UserStoreManager createUserStore(final boolean readOnly, final UserStoreManager secondaryStore) {
+        return (UserStoreManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{UserStoreManager.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("listUsers".equals(name)) {
+                            return users.clone();
+                        } else if ("isReadOnly".equals(name)) {
+                            readOnlyLookups.incrementAndGet();
+                            return readOnly;
+                        } else if ("getSecondaryUserStoreManager".equals(name)) {
+                            return "FOO".equals(args[0]) ? secondaryStore : null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2005-2007 WSO2, Inc. (http://wso2.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.user.mgt.bulkimport;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.mgt.common.UserAdminException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkUserAdderTestCase extends TestCase {
+
+    private static final int THREAD_POOL_SIZE = 8;
+
+    private Set<String> users;
+    private AtomicInteger addCalls;
+    private AtomicInteger concurrentAdds;
+    private AtomicInteger maxConcurrentAdds;
+
+    protected void setUp() throws Exception {
+        users = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        addCalls = new AtomicInteger();
+        concurrentAdds = new AtomicInteger();
+        maxConcurrentAdds = new AtomicInteger();
+    }
+
+    public void testAllRowsAreAdded() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        for (int row = 1; row <= 500; row++) {
+            userAdder.addUser(row, "user" + row);
+        }
+        userAdder.complete();
+
+        assertEquals(500, users.size());
+        assertEquals(500, addCalls.get());
+        for (int row = 1; row <= 500; row++) {
+            assertTrue(users.contains("user" + row));
+        }
+    }
+
+    public void testUsersAreAddedConcurrently() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        for (int row = 1; row <= 200; row++) {
+            userAdder.addUser(row, "user" + row);
+        }
+        userAdder.complete();
+
+        assertEquals(200, users.size());
+        assertTrue("users were added one after the other", maxConcurrentAdds.get() > 1);
+        assertTrue("more users were added at the same time than there are threads",
+                maxConcurrentAdds.get() <= THREAD_POOL_SIZE + 1);
+    }
+
+    public void testEmptyUserNamesAreSkipped() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        userAdder.addUser(1, "user1");
+        userAdder.addUser(2, null);
+        userAdder.addUser(3, "  ");
+        userAdder.addUser(4, "user4");
+        userAdder.complete();
+
+        assertEquals(2, users.size());
+        assertEquals(2, addCalls.get());
+    }
+
+    public void testDuplicateRowsAreAddedOnce() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        // the same user names in rows handled at the same time by different threads
+        for (int row = 1; row <= 400; row++) {
+            userAdder.addUser(row, "user" + (row % 100));
+        }
+        try {
+            userAdder.complete();
+            fail("duplicate user names are not reported");
+        } catch (UserAdminException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Detected duplicate user names"));
+        }
+        assertEquals(100, users.size());
+    }
+
+    public void testExistingUsersAreDuplicates() throws Exception {
+        users.add("user1");
+        BulkUserAdder userAdder = createUserAdder();
+        userAdder.addUser(1, "user1");
+        userAdder.addUser(2, "user2");
+        try {
+            userAdder.complete();
+            fail("duplicate user names are not reported");
+        } catch (UserAdminException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Detected duplicate user names"));
+        }
+        assertEquals(1, addCalls.get());
+        assertTrue(users.contains("user2"));
+    }
+
+    public void testFailedRowsAreReported() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        for (int row = 1; row <= 100; row++) {
+            userAdder.addUser(row, (row % 10 == 0 ? "invalid" : "user") + row);
+        }
+        try {
+            userAdder.complete();
+            fail("failed rows are not reported");
+        } catch (UserAdminException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Some user names were successfully imported"));
+            assertTrue(e.getMessage(), e.getMessage().contains("invalid user name"));
+            assertTrue(e.getMessage(), e.getMessage().contains("Failed rows : "));
+        }
+        assertEquals(90, users.size());
+    }
+
+    public void testAllRowsFailed() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        for (int row = 1; row <= 20; row++) {
+            userAdder.addUser(row, "invalid" + row);
+        }
+        try {
+            userAdder.complete();
+            fail("failed rows are not reported");
+        } catch (UserAdminException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("All user names were not imported"));
+            // only the first failures are listed
+            assertTrue(e.getMessage(), e.getMessage().contains(" more"));
+        }
+        assertTrue(users.isEmpty());
+    }
+
+    public void testStopAddsTheRowsHandedToTheThreads() throws Exception {
+        BulkUserAdder userAdder = createUserAdder();
+        for (int row = 1; row <= 100; row++) {
+            userAdder.addUser(row, "user" + row);
+        }
+        userAdder.stop();
+
+        assertEquals(100, users.size());
+        assertEquals(0, concurrentAdds.get());
+    }
+
+    private BulkUserAdder createUserAdder() {
+        BulkImportConfig config = new BulkImportConfig(null, "users.csv");
+        config.setDefaultPassword("password");
+        config.setThreadPoolSize(THREAD_POOL_SIZE);
+        return new BulkUserAdder(createUserStore(), config);
+    }
+
+    /**
+     * @return user store which keeps the users in memory, fails to add the user names which start
+     *         with "invalid", and takes a while to add a user, as the listeners of a user store do
+     */
+    private UserStoreManager createUserStore() {
+        return (UserStoreManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{UserStoreManager.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("isExistingUser".equals(name)) {
+                            return users.contains((String) args[0]);
+                        } else if ("addUser".equals(name)) {
+                            return addUser((String) args[0]);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private Object addUser(String userName) throws UserStoreException, InterruptedException {
+        addCalls.incrementAndGet();
+        int count = concurrentAdds.incrementAndGet();
+        try {
+            int max = maxConcurrentAdds.get();
+            while (count > max && !maxConcurrentAdds.compareAndSet(max, count)) {
+                max = maxConcurrentAdds.get();
+            }
+            Thread.sleep(2);
+            if (userName.startsWith("invalid")) {
+                throw new UserStoreException("invalid user name " + userName);
+            }
+            if (!users.add(userName)) {
+                throw new UserStoreException("user " + userName + " exists");
+            }
+            return null;
+        } finally {
+            concurrentAdds.decrementAndGet();
+        }
+    }
+}
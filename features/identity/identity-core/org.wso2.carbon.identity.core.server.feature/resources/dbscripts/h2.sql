@@ -70,6 +70,9 @@ CREATE TABLE IF NOT EXISTS IDN_OAUTH2_ACCESS_TOKEN (
 
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE);
 
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED, ACCESS_TOKEN);
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED, AUTHORIZATION_CODE);
+
 CREATE TABLE IF NOT EXISTS IDN_OAUTH2_SCOPE (
             SCOPE_ID INTEGER NOT NULL AUTO_INCREMENT,
             SCOPE_KEY VARCHAR(100) NOT NULL,
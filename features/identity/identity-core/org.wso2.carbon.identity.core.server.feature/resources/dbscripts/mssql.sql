@@ -73,6 +73,14 @@ IF EXISTS (SELECT NAME FROM SYSINDEXES WHERE NAME = 'IDX_AT_CK_AU')
 DROP INDEX IDN_OAUTH2_ACCESS_TOKEN.IDX_AT_CK_AU
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE);
 
+IF EXISTS (SELECT NAME FROM SYSINDEXES WHERE NAME = 'IDX_AT_TC')
+DROP INDEX IDN_OAUTH2_ACCESS_TOKEN.IDX_AT_TC
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED, ACCESS_TOKEN);
+
+IF EXISTS (SELECT NAME FROM SYSINDEXES WHERE NAME = 'IDX_AC_TC')
+DROP INDEX IDN_OAUTH2_AUTHORIZATION_CODE.IDX_AC_TC
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED, AUTHORIZATION_CODE);
+
 CREATE TABLE IDN_OAUTH2_SCOPE (
   			SCOPE_ID INTEGER IDENTITY,
   			SCOPE_KEY VARCHAR(100) NOT NULL,
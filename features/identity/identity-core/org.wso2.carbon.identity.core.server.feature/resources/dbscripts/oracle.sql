@@ -64,6 +64,10 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 /
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE)
 /
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED, ACCESS_TOKEN)
+/
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED, AUTHORIZATION_CODE)
+/
 CREATE TABLE IDN_OAUTH2_SCOPE (
             SCOPE_ID INTEGER,
             SCOPE_KEY VARCHAR2 (100) NOT NULL,
@@ -76,6 +76,9 @@ CREATE TABLE IDN_OAUTH2_ACCESS_TOKEN (
 
 CREATE INDEX IDX_AT_CK_AU ON IDN_OAUTH2_ACCESS_TOKEN(CONSUMER_KEY, AUTHZ_USER, TOKEN_STATE, USER_TYPE);
 
+CREATE INDEX IDX_AT_TC ON IDN_OAUTH2_ACCESS_TOKEN(TIME_CREATED, ACCESS_TOKEN);
+CREATE INDEX IDX_AC_TC ON IDN_OAUTH2_AUTHORIZATION_CODE(TIME_CREATED, AUTHORIZATION_CODE);
+
 DROP TABLE IF EXISTS IDN_OAUTH2_SCOPE;
 DROP SEQUENCE IF EXISTS IDN_OAUTH2_SCOPE_PK_SEQ;
 CREATE SEQUENCE IDN_OAUTH2_SCOPE_PK_SEQ;